@@ -16,8 +16,8 @@ echo "#################"
 
 # Create (if doesn't exist) the bin directory
 mkdir -p "$BIN_DIR"
-# Compile all files
-javac -d "$BIN_DIR" $(find "$SRC_DIR" -name "*.java")
+# Compile all files (the Vector API module is needed for the SIMD kernels, see KernelBackend)
+javac --add-modules jdk.incubator.vector -d "$BIN_DIR" $(find "$SRC_DIR" -name "*.java")
 # Verify compilation
 if [ $? -ne 0 ]; then
     echo "ERROR: Compilation failed!"
@@ -35,7 +35,8 @@ echo "#################"
 ## https://www.fi.muni.cz/tech/unix/computation.html.en
 ## especially if you are using multiple cores
 # nice -n 19 ./network
-nice -n 19 java -cp "$BIN_DIR" "$MAIN_CLASS"
+# (without --add-modules, the scalar kernels are used)
+nice -n 19 java --add-modules jdk.incubator.vector -cp "$BIN_DIR" "$MAIN_CLASS"
 
 # Verify execution
 if [ $? -ne 0 ]; then
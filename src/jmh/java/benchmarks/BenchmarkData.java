@@ -0,0 +1,44 @@
+package benchmarks;
+
+import java.util.Random;
+
+import neuralstypes.Layer;
+import neuralstypes.networks.NeuralNetwork;
+import utility.Matrix;
+
+// Inputs shared by the benchmarks
+final class BenchmarkData {
+
+    static final int INPUT_SIZE = 784;
+    static final int CLASSES = 10;
+
+    private BenchmarkData() {}
+
+    // Values in [-1, 1)
+    static Matrix randomMatrix(int rows, int cols, Random random) {
+        Matrix matrix = new Matrix(rows, cols);
+        float[] data = matrix.getData();
+        for (int i = 0; i < data.length; i++) {
+            data[i] = random.nextFloat() * 2 - 1;
+        }
+        return matrix;
+    }
+
+    // One-hot rows with a random class
+    static Matrix randomTargets(int rows, int classes, Random random) {
+        Matrix targets = new Matrix(rows, classes);
+        for (int i = 0; i < rows; i++) {
+            targets.set(i, random.nextInt(classes), 1.0f);
+        }
+        return targets;
+    }
+
+    // 784 -> width -> width -> 10, same activations as ProjectNetwork
+    static NeuralNetwork network(int width, long seed) {
+        NeuralNetwork network = new NeuralNetwork(seed) {};
+        network.addLayer(new Layer(INPUT_SIZE, width, "RELU", new Random(seed)));
+        network.addLayer(new Layer(width, width, "RELU", new Random(seed + 1)));
+        network.addLayer(new Layer(width, CLASSES, "SOFTMAX", new Random(seed + 2)));
+        return network;
+    }
+}
@@ -0,0 +1,33 @@
+package benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of target/benchmarks.jar.
+ *
+ * Accepts the usual JMH command line (e.g. "MatrixBenchmarks -p batchSize=64")
+ * and always adds the GC profiler, so every result comes with its allocation
+ * rate (gc.alloc.rate, and gc.alloc.rate.norm in bytes per operation).
+ * The forks get the Vector API module, so the SIMD kernels are used unless
+ * "-jvmArgs -Dnn.simd=false" is given.
+ */
+public class BenchmarkRunner {
+
+    private BenchmarkRunner() {}
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        Options options = new OptionsBuilder()
+                .parent(commandLine)
+                .addProfiler(GCProfiler.class)
+                .jvmArgsPrepend("--add-modules=jdk.incubator.vector")
+                .build();
+        new Runner(options).run();
+    }
+}
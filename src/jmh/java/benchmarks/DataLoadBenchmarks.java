@@ -0,0 +1,77 @@
+package benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import datatreatments.CsvFloatParser;
+import utility.Matrix;
+
+// Parsing of a synthetic Fashion-MNIST-like vectors file (784 pixels 0-255 per line)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DataLoadBenchmarks {
+
+    @Param({"10000"})
+    int rows;
+
+    private Path vectors;
+    private Path labels;
+
+    @Setup
+    public void setUp() throws IOException {
+        Random random = new Random(42);
+        vectors = Files.createTempFile("bench_vectors", ".csv");
+        labels = Files.createTempFile("bench_labels", ".csv");
+
+        try (BufferedWriter vectorsOut = Files.newBufferedWriter(vectors);
+             BufferedWriter labelsOut = Files.newBufferedWriter(labels)) {
+            for (int i = 0; i < rows; i++) {
+                for (int j = 0; j < BenchmarkData.INPUT_SIZE; j++) {
+                    if (j > 0) vectorsOut.write(',');
+                    // Mostly background pixels, like the real images
+                    vectorsOut.write(Integer.toString(random.nextInt(3) == 0 ? random.nextInt(256) : 0));
+                }
+                vectorsOut.newLine();
+                labelsOut.write(Integer.toString(random.nextInt(BenchmarkData.CLASSES)));
+                labelsOut.newLine();
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(vectors);
+        Files.deleteIfExists(labels);
+    }
+
+    @Benchmark
+    public Matrix parseVectors() throws IOException {
+        return CsvFloatParser.parseMatrix(vectors, BenchmarkData.INPUT_SIZE, 255.0f);
+    }
+
+    @Benchmark
+    public int[] parseLabels() throws IOException {
+        return CsvFloatParser.parseIntColumn(labels);
+    }
+}
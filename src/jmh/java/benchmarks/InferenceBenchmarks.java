@@ -0,0 +1,66 @@
+package benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import neuralstypes.networks.InferenceEngine;
+import neuralstypes.networks.NeuralNetwork;
+import neuralstypes.networks.QuantizedEngine;
+import utility.Matrix;
+
+// Batch scoring with the float and the int8 model of a 784 -> width -> width -> 10 network
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InferenceBenchmarks {
+
+    @Param({"64", "1024"})
+    int batchSize;
+
+    @Param({"128", "784"})
+    int width;
+
+    private InferenceEngine floatModel;
+    private QuantizedEngine int8Model;
+    private Matrix inputs;
+
+    @Setup
+    public void setUp() {
+        NeuralNetwork network = BenchmarkData.network(width, 7);
+        floatModel = network.freeze();
+        int8Model = network.quantize();
+
+        // Pixel-like inputs, two thirds of them empty
+        Random random = new Random(42);
+        inputs = new Matrix(batchSize, BenchmarkData.INPUT_SIZE);
+        float[] data = inputs.getData();
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (random.nextInt(3) == 0) ? random.nextFloat() : 0.0f;
+        }
+    }
+
+    @Benchmark
+    public int[] classifyFloat() {
+        return floatModel.classify(inputs);
+    }
+
+    @Benchmark
+    public int[] classifyInt8() {
+        return int8Model.classify(inputs);
+    }
+}
@@ -0,0 +1,81 @@
+package benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import utility.KernelBackend;
+import utility.ScalarKernels;
+import utility.SimdKernels;
+
+// Scalar vs SIMD kernels on rows of `width` floats
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KernelBenchmarks {
+
+    @Param({"scalar", "simd"})
+    String backend;
+
+    @Param({"64", "128", "784"})
+    int width;
+
+    private KernelBackend kernels;
+    private float[] x, y, w, v, g;
+
+    @Setup
+    public void setUp() {
+        kernels = backend.equals("simd") ? new SimdKernels() : new ScalarKernels();
+        Random random = new Random(42);
+        x = BenchmarkData.randomMatrix(1, width, random).getData();
+        y = new float[4 * width];
+        w = BenchmarkData.randomMatrix(1, width, random).getData();
+        v = new float[width];
+        g = BenchmarkData.randomMatrix(1, width, random).getData();
+    }
+
+    // Inner loop of the GEMM micro-kernel
+    @Benchmark
+    public float[] axpy4() {
+        kernels.axpy4(0.5f, -0.25f, 0.125f, 1.0f, x, 0, y, 0, width, 2 * width, 3 * width, width);
+        return y;
+    }
+
+    @Benchmark
+    public float[] addBias() {
+        kernels.add(x, 0, y, 0, width);
+        return y;
+    }
+
+    @Benchmark
+    public float[] relu() {
+        kernels.relu(x, 0, y, 0, width);
+        return y;
+    }
+
+    @Benchmark
+    public float[] sigmoid() {
+        kernels.sigmoid(x, 0, y, 0, width);
+        return y;
+    }
+
+    @Benchmark
+    public float[] momentumStep() {
+        kernels.momentumStep(w, v, g, 0, width, 1e-6f, 0.9f);
+        return w;
+    }
+}
@@ -0,0 +1,91 @@
+package benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import neuralstypes.Layer;
+import utility.Matrix;
+import utility.functions.Softmax;
+
+// Steps of one layer: a hidden [width] -> [width] ReLU layer followed by another one
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LayerBenchmarks {
+
+    @Param({"32", "64", "256"})
+    int batchSize;
+
+    @Param({"64", "128", "784"})
+    int width;
+
+    private Layer hidden;
+    private Layer next;
+    private Matrix inputs;
+    private Matrix logits;
+    private final Softmax softmax = new Softmax();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        hidden = new Layer(width, width, "RELU", random);
+        next = new Layer(width, width, "RELU", random);
+        inputs = BenchmarkData.randomMatrix(batchSize, width, random);
+        logits = BenchmarkData.randomMatrix(batchSize, BenchmarkData.CLASSES, random);
+
+        hidden.reserveWorkspace(batchSize);
+        next.reserveWorkspace(batchSize);
+        next.forward(hidden.forward(inputs));
+        next.computeOutputDeltas(BenchmarkData.randomMatrix(batchSize, width, random));
+    }
+
+    // Keeps the accumulated gradients (and their sample count) bounded
+    @Setup(Level.Iteration)
+    public void resetGradients() {
+        hidden.resetGradients();
+        hidden.computeHiddenDeltas(next);
+    }
+
+    @Benchmark
+    public Matrix forward() {
+        return hidden.forward(inputs);
+    }
+
+    @Benchmark
+    public Matrix computeHiddenDeltas() {
+        hidden.computeHiddenDeltas(next);
+        return hidden.getDeltas();
+    }
+
+    @Benchmark
+    public Matrix updateWeights() {
+        hidden.updateWeights(1e-6f);
+        return hidden.getWeights();
+    }
+
+    // Row-wise softmax of a [batchSize][10] output batch
+    @Benchmark
+    public Matrix softmax() {
+        float[] data = logits.getData();
+        for (int i = 0; i < batchSize; i++) {
+            softmax.evaluate(data, logits.rowOffset(i), data, logits.rowOffset(i), BenchmarkData.CLASSES);
+        }
+        return logits;
+    }
+}
@@ -0,0 +1,61 @@
+package benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import utility.Matrix;
+import utility.MatrixMath;
+
+// Matrix kernels on a [batchSize][width] x [width][width] problem
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MatrixBenchmarks {
+
+    @Param({"32", "64", "256"})
+    int batchSize;
+
+    @Param({"64", "128", "784"})
+    int width;
+
+    private Matrix inputs;
+    private Matrix weights;
+    private Matrix outputs;
+    private float[] biases;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        inputs = BenchmarkData.randomMatrix(batchSize, width, random);
+        weights = BenchmarkData.randomMatrix(width, width, random);
+        outputs = new Matrix(batchSize, width);
+        biases = BenchmarkData.randomMatrix(1, width, random).getData();
+    }
+
+    @Benchmark
+    public Matrix multiply() {
+        MatrixMath.multiply(inputs, weights, outputs);
+        return outputs;
+    }
+
+    @Benchmark
+    public Matrix addBiasToBatch() {
+        MatrixMath.addBiasToBatch(outputs, biases);
+        return outputs;
+    }
+}
@@ -0,0 +1,65 @@
+package benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import neuralstypes.networks.NeuralNetwork;
+import utility.Matrix;
+
+// Full training step and inference of a 784 -> width -> width -> 10 network
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NetworkBenchmarks {
+
+    @Param({"32", "64", "256"})
+    int batchSize;
+
+    @Param({"64", "128", "784"})
+    int width;
+
+    private NeuralNetwork network;
+    private Matrix inputs;
+    private Matrix targets;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        network = BenchmarkData.network(width, 7);
+        network.reserveWorkspaces(batchSize);
+
+        // Pixel-like inputs in [0, 1)
+        inputs = BenchmarkData.randomMatrix(batchSize, BenchmarkData.INPUT_SIZE, random);
+        float[] data = inputs.getData();
+        for (int i = 0; i < data.length; i++) {
+            data[i] = Math.abs(data[i]);
+        }
+        targets = BenchmarkData.randomTargets(batchSize, BenchmarkData.CLASSES, random);
+    }
+
+    @Benchmark
+    public Matrix trainBatch() {
+        network.trainBatch(inputs, targets, 0.001f);
+        return network.getFinalOutputs();
+    }
+
+    @Benchmark
+    public Matrix forwardBatch() {
+        return network.forwardBatch(inputs);
+    }
+}
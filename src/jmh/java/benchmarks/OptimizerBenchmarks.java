@@ -0,0 +1,52 @@
+package benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import utility.optimizers.Optimizer;
+import utility.optimizers.OptimizerNames;
+import utility.optimizers.OptimizerState;
+
+// One update of a 784 x 128 weight buffer (first hidden layer) by every optimizer
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OptimizerBenchmarks {
+
+    @Param({"Momentum", "Nesterov", "RMSProp", "Adam", "AdamW"})
+    String optimizerName;
+
+    private Optimizer optimizer;
+    private OptimizerState state;
+    private float[] parameters, gradients;
+
+    @Setup
+    public void setUp() {
+        optimizer = OptimizerNames.getByName(optimizerName).create();
+        Random random = new Random(42);
+        parameters = BenchmarkData.randomMatrix(128, 784, random).getData();
+        gradients = BenchmarkData.randomMatrix(128, 784, random).getData();
+        state = optimizer.createState(parameters.length, true);
+    }
+
+    @Benchmark
+    public float[] update() {
+        optimizer.update(parameters, gradients, state, 1e-6f, 64);
+        return parameters;
+    }
+}
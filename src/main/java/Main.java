@@ -1,12 +1,46 @@
-import java.io.BufferedWriter;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
 import java.util.Scanner;
+import java.util.SplittableRandom;
 
+import datatreatments.DataSource;
 import datatreatments.FashionMNISTDataLoader;
 import datatreatments.FashionMNISTDataLoader.DataSet;
+import datatreatments.MappedDataSet;
+import datatreatments.MiniBatchesSamples;
+import datatreatments.sampling.Sampler;
+import datatreatments.sampling.SamplerNames;
+import neuralstypes.networks.BackgroundEvaluator;
+import neuralstypes.networks.BestCheckpoint;
+import neuralstypes.networks.Checkpoint;
+import neuralstypes.networks.CheckpointWriter;
+import neuralstypes.networks.DataParallelTrainer;
+import neuralstypes.networks.EarlyStopping;
+import neuralstypes.networks.HogwildTrainer;
+import neuralstypes.networks.InferenceEngine;
+import neuralstypes.networks.Monitor;
 import neuralstypes.networks.ProjectNetwork;
+import neuralstypes.networks.QuantizedEngine;
+import neuralstypes.networks.ReduceLearningRateOnPlateau;
+import neuralstypes.networks.Trainer;
 import neuralstypes.networks.XORNetwork;
+import neuralstypes.networks.search.Bracket;
+import neuralstypes.networks.search.HyperparameterSearch;
+import neuralstypes.networks.search.SearchNames;
+import neuralstypes.networks.search.SearchSpace;
+import neuralstypes.networks.search.Trial;
+import utility.HalfPrecision;
+import utility.Matrix;
+import utility.Parallelism;
+import utility.optimizers.CosineSchedule;
+import utility.optimizers.LearningRateSchedule;
+import utility.optimizers.OneCycleSchedule;
+import utility.optimizers.OptimizerNames;
+import utility.optimizers.StepSchedule;
 
 public class Main {
 
@@ -20,7 +54,8 @@ public class Main {
                 System.out.println("==========================================");
                 System.out.println("1. Run XOR Network Example");
                 System.out.println("2. Run Fashion MNIST (ProjectNetwork)");
-                System.out.print("Select an option [1-2]: ");
+                System.out.println("3. Run a hyperparameter search on Fashion MNIST");
+                System.out.print("Select an option [1-3]: ");
     
                 String choice = scanner.nextLine().trim();
     
@@ -35,24 +70,38 @@ public class Main {
                         Long seed = askForSeed(scanner);
                         ProjectNet(seed);
                     }
+                    case "3" -> {
+                        System.out.println("\n--- Starting Hyperparameter Search for Fashion MNIST ---");
+                        Long seed = askForSeed(scanner);
+                        SearchNet(seed);
+                    }
                     default -> System.out.println("Invalid option selected. Exiting.");
                 }
             }
         }
+        else if (System.getProperty("nn.search") != null) SearchNet(null);
         else ProjectNet(null);
     }
 
     // Saves the predictions in a .csv file
-    private static void savePredictions(ProjectNetwork network, DataSet testData, String filename) {
+    private static void savePredictions(BackgroundEvaluator evaluator, ProjectNetwork network, DataSet testData,
+                                        String filename) {
         System.out.println("Generating prediction file: " + filename + "...");
 
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(filename))) {
-            for (int i = 0; i < testData.size(); i++) {
-                float predictionIndex = network.predict(testData.inputs[i]);
+        // Frozen copy of the trained weights, predicted in batches on the evaluator threads
+        int[] predictions = evaluator.classify(network, testData.inputs).join();
 
-                writer.write(String.valueOf((int)predictionIndex));
-                writer.newLine();
-            }
+        // One line per prediction ("<class>\n"), formatted into a single buffer and written at once
+        int maxDigits = String.valueOf(network.getLayer(network.size() - 1).getNeuronCount() - 1).length();
+        byte[] buffer = new byte[predictions.length * (maxDigits + 1)];
+        int length = 0;
+        for (int prediction : predictions) {
+            length = appendDigits(buffer, length, prediction);
+            buffer[length++] = '\n';
+        }
+
+        try (FileOutputStream out = new FileOutputStream(filename)) {
+            out.write(buffer, 0, length);
 
             System.out.println("File generated.");
 
@@ -65,27 +114,26 @@ public class Main {
     private static void XORNet(Long seed) {
         XORNetwork xorNet = (seed != null) ? new XORNetwork(seed) : new XORNetwork();
 
-        float[][] trainingInputs = {
+        Matrix trainingInputs = Matrix.fromArray(new float[][] {
             {0.0f, 0.0f}, {0.0f, 1.0f}, {1.0f, 0.0f}, {1.0f, 1.0f}
-        };
-        float[][] expectedOutputs = {
+        });
+        Matrix expectedOutputs = Matrix.fromArray(new float[][] {
             {0.0f}, {1.0f}, {1.0f}, {0.0f}
-        };
+        });
 
         float learningRate = 0.5f;
-        float momentum = 0.9f;
         int epochs = 10000;
 
         System.out.println("Training (Epochs: " + epochs + ", LR: " + learningRate + ")...");
 
         for (int e = 0; e < epochs; e++) {
-            xorNet.trainBatch(trainingInputs, expectedOutputs, learningRate, momentum);
+            xorNet.trainBatch(trainingInputs, expectedOutputs, learningRate);
 
             if ((e + 1) % 1000 == 0) {
-                float[][] results = xorNet.forwardBatch(trainingInputs);
+                Matrix results = xorNet.forwardBatch(trainingInputs);
                 float totalError = 0.0f;
                 for(int i=0; i<4; i++) {
-                    float err = expectedOutputs[i][0] - results[i][0];
+                    float err = expectedOutputs.get(i, 0) - results.get(i, 0);
                     totalError += err * err;
                 }
                 System.out.printf("Epoch %d: MSE = %.6f%n", (e + 1), totalError / 4);
@@ -93,24 +141,148 @@ public class Main {
         }
 
         System.out.println("\n--- Testing Results ---");
-        float[][] outputs = xorNet.forwardBatch(trainingInputs);
+        Matrix outputs = xorNet.forwardBatch(trainingInputs);
         for (int i = 0; i < 4; i++) {
             System.out.printf("Input: [%.0f, %.0f], Expected: %.0f, Predicted: %.4f%n",
-                trainingInputs[i][0], trainingInputs[i][1], expectedOutputs[i][0], outputs[i][0]);
+                trainingInputs.get(i, 0), trainingInputs.get(i, 1), expectedOutputs.get(i, 0), outputs.get(i, 0));
         }
     }
 
     // --- OPTION 2: PROJECT NETWORK ---
     private static void ProjectNet(Long seed) {
-        ProjectNetwork projectNet = (seed != null) ? new ProjectNetwork(seed) : new ProjectNetwork();
+        // With -Dnn.model=conv the images go through a 3x3 convolution and a max pooling first,
+        // with -Dnn.model=bn the hidden layers are batch normalised and followed by dropout
+        String model = System.getProperty("nn.model", ProjectNetwork.DENSE);
+        boolean convolutional = model.equalsIgnoreCase(ProjectNetwork.CONVOLUTIONAL);
+        ProjectNetwork projectNet;
+        try {
+            projectNet = (seed != null) ? new ProjectNetwork(seed, model) : new ProjectNetwork(model);
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            return;
+        }
+
+        int batchSize = 64;
+        int epochs = Integer.getInteger("nn.epochs", 20);
+
+        // Optimizer and learning rate schedule, chosen per run:
+        //  -Dnn.optimizer=momentum (default, 0.9) | nesterov | rmsprop | adam | adamw
+        //  -Dnn.lr=<base learning rate> (default: 0.015 for momentum/nesterov, 0.001 otherwise)
+        //  -Dnn.schedule=step (default, halved at epochs 10, 13, 16, 19) | cosine | onecycle
+        //  -Dnn.warmup=<epochs> of linear warm-up (default 0)
+        OptimizerNames optimizer = OptimizerNames.getByName(System.getProperty("nn.optimizer", "Momentum"));
+        if (optimizer == null) {
+            System.err.println("Unknown optimizer: " + System.getProperty("nn.optimizer"));
+            return;
+        }
+        projectNet.setOptimizer(optimizer.create());
+
+        float baseLearningRate = Float.parseFloat(
+                System.getProperty("nn.lr", String.valueOf(optimizer.getDefaultLearningRate())));
+        LearningRateSchedule schedule = createSchedule(System.getProperty("nn.schedule", "step"),
+                baseLearningRate, epochs);
+        if (schedule == null) {
+            System.err.println("Unknown schedule: " + System.getProperty("nn.schedule"));
+            return;
+        }
+        double warmupEpochs = Double.parseDouble(System.getProperty("nn.warmup", "0"));
+        if (warmupEpochs > 0) schedule = schedule.withWarmup(warmupEpochs);
+
+        // With -Dnn.precision=bf16|fp16 the hidden activations are kept in 16 bits during training
+        String precisionProperty = System.getProperty("nn.precision", "fp32");
+        if (!precisionProperty.equalsIgnoreCase("fp32")) {
+            HalfPrecision precision = HalfPrecision.getByName(precisionProperty);
+            if (precision == null) {
+                System.err.println("Unknown precision: " + precisionProperty);
+                return;
+            }
+            if (!model.equalsIgnoreCase(ProjectNetwork.DENSE)) {
+                System.err.println("Mixed precision supports the dense model only.");
+                return;
+            }
+            projectNet.setActivationPrecision(precision); // Before the replicas are created
+        }
+
+        // Training mode, chosen per run with -Dnn.mode=...
+        //  - "sync" (default): data-parallel replicas, -Dnn.workers of them (the batch is split between them)
+        //  - "hogwild": asynchronous lock-free updates, one worker per thread by default
+        // One synchronous replica by default: on the project network the throughput drops as replicas are
+        // added, and the shards and summation order would change the results from machine to machine
+        boolean hogwild = System.getProperty("nn.mode", "sync").equalsIgnoreCase("hogwild");
+        int workers = Integer.getInteger("nn.workers", hogwild ? Parallelism.getThreadCount() : 1);
+
+        // With -Dnn.stream=true the training set is read in batches on a background thread
+        // instead of being loaded in memory (synchronous mode only)
+        boolean streaming = Boolean.getBoolean("nn.stream") && !hogwild;
+
+        // Order of the rows in every epoch, chosen per run with -Dnn.sampler=...
+        //  uniform (default, new shuffle every epoch) | stratified | balanced | sequential (file order)
+        // (in-memory training only, a stream is read in file order)
+        SamplerNames samplerName = SamplerNames.getByName(System.getProperty("nn.sampler", "Uniform"));
+        if (samplerName == null) {
+            System.err.println("Unknown sampler: " + System.getProperty("nn.sampler"));
+            return;
+        }
+
+        // With -Dnn.sparse=true the training images are kept in CSR form (only the non-zero
+        // pixels), and the first layer multiplies the stored pixels only (in-memory dense model)
+        boolean sparse = Boolean.getBoolean("nn.sparse") && !streaming;
+        if (sparse && convolutional) {
+            System.err.println("Sparse inputs support the dense model only.");
+            return;
+        }
+
+        // With -Dnn.checkpoint=<file> the network is saved after every epoch, and a run
+        // resumes from that file when it exists (a finished run only writes the predictions)
+        String checkpointProperty = System.getProperty("nn.checkpoint");
+        Path checkpointFile = (checkpointProperty != null) ? Paths.get(checkpointProperty) : null;
+        int firstEpoch = 0;
+        Checkpoint checkpoint = null;
+        if (checkpointFile != null && Files.exists(checkpointFile)) {
+            try {
+                checkpoint = Checkpoint.open(checkpointFile);
+                checkpoint.restore(projectNet);
+                firstEpoch = checkpoint.getEpoch();
+                System.out.println("Resumed from " + checkpointFile + " after epoch " + firstEpoch);
+                if (!checkpoint.getOptimizerName().equalsIgnoreCase(optimizer.getName())) {
+                    System.out.println("Optimizer changed (" + checkpoint.getOptimizerName() + " -> "
+                            + optimizer.getName() + "), its state starts from zero");
+                }
+            } catch (IOException | IllegalArgumentException e) {
+                System.err.println("Cannot resume from " + checkpointFile + ": " + e.getMessage());
+                return;
+            }
+        }
+        boolean training = firstEpoch < epochs;
+
+        // Callbacks of the training loop, on the validation accuracy (-Dnn.monitor=loss for the loss):
+        //  -Dnn.earlyStopping=<patience>: stops after <patience> epochs without improvement,
+        //   then predicts with the weights of the best epoch
+        //  -Dnn.plateau=<patience>: halves the learning rate after <patience> epochs without improvement
+        //  -Dnn.best=<file>: keeps the checkpoint of the best epoch, and predicts with its weights
+        Monitor monitor = Monitor.getByName(System.getProperty("nn.monitor", "Accuracy"));
+        if (monitor == null) {
+            System.err.println("Unknown monitor: " + System.getProperty("nn.monitor"));
+            return;
+        }
+        int earlyStopping = Integer.getInteger("nn.earlyStopping", 0);
+        int plateau = Integer.getInteger("nn.plateau", 0);
+        String bestProperty = System.getProperty("nn.best");
+        Path bestFile = (bestProperty != null) ? Paths.get(bestProperty) : null;
 
         FashionMNISTDataLoader loader = new FashionMNISTDataLoader();
-        DataSet trainData;
+        DataSet trainData = null;
+        MappedDataSet trainMapped = null; // Batches decoded from the binary file
+        DataSource trainSource = null;
         DataSet testData;
 
         System.out.println("Loading datasets...");
         try {
-            trainData = loader.loadTrainingData();
+            if (training) { // Nothing to load when the checkpoint is already fully trained
+                if (streaming) trainSource = loader.openTrainingStream(batchSize, 4);
+                else if (!sparse) trainMapped = loader.mapTrainingData(); // null without the binary file
+                if (!streaming && trainMapped == null) trainData = loader.loadTrainingData();
+            }
             testData = loader.loadTestData();
         } catch (IOException e) {
             System.err.println("There was an error loading the datasets. Please check that the files exist and that the format is correct." +
@@ -120,69 +292,211 @@ public class Main {
             return;
         }
 
-        int batchSize = 64;
-        float learningRate = 0.015f;
-        float momentum = 0.9f;
-        int epochs = 20;
-
-        int trainSize = trainData.size();
-        int testSize = testData.size();
+        int trainSize = (streaming || !training) ? 0
+                      : (trainMapped != null) ? trainMapped.size() : trainData.size();
 
-        System.out.println("Training on " + trainSize + " images (Batch Size: " + batchSize + ")");
+        System.out.println("Training on " + (streaming ? "a stream of" : String.valueOf(trainSize)) + " images (Batch Size: "
+                + batchSize + ", Workers: " + workers + (hogwild ? ", Hogwild" : "") + ", Optimizer: "
+                + optimizer.getName() + (streaming ? "" : ", Sampler: " + samplerName.getName()) + ")");
 
-        long startTime = System.currentTimeMillis();
-
-        for (int e = 0; e < epochs; e++) {
+        DataParallelTrainer trainer = null;
+        HogwildTrainer hogwildTrainer = null;
+        MiniBatchesSamples samples = null;
+        if (training && !streaming) {
+            if (sparse) {
+                System.out.printf("Sparse inputs: %.1f%% of the pixels stored%n",
+                        trainData.useSparseInputs().getDensity() * 100);
+            }
+            // Seeded by the run seed, so a resumed run sees the same batches
+            long samplesSeed = (seed != null) ? seed : new SplittableRandom().nextLong();
+            if (trainMapped != null) {
+                Sampler sampler = samplerName.create(trainMapped.getLabels(), trainMapped.getClasses());
+                samples = new MiniBatchesSamples(trainMapped, batchSize, sampler, samplesSeed);
+            } else {
+                Sampler sampler = samplerName.create(trainData.labels, trainData.targets.getColumns());
+                samples = new MiniBatchesSamples(trainData, batchSize, sampler, samplesSeed);
+            }
+        }
+        if (!training) {
+            // Weights already trained
+        } else if (hogwild) {
+            hogwildTrainer = new HogwildTrainer(projectNet, workers);
+            hogwildTrainer.reserveWorkspaces(batchSize);
+        } else {
+            trainer = new DataParallelTrainer(projectNet, workers);
+            trainer.reserveWorkspaces(batchSize);
+        }
+        projectNet.reserveWorkspaces(batchSize); // Also used for validation
+        if (projectNet.getActivationPrecision() != null) {
+            System.out.printf("Activations: %s, %d KB per replica%n",
+                    projectNet.getActivationPrecision().getName(), projectNet.getActivationBytes() / 1024);
+        }
 
-            if (e == 10 || e == 13 || e == 16 || e == 19 ) {
-                learningRate /= 2.0f;
-                System.out.printf(">>> LR Decayed to: %.6f%n", learningRate);
+        CheckpointWriter checkpointWriter = (checkpointFile != null || bestFile != null) ? new CheckpointWriter()
+                                                                                   : null;
+        // Validation and predictions, scored in batches of 1024 rows (a quarter of the threads)
+        BackgroundEvaluator evaluator = new BackgroundEvaluator(Math.max(1, Parallelism.getThreadCount() / 4), 1024);
+
+        if (training) {
+            Trainer loop = new Trainer(projectNet, schedule, epochs);
+            if (hogwild) loop.setHogwild(samples, hogwildTrainer);
+            else if (streaming) loop.setStream(trainSource, trainer);
+            else loop.setSamples(samples, trainer);
+            // On a copy of the weights, in the background while the next epoch trains
+            loop.setValidation(evaluator, testData.inputs, testData.labels);
+            if (checkpointFile != null) loop.setCheckpoints(checkpointWriter, checkpointFile);
+
+            // In this order: no learning rate change when the run stops
+            if (earlyStopping > 0) loop.addCallback(new EarlyStopping(monitor, earlyStopping, 0.0));
+            if (plateau > 0) {
+                loop.addCallback(new ReduceLearningRateOnPlateau(monitor, 0.5f, plateau, 0.0, 1.0f / 64));
             }
+            if (earlyStopping > 0 || bestFile != null) {
+                // The predictions are made with the weights of the best epoch
+                loop.addCallback(new BestCheckpoint(monitor, (bestFile != null) ? checkpointWriter : null, bestFile,
+                        true));
+            }
+            if (checkpoint != null) loop.resume(checkpoint); // Learning rate scale and patience counters
 
-            // --- TRAINING PHASE (MINI-BATCH) ---
-            for (int i = 0; i < trainSize; i += batchSize) {
-                int end = Math.min(i + batchSize, trainSize);
-                int currentBatchSize = end - i;
+            try {
+                int trained = loop.run(firstEpoch);
+                if (trained < epochs) System.out.println("Stopped after " + trained + " epochs.");
+            } catch (IOException ex) {
+                System.err.println("Error reading the training data: " + ex.getMessage());
+                trainSource.close();
+                return;
+            }
+        }
 
-                float[][] batchInputs = new float[currentBatchSize][];
-                float[][] batchTargets = new float[currentBatchSize][];
+        System.out.println("Training Complete.");
+        if (projectNet.getSkippedSteps() > 0) {
+            System.out.println("Skipped steps (fp16 overflow): " + projectNet.getSkippedSteps());
+        }
+        if (trainSource != null) trainSource.close();
+        if (trainMapped != null) {
+            try {
+                trainMapped.close();
+            } catch (IOException e) {
+                System.err.println("Error closing the training data: " + e.getMessage());
+            }
+        }
+        if (checkpointWriter != null) checkpointWriter.close();
 
-                for (int j = 0; j < currentBatchSize; j++) {
-                    batchInputs[j] = trainData.inputs[i + j];
-                    batchTargets[j] = trainData.targets[i + j];
-                }
+        savePredictions(evaluator, projectNet, testData, "test_predictions.csv");
+        evaluator.close();
 
-                projectNet.trainBatch(batchInputs, batchTargets, learningRate, momentum);
-            }
+        // With -Dnn.quantize=true the int8 model is compared with the float one on the test set (dense model)
+        if (Boolean.getBoolean("nn.quantize") && !convolutional) {
+            compareQuantized(projectNet, testData);
+        }
+    }
 
-            // --- VALIDATION PHASE ---
-            int validationCorrect = 0;
-            for (int i = 0; i < testSize; i += batchSize) {
-                int end = Math.min(i + batchSize, testSize);
-                int currentBatchSize = end - i;
+    // Writes a non-negative number in decimal at `position`, returns the position after it
+    private static int appendDigits(byte[] buffer, int position, int value) {
+        int digits = 1;
+        for (int rest = value / 10; rest > 0; rest /= 10) digits++;
+        for (int i = position + digits - 1; i >= position; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        return position + digits;
+    }
 
-                float[][] batchInputs = new float[currentBatchSize][];
-                for (int j = 0; j < currentBatchSize; j++) batchInputs[j] = testData.inputs[i + j];
+    // --- OPTION 3: HYPERPARAMETER SEARCH ---
+    // -Dnn.search=grid|random|halving|hyperband trains many configurations of the project network
+    // at the same time instead of one run, and ranks them with k-fold cross-validation:
+    //  -Dnn.search.trials=<random configurations> (default 27, random and halving)
+    //  -Dnn.search.epochs=<epochs of a complete trial> (default 9)
+    //  -Dnn.search.folds=<cross-validation folds> (default 3)
+    //  -Dnn.search.batch=32,64,128 | lr=0.005,0.015,0.045 | momentum=0.8,0.9 | decay=3,10 (candidates)
+    //  -Dnn.search.output=<leaderboard CSV> (default search.csv)
+    private static void SearchNet(Long seed) {
+        SearchNames search = SearchNames.getByName(System.getProperty("nn.search", "Hyperband"));
+        if (search == null) {
+            System.err.println("Unknown search: " + System.getProperty("nn.search"));
+            return;
+        }
+        int trials = Integer.getInteger("nn.search.trials", 27);
+        int epochs = Integer.getInteger("nn.search.epochs", 9);
+        int folds = Integer.getInteger("nn.search.folds", 3);
+        Path output = Paths.get(System.getProperty("nn.search.output", "search.csv"));
+
+        SearchSpace space;
+        List<Bracket> brackets;
+        long runSeed = (seed != null) ? seed : new SplittableRandom().nextLong();
+        try {
+            space = SearchSpace.parse(System.getProperty("nn.search.batch"), System.getProperty("nn.search.lr"),
+                    System.getProperty("nn.search.momentum"), System.getProperty("nn.search.decay"));
+            // Successive halving keeps the best third of the trials after every rung
+            brackets = search.plan(space, trials, epochs, 3, new SplittableRandom(runSeed));
+        } catch (IllegalArgumentException e) {
+            System.err.println("Invalid search: " + e.getMessage());
+            return;
+        }
 
-                float[][] batchOutputs = projectNet.forwardBatch(batchInputs);
+        DataSet trainData;
+        try {
+            trainData = new FashionMNISTDataLoader().loadTrainingData();
+        } catch (IOException e) {
+            System.err.println("There was an error loading the training data: " + e.getMessage());
+            return;
+        }
 
-                for (int j = 0; j < currentBatchSize; j++) {
-                    int predicted = getMaxIndex(batchOutputs[j]);
-                    int actual = getMaxIndex(testData.targets[i + j]);
-                    if (predicted == actual) validationCorrect++;
-                }
-            }
+        int configs = 0;
+        for (Bracket bracket : brackets) configs += bracket.getConfigs().size();
+        System.out.println("Searching (" + search.getName() + ", " + configs + " trials, " + brackets.size()
+                + " brackets, up to " + epochs + " epochs, " + folds + " folds, Threads: "
+                + Parallelism.getThreadCount() + ")");
 
-            long currentTime = System.currentTimeMillis();
-            float validationAccuracy = (float) validationCorrect / testSize * 100.0f;
+        long start = System.currentTimeMillis();
+        List<Trial> ranked;
+        try {
+            ranked = new HyperparameterSearch(trainData, folds, runSeed).run(brackets);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Invalid search: " + e.getMessage());
+            return;
+        }
+        System.out.printf("Search finished in %.2fs. Best trials:%n", (System.currentTimeMillis() - start) / 1000.0f);
+        for (Trial trial : ranked.subList(0, Math.min(5, ranked.size()))) {
+            System.out.println("  " + trial);
+        }
 
-            System.out.printf("Epoch %d/%d - Validation Accuracy: %.2f%% | Time: %.2fs%n",
-                    (e + 1), epochs, validationAccuracy, (currentTime - startTime) / 1000.0f);
+        try {
+            HyperparameterSearch.writeLeaderboard(ranked, output);
+            System.out.println("Leaderboard written to " + output);
+        } catch (IOException e) {
+            System.err.println("Error writing the leaderboard: " + e.getMessage());
         }
+    }
 
-        System.out.println("Training Complete.");
+    private static LearningRateSchedule createSchedule(String name, float baseLearningRate, int epochs) {
+        switch (name.toLowerCase()) {
+            case "step":     return new StepSchedule(baseLearningRate, 0.5f, 10, 13, 16, 19);
+            case "cosine":   return new CosineSchedule(baseLearningRate, 0.0f, epochs);
+            case "onecycle": return new OneCycleSchedule(baseLearningRate, epochs, 0.3);
+            default:         return null;
+        }
+    }
 
-        savePredictions(projectNet, testData, "test_predictions.csv");
+    private static void compareQuantized(ProjectNetwork network, DataSet testData) {
+        InferenceEngine floatModel = network.freeze();
+        QuantizedEngine int8Model = network.quantize();
+
+        System.out.println(int8Model.compare(floatModel, testData.inputs, testData.labels));
+
+        // Best of a few passes, the first ones are slowed down by the JIT
+        long floatNanos = Long.MAX_VALUE, int8Nanos = Long.MAX_VALUE;
+        for (int pass = 0; pass < 5; pass++) {
+            long start = System.nanoTime();
+            floatModel.classify(testData.inputs);
+            long middle = System.nanoTime();
+            int8Model.classify(testData.inputs);
+            long end = System.nanoTime();
+            floatNanos = Math.min(floatNanos, middle - start);
+            int8Nanos = Math.min(int8Nanos, end - middle);
+        }
+        System.out.printf("Scoring time: float %.1f ms | int8 %.1f ms | Int8 weights: %d KB%n",
+                floatNanos / 1e6, int8Nanos / 1e6, int8Model.getWeightBytes() / 1024);
     }
 
     private static Long askForSeed(Scanner scanner) {
@@ -197,12 +511,4 @@ public class Main {
         }
         return null;
     }
-
-    private static int getMaxIndex(float[] array) {
-        int maxIndex = 0;
-        for (int i = 1; i < array.length; i++) {
-            if (array[i] > array[maxIndex]) maxIndex = i;
-        }
-        return maxIndex;
-    }
 }
\ No newline at end of file
@@ -0,0 +1,89 @@
+package datatreatments;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import datatreatments.FashionMNISTDataLoader.DataSet;
+import datatreatments.MappedDataSet.PayloadType;
+import utility.Matrix;
+
+/**
+ * One-time conversion of the CSV data sets to the binary format read by
+ * {@link MappedDataSet}.
+ *
+ * Usage: java datatreatments.BinaryDataSetConverter [uint8|float32]
+ * converts the training and test CSV files of the data directory.
+ */
+public class BinaryDataSetConverter {
+
+    private static final int WRITE_CHUNK = 1 << 20;
+
+    private BinaryDataSetConverter() {}
+
+    public static void main(String[] args) throws IOException {
+        PayloadType type = (args.length > 0) ? PayloadType.valueOf(args[0].toUpperCase()) : PayloadType.UINT8;
+
+        FashionMNISTDataLoader loader = new FashionMNISTDataLoader();
+        convert(loader.loadCsv(FashionMNISTDataLoader.TRAIN_VECTORS, FashionMNISTDataLoader.TRAIN_LABELS),
+                Paths.get(FashionMNISTDataLoader.TRAIN_BINARY), type);
+        convert(loader.loadCsv(FashionMNISTDataLoader.TEST_VECTORS, FashionMNISTDataLoader.TEST_LABELS),
+                Paths.get(FashionMNISTDataLoader.TEST_BINARY), type);
+    }
+
+    // Writes a data set (inputs normalised to [0, 1]) to a binary file
+    public static void convert(DataSet data, Path output, PayloadType type) throws IOException {
+        Matrix inputs = data.inputs;
+        int samples = inputs.getRows();
+        int features = inputs.getColumns();
+        int classes = data.targets.getColumns();
+
+        try (FileChannel channel = FileChannel.open(output, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+
+            // Header + labels
+            int headBytes = (int) (MappedDataSet.HEADER_BYTES + MappedDataSet.labelBytes(samples));
+            ByteBuffer head = ByteBuffer.allocate(headBytes).order(ByteOrder.LITTLE_ENDIAN);
+            head.putInt(MappedDataSet.MAGIC).putInt(MappedDataSet.VERSION).putInt(type.ordinal())
+                .putInt(samples).putInt(features).putInt(classes).putInt(0).putInt(0);
+            for (int i = 0; i < samples; i++) {
+                head.put((byte) data.labels[i]);
+            }
+            head.position(head.capacity()).flip();
+            writeFully(channel, head);
+
+            // Payload, written in chunks through one reused buffer
+            ByteBuffer chunk = ByteBuffer.allocateDirect(WRITE_CHUNK).order(ByteOrder.LITTLE_ENDIAN);
+            float[] values = inputs.getData();
+            for (int i = 0; i < samples; i++) {
+                if (chunk.remaining() < features * type.bytes) {
+                    chunk.flip();
+                    writeFully(channel, chunk);
+                    chunk.clear();
+                }
+                int row = inputs.rowOffset(i);
+                for (int j = 0; j < features; j++) {
+                    if (type == PayloadType.UINT8) {
+                        chunk.put((byte) Math.round(values[row + j] * 255.0f));
+                    } else {
+                        chunk.putFloat(values[row + j]);
+                    }
+                }
+            }
+            chunk.flip();
+            writeFully(channel, chunk);
+        }
+
+        System.out.println("Wrote " + samples + " samples to " + output + " (" + type + ")");
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,407 @@
+package datatreatments;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.RecursiveAction;
+
+import utility.Matrix;
+import utility.Parallelism;
+
+/**
+ * Byte-level parser for numeric CSV files.
+ *
+ * The file is memory-mapped and cut in chunks at line boundaries. A first
+ * parallel pass counts the lines and rows of every chunk, so each chunk
+ * knows its first line and the first row it owns. A second parallel pass
+ * parses the numbers of every chunk straight into its rows of the
+ * destination matrix. Integers (the pixel values) are read digit by digit
+ * without creating any String. Decimals and exponents take a slower path,
+ * which still needs no String.
+ *
+ * Chunks are scanned through a small byte[] window copied in bulk from the
+ * mapped file, which is much faster than reading the buffer byte by byte.
+ *
+ * Blank lines are skipped. A line with too few values or a value that is not
+ * a number fails the whole parse with an IOException giving its line number.
+ */
+public class CsvFloatParser {
+
+    private static final int CHUNKS_PER_THREAD = 4;
+    private static final int MIN_CHUNK_BYTES = 1 << 16;
+    private static final int WINDOW_BYTES = 1 << 20;
+
+    private CsvFloatParser() {}
+
+    // Parses the first `columns` values of every non-blank line (extra values are ignored)
+    // and divides every value by divisor
+    public static Matrix parseMatrix(Path file, int columns, float divisor) throws IOException {
+        MappedByteBuffer buffer = map(file);
+        int[] bounds = chunkBounds(buffer);
+        int chunks = bounds.length - 1;
+
+        // First invalid line of each chunk (index in the chunk) and why
+        int[] errorLines = new int[chunks];
+        String[] errors = new String[chunks];
+
+        // Pass 1: lines and rows per chunk -> first line and first row of each chunk
+        int[] linesPerChunk = new int[chunks];
+        int[] rowsPerChunk = new int[chunks];
+        runChunks(chunks, chunk -> {
+            LineWindow lines = new LineWindow(buffer, bounds[chunk], bounds[chunk + 1]);
+            int line = 0, rows = 0;
+            while (lines.next()) {
+                int values = countValues(lines.bytes, lines.lineStart, lines.lineEnd);
+                if (values > 0 && values < columns) {
+                    errorLines[chunk] = line;
+                    errors[chunk] = "expected " + columns + " values, found " + values;
+                    return;
+                }
+                if (values > 0) rows++;
+                line++;
+            }
+            linesPerChunk[chunk] = line;
+            rowsPerChunk[chunk] = rows;
+        });
+
+        int[] firstLine = new int[chunks + 1];
+        int[] firstRow = new int[chunks + 1];
+        for (int c = 0; c < chunks; c++) {
+            firstLine[c + 1] = firstLine[c] + linesPerChunk[c];
+            firstRow[c + 1] = firstRow[c] + rowsPerChunk[c];
+        }
+        checkErrors(file, errors, errorLines, firstLine);
+
+        // Pass 2: parse every chunk into its own rows
+        Matrix result = new Matrix(firstRow[chunks], columns);
+        float[] destination = result.getData();
+        runChunks(chunks, chunk -> {
+            LineWindow lines = new LineWindow(buffer, bounds[chunk], bounds[chunk + 1]);
+            int offset = result.rowOffset(firstRow[chunk]);
+            for (int line = 0; lines.next(); line++) {
+                if (isBlank(lines.bytes, lines.lineStart, lines.lineEnd)) continue;
+                try {
+                    parseRow(lines.bytes, lines.lineStart, lines.lineEnd, columns, divisor, destination, offset);
+                } catch (NumberFormatException e) {
+                    errorLines[chunk] = line;
+                    errors[chunk] = e.getMessage();
+                    return;
+                }
+                offset += columns;
+            }
+        });
+        checkErrors(file, errors, errorLines, firstLine);
+        return result;
+    }
+
+    // Parses one integer per non-blank line
+    public static int[] parseIntColumn(Path file) throws IOException {
+        RowCursor rows = new RowCursor(file);
+        int[] values = new int[1024];
+        int count = 0;
+
+        while (rows.next()) {
+            if (count == values.length) values = Arrays.copyOf(values, count * 2);
+            values[count++] = rows.parseInt();
+        }
+        return Arrays.copyOf(values, count);
+    }
+
+    // Throws the error of the first chunk that has one, with its line number in the file
+    private static void checkErrors(Path file, String[] errors, int[] errorLines, int[] firstLine)
+            throws IOException {
+        for (int c = 0; c < errors.length; c++) {
+            if (errors[c] != null) {
+                throw new IOException(file + ", line " + (firstLine[c] + errorLines[c] + 1) + ": " + errors[c]);
+            }
+        }
+    }
+
+    private static MappedByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("File too big to be mapped at once: " + file);
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    // ------------------------------------------------------------
+    // Row by row (streaming)
+    // ------------------------------------------------------------
+
+    // Walks the non-blank lines of a file one at a time, with the same parsing and errors as parseMatrix
+    static class RowCursor {
+        private final Path file;
+        private final LineWindow lines;
+        private int line; // Number of the current line in the file (from 1)
+
+        RowCursor(Path file) throws IOException {
+            this.file = file;
+            MappedByteBuffer buffer = map(file);
+            this.lines = new LineWindow(buffer, 0, buffer.limit());
+        }
+
+        // Moves to the next non-blank line, false at the end of the file
+        boolean next() {
+            while (lines.next()) {
+                line++;
+                if (!isBlank(lines.bytes, lines.lineStart, lines.lineEnd)) return true;
+            }
+            return false;
+        }
+
+        // Parses the first `columns` values of the current line, divided by divisor
+        void parseRow(int columns, float divisor, float[] destination, int offset) throws IOException {
+            int values = countValues(lines.bytes, lines.lineStart, lines.lineEnd);
+            if (values < columns) throw error("expected " + columns + " values, found " + values);
+            try {
+                CsvFloatParser.parseRow(lines.bytes, lines.lineStart, lines.lineEnd, columns, divisor,
+                        destination, offset);
+            } catch (NumberFormatException e) {
+                throw error(e.getMessage());
+            }
+        }
+
+        // Parses the current line as one integer
+        int parseInt() throws IOException {
+            try {
+                return (int) parseNumber(lines.bytes, lines.lineStart, lines.lineEnd);
+            } catch (NumberFormatException e) {
+                throw error(e.getMessage());
+            }
+        }
+
+        // Error about the current line
+        IOException error(String message) {
+            return new IOException(file + ", line " + line + ": " + message);
+        }
+    }
+
+    // ------------------------------------------------------------
+    // Chunking
+    // ------------------------------------------------------------
+
+    // Chunk c is [bounds[c], bounds[c + 1]), every chunk starts at the beginning of a line
+    private static int[] chunkBounds(MappedByteBuffer buffer) {
+        int limit = buffer.limit();
+        int wanted = Parallelism.getThreadCount() * CHUNKS_PER_THREAD;
+        int chunks = Math.max(1, Math.min(wanted, limit / MIN_CHUNK_BYTES));
+
+        int[] bounds = new int[chunks + 1];
+        for (int c = 1; c < chunks; c++) {
+            int position = Math.max(bounds[c - 1], (int) ((long) limit * c / chunks));
+            while (position < limit && buffer.get(position) != '\n') position++;
+            bounds[c] = Math.min(limit, position + 1);
+        }
+        bounds[chunks] = limit;
+        return bounds;
+    }
+
+    private interface ChunkJob {
+        void run(int chunk);
+    }
+
+    private static void runChunks(int chunks, ChunkJob job) {
+        Parallelism.getPool().invoke(new ChunkTask(job, 0, chunks));
+    }
+
+    private static class ChunkTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final ChunkJob job;
+        private final int from, to;
+
+        ChunkTask(ChunkJob job, int from, int to) {
+            this.job = job;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                job.run(from);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new ChunkTask(job, from, middle), new ChunkTask(job, middle, to));
+        }
+    }
+
+    // ------------------------------------------------------------
+    // Line iteration over a byte[] window of the mapped file
+    // ------------------------------------------------------------
+    private static class LineWindow {
+        private final MappedByteBuffer buffer;
+        private final int end;
+        private int filePosition;    // Next byte of the file to copy into the window
+
+        byte[] bytes;
+        private int length;          // Valid bytes in the window
+        private int position;        // Start of the next line in the window
+        int lineStart, lineEnd;      // Current line in the window ('\n' excluded)
+
+        LineWindow(MappedByteBuffer buffer, int start, int end) {
+            this.buffer = buffer;
+            this.filePosition = start;
+            this.end = end;
+            this.bytes = new byte[Math.max(1, Math.min(WINDOW_BYTES, end - start))];
+        }
+
+        boolean next() {
+            while (true) {
+                int newline = indexOfNewline(position);
+                if (newline >= 0) {
+                    lineStart = position;
+                    lineEnd = newline;
+                    position = newline + 1;
+                    return true;
+                }
+                if (filePosition == end) {
+                    // Last line without '\n'
+                    if (position == length) return false;
+                    lineStart = position;
+                    lineEnd = length;
+                    position = length;
+                    return true;
+                }
+                refill();
+            }
+        }
+
+        private int indexOfNewline(int from) {
+            for (int i = from; i < length; i++) {
+                if (bytes[i] == '\n') return i;
+            }
+            return -1;
+        }
+
+        // Moves the unfinished line to the front and reads more bytes of the file after it
+        private void refill() {
+            int kept = length - position;
+            if (kept == bytes.length) bytes = Arrays.copyOf(bytes, bytes.length * 2); // Very long line
+            System.arraycopy(bytes, position, bytes, 0, kept);
+
+            int read = Math.min(bytes.length - kept, end - filePosition);
+            buffer.get(filePosition, bytes, kept, read);
+            filePosition += read;
+            length = kept + read;
+            position = 0;
+        }
+    }
+
+    // ------------------------------------------------------------
+    // Parsing
+    // ------------------------------------------------------------
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r';
+    }
+
+    // True if the line only has spaces (stops at the first other byte)
+    private static boolean isBlank(byte[] bytes, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (!isSpace(bytes[i])) return false;
+        }
+        return true;
+    }
+
+    // Number of values of a line (0 for a blank line)
+    private static int countValues(byte[] bytes, int start, int end) {
+        int values = 1;
+        boolean blank = true;
+        for (int i = start; i < end; i++) {
+            byte b = bytes[i];
+            if (b == ',') values++;
+            if (!isSpace(b)) blank = false;
+        }
+        return blank ? 0 : values;
+    }
+
+    // Parses the first `columns` values of a line (it has at least that many, see countValues)
+    private static void parseRow(byte[] bytes, int start, int end, int columns, float divisor,
+                                 float[] destination, int offset) {
+        int i = start;
+        for (int col = 0; col < columns; col++) {
+            // Fast path: unsigned integer directly followed by ',' or the end of the line
+            int fieldStart = i;
+            int value = 0;
+            while (i < end) {
+                int digit = bytes[i] - '0';
+                if (digit < 0 || digit > 9) break;
+                value = value * 10 + digit;
+                i++;
+            }
+            if (i > fieldStart && i - fieldStart < 10 && (i == end || bytes[i] == ',')) {
+                destination[offset + col] = value / divisor;
+            } else {
+                while (i < end && bytes[i] != ',') i++;
+                destination[offset + col] = (float) parseNumber(bytes, fieldStart, i) / divisor;
+            }
+            i++; // Skip ','
+        }
+    }
+
+    // Parses [-+]digits[.digits][(e|E)[-+]digits] surrounded by optional spaces
+    private static double parseNumber(byte[] bytes, int start, int end) {
+        int i = start;
+        while (i < end && isSpace(bytes[i])) i++;
+        while (end > i && isSpace(bytes[end - 1])) end--;
+
+        boolean negative = false;
+        if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+            negative = bytes[i] == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int exponent = 0;
+        int digits = 0;
+        while (i < end) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9) break;
+            if (mantissa < Long.MAX_VALUE / 10 - 9) mantissa = mantissa * 10 + digit;
+            else exponent++;
+            digits++;
+            i++;
+        }
+        if (i < end && bytes[i] == '.') {
+            i++;
+            while (i < end) {
+                int digit = bytes[i] - '0';
+                if (digit < 0 || digit > 9) break;
+                if (mantissa < Long.MAX_VALUE / 10 - 9) {
+                    mantissa = mantissa * 10 + digit;
+                    exponent--;
+                }
+                digits++;
+                i++;
+            }
+        }
+        if (digits > 0 && i < end && (bytes[i] == 'e' || bytes[i] == 'E')) {
+            i++;
+            boolean negativeExponent = false;
+            if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+                negativeExponent = bytes[i] == '-';
+                i++;
+            }
+            int value = 0;
+            while (i < end) {
+                int digit = bytes[i] - '0';
+                if (digit < 0 || digit > 9) break;
+                value = Math.min(value * 10 + digit, 1000);
+                i++;
+            }
+            exponent += negativeExponent ? -value : value;
+        }
+        if (digits == 0 || i != end) {
+            throw new NumberFormatException("Invalid number: " + new String(bytes, start, end - start));
+        }
+
+        double result = (exponent < 0) ? mantissa / Math.pow(10, -exponent) : mantissa * Math.pow(10, exponent);
+        return negative ? -result : result;
+    }
+}
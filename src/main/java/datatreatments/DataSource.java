@@ -0,0 +1,29 @@
+package datatreatments;
+
+import java.io.IOException;
+
+import datatreatments.MiniBatchesSamples.MiniBatch;
+
+/**
+ * Source of training batches read one after another, instead of having the
+ * whole data set in memory.
+ *
+ * A pass over the data is started with {@link #startEpoch()}, then batches
+ * are taken with {@link #nextBatch()} until it returns null. Batches handed
+ * out may reuse buffers: once the caller is done with one it must give it
+ * back with {@link #release(MiniBatch)}.
+ */
+public interface DataSource extends AutoCloseable {
+
+    // Starts a new pass over the data
+    void startEpoch() throws IOException;
+
+    // Next batch of the pass, or null when the pass is over
+    MiniBatch nextBatch() throws IOException;
+
+    // Gives back a batch returned by nextBatch so its buffers can be reused
+    void release(MiniBatch batch);
+
+    @Override
+    void close();
+}
@@ -1,101 +1,120 @@
 package datatreatments;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import utility.Matrix;
+import utility.SparseMatrix;
 
 public class FashionMNISTDataLoader {
 
-    private static final String TRAIN_VECTORS = "data/fashion_mnist_train_vectors.csv";
-    private static final String TRAIN_LABELS = "data/fashion_mnist_train_labels.csv";
-    private static final String TEST_VECTORS = "data/fashion_mnist_test_vectors.csv";
-    private static final String TEST_LABELS = "data/fashion_mnist_test_labels.csv";
+    static final String TRAIN_VECTORS = "data/fashion_mnist_train_vectors.csv";
+    static final String TRAIN_LABELS = "data/fashion_mnist_train_labels.csv";
+    static final String TEST_VECTORS = "data/fashion_mnist_test_vectors.csv";
+    static final String TEST_LABELS = "data/fashion_mnist_test_labels.csv";
+
+    // Binary versions (see BinaryDataSetConverter), used instead of the CSV files when present
+    static final String TRAIN_BINARY = "data/fashion_mnist_train.bin";
+    static final String TEST_BINARY = "data/fashion_mnist_test.bin";
 
     private static final int INPUT_SIZE = 784;
     private static final int OUTPUT_SIZE = 10;
 
     public static class DataSet {
-        public float[][] inputs;
-        public float[][] targets;
+        public Matrix inputs;   // [Samples][INPUT_SIZE]
+        public Matrix targets;  // [Samples][OUTPUT_SIZE] (one-hot)
         public int[] labels;
+        public SparseMatrix sparseInputs; // CSR copy of the inputs, null until useSparseInputs()
 
-        public DataSet(float[][] inputs, float[][] targets, int[] labels) {
+        public DataSet(Matrix inputs, Matrix targets, int[] labels) {
             this.inputs = inputs;
             this.targets = targets;
             this.labels = labels;
         }
 
+        // Training batches are then taken from a CSR copy of the inputs (zeros are not stored)
+        public SparseMatrix useSparseInputs() {
+            if (sparseInputs == null) sparseInputs = SparseMatrix.fromDense(inputs);
+            return sparseInputs;
+        }
+
         public int size() {
-            return inputs.length;
+            return inputs.getRows();
         }
     }
 
     // Load the Training set
     public DataSet loadTrainingData() throws IOException {
         System.out.println("Loading TRAINING data...");
-        return loadData(TRAIN_VECTORS, TRAIN_LABELS);
+        return loadData(TRAIN_BINARY, TRAIN_VECTORS, TRAIN_LABELS);
+    }
+
+    // Maps the binary Training set, whose batches are then decoded from the file instead of
+    // being loaded in memory (null when there are only the CSV files)
+    public MappedDataSet mapTrainingData() throws IOException {
+        Path binary = Paths.get(TRAIN_BINARY);
+        if (!Files.exists(binary)) return null;
+        System.out.println("Mapping TRAINING data...");
+        return new MappedDataSet(binary);
     }
 
     // Load the Test set
     public DataSet loadTestData() throws IOException {
         System.out.println("Loading TEST data...");
-        return loadData(TEST_VECTORS, TEST_LABELS);
+        return loadData(TEST_BINARY, TEST_VECTORS, TEST_LABELS);
+    }
+
+    // Streams the Training set in batches read on a background thread
+    // (prefetch = number of ready batches kept ahead of the trainer)
+    public DataSource openTrainingStream(int batchSize, int prefetch) throws IOException {
+        System.out.println("Streaming TRAINING data...");
+        Path binary = Paths.get(TRAIN_BINARY);
+        if (Files.exists(binary)) {
+            return StreamingDataSource.fromBinary(binary, batchSize, prefetch);
+        }
+        return StreamingDataSource.fromCsv(TRAIN_VECTORS, TRAIN_LABELS, INPUT_SIZE, OUTPUT_SIZE, batchSize, prefetch);
     }
 
-    private DataSet loadData(String vectorsFile, String labelsFile) throws IOException {
-        List<Integer> tempLabels = new ArrayList<>();
-        List<float[]> tempVectors = new ArrayList<>();
+    private DataSet loadData(String binaryFile, String vectorsFile, String labelsFile) throws IOException {
+        Path binary = Paths.get(binaryFile);
+        if (Files.exists(binary)) {
+            try (MappedDataSet mapped = new MappedDataSet(binary)) {
+                return mapped.toDataSet();
+            }
+        }
+        return loadCsv(vectorsFile, labelsFile);
+    }
 
-        loadLabels(labelsFile, tempLabels);
-        loadVectors(vectorsFile, tempVectors);
+    DataSet loadCsv(String vectorsFile, String labelsFile) throws IOException {
+        int[] labelsArray = loadLabels(labelsFile);
+        Matrix inputs = loadVectors(vectorsFile);
 
-        if (tempVectors.size() != tempLabels.size()) {
+        if (inputs.getRows() != labelsArray.length) {
             throw new IllegalStateException("Size mismatch in file: " + vectorsFile);
         }
 
-        int dataSize = tempLabels.size();
-        float[][] inputsArray = tempVectors.toArray(new float[0][0]);
-        int[] labelsArray = new int[dataSize];
-        float[][] targetsArray = new float[dataSize][OUTPUT_SIZE];
+        int dataSize = labelsArray.length;
+        Matrix targets = new Matrix(dataSize, OUTPUT_SIZE);
 
         for (int i = 0; i < dataSize; i++) {
-            int label = tempLabels.get(i);
-            labelsArray[i] = label;
+            int label = labelsArray[i];
             if (label >= 0 && label < OUTPUT_SIZE) {
-                targetsArray[i][label] = 1.0f;
+                targets.set(i, label, 1.0f);
             }
         }
 
-        return new DataSet(inputsArray, targetsArray, labelsArray);
+        return new DataSet(inputs, targets, labelsArray);
     }
 
-    private void loadLabels(String filePath, List<Integer> targetList) throws IOException {
-        try (BufferedReader br = new BufferedReader(new FileReader(filePath))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                if (!line.trim().isEmpty()) {
-                    targetList.add(Integer.valueOf(line.trim()));
-                }
-            }
-        }
+    private int[] loadLabels(String filePath) throws IOException {
+        return CsvFloatParser.parseIntColumn(Paths.get(filePath));
     }
 
-    private void loadVectors(String filePath, List<float[]> targetList) throws IOException {
-        try (BufferedReader br = new BufferedReader(new FileReader(filePath))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                String[] values = line.split(",");
-                if (values.length < INPUT_SIZE) continue;
-
-                float[] vector = new float[INPUT_SIZE];
-                for (int i = 0; i < INPUT_SIZE; i++) {
-                    // IMPORTANT: normalize the data so we don't have overflow.
-                    vector[i] = Float.parseFloat(values[i].trim()) / 255.0f;
-                }
-                targetList.add(vector);
-            }
-        }
+    // Parses every vector straight into one contiguous matrix (in parallel, see CsvFloatParser)
+    private Matrix loadVectors(String filePath) throws IOException {
+        // IMPORTANT: normalize the data so we don't have overflow.
+        return CsvFloatParser.parseMatrix(Paths.get(filePath), INPUT_SIZE, 255.0f);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,216 @@
+package datatreatments;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import datatreatments.FashionMNISTDataLoader.DataSet;
+import utility.Matrix;
+
+/**
+ * Data set stored in the binary format written by {@link BinaryDataSetConverter},
+ * opened with FileChannel.map. Nothing is parsed: batches are decoded
+ * straight from the mapped file into the matrices of the caller.
+ *
+ * A mapping holds at most 2 GB, so the payload is mapped in chunks of whole
+ * rows (CHUNK_BYTES each) and every offset inside a chunk fits in an int.
+ *
+ * Layout (little-endian):
+ *   header   32 bytes: magic, version, payload type, samples, features, classes, 2 reserved ints
+ *   labels   one byte per sample, padded to a multiple of 4
+ *   payload  samples x features values, uint8 (pixels 0-255) or float32 (already normalised)
+ */
+public class MappedDataSet implements AutoCloseable {
+
+    static final int MAGIC = 0x464D4E42; // "FMNB"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 32;
+    static final long CHUNK_BYTES = 1L << 30; // Largest mapping of payload rows
+
+    public enum PayloadType {
+        UINT8(1), FLOAT32(4);
+
+        final int bytes;
+
+        PayloadType(int bytes) {
+            this.bytes = bytes;
+        }
+    }
+
+    private final FileChannel channel;
+    private final MappedByteBuffer header;     // Header and labels
+    private final ByteBuffer[] chunks;         // Payload, rowsPerChunk rows per chunk
+    private final FloatBuffer[] floatChunks;   // The same chunks as floats (FLOAT32 payload)
+    private final PayloadType payloadType;
+    private final int samples;
+    private final int features;
+    private final int classes;
+    private final int rowsPerChunk;
+
+    public MappedDataSet(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            if (channel.size() < HEADER_BYTES) {
+                throw new IOException("Not a binary data set file: " + file);
+            }
+            ByteBuffer head = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            if (head.getInt(0) != MAGIC) {
+                throw new IOException("Not a binary data set file: " + file);
+            }
+            if (head.getInt(4) != VERSION) {
+                throw new IOException("Unsupported binary data set version " + head.getInt(4) + " in " + file);
+            }
+            int type = head.getInt(8);
+            if (type < 0 || type >= PayloadType.values().length) {
+                throw new IOException("Unsupported payload type " + type + " in " + file);
+            }
+            this.payloadType = PayloadType.values()[type];
+            this.samples = head.getInt(12);
+            this.features = head.getInt(16);
+            this.classes = head.getInt(20);
+
+            // At most 256 classes: a label is one byte
+            long rowBytes = (long) features * payloadType.bytes;
+            long payloadStart = HEADER_BYTES + labelBytes(samples);
+            if (samples < 0 || features < 1 || classes < 1 || classes > 256 || rowBytes > CHUNK_BYTES
+                    || payloadStart > Integer.MAX_VALUE) {
+                throw new IOException("Unsupported binary data set dimensions in " + file + ": " + samples
+                        + " samples, " + features + " features, " + classes + " classes");
+            }
+            if (channel.size() < payloadStart + samples * rowBytes) {
+                throw new IOException("Truncated binary data set: " + file);
+            }
+            this.header = channel.map(FileChannel.MapMode.READ_ONLY, 0, payloadStart);
+            for (int i = 0; i < samples; i++) {
+                if (getLabel(i) >= classes) {
+                    throw new IOException("Label " + getLabel(i) + " of sample " + i + " out of " + classes
+                            + " classes in " + file);
+                }
+            }
+
+            this.rowsPerChunk = (int) Math.max(1, Math.min(samples, CHUNK_BYTES / rowBytes));
+            int chunkCount = (samples + rowsPerChunk - 1) / rowsPerChunk;
+            this.chunks = new ByteBuffer[chunkCount];
+            this.floatChunks = new FloatBuffer[chunkCount];
+            for (int c = 0; c < chunkCount; c++) {
+                long firstRow = (long) c * rowsPerChunk;
+                long rows = Math.min(rowsPerChunk, samples - firstRow);
+                chunks[c] = channel.map(FileChannel.MapMode.READ_ONLY, payloadStart + firstRow * rowBytes,
+                        rows * rowBytes).order(ByteOrder.LITTLE_ENDIAN);
+                floatChunks[c] = chunks[c].asFloatBuffer();
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    static long labelBytes(int samples) {
+        return ((long) samples + 3) & ~3L; // Keeps the payload 4-byte aligned
+    }
+
+    public int size() {
+        return samples;
+    }
+
+    public int getFeatures() {
+        return features;
+    }
+
+    public int getClasses() {
+        return classes;
+    }
+
+    public int getLabel(int sample) {
+        return header.get(HEADER_BYTES + sample) & 0xFF;
+    }
+
+    // ------------------------------------------------------------
+    // Batch access
+    // ------------------------------------------------------------
+
+    // Decodes the samples [start, start + inputs.rows) into inputs (normalised to [0, 1])
+    // and their one-hot labels into targets (may be null)
+    public void fillBatch(int start, Matrix inputs, Matrix targets) {
+        int count = inputs.getRows();
+        if (start < 0 || start > samples - count) {
+            throw new IndexOutOfBoundsException("Samples " + start + ".." + ((long) start + count)
+                    + " out of " + samples);
+        }
+        float[] data = inputs.getData();
+        for (int i = 0; i < count; i++) {
+            decodeRow(start + i, data, inputs.rowOffset(i));
+        }
+
+        if (targets != null) {
+            targets.fill(0.0f);
+            for (int i = 0; i < count; i++) {
+                targets.set(i, getLabel(start + i), 1.0f);
+            }
+        }
+    }
+
+    // Decodes the samples order[from, from + inputs.rows), in that order, into inputs
+    // and their one-hot labels into targets (may be null)
+    public void fillRows(int[] order, int from, Matrix inputs, Matrix targets) {
+        int count = inputs.getRows();
+        float[] data = inputs.getData();
+        for (int i = 0; i < count; i++) {
+            int sample = order[from + i];
+            if (sample < 0 || sample >= samples) {
+                throw new IndexOutOfBoundsException("Sample " + sample + " out of " + samples);
+            }
+            decodeRow(sample, data, inputs.rowOffset(i));
+        }
+
+        if (targets != null) {
+            targets.fill(0.0f);
+            for (int i = 0; i < count; i++) {
+                targets.set(i, getLabel(order[from + i]), 1.0f);
+            }
+        }
+    }
+
+    // Decodes one sample into data[offset, offset + features) (absolute reads, safe from any thread)
+    private void decodeRow(int sample, float[] data, int offset) {
+        int chunk = sample / rowsPerChunk;
+        int index = (sample - chunk * rowsPerChunk) * features; // In values of the chunk (< 2^30)
+
+        if (payloadType == PayloadType.FLOAT32) {
+            floatChunks[chunk].get(index, data, offset, features); // Bulk copy, no decoding
+        } else {
+            ByteBuffer bytes = chunks[chunk];
+            for (int j = 0; j < features; j++) {
+                data[offset + j] = (bytes.get(index + j) & 0xFF) / 255.0f;
+            }
+        }
+    }
+
+    // Decodes the whole file into an in-heap DataSet
+    public DataSet toDataSet() {
+        Matrix inputs = new Matrix(samples, features);
+        Matrix targets = new Matrix(samples, classes);
+        fillBatch(0, inputs, targets);
+        return new DataSet(inputs, targets, getLabels());
+    }
+
+    // Labels of every sample
+    public int[] getLabels() {
+        int[] labels = new int[samples];
+        for (int i = 0; i < samples; i++) {
+            labels[i] = getLabel(i);
+        }
+        return labels;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -1,99 +1,281 @@
 package datatreatments;
 
-import java.util.*;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import datatreatments.sampling.Sampler;
+import datatreatments.sampling.UniformSampler;
+import utility.Matrix;
+import utility.SparseMatrix;
 
 /**
- * Creates mini-batches grouped by label, and provides
- * an epoch-based randomized iterator that guarantees
- * no repetition until all batches are consumed.
+ * Mini-batches of an in-memory data set, or of a {@link MappedDataSet} whose
+ * rows are decoded from the file batch by batch, in an order drawn by a
+ * {@link Sampler} at every epoch (a uniform shuffle by default).
+ *
+ * The order of an epoch is one int[] of row indices, filled again in place
+ * at every epoch; batch b is its slice [b * batchSize, (b + 1) * batchSize).
+ * With a sequential sampler the batches of an in-memory data set are views
+ * of it, built once. Otherwise the rows of a batch are gathered into a buffer of the
+ * calling thread, reused (with its MiniBatch) by every batch, so a batch is
+ * valid until the same thread takes the next one. Several threads can take batches of the same epoch at the same
+ * time.
+ *
+ * When the data set has sparse inputs (see DataSet.useSparseInputs) the
+ * batches carry CSR rows in sparseInputs instead of dense inputs.
  */
 public class MiniBatchesSamples {
 
     public static class MiniBatch {
-        public final float[][] inputs;
+        public final Matrix inputs;             // null for sparse batches
+        public final SparseMatrix sparseInputs; // null for dense batches
+        public final Matrix targets; // One-hot labels
         public final int[] labels;
 
-        public MiniBatch(float[][] inputs, int[] labels) {
+        public MiniBatch(Matrix inputs, Matrix targets, int[] labels) {
+            this.inputs = inputs;
+            this.sparseInputs = null;
+            this.targets = targets;
+            this.labels = labels;
+        }
+
+        public MiniBatch(SparseMatrix inputs, Matrix targets, int[] labels) {
+            this.inputs = null;
+            this.sparseInputs = inputs;
+            this.targets = targets;
+            this.labels = labels;
+        }
+
+        public MiniBatch(Matrix inputs, int[] labels, int classes) {
             this.inputs = inputs;
+            this.sparseInputs = null;
             this.labels = labels;
+            this.targets = new Matrix(labels.length, classes);
+            for (int i = 0; i < labels.length; i++) {
+                targets.set(i, labels[i], 1.0f);
+            }
+        }
+
+        public int size() {
+            return labels.length;
         }
     }
 
-    // All batches grouped by label
-    private final Map<Integer, List<MiniBatch>> batchesPerLabel = new HashMap<>();
+    private final FashionMNISTDataLoader.DataSet data; // null when the rows come from a mapped file
+    private final MappedDataSet mapped;                // null for an in-memory data set
+    private final int[] sampleLabels;
+    private final int features;
+    private final int classes;
+    private final Sampler sampler;
+    private final int batchSize;
+    private final long seed;
 
-    // Flattened and shuffled at each epoch
-    private final List<MiniBatch> epochBatches = new ArrayList<>();
+    // Rows of the current epoch, in the order they are visited
+    private final int[] order;
+    private final MiniBatch[] views; // Batches of a sequential sampler (null otherwise)
+    private int epoch = -1;
 
-    private int epochPointer = 0;
-    private final Random random = new Random();
+    private final AtomicInteger epochPointer = new AtomicInteger();
 
+    // Gathered rows of each thread
+    private final ThreadLocal<Buffer> buffers = ThreadLocal.withInitial(Buffer::new);
+
+    // Uniform shuffle, seeded at random
     public MiniBatchesSamples(FashionMNISTDataLoader.DataSet data, int batchSize) {
+        this(data, batchSize, new UniformSampler(data.size()), new SplittableRandom().nextLong());
+    }
 
-        //Group data by label
-        Map<Integer, List<float[]>> vectorsByLabel = new HashMap<>();
-        for (int i = 0; i < 10; i++) vectorsByLabel.put(i, new ArrayList<>());
-        for (int i = 0; i < data.labels.length; i++) {
-            vectorsByLabel.get(data.labels[i]).add(data.inputs[i]);
-        }
+    // The same seed and sampler give the same batches at every epoch number
+    public MiniBatchesSamples(FashionMNISTDataLoader.DataSet data, int batchSize, Sampler sampler, long seed) {
+        this(data, null, batchSize, sampler, seed);
+    }
 
-        //Create mini-batches per label
-        for (int label = 0; label < 10; label++) {
-            List<float[]> vecs = vectorsByLabel.get(label);
-            List<MiniBatch> list = new ArrayList<>();
-
-            int index = 0;
-            while (index < vecs.size()) {
-                int end = Math.min(index + batchSize, vecs.size());
-                List<float[]> batchVecs = vecs.subList(index, end);
-
-                float[][] inputs = new float[batchVecs.size()][];
-                int[] lbls = new int[batchVecs.size()];
-                for (int j = 0; j < batchVecs.size(); j++) {
-                    inputs[j] = batchVecs.get(j);
-                    lbls[j] = label;
-                }
-
-                list.add(new MiniBatch(inputs, lbls));
-                index = end;
-            }
+    // Rows decoded from the mapped file into the buffer of each thread (dense inputs only)
+    public MiniBatchesSamples(MappedDataSet data, int batchSize, Sampler sampler, long seed) {
+        this(null, data, batchSize, sampler, seed);
+    }
 
-            batchesPerLabel.put(label, list);
+    private MiniBatchesSamples(FashionMNISTDataLoader.DataSet data, MappedDataSet mapped, int batchSize,
+                               Sampler sampler, long seed) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("The batch size must be at least 1.");
         }
+        this.data = data;
+        this.mapped = mapped;
+        this.sampleLabels = (data != null) ? data.labels : mapped.getLabels();
+        this.features = (data != null) ? data.inputs.getColumns() : mapped.getFeatures();
+        this.classes = (data != null) ? data.targets.getColumns() : mapped.getClasses();
+        this.sampler = sampler;
+        this.batchSize = batchSize;
+        this.seed = seed;
+        this.order = new int[sampler.getEpochSize()];
+        this.views = (sampler.isSequential() && data != null) ? createViews() : null;
 
         // Initialize first epoch
-        startNewEpoch();
+        startEpoch(0);
     }
 
-    /**
-     * Flattens all mini-batches into a single list and shuffles them.
-     * This guarantees that all batches are used exactly once per epoch.
-     */
-    public void startNewEpoch() {
-        epochBatches.clear();
+    // ------------------------------------------------------------
+    // Epochs
+    // ------------------------------------------------------------
 
-        // Flatten all batches into epoch list
-        for (List<MiniBatch> list : batchesPerLabel.values()) {
-            epochBatches.addAll(list);
-        }
-
-        // Shuffle for randomness
-        Collections.shuffle(epochBatches, random);
+    /** Draws the order of the given epoch (0-based) and restarts from its first batch. */
+    public void startEpoch(int epoch) {
+        sampler.sample(order, Sampler.randomForEpoch(seed, epoch));
+        this.epoch = epoch;
+        epochPointer.set(0);
+    }
 
-        // Restart pointer
-        epochPointer = 0;
+    /** Draws the order of the next epoch. */
+    public void startNewEpoch() {
+        startEpoch(epoch + 1);
     }
 
     /** Returns true if there are still unused batches in the epoch. */
     public boolean hasMoreBatchesInEpoch() {
-        return epochPointer < epochBatches.size();
+        return epochPointer.get() < getBatchCount();
     }
 
-    /** Returns the next batch and moves the pointer. */
+    /** Returns the next batch and moves the pointer (null at the end of the epoch). Thread-safe. */
     public MiniBatch getNextBatch() {
-        if (!hasMoreBatchesInEpoch()) return null;
-        return epochBatches.get(epochPointer++);
+        int index = epochPointer.getAndIncrement();
+        if (index >= getBatchCount()) return null;
+        return getBatch(index);
+    }
+
+    /** Batch `index` of the current epoch (a view, or the rows gathered into the buffer of the thread). */
+    public MiniBatch getBatch(int index) {
+        int first = index * batchSize;
+        int rows = Math.min(batchSize, order.length - first);
+        if (index < 0 || rows <= 0) {
+            throw new IndexOutOfBoundsException("Batch " + index + " of " + getBatchCount());
+        }
+
+        if (views != null) return views[index];
+        return buffers.get().gather(first, rows);
+    }
+
+    // Views of the rows [b * batchSize, (b + 1) * batchSize) of the data set
+    private MiniBatch[] createViews() {
+        MiniBatch[] batches = new MiniBatch[getBatchCount()];
+        for (int b = 0; b < batches.length; b++) {
+            int first = b * batchSize;
+            int rows = Math.min(batchSize, order.length - first);
+            Matrix targets = data.targets.rowView(first, rows);
+            int[] batchLabels = Arrays.copyOfRange(sampleLabels, first, first + rows);
+            batches[b] = (data.sparseInputs != null)
+                    ? new MiniBatch(data.sparseInputs.rowView(first, rows), targets, batchLabels)
+                    : new MiniBatch(data.inputs.rowView(first, rows), targets, batchLabels);
+        }
+        return batches;
+    }
+
+    /** Number of batches in one epoch. */
+    public int getBatchCount() {
+        return (order.length + batchSize - 1) / batchSize;
+    }
+
+    /** Rows visited in one epoch. */
+    public int getEpochSize() {
+        return order.length;
+    }
+
+    public int getEpoch() {
+        return epoch;
     }
 
+    public Sampler getSampler() {
+        return sampler;
+    }
+
+    // ------------------------------------------------------------
+    // Reusable batch buffer (one per thread)
+    // ------------------------------------------------------------
+    private class Buffer {
+        final float[] inputs = new float[batchSize * features];
+        final float[] targets = new float[batchSize * classes];
+        final int[] labels = new int[batchSize];
+        final MiniBatch fullBatch = new MiniBatch(
+                new Matrix(inputs, 0, batchSize, features, features),
+                new Matrix(targets, 0, batchSize, classes, classes), labels);
+
+        // Last (smaller) batch of an epoch, on the same arrays (null if every batch is full)
+        final int lastRows = order.length % batchSize;
+        final MiniBatch lastBatch = (lastRows == 0) ? null : new MiniBatch(
+                new Matrix(inputs, 0, lastRows, features, features),
+                new Matrix(targets, 0, lastRows, classes, classes), new int[lastRows]);
+
+        // Sparse rows, grown to the largest batch seen (the batches are built again when they grow)
+        final int[] rowStarts = new int[batchSize + 1];
+        float[] sparseValues = new float[0];
+        int[] sparseColumns = new int[0];
+        MiniBatch sparseFullBatch, sparseLastBatch;
+
+        // Copies the rows order[first, first + rows) one after another
+        MiniBatch gather(int first, int rows) {
+            MiniBatch batch = (rows == batchSize) ? fullBatch : lastBatch;
+            if (mapped != null) return decode(batch, first, rows);
+
+            float[] sourceTargets = data.targets.getData();
+            for (int i = 0; i < rows; i++) {
+                int row = order[first + i];
+                System.arraycopy(sourceTargets, data.targets.rowOffset(row), targets, i * classes, classes);
+                batch.labels[i] = sampleLabels[row];
+            }
+            if (data.sparseInputs != null) return gatherSparse(first, rows);
+
+            float[] sourceInputs = data.inputs.getData();
+            for (int i = 0; i < rows; i++) {
+                int row = order[first + i];
+                System.arraycopy(sourceInputs, data.inputs.rowOffset(row), inputs, i * features, features);
+            }
+            return batch;
+        }
+
+        // Decodes the rows from the mapped file (a block of rows with a sequential sampler)
+        MiniBatch decode(MiniBatch batch, int first, int rows) {
+            if (sampler.isSequential()) mapped.fillBatch(first, batch.inputs, batch.targets);
+            else mapped.fillRows(order, first, batch.inputs, batch.targets);
+            for (int i = 0; i < rows; i++) {
+                batch.labels[i] = sampleLabels[order[first + i]];
+            }
+            return batch;
+        }
+
+        // Same with the stored values of every row (CSR)
+        MiniBatch gatherSparse(int first, int rows) {
+            SparseMatrix source = data.sparseInputs;
+            int nonZeros = 0;
+            for (int i = 0; i < rows; i++) {
+                int row = order[first + i];
+                nonZeros += source.rowEnd(row) - source.rowStart(row);
+            }
+            if (nonZeros > sparseValues.length) {
+                sparseValues = new float[nonZeros];
+                sparseColumns = new int[nonZeros];
+                sparseFullBatch = sparseLastBatch = null;
+            }
+
+            int position = 0;
+            for (int i = 0; i < rows; i++) {
+                int row = order[first + i];
+                int start = source.rowStart(row), count = source.rowEnd(row) - start;
+                rowStarts[i] = position;
+                System.arraycopy(source.getValues(), start, sparseValues, position, count);
+                System.arraycopy(source.getColumnIndices(), start, sparseColumns, position, count);
+                position += count;
+            }
+            rowStarts[rows] = position;
 
+            if (rows == batchSize) {
+                if (sparseFullBatch == null) sparseFullBatch = new MiniBatch(new SparseMatrix(
+                        sparseValues, sparseColumns, rowStarts, 0, rows, features), fullBatch.targets, labels);
+                return sparseFullBatch;
+            }
+            if (sparseLastBatch == null) sparseLastBatch = new MiniBatch(new SparseMatrix(
+                    sparseValues, sparseColumns, rowStarts, 0, rows, features), lastBatch.targets, lastBatch.labels);
+            return sparseLastBatch;
+        }
+    }
 }
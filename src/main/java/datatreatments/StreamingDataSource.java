@@ -0,0 +1,290 @@
+package datatreatments;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import datatreatments.MiniBatchesSamples.MiniBatch;
+import utility.Matrix;
+import utility.metrics.Metrics;
+
+/**
+ * {@link DataSource} that reads the data files incrementally on a producer
+ * thread. The producer normalises and batches the rows into a fixed number
+ * of reusable buffers and hands the ready batches to the trainer through a
+ * bounded queue, so reading overlaps with training and memory use does not
+ * depend on the size of the data set.
+ */
+public class StreamingDataSource implements DataSource {
+
+    // Reads the rows of one pass over the data
+    interface RowReader extends Closeable {
+        // Fills up to maxRows normalised rows and their labels, returns the rows read (0 at the end)
+        int read(float[] inputs, int[] labels, int maxRows) throws IOException;
+    }
+
+    interface ReaderFactory {
+        RowReader open() throws IOException;
+    }
+
+    // Marks the end of a pass in the queue
+    private static final MiniBatch END = new MiniBatch(new Matrix(0, 0), new Matrix(0, 0), new int[0]);
+
+    private final int batchSize;
+    private final int features;
+    private final int classes;
+    private final ReaderFactory readers;
+
+    private final Slot[] slots;
+    private final BlockingQueue<Slot> freeSlots;
+    private final BlockingQueue<MiniBatch> readyBatches;
+
+    private Thread producer;
+    private boolean exhausted; // END marker of the current pass already taken
+    private volatile IOException failure;
+    private long stallNanos; // Time spent by the consumer waiting for data
+
+    StreamingDataSource(ReaderFactory readers, int features, int classes, int batchSize, int prefetch) {
+        if (batchSize < 1 || prefetch < 1) {
+            throw new IllegalArgumentException("Batch size and prefetch must be at least 1.");
+        }
+        this.readers = readers;
+        this.features = features;
+        this.classes = classes;
+        this.batchSize = batchSize;
+
+        // One slot being filled by the producer, one being used by the trainer, the rest queued
+        int slotCount = prefetch + 2;
+        this.slots = new Slot[slotCount];
+        this.freeSlots = new ArrayBlockingQueue<>(slotCount);
+        this.readyBatches = new ArrayBlockingQueue<>(slotCount + 1); // + END marker
+        for (int i = 0; i < slotCount; i++) {
+            slots[i] = new Slot();
+            freeSlots.add(slots[i]);
+        }
+    }
+
+    // Streams the rows of a vectors CSV file and its labels file
+    public static StreamingDataSource fromCsv(String vectorsFile, String labelsFile, int features, int classes,
+                                              int batchSize, int prefetch) {
+        return new StreamingDataSource(() -> new CsvRowReader(vectorsFile, labelsFile, features, classes),
+                features, classes, batchSize, prefetch);
+    }
+
+    // Streams the rows of a binary data set (see MappedDataSet)
+    public static StreamingDataSource fromBinary(Path file, int batchSize, int prefetch) throws IOException {
+        int features, classes;
+        try (MappedDataSet header = new MappedDataSet(file)) {
+            features = header.getFeatures();
+            classes = header.getClasses();
+        }
+        return new StreamingDataSource(() -> new MappedRowReader(new MappedDataSet(file)),
+                features, classes, batchSize, prefetch);
+    }
+
+    // ------------------------------------------------------------
+    // DataSource
+    // ------------------------------------------------------------
+    @Override
+    public synchronized void startEpoch() {
+        stopProducer();
+
+        failure = null;
+        exhausted = false;
+        producer = new Thread(this::produce, "data-producer");
+        producer.setDaemon(true);
+        producer.start();
+    }
+
+    @Override
+    public MiniBatch nextBatch() throws IOException {
+        if (producer == null) {
+            throw new IllegalStateException("startEpoch() must be called before nextBatch().");
+        }
+        if (exhausted) return null;
+
+        MiniBatch batch = readyBatches.poll();
+        if (batch == null) {
+            long start = System.nanoTime();
+            try {
+                batch = readyBatches.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for data.", e);
+            }
+            stallNanos += System.nanoTime() - start;
+            if (Metrics.ENABLED) Metrics.DATA_WAIT.recordSince(start);
+        } else if (Metrics.ENABLED) {
+            Metrics.DATA_WAIT.record(0.0); // Ready in time
+        }
+
+        if (batch == END) {
+            exhausted = true;
+            if (failure != null) throw failure;
+            return null;
+        }
+        return batch;
+    }
+
+    @Override
+    public void release(MiniBatch batch) {
+        for (Slot slot : slots) {
+            if (slot.inputs == batch.inputs.getData()) {
+                // Already free if the pass was restarted while the batch was in use
+                if (!freeSlots.contains(slot)) freeSlots.add(slot);
+                return;
+            }
+        }
+        throw new IllegalArgumentException("The batch does not belong to this data source.");
+    }
+
+    @Override
+    public synchronized void close() {
+        stopProducer();
+    }
+
+    // Total time the consumer has waited for a batch to be ready
+    public long getStallNanos() {
+        return stallNanos;
+    }
+
+    // ------------------------------------------------------------
+    // Producer
+    // ------------------------------------------------------------
+    // The END marker is always posted, also after a failure, so nextBatch never waits forever
+    // (when stopped by startEpoch/close, the queue is cleared after the producer ends)
+    private void produce() {
+        try (RowReader reader = readers.open()) {
+            while (true) {
+                Slot slot = freeSlots.take();
+                int rows = reader.read(slot.inputs, slot.labels, batchSize);
+                if (rows == 0) {
+                    freeSlots.add(slot);
+                    break;
+                }
+                readyBatches.put(slot.toBatch(rows));
+                if (rows < batchSize) break;
+            }
+        } catch (IOException e) {
+            failure = e;
+        } catch (InterruptedException e) {
+            // Stopped by startEpoch/close
+        } catch (RuntimeException e) {
+            failure = new IOException("Could not read the training data: " + e, e);
+        } finally {
+            readyBatches.add(END);
+        }
+    }
+
+    // Stops the running producer and gives every queued batch back to the free slots
+    private void stopProducer() {
+        if (producer == null) return;
+
+        producer.interrupt();
+        try {
+            producer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        producer = null;
+
+        readyBatches.clear();
+        freeSlots.clear();
+        freeSlots.addAll(Arrays.asList(slots));
+    }
+
+    // ------------------------------------------------------------
+    // Reusable batch buffers
+    // ------------------------------------------------------------
+    private class Slot {
+        final float[] inputs = new float[batchSize * features];
+        final float[] targets = new float[batchSize * classes];
+        final int[] labels = new int[batchSize];
+        final MiniBatch fullBatch = new MiniBatch(
+                new Matrix(inputs, 0, batchSize, features, features),
+                new Matrix(targets, 0, batchSize, classes, classes), labels);
+
+        MiniBatch toBatch(int rows) {
+            Arrays.fill(targets, 0.0f);
+            for (int i = 0; i < rows; i++) {
+                targets[i * classes + labels[i]] = 1.0f;
+            }
+            if (rows == batchSize) return fullBatch;
+
+            // Last (smaller) batch of the pass
+            return new MiniBatch(new Matrix(inputs, 0, rows, features, features),
+                    new Matrix(targets, 0, rows, classes, classes), Arrays.copyOf(labels, rows));
+        }
+    }
+
+    // ------------------------------------------------------------
+    // Readers
+    // ------------------------------------------------------------
+    // Reads both files through the byte-level parser of CsvFloatParser, without any String per value
+    private static class CsvRowReader implements RowReader {
+        private final CsvFloatParser.RowCursor vectors;
+        private final CsvFloatParser.RowCursor labels;
+        private final int features;
+        private final int classes;
+
+        CsvRowReader(String vectorsFile, String labelsFile, int features, int classes) throws IOException {
+            this.vectors = new CsvFloatParser.RowCursor(Paths.get(vectorsFile));
+            this.labels = new CsvFloatParser.RowCursor(Paths.get(labelsFile));
+            this.features = features;
+            this.classes = classes;
+        }
+
+        @Override
+        public int read(float[] inputs, int[] labelsOut, int maxRows) throws IOException {
+            int rows = 0;
+            while (rows < maxRows && vectors.next()) {
+                vectors.parseRow(features, 255.0f, inputs, rows * features);
+
+                if (!labels.next()) throw vectors.error("no label left for this vector");
+                int label = labels.parseInt();
+                if (label < 0 || label >= classes) {
+                    throw labels.error("label " + label + " out of " + classes + " classes");
+                }
+                labelsOut[rows++] = label;
+            }
+            return rows;
+        }
+
+        @Override
+        public void close() {
+            // The files are mapped, nothing to close
+        }
+    }
+
+    private static class MappedRowReader implements RowReader {
+        private final MappedDataSet data;
+        private int position;
+
+        MappedRowReader(MappedDataSet data) {
+            this.data = data;
+        }
+
+        @Override
+        public int read(float[] inputs, int[] labels, int maxRows) {
+            int rows = Math.min(maxRows, data.size() - position);
+            if (rows <= 0) return 0;
+
+            int features = data.getFeatures();
+            data.fillBatch(position, new Matrix(inputs, 0, rows, features, features), null);
+            for (int i = 0; i < rows; i++) {
+                labels[i] = data.getLabel(position + i);
+            }
+            position += rows;
+            return rows;
+        }
+
+        @Override
+        public void close() throws IOException {
+            data.close();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package datatreatments.sampling;
+
+import java.util.SplittableRandom;
+
+/**
+ * As many rows of every class in an epoch, whatever the class sizes: rows of
+ * small classes come back several times, large classes are subsampled. The
+ * epoch keeps the size of the data set and is shuffled as a whole.
+ *
+ * Within a class the rows are taken from a shuffled copy and the copy is
+ * shuffled again when it runs out, so no row is repeated before every row of
+ * its class has been seen in the epoch.
+ */
+public class ClassBalancedSampler implements Sampler {
+
+    private final int[][] rowsByClass;
+    private final int[][] shuffled;
+    private final int[] presentClasses; // Classes with at least one row
+    private final int rows;
+
+    public ClassBalancedSampler(int[] labels, int classes) {
+        this.rowsByClass = Permutations.rowsByClass(labels, classes);
+        this.shuffled = new int[classes][];
+        int present = 0;
+        for (int c = 0; c < classes; c++) {
+            shuffled[c] = new int[rowsByClass[c].length];
+            if (rowsByClass[c].length > 0) present++;
+        }
+        this.presentClasses = new int[present];
+        for (int c = 0, p = 0; c < classes; c++) {
+            if (rowsByClass[c].length > 0) presentClasses[p++] = c;
+        }
+        this.rows = labels.length;
+    }
+
+    @Override
+    public String getName() {
+        return "Balanced";
+    }
+
+    @Override
+    public int getEpochSize() {
+        return rows;
+    }
+
+    @Override
+    public void sample(int[] order, SplittableRandom random) {
+        // Rows per class, the remainder going to classes drawn at random
+        int[] classes = presentClasses.clone();
+        Permutations.shuffle(classes, 0, classes.length, random);
+        int share = rows / classes.length;
+        int remainder = rows % classes.length;
+
+        int position = 0;
+        for (int p = 0; p < classes.length; p++) {
+            int[] pool = shuffled[classes[p]];
+            System.arraycopy(rowsByClass[classes[p]], 0, pool, 0, pool.length);
+
+            int count = share + (p < remainder ? 1 : 0);
+            for (int taken = 0; taken < count; taken++) {
+                int index = taken % pool.length;
+                if (index == 0) Permutations.shuffle(pool, 0, pool.length, random); // New pass over the class
+                order[position++] = pool[index];
+            }
+        }
+
+        Permutations.shuffle(order, 0, rows, random);
+    }
+}
@@ -0,0 +1,50 @@
+package datatreatments.sampling;
+
+import java.util.SplittableRandom;
+
+// Shared steps of the samplers
+final class Permutations {
+
+    private Permutations() {
+    }
+
+    // order[0, size) = a uniform random permutation of 0..size-1 (inside-out Fisher-Yates)
+    static void randomPermutation(int[] order, int size, SplittableRandom random) {
+        for (int i = 0; i < size; i++) {
+            int j = random.nextInt(i + 1);
+            order[i] = order[j];
+            order[j] = i;
+        }
+    }
+
+    // Fisher-Yates shuffle of values[from, to)
+    static void shuffle(int[] values, int from, int to, SplittableRandom random) {
+        for (int i = to - 1; i > from; i--) {
+            int j = from + random.nextInt(i - from + 1);
+            int swap = values[i];
+            values[i] = values[j];
+            values[j] = swap;
+        }
+    }
+
+    // Row indices of every class, in file order: [Class][Rows of the class]
+    static int[][] rowsByClass(int[] labels, int classes) {
+        int[] counts = new int[classes];
+        for (int label : labels) {
+            if (label < 0 || label >= classes) {
+                throw new IllegalArgumentException("Label " + label + " outside of [0, " + classes + ")");
+            }
+            counts[label]++;
+        }
+
+        int[][] rows = new int[classes][];
+        for (int c = 0; c < classes; c++) {
+            rows[c] = new int[counts[c]];
+        }
+        int[] filled = new int[classes];
+        for (int i = 0; i < labels.length; i++) {
+            rows[labels[i]][filled[labels[i]]++] = i;
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,39 @@
+package datatreatments.sampling;
+
+import java.util.SplittableRandom;
+
+/**
+ * Order in which the rows of a data set are visited during one epoch.
+ *
+ * An epoch is an array of row indices, drawn again at the start of every
+ * epoch from a generator seeded with the run seed and the epoch number (see
+ * {@link #randomForEpoch(long, int)}), so the same seed gives the same
+ * batches, also when a run is resumed from a checkpoint. The batches are
+ * consecutive slices of that array (see MiniBatchesSamples).
+ *
+ * Samplers only read the generator they are given: the order of an epoch
+ * does not depend on the epochs drawn before it.
+ */
+public interface Sampler {
+
+    // Name used on the command line (see SamplerNames)
+    String getName();
+
+    // Rows visited per epoch (the length of the order)
+    int getEpochSize();
+
+    // Writes the rows of one epoch into order[0, getEpochSize())
+    void sample(int[] order, SplittableRandom random);
+
+    // True if every epoch visits the rows in file order (the batches are then views of the data set)
+    default boolean isSequential() {
+        return false;
+    }
+
+    // Generator of one epoch: independent of the other epochs, and the same for the same (seed, epoch)
+    static SplittableRandom randomForEpoch(long seed, int epoch) {
+        // The seed is mixed before the epoch is added, and split() also draws a new increment,
+        // so neighbouring epochs do not get shifted copies of the same sequence
+        return new SplittableRandom(new SplittableRandom(seed).nextLong() + epoch).split();
+    }
+}
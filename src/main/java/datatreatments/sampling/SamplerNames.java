@@ -0,0 +1,37 @@
+package datatreatments.sampling;
+
+public enum SamplerNames {
+    SEQUENTIAL("Sequential"),
+    UNIFORM("Uniform"),
+    STRATIFIED("Stratified"),
+    BALANCED("Balanced");
+
+    private final String name;
+
+    SamplerNames(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    // New sampler over a data set with these labels (WeightedSampler needs its weights, see its constructor)
+    public Sampler create(int[] labels, int classes) {
+        switch (this) {
+            case SEQUENTIAL: return new SequentialSampler(labels.length);
+            case STRATIFIED: return new StratifiedSampler(labels, classes);
+            case BALANCED:   return new ClassBalancedSampler(labels, classes);
+            default:         return new UniformSampler(labels.length);
+        }
+    }
+
+    public static SamplerNames getByName(String name) {
+        for (SamplerNames sampler : SamplerNames.values()) {
+            if (sampler.getName().equalsIgnoreCase(name)) {
+                return sampler;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,35 @@
+package datatreatments.sampling;
+
+import java.util.SplittableRandom;
+
+// Every row once, in file order
+public class SequentialSampler implements Sampler {
+
+    private final int rows;
+
+    public SequentialSampler(int rows) {
+        this.rows = rows;
+    }
+
+    @Override
+    public String getName() {
+        return "Sequential";
+    }
+
+    @Override
+    public int getEpochSize() {
+        return rows;
+    }
+
+    @Override
+    public void sample(int[] order, SplittableRandom random) {
+        for (int i = 0; i < rows; i++) {
+            order[i] = i;
+        }
+    }
+
+    @Override
+    public boolean isSequential() {
+        return true;
+    }
+}
@@ -0,0 +1,66 @@
+package datatreatments.sampling;
+
+import java.util.SplittableRandom;
+
+/**
+ * Every row once, shuffled within its class, with the classes spread evenly
+ * over the epoch: any window of the order (so any batch) holds the classes
+ * in about the same proportions as the whole data set.
+ *
+ * The k-th row of a class with n rows is placed at (k + u) / n in the
+ * epoch, u being a random offset of the class in [0, 1), and the classes are
+ * merged by that position.
+ */
+public class StratifiedSampler implements Sampler {
+
+    private final int[][] rowsByClass; // File order
+    private final int[][] shuffled;    // Working copy, shuffled at every epoch
+    private final int rows;
+
+    public StratifiedSampler(int[] labels, int classes) {
+        this.rowsByClass = Permutations.rowsByClass(labels, classes);
+        this.shuffled = new int[classes][];
+        for (int c = 0; c < classes; c++) {
+            shuffled[c] = new int[rowsByClass[c].length];
+        }
+        this.rows = labels.length;
+    }
+
+    @Override
+    public String getName() {
+        return "Stratified";
+    }
+
+    @Override
+    public int getEpochSize() {
+        return rows;
+    }
+
+    @Override
+    public void sample(int[] order, SplittableRandom random) {
+        int classes = rowsByClass.length;
+        double[] offsets = new double[classes];
+        int[] taken = new int[classes];
+        for (int c = 0; c < classes; c++) {
+            System.arraycopy(rowsByClass[c], 0, shuffled[c], 0, rowsByClass[c].length);
+            Permutations.shuffle(shuffled[c], 0, shuffled[c].length, random);
+            offsets[c] = random.nextDouble();
+        }
+
+        // Merge: the class whose next row has the smallest position goes first
+        for (int i = 0; i < rows; i++) {
+            int next = -1;
+            double nextPosition = Double.POSITIVE_INFINITY;
+            for (int c = 0; c < classes; c++) {
+                int size = shuffled[c].length;
+                if (taken[c] == size) continue;
+                double position = (taken[c] + offsets[c]) / size;
+                if (position < nextPosition) {
+                    nextPosition = position;
+                    next = c;
+                }
+            }
+            order[i] = shuffled[next][taken[next]++];
+        }
+    }
+}
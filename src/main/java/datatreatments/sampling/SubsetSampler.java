@@ -0,0 +1,31 @@
+package datatreatments.sampling;
+
+import java.util.SplittableRandom;
+
+// Only the given rows (e.g. the training folds of a cross-validation), shuffled at every epoch or kept in order
+public class SubsetSampler implements Sampler {
+
+    private final int[] rows;
+    private final boolean shuffled;
+
+    public SubsetSampler(int[] rows, boolean shuffled) {
+        this.rows = rows.clone();
+        this.shuffled = shuffled;
+    }
+
+    @Override
+    public String getName() {
+        return "Subset";
+    }
+
+    @Override
+    public int getEpochSize() {
+        return rows.length;
+    }
+
+    @Override
+    public void sample(int[] order, SplittableRandom random) {
+        System.arraycopy(rows, 0, order, 0, rows.length);
+        if (shuffled) Permutations.shuffle(order, 0, rows.length, random);
+    }
+}
@@ -0,0 +1,28 @@
+package datatreatments.sampling;
+
+import java.util.SplittableRandom;
+
+// Every row once, in a new random order at every epoch
+public class UniformSampler implements Sampler {
+
+    private final int rows;
+
+    public UniformSampler(int rows) {
+        this.rows = rows;
+    }
+
+    @Override
+    public String getName() {
+        return "Uniform";
+    }
+
+    @Override
+    public int getEpochSize() {
+        return rows;
+    }
+
+    @Override
+    public void sample(int[] order, SplittableRandom random) {
+        Permutations.randomPermutation(order, rows, random);
+    }
+}
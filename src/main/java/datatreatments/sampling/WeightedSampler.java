@@ -0,0 +1,86 @@
+package datatreatments.sampling;
+
+import java.util.SplittableRandom;
+
+/**
+ * Rows drawn with replacement, each with a probability proportional to its
+ * weight (e.g. per-sample losses, or the inverse of the class frequency).
+ *
+ * The draws use an alias table (Vose), built once: each one is a uniform
+ * column and a biased coin, whatever the number of rows.
+ */
+public class WeightedSampler implements Sampler {
+
+    private final float[] probability; // Chance of keeping the column
+    private final int[] alias;         // Row taken otherwise
+    private final int epochSize;
+
+    // `epochSize` draws per epoch from the rows 0..weights.length-1
+    public WeightedSampler(double[] weights, int epochSize) {
+        int n = weights.length;
+        double total = 0.0;
+        for (double weight : weights) {
+            if (!(weight >= 0.0) || Double.isInfinite(weight)) {
+                throw new IllegalArgumentException("Weights must be finite and non-negative.");
+            }
+            total += weight;
+        }
+        if (n == 0 || total == 0.0) {
+            throw new IllegalArgumentException("At least one weight must be positive.");
+        }
+
+        this.probability = new float[n];
+        this.alias = new int[n];
+        this.epochSize = epochSize;
+
+        // Scaled weights: columns below 1 are topped up by one column above 1
+        double[] scaled = new double[n];
+        int[] small = new int[n], large = new int[n];
+        int smallCount = 0, largeCount = 0;
+        for (int i = 0; i < n; i++) {
+            scaled[i] = weights[i] * n / total;
+            if (scaled[i] < 1.0) small[smallCount++] = i;
+            else large[largeCount++] = i;
+        }
+        while (smallCount > 0 && largeCount > 0) {
+            int less = small[--smallCount];
+            int more = large[--largeCount];
+            probability[less] = (float) scaled[less];
+            alias[less] = more;
+            scaled[more] -= 1.0 - scaled[less];
+            if (scaled[more] < 1.0) small[smallCount++] = more;
+            else large[largeCount++] = more;
+        }
+        // Rounding leftovers are full columns
+        while (largeCount > 0) probability[large[--largeCount]] = 1.0f;
+        while (smallCount > 0) probability[small[--smallCount]] = 1.0f;
+    }
+
+    // One weight per row from the weights of its class
+    public static WeightedSampler byClass(int[] labels, double[] classWeights) {
+        double[] weights = new double[labels.length];
+        for (int i = 0; i < labels.length; i++) {
+            weights[i] = classWeights[labels[i]];
+        }
+        return new WeightedSampler(weights, labels.length);
+    }
+
+    @Override
+    public String getName() {
+        return "Weighted";
+    }
+
+    @Override
+    public int getEpochSize() {
+        return epochSize;
+    }
+
+    @Override
+    public void sample(int[] order, SplittableRandom random) {
+        int n = alias.length;
+        for (int i = 0; i < epochSize; i++) {
+            int column = random.nextInt(n);
+            order[i] = (random.nextFloat() < probability[column]) ? column : alias[column];
+        }
+    }
+}
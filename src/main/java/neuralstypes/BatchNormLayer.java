@@ -0,0 +1,460 @@
+package neuralstypes;
+
+import java.util.Arrays;
+
+import utility.HalfPrecision;
+import utility.Matrix;
+import utility.Parallelism;
+import utility.SparseMatrix;
+import utility.functions.Function;
+import utility.functions.FunctionNames;
+
+/**
+ * Batch normalisation: outputs = f(gamma * (x - mean) / sqrt(var + eps) + beta),
+ * feature by feature, usually placed after a dense layer with the identity
+ * activation (the activation moves to this layer).
+ *
+ * While training, mean and var are those of the batch, both taken in one
+ * pass over the inputs. With a DataParallelTrainer every replica sums its
+ * shard (sumBatch), and the sums of all the shards are added up before the
+ * normalisation, and again for the sums of the deltas in the backward pass
+ * (addBatchSums). The sums are also accumulated like the gradients, so the
+ * running statistics used at inference are updated once per step from the
+ * whole batch, in updateWeights.
+ * Nothing is stored for the backward pass but the mean and the inverse
+ * standard deviation: the normalised inputs are computed again.
+ *
+ * Gamma is kept as the weights ([Feature][1]) and beta as the biases, so the
+ * optimizer, the gradient all-reduce and the checkpoints treat them like the
+ * parameters of any layer. At inference the layer is folded into the dense
+ * layer before it (see freezeFolded), and costs nothing.
+ */
+public class BatchNormLayer extends Layer {
+
+    public static final float EPSILON = 1e-5f;
+    public static final float MOMENTUM = 0.1f; // Weight of the batch in the running statistics
+
+    private final int features;
+
+    // Shared with the replicas: [Feature] running means, then [Feature] running variances
+    private final float[] runningStatistics;
+
+    // Sums of the inputs and of their squares since the last reset ([Feature] each, reduced like
+    // the gradients), and the number of rows they cover
+    private final double[] inputSums;
+    private final double[] squaredSums;
+    private int statisticSamples;
+
+    // Last training batch: its sums and rows, the statistics kept for the backward pass, and the sums
+    // of the deltas. batchSummed: the sums are already taken (see sumBatch)
+    private final double[] batchSums;
+    private final double[] batchSquares;
+    private final float[] batchMeans;
+    private final float[] inverseDeviations;
+    private final float[] deltaSums;
+    private final float[] normalizedDeltaSums;
+    private int batchRows;
+    private boolean batchSummed;
+    private Matrix batchInputs;
+    private Matrix previousDeltas; // Of the propagateDeltas in progress
+    private boolean training;
+
+    // Feature ranges of the passes, built once (they read the batch buffers above)
+    private final Parallelism.RangeTask trainingRange = this::normalizeTraining;
+    private final Parallelism.RangeTask runningRange = this::normalizeRunning;
+    private final Parallelism.RangeTask sumRange = this::sumBatch;
+    private final Parallelism.RangeTask gradientRange = this::sumDeltas;
+    private final Parallelism.RangeTask deltaRange = this::propagateRange;
+
+    // Running statistics as x * scale + shift, for forward outside of training
+    private final float[] runningScales;
+    private final float[] runningShifts;
+
+    public BatchNormLayer(int features, String activationName) {
+        // Gamma as weights [Feature][1]: nothing is drawn from the random generator
+        super(1, features, features, activationName, null);
+        if (!getActivationFunction().isElementwise()) {
+            throw new IllegalArgumentException("Batch normalisation needs an elementwise activation.");
+        }
+        this.features = features;
+        this.runningStatistics = new float[2 * features];
+        Arrays.fill(runningStatistics, features, 2 * features, 1.0f);
+        Arrays.fill(getWeights().getData(), 1.0f);
+        syncTransposedWeights();
+
+        this.inputSums = new double[features];
+        this.squaredSums = new double[features];
+        this.batchMeans = new float[features];
+        this.inverseDeviations = new float[features];
+        this.deltaSums = new float[features];
+        this.normalizedDeltaSums = new float[features];
+        this.batchSums = new double[features];
+        this.batchSquares = new double[features];
+        this.runningScales = new float[features];
+        this.runningShifts = new float[features];
+    }
+
+    private BatchNormLayer(BatchNormLayer source) {
+        super(source);
+        this.features = source.features;
+        this.runningStatistics = source.runningStatistics;
+        this.inputSums = new double[features];
+        this.squaredSums = new double[features];
+        this.batchMeans = new float[features];
+        this.inverseDeviations = new float[features];
+        this.deltaSums = new float[features];
+        this.normalizedDeltaSums = new float[features];
+        this.batchSums = new double[features];
+        this.batchSquares = new double[features];
+        this.runningScales = new float[features];
+        this.runningShifts = new float[features];
+    }
+
+    @Override
+    public Layer replicate() {
+        return new BatchNormLayer(this);
+    }
+
+    @Override
+    public void setTraining(boolean training) {
+        this.training = training;
+    }
+
+    @Override
+    public float[] getRunningStatistics() {
+        return runningStatistics;
+    }
+
+    // ================================================================
+    // Inference
+    // ================================================================
+
+    // Alone: one multiply-add per value (see freezeFolded to merge it into the layer before)
+    @Override
+    public FrozenLayer freeze() {
+        float[] scales = new float[features], shifts = new float[features];
+        inferenceTransform(scales, shifts);
+        return new FrozenBatchNormLayer(scales, shifts, getActivationFunction());
+    }
+
+    // Same in an int8 network: the scales and shifts stay float
+    @Override
+    public QuantizedLayer quantize() {
+        float[] scales = new float[features], shifts = new float[features];
+        inferenceTransform(scales, shifts);
+        return new QuantizedBatchNormLayer(scales, shifts, getActivationFunction());
+    }
+
+    // True if the layer can be merged into `previous`: a dense layer with the identity activation
+    public boolean canFold(Layer previous) {
+        return previous.getClass() == Layer.class && previous.getNeuronCount() == features
+                && previous.getActivationName().equalsIgnoreCase(FunctionNames.IDENTITY.getName());
+    }
+
+    // `previous` and this layer as one dense layer with the activation of this one:
+    // W' = W * scale, b' = b * scale + shift (see inferenceTransform)
+    public FrozenLayer freezeFolded(Layer previous) {
+        int inputSize = previous.getInputSize();
+        float[] scales = new float[features], biases = new float[features];
+        foldedBiases(previous, scales, biases);
+
+        Matrix weightsTransposed = new Matrix(inputSize, features);
+        float[] wT = previous.getTransposedWeights().getData(), folded = weightsTransposed.getData();
+        for (int i = 0; i < inputSize; i++) {
+            int row = i * features;
+            for (int n = 0; n < features; n++) {
+                folded[row + n] = wT[row + n] * scales[n];
+            }
+        }
+        return new FrozenLayer(inputSize, features, weightsTransposed, biases, getActivationFunction());
+    }
+
+    // Same for int8 inference (the scales are folded before the quantisation)
+    public QuantizedLayer quantizeFolded(Layer previous) {
+        int inputSize = previous.getInputSize();
+        float[] scales = new float[features], biases = new float[features];
+        foldedBiases(previous, scales, biases);
+
+        Matrix weights = new Matrix(features, inputSize);
+        float[] w = previous.getWeights().getData(), folded = weights.getData();
+        for (int n = 0; n < features; n++) {
+            int row = n * inputSize;
+            for (int i = 0; i < inputSize; i++) {
+                folded[row + i] = w[row + i] * scales[n];
+            }
+        }
+        return new QuantizedLayer(inputSize, features, weights, biases, getActivationFunction());
+    }
+
+    private void foldedBiases(Layer previous, float[] scales, float[] biases) {
+        if (!canFold(previous)) {
+            throw new IllegalArgumentException("Only a dense layer with the identity activation can be folded.");
+        }
+        inferenceTransform(scales, biases);
+        float[] previousBiases = previous.getBiases();
+        for (int n = 0; n < features; n++) {
+            biases[n] += previousBiases[n] * scales[n];
+        }
+    }
+
+    // Normalisation with the running statistics as x * scale + shift
+    private void inferenceTransform(float[] scales, float[] shifts) {
+        float[] gamma = getWeights().getData(), beta = getBiases();
+        for (int j = 0; j < features; j++) {
+            float scale = gamma[j] / (float) Math.sqrt(runningStatistics[features + j] + EPSILON);
+            scales[j] = scale;
+            shifts[j] = beta[j] - runningStatistics[j] * scale;
+        }
+    }
+
+    @Override
+    public void useCompactActivations(HalfPrecision precision, SharedWorkspace workspace, int index,
+                                      Layer inputLayer, boolean keepOutputs) {
+        if (precision != null) {
+            throw new UnsupportedOperationException("Mixed precision supports dense layers only.");
+        }
+        super.useCompactActivations(null, workspace, index, inputLayer, keepOutputs);
+    }
+
+    // ================================================================
+    // Forward pass (batch)
+    // ================================================================
+    @Override
+    public Matrix forward(Matrix inputs) {
+        if (inputs.getColumns() != features) {
+            throw new IllegalArgumentException("Expected " + features + " inputs, got " + inputs.getColumns());
+        }
+        prepareWorkspace(inputs.getRows());
+        this.batchInputs = inputs;
+
+        // Split by features: every range reads its columns of all the rows
+        if (training) {
+            if (!batchSummed) countBatch(inputs.getRows()); // Rows first: the ranges divide by them
+            Parallelism.forEachRange(features, 16, trainingRange);
+            batchSummed = false;
+        } else {
+            inferenceTransform(runningScales, runningShifts);
+            Parallelism.forEachRange(features, 16, runningRange);
+        }
+        return getOutputs();
+    }
+
+    @Override
+    public Matrix forward(SparseMatrix inputs) {
+        throw new UnsupportedOperationException("Sparse inputs are supported by dense layers only.");
+    }
+
+    // Sums of the training inputs before forward, so that they can be added up over the
+    // replicas (see addBatchSums): forward then normalises with the sums it finds
+    public void sumBatch(Matrix inputs) {
+        if (inputs.getColumns() != features) {
+            throw new IllegalArgumentException("Expected " + features + " inputs, got " + inputs.getColumns());
+        }
+        this.batchInputs = inputs; // The same inputs come to forward next
+        Parallelism.forEachRange(features, 16, sumRange);
+        countBatch(inputs.getRows());
+        batchSummed = true;
+    }
+
+    // Sums of the values and of their squares (in double) of the features [first, end), in one pass.
+    // They also go into the running statistics.
+    private void sumBatch(int first, int end) {
+        Matrix inputs = batchInputs;
+        float[] in = inputs.getData();
+        Arrays.fill(batchSums, first, end, 0.0);
+        Arrays.fill(batchSquares, first, end, 0.0);
+        for (int b = 0; b < inputs.getRows(); b++) {
+            int row = inputs.rowOffset(b);
+            for (int j = first; j < end; j++) {
+                double x = in[row + j];
+                batchSums[j] += x;
+                batchSquares[j] += x * x;
+            }
+        }
+        for (int j = first; j < end; j++) {
+            inputSums[j] += batchSums[j];
+            squaredSums[j] += batchSquares[j];
+        }
+    }
+
+    private void countBatch(int rows) {
+        batchRows = rows;
+        statisticSamples += rows;
+    }
+
+    // Statistics of the features [first, end) from the sums (taken first if sumBatch was not called),
+    // then normalisation, scale, shift and activation in a second pass
+    private void normalizeTraining(int first, int end) {
+        if (!batchSummed) sumBatch(first, end);
+
+        Matrix inputs = batchInputs, outputs = getOutputs();
+        float[] in = inputs.getData(), out = outputs.getData();
+        float[] gamma = getWeights().getData(), beta = getBiases();
+        int rows = batchRows;
+
+        for (int j = first; j < end; j++) {
+            double mean = batchSums[j] / rows;
+            double variance = Math.max(batchSquares[j] / rows - mean * mean, 0.0);
+            batchMeans[j] = (float) mean;
+            inverseDeviations[j] = (float) (1.0 / Math.sqrt(variance + EPSILON));
+        }
+
+        Function activation = getActivationFunction();
+        for (int b = 0; b < inputs.getRows(); b++) {
+            int row = inputs.rowOffset(b), outRow = outputs.rowOffset(b);
+            for (int j = first; j < end; j++) {
+                out[outRow + j] = (in[row + j] - batchMeans[j]) * inverseDeviations[j] * gamma[j] + beta[j];
+            }
+            activation.evaluateInPlace(out, outRow + first, end - first);
+        }
+    }
+
+    // x * scale + shift with the running statistics (see inferenceTransform), then the activation
+    private void normalizeRunning(int first, int end) {
+        Matrix inputs = batchInputs, outputs = getOutputs();
+        float[] in = inputs.getData(), out = outputs.getData();
+        Function activation = getActivationFunction();
+
+        for (int b = 0; b < inputs.getRows(); b++) {
+            int row = inputs.rowOffset(b), outRow = outputs.rowOffset(b);
+            for (int j = first; j < end; j++) {
+                out[outRow + j] = in[row + j] * runningScales[j] + runningShifts[j];
+            }
+            activation.evaluateInPlace(out, outRow + first, end - first);
+        }
+    }
+
+    // ================================================================
+    // Backward pass
+    // ================================================================
+
+    // dGamma += sum(delta * normalised input), dBeta += sum(delta), feature by feature
+    // (the sums are kept for propagateDeltas, and added up over the replicas before it)
+    @Override
+    protected void accumulateGradients() {
+        Parallelism.forEachRange(features, 16, gradientRange);
+        addGradientSamples(getDeltas().getRows());
+    }
+
+    private void sumDeltas(int first, int end) {
+        Matrix deltas = getDeltas(), inputs = batchInputs;
+        float[] d = deltas.getData(), in = inputs.getData();
+        float[] dGamma = getWeightGradients().getData(), dBeta = getBiasGradients();
+
+        Arrays.fill(deltaSums, first, end, 0.0f);
+        Arrays.fill(normalizedDeltaSums, first, end, 0.0f);
+        for (int b = 0; b < deltas.getRows(); b++) {
+            int row = deltas.rowOffset(b), inputRow = inputs.rowOffset(b);
+            for (int j = first; j < end; j++) {
+                float delta = d[row + j];
+                deltaSums[j] += delta;
+                normalizedDeltaSums[j] += delta * (in[inputRow + j] - batchMeans[j]) * inverseDeviations[j];
+            }
+        }
+        for (int j = first; j < end; j++) {
+            dBeta[j] += deltaSums[j];
+            dGamma[j] += normalizedDeltaSums[j];
+        }
+    }
+
+    // dx = gamma / sigma / N * (N * delta - sum(delta) - normalised x * sum(delta * normalised x)),
+    // then times the derivative of the activation of the previous layer (N and the sums cover the batch)
+    @Override
+    protected void propagateDeltas(Layer previous) {
+        previousDeltas = previous.getDeltas();
+        Parallelism.forEachRange(features, 16, deltaRange);
+        previous.applyActivationDerivative();
+    }
+
+    private void propagateRange(int first, int end) {
+        Matrix deltas = getDeltas(), inputs = batchInputs;
+        float[] d = deltas.getData(), in = inputs.getData(), p = previousDeltas.getData();
+        float[] gamma = getWeights().getData();
+        int rows = batchRows;
+
+        for (int b = 0; b < deltas.getRows(); b++) {
+            int row = deltas.rowOffset(b), inputRow = inputs.rowOffset(b);
+            int previousRow = previousDeltas.rowOffset(b);
+            for (int j = first; j < end; j++) {
+                float normalized = (in[inputRow + j] - batchMeans[j]) * inverseDeviations[j];
+                float centered = rows * d[row + j] - deltaSums[j] - normalized * normalizedDeltaSums[j];
+                p[previousRow + j] = gamma[j] * inverseDeviations[j] / rows * centered;
+            }
+        }
+    }
+
+    // ================================================================
+    // Batch sums of the replicas (see DataParallelTrainer)
+    // ================================================================
+
+    // Adds the sums of the shard of `other`: those of the inputs after sumBatch, or with deltas,
+    // those of the deltas after the backward pass of the next layer
+    public void addBatchSums(BatchNormLayer other, boolean deltas) {
+        for (int j = 0; j < features; j++) {
+            if (deltas) {
+                deltaSums[j] += other.deltaSums[j];
+                normalizedDeltaSums[j] += other.normalizedDeltaSums[j];
+            } else {
+                batchSums[j] += other.batchSums[j];
+                batchSquares[j] += other.batchSquares[j];
+            }
+        }
+        if (!deltas) batchRows += other.batchRows;
+    }
+
+    // Takes the sums of `source` (the sums of all the shards)
+    public void copyBatchSums(BatchNormLayer source, boolean deltas) {
+        if (deltas) {
+            System.arraycopy(source.deltaSums, 0, deltaSums, 0, features);
+            System.arraycopy(source.normalizedDeltaSums, 0, normalizedDeltaSums, 0, features);
+        } else {
+            System.arraycopy(source.batchSums, 0, batchSums, 0, features);
+            System.arraycopy(source.batchSquares, 0, batchSquares, 0, features);
+            batchRows = source.batchRows;
+        }
+    }
+
+    // ================================================================
+    // Statistics, reduced and applied like the gradients
+    // ================================================================
+    @Override
+    public void resetGradients() {
+        super.resetGradients();
+        Arrays.fill(inputSums, 0.0);
+        Arrays.fill(squaredSums, 0.0);
+        statisticSamples = 0;
+    }
+
+    @Override
+    public void addGradients(Layer other) {
+        super.addGradients(other);
+        BatchNormLayer source = (BatchNormLayer) other;
+        for (int j = 0; j < features; j++) {
+            inputSums[j] += source.inputSums[j];
+            squaredSums[j] += source.squaredSums[j];
+        }
+        statisticSamples += source.statisticSamples;
+    }
+
+    // Moves the running statistics towards those of the whole batch (unbiased variance), then
+    // updates gamma and beta
+    @Override
+    public void updateWeights(float learningRate) {
+        int n = statisticSamples;
+        if (n > 0) {
+            for (int j = 0; j < features; j++) {
+                double mean = inputSums[j] / n;
+                double variance = Math.max(squaredSums[j] / n - mean * mean, 0.0);
+                if (n > 1) variance *= (double) n / (n - 1);
+                runningStatistics[j] += MOMENTUM * ((float) mean - runningStatistics[j]);
+                runningStatistics[features + j] += MOMENTUM * ((float) variance - runningStatistics[features + j]);
+            }
+        }
+        super.updateWeights(learningRate);
+    }
+
+    // --- GETTERS ---
+    public int getFeatures() {
+        return features;
+    }
+}
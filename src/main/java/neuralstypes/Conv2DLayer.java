@@ -0,0 +1,182 @@
+package neuralstypes;
+
+import java.util.Random;
+
+import utility.HalfPrecision;
+import utility.Matrix;
+import utility.MatrixMath;
+import utility.Parallelism;
+import utility.SparseMatrix;
+
+/**
+ * 2D convolution layer, lowered to the GEMM engine with im2col.
+ *
+ * Images are rows of [Height * Width * Channels] values in HWC order (a
+ * Fashion MNIST row is a 28x28x1 image). The patches of a batch are copied
+ * into a columns matrix with one row per output position, so the forward
+ * pass is one product with the filters:
+ *   Columns [Batch*Positions x K*K*C] * W^T [K*K*C x Filters]
+ * whose result, [Batch*Positions x Filters], is also the output batch
+ * [Batch][OutHeight * OutWidth * Filters] in HWC order, ready for another
+ * convolution, a pooling layer or a dense layer.
+ *
+ * The filters are the weights of the Layer ([Filter][K*K*C]), so replicas,
+ * optimizers and checkpoints work as for dense layers. The columns buffer
+ * is kept between batches; in the backward pass it receives the error of
+ * the patches, added back to the pixels with col2im.
+ */
+public class Conv2DLayer extends Layer {
+
+    private final ConvGeometry geometry;
+
+    // --- Workspace (reused by every batch) ---
+    private float[] columnBuffer = new float[0];
+    private Matrix columns;     // [Batch*Positions][K*K*C] patches, then their error
+    private Matrix outputRows;  // Outputs seen as [Batch*Positions][Filters]
+    private Matrix deltaRows;   // Deltas seen as [Batch*Positions][Filters]
+
+    // Convolution of `filters` kernels of kernel x kernel, with stride and zero padding
+    public Conv2DLayer(int height, int width, int channels, int filters, int kernel, int stride, int padding,
+                       String activationName, Random randomGenerator) {
+        this(new ConvGeometry(height, width, channels, kernel, stride, padding), filters, activationName,
+                randomGenerator);
+    }
+
+    // Stride 1, no padding
+    public Conv2DLayer(int height, int width, int channels, int filters, int kernel, String activationName,
+                       Random randomGenerator) {
+        this(height, width, channels, filters, kernel, 1, 0, activationName, randomGenerator);
+    }
+
+    private Conv2DLayer(ConvGeometry geometry, int filters, String activationName, Random randomGenerator) {
+        super(geometry.patchSize(), filters, geometry.positions() * filters, activationName, randomGenerator);
+        this.geometry = geometry;
+    }
+
+    private Conv2DLayer(Conv2DLayer source) {
+        super(source);
+        this.geometry = source.geometry;
+    }
+
+    @Override
+    public Layer replicate() {
+        return new Conv2DLayer(this);
+    }
+
+    @Override
+    public FrozenLayer freeze() {
+        Matrix weightsCopy = new Matrix(getInputSize(), getNeuronCount());
+        System.arraycopy(getTransposedWeights().getData(), 0, weightsCopy.getData(), 0,
+                getInputSize() * getNeuronCount());
+        return new FrozenConv2DLayer(geometry, getNeuronCount(), weightsCopy, getBiases().clone(),
+                getActivationFunction());
+    }
+
+    @Override
+    public QuantizedLayer quantize() {
+        throw new UnsupportedOperationException("Int8 inference supports dense layers only.");
+    }
+
+    // ================================================================
+    // Workspace
+    // ================================================================
+
+    @Override
+    public void reserveWorkspace(int maxBatchSize) {
+        super.reserveWorkspace(maxBatchSize);
+        int size = maxBatchSize * geometry.positions() * geometry.patchSize();
+        if (columnBuffer.length < size) {
+            columnBuffer = new float[size];
+            columns = null;
+        }
+    }
+
+    @Override
+    public void useCompactActivations(HalfPrecision precision, SharedWorkspace workspace, int index,
+                                      Layer inputLayer, boolean keepOutputs) {
+        if (precision != null) {
+            throw new UnsupportedOperationException("Mixed precision supports dense layers only.");
+        }
+        super.useCompactActivations(null, workspace, index, inputLayer, keepOutputs);
+    }
+
+    @Override
+    public long getActivationBytes() {
+        return super.getActivationBytes() + 4L * columnBuffer.length;
+    }
+
+    // ================================================================
+    // Forward pass (batch)
+    // ================================================================
+    @Override
+    public Matrix forward(Matrix inputs) {
+        if (inputs.getColumns() != geometry.inputWidth()) {
+            throw new IllegalArgumentException("Expected images of " + geometry.inputWidth() + " values, got "
+                    + inputs.getColumns());
+        }
+        int batchSize = inputs.getRows();
+        prepareWorkspace(batchSize);
+
+        int rows = batchSize * geometry.positions();
+        if (columns == null || columns.getRows() != rows || outputRows.getData() != getOutputs().getData()
+                || deltaRows.getData() != getDeltas().getData()) {
+            int filters = getNeuronCount();
+            columns = new Matrix(columnBuffer, 0, rows, geometry.patchSize(), geometry.patchSize());
+            outputRows = new Matrix(getOutputs().getData(), 0, rows, filters, filters);
+            deltaRows = new Matrix(getDeltas().getData(), 0, rows, filters, filters);
+        }
+
+        // Patches of every image (in parallel by images), then Outputs = f(Columns * W^T + b)
+        Parallelism.forEachRange(batchSize, 4, (first, end) -> geometry.im2col(inputs, columnBuffer, first, end));
+        MatrixMath.multiplyAddBiasActivate(columns, getTransposedWeights(), getBiasActivation(), outputRows);
+
+        return getOutputs();
+    }
+
+    @Override
+    public Matrix forward(SparseMatrix inputs) {
+        throw new UnsupportedOperationException("Sparse inputs are supported by dense layers only.");
+    }
+
+    // ================================================================
+    // Backward pass
+    // ================================================================
+
+    @Override
+    protected void accumulateGradients() {
+        // dB += sums over every position of every image
+        MatrixMath.addColumnSums(deltaRows, getBiasGradients());
+
+        // dW += Deltas^T * Columns
+        // [Filters x Batch*Positions] * [Batch*Positions x K*K*C] -> [Filters x K*K*C]
+        MatrixMath.addTransposedProduct(deltaRows, columns, getWeightGradients());
+
+        addGradientSamples(getDeltas().getRows());
+    }
+
+    @Override
+    protected void propagateDeltas(Layer previous) {
+        // Error of the patches: Deltas [Batch*Positions x Filters] * W [Filters x K*K*C],
+        // written over the columns (the weight gradients already used them)
+        MatrixMath.multiply(deltaRows, getWeights(), columns);
+
+        // Added back to the pixels they came from, then times f' of the previous layer
+        Matrix previousDeltas = previous.getDeltas();
+        Parallelism.forEachRange(previousDeltas.getRows(), 4,
+                (first, end) -> geometry.col2im(columnBuffer, previousDeltas, first, end));
+        previous.applyActivationDerivative();
+    }
+
+    // --- GETTERS ---
+    public int getFilters() {
+        return getNeuronCount();
+    }
+
+    public int getOutputHeight() {
+        return geometry.outHeight;
+    }
+
+    public int getOutputWidth() {
+        return geometry.outWidth;
+    }
+}
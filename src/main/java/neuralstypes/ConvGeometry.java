@@ -0,0 +1,118 @@
+package neuralstypes;
+
+import java.util.Arrays;
+
+import utility.Matrix;
+
+/**
+ * Shape of a 2D convolution over images stored row by row in HWC order
+ * (height, width, channels: the channels of a pixel are contiguous), and the
+ * im2col / col2im copies that lower it to a matrix product.
+ *
+ * The columns matrix has one row per output position of every image,
+ * [Batch * OutHeight * OutWidth][Kernel * Kernel * Channels], in the same
+ * order as the weights of a filter (kernel row, kernel column, channel).
+ */
+final class ConvGeometry {
+
+    final int height, width, channels;
+    final int kernel, stride, padding;
+    final int outHeight, outWidth;
+
+    ConvGeometry(int height, int width, int channels, int kernel, int stride, int padding) {
+        if (height < 1 || width < 1 || channels < 1 || kernel < 1 || stride < 1 || padding < 0) {
+            throw new IllegalArgumentException("Invalid convolution shape.");
+        }
+        this.height = height;
+        this.width = width;
+        this.channels = channels;
+        this.kernel = kernel;
+        this.stride = stride;
+        this.padding = padding;
+        this.outHeight = (height + 2 * padding - kernel) / stride + 1;
+        this.outWidth = (width + 2 * padding - kernel) / stride + 1;
+        if (outHeight < 1 || outWidth < 1) {
+            throw new IllegalArgumentException("The kernel is larger than the padded image.");
+        }
+    }
+
+    int inputWidth() {
+        return height * width * channels;
+    }
+
+    int positions() {
+        return outHeight * outWidth;
+    }
+
+    int patchSize() {
+        return kernel * kernel * channels;
+    }
+
+    // Copies the patches of the images [first, end) into their rows of the columns matrix
+    void im2col(Matrix inputs, float[] columns, int first, int end) {
+        float[] in = inputs.getData();
+        int patch = patchSize();
+        int run = kernel * channels; // One kernel row: contiguous in HWC
+
+        for (int b = first; b < end; b++) {
+            int image = inputs.rowOffset(b);
+            int row = b * positions() * patch;
+
+            for (int oh = 0; oh < outHeight; oh++) {
+                for (int ow = 0; ow < outWidth; ow++, row += patch) {
+                    int left = ow * stride - padding;
+                    for (int kh = 0; kh < kernel; kh++) {
+                        int ih = oh * stride - padding + kh;
+                        int destination = row + kh * run;
+                        if (ih < 0 || ih >= height) {
+                            Arrays.fill(columns, destination, destination + run, 0.0f);
+                        } else if (left >= 0 && left + kernel <= width) {
+                            System.arraycopy(in, image + (ih * width + left) * channels, columns, destination, run);
+                        } else {
+                            // Kernel row across the left or right border
+                            for (int kw = 0; kw < kernel; kw++) {
+                                int iw = left + kw;
+                                int to = destination + kw * channels;
+                                if (iw < 0 || iw >= width) {
+                                    Arrays.fill(columns, to, to + channels, 0.0f);
+                                } else {
+                                    System.arraycopy(in, image + (ih * width + iw) * channels, columns, to, channels);
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    // Adds the columns of the images [first, end) back to their pixels (transpose of im2col)
+    void col2im(float[] columns, Matrix images, int first, int end) {
+        float[] out = images.getData();
+        int patch = patchSize();
+
+        for (int b = first; b < end; b++) {
+            int image = images.rowOffset(b);
+            Arrays.fill(out, image, image + inputWidth(), 0.0f);
+            int row = b * positions() * patch;
+
+            for (int oh = 0; oh < outHeight; oh++) {
+                for (int ow = 0; ow < outWidth; ow++, row += patch) {
+                    for (int kh = 0; kh < kernel; kh++) {
+                        int ih = oh * stride - padding + kh;
+                        if (ih < 0 || ih >= height) continue;
+                        for (int kw = 0; kw < kernel; kw++) {
+                            int iw = ow * stride - padding + kw;
+                            if (iw < 0 || iw >= width) continue;
+                            int from = row + (kh * kernel + kw) * channels;
+                            int to = image + (ih * width + iw) * channels;
+                            for (int c = 0; c < channels; c++) {
+                                out[to + c] += columns[from + c];
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
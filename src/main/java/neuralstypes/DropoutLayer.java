@@ -0,0 +1,152 @@
+package neuralstypes;
+
+import java.util.Random;
+
+import utility.CounterRandom;
+import utility.HalfPrecision;
+import utility.Matrix;
+import utility.Parallelism;
+import utility.SparseMatrix;
+import utility.functions.FunctionNames;
+
+/**
+ * Inverted dropout: while training, every value is kept with probability
+ * 1 - rate and divided by 1 - rate, or set to 0. Outside of training the
+ * inputs go through unchanged, and the layer is left out of frozen and
+ * quantised networks.
+ *
+ * The mask is drawn from a counter-based generator (see CounterRandom): a
+ * value is kept if the hash of (seed, step, position in the batch) is above
+ * a threshold, 32 bits per value. The backward pass hashes the same counters
+ * again instead of storing the mask, and replicas draw from their own seed.
+ */
+public class DropoutLayer extends Layer {
+
+    private final int size;
+    private final float rate;
+    private final long threshold;   // Values whose 32 random bits are below it are dropped
+    private final float keepScale;  // 1 / (1 - rate)
+    private final long seed;
+
+    private long step;              // Training forward passes so far (the counter of the masks)
+    private int replicaCount;
+    private boolean training;
+
+    // Rows of the mask, built once: from maskSource to maskTarget (the outputs, or the previous deltas)
+    private final Parallelism.RangeTask maskRange = this::applyMask;
+    private Matrix maskSource, maskTarget;
+
+    public DropoutLayer(int size, float rate, Random randomGenerator) {
+        // No weights: only the seed of the masks is drawn from the random generator
+        super(0, 0, size, FunctionNames.IDENTITY.getName(), null);
+        if (!(rate >= 0.0f && rate < 1.0f)) {
+            throw new IllegalArgumentException("The dropout rate must be in [0, 1).");
+        }
+        this.size = size;
+        this.rate = rate;
+        this.threshold = (long) Math.ceil(rate * 4294967296.0); // rate * 2^32
+        this.keepScale = 1.0f / (1.0f - rate);
+        this.seed = randomGenerator.nextLong();
+    }
+
+    private DropoutLayer(DropoutLayer source) {
+        super(source);
+        this.size = source.size;
+        this.rate = source.rate;
+        this.threshold = source.threshold;
+        this.keepScale = source.keepScale;
+        this.seed = CounterRandom.mix(source.seed + (++source.replicaCount));
+    }
+
+    @Override
+    public Layer replicate() {
+        return new DropoutLayer(this);
+    }
+
+    @Override
+    public void setTraining(boolean training) {
+        this.training = training;
+    }
+
+    // Nothing to compute at inference (see NeuralNetwork.freeze)
+    @Override
+    public FrozenLayer freeze() {
+        return null;
+    }
+
+    @Override
+    public QuantizedLayer quantize() {
+        return null;
+    }
+
+    @Override
+    public void useCompactActivations(HalfPrecision precision, SharedWorkspace workspace, int index,
+                                      Layer inputLayer, boolean keepOutputs) {
+        if (precision != null) {
+            throw new UnsupportedOperationException("Mixed precision supports dense layers only.");
+        }
+        super.useCompactActivations(null, workspace, index, inputLayer, keepOutputs);
+    }
+
+    // ================================================================
+    // Forward pass (batch)
+    // ================================================================
+    @Override
+    public Matrix forward(Matrix inputs) {
+        if (inputs.getColumns() != size) {
+            throw new IllegalArgumentException("Expected " + size + " inputs, got " + inputs.getColumns());
+        }
+        if (!training) return inputs; // Identity
+
+        prepareWorkspace(inputs.getRows());
+        step++;
+        maskSource = inputs;
+        maskTarget = getOutputs();
+        Parallelism.forEachRange(inputs.getRows(), 8, maskRange);
+        return maskTarget;
+    }
+
+    @Override
+    public Matrix forward(SparseMatrix inputs) {
+        throw new UnsupportedOperationException("Sparse inputs are supported by dense layers only.");
+    }
+
+    // target = source * mask / (1 - rate) for the rows [first, end), with the mask of the current step
+    private void applyMask(int first, int end) {
+        Matrix source = maskSource, target = maskTarget;
+        float[] in = source.getData(), out = target.getData();
+        long base = step << 32; // Counter of the first value of the batch
+
+        for (int b = first; b < end; b++) {
+            int row = source.rowOffset(b), targetRow = target.rowOffset(b);
+            long position = (long) b * size;
+            for (int j = 0; j < size; j++) {
+                long bits = CounterRandom.bits(seed, base + position + j) >>> 32;
+                out[targetRow + j] = (bits >= threshold) ? in[row + j] * keepScale : 0.0f;
+            }
+        }
+    }
+
+    // ================================================================
+    // Backward pass
+    // ================================================================
+
+    @Override
+    protected void accumulateGradients() {
+        // No parameters
+    }
+
+    // Deltas through the same mask, then times the derivative of the previous activation
+    @Override
+    protected void propagateDeltas(Layer previous) {
+        maskSource = getDeltas();
+        maskTarget = previous.getDeltas();
+        Parallelism.forEachRange(maskSource.getRows(), 8, maskRange);
+        previous.applyActivationDerivative();
+    }
+
+    // --- GETTERS ---
+    public float getRate() {
+        return rate;
+    }
+}
@@ -0,0 +1,37 @@
+package neuralstypes;
+
+import utility.Matrix;
+import utility.Parallelism;
+import utility.functions.Function;
+
+/**
+ * Read-only copy of a {@link BatchNormLayer} that could not be folded into
+ * the layer before it: outputs = f(inputs * scale + shift), with the running
+ * statistics in the scales and shifts.
+ */
+public class FrozenBatchNormLayer extends FrozenLayer {
+
+    private final float[] scales;
+
+    FrozenBatchNormLayer(float[] scales, float[] shifts, Function activation) {
+        super(scales.length, scales.length, null, shifts, activation); // Shifts as the biases
+        this.scales = scales;
+    }
+
+    @Override
+    public void forward(Matrix inputs, Matrix outputs) {
+        int features = scales.length;
+        float[] shifts = getBiases();
+        Function activation = getActivationFunction();
+        Parallelism.forEachRange(inputs.getRows(), 8, (first, end) -> {
+            float[] in = inputs.getData(), out = outputs.getData();
+            for (int b = first; b < end; b++) {
+                int row = inputs.rowOffset(b), outRow = outputs.rowOffset(b);
+                for (int j = 0; j < features; j++) {
+                    out[outRow + j] = in[row + j] * scales[j] + shifts[j];
+                }
+                activation.evaluateInPlace(out, outRow, features);
+            }
+        });
+    }
+}
@@ -0,0 +1,55 @@
+package neuralstypes;
+
+import utility.Matrix;
+import utility.MatrixMath;
+import utility.Parallelism;
+import utility.functions.Function;
+
+/**
+ * Read-only copy of a {@link Conv2DLayer}, for inference. The patches are
+ * copied into a columns buffer of the calling thread, so several threads
+ * can use the layer at the same time.
+ */
+public class FrozenConv2DLayer extends FrozenLayer {
+
+    private final ConvGeometry geometry;
+
+    // Columns of the calling thread, shared by every frozen convolution (a layer is done with
+    // them before the next one starts)
+    private static final ThreadLocal<float[]> COLUMN_BUFFERS = ThreadLocal.withInitial(() -> new float[0]);
+
+    FrozenConv2DLayer(ConvGeometry geometry, int filters, Matrix weightsTransposed, float[] biases,
+                      Function activation) {
+        super(geometry.inputWidth(), filters, weightsTransposed, biases, activation);
+        this.geometry = geometry;
+    }
+
+    @Override
+    public int getOutputSize() {
+        return geometry.positions() * getNeuronCount();
+    }
+
+    // outputs [Batch x Positions*Filters] = f(Columns [Batch*Positions x K*K*C] * W^T + b)
+    @Override
+    public void forward(Matrix inputs, Matrix outputs) {
+        if (outputs.getStride() != getOutputSize()) {
+            throw new IllegalArgumentException("The outputs of a convolution must be contiguous rows.");
+        }
+        int batchSize = inputs.getRows();
+        int rows = batchSize * geometry.positions();
+        int patch = geometry.patchSize();
+
+        float[] buffer = COLUMN_BUFFERS.get();
+        if (buffer.length < rows * patch) {
+            buffer = new float[rows * patch];
+            COLUMN_BUFFERS.set(buffer);
+        }
+        float[] columns = buffer;
+        Parallelism.forEachRange(batchSize, 4, (first, end) -> geometry.im2col(inputs, columns, first, end));
+
+        int filters = getNeuronCount();
+        Matrix outputRows = new Matrix(outputs.getData(), outputs.getOffset(), rows, filters, filters);
+        MatrixMath.multiplyAddBiasActivate(new Matrix(columns, 0, rows, patch, patch), getTransposedWeights(),
+                getBiases(), getActivationFunction(), outputRows);
+    }
+}
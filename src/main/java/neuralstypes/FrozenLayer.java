@@ -0,0 +1,61 @@
+package neuralstypes;
+
+import utility.Matrix;
+import utility.MatrixMath;
+import utility.functions.Function;
+
+/**
+ * Read-only copy of the parameters of a {@link Layer}, for inference.
+ *
+ * It keeps no batch state: the caller gives the buffer that receives the
+ * outputs, so one frozen layer can be used by any number of threads at the
+ * same time. The computation is the same as {@link Layer#forward(Matrix)}.
+ */
+public class FrozenLayer {
+
+    private final int inputSize;
+    private final int neuronCount;
+    private final Matrix weightsTransposed;  // [Input][Neuron]
+    private final float[] biases;
+    private final Function activationFunction;
+
+    FrozenLayer(int inputSize, int neuronCount, Matrix weightsTransposed, float[] biases, Function activation) {
+        this.inputSize = inputSize;
+        this.neuronCount = neuronCount;
+        this.weightsTransposed = weightsTransposed;
+        this.biases = biases;
+        this.activationFunction = activation;
+    }
+
+    // Values per sample in the inputs
+    public int getInputSize() {
+        return inputSize;
+    }
+
+    public int getNeuronCount() {
+        return neuronCount;
+    }
+
+    // Values per sample in the outputs (one per neuron for a dense layer)
+    public int getOutputSize() {
+        return neuronCount;
+    }
+
+    protected Matrix getTransposedWeights() {
+        return weightsTransposed;
+    }
+
+    protected float[] getBiases() {
+        return biases;
+    }
+
+    protected Function getActivationFunction() {
+        return activationFunction;
+    }
+
+    // outputs [Batch x Neurons] = f(inputs [Batch x In] * W^T + b)
+    // (called by several threads at once: nothing may be stored in the layer)
+    public void forward(Matrix inputs, Matrix outputs) {
+        MatrixMath.multiplyAddBiasActivate(inputs, weightsTransposed, biases, activationFunction, outputs);
+    }
+}
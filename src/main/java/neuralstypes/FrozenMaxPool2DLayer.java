@@ -0,0 +1,32 @@
+package neuralstypes;
+
+import utility.Matrix;
+import utility.Parallelism;
+
+/**
+ * Read-only copy of a {@link MaxPool2DLayer}, for inference (it keeps no
+ * state, so several threads can use it at the same time).
+ */
+public class FrozenMaxPool2DLayer extends FrozenLayer {
+
+    private final int height, width, channels, size;
+
+    FrozenMaxPool2DLayer(int height, int width, int channels, int size) {
+        super(height * width * channels, 0, null, new float[0], null); // No parameters
+        this.height = height;
+        this.width = width;
+        this.channels = channels;
+        this.size = size;
+    }
+
+    @Override
+    public int getOutputSize() {
+        return (height / size) * (width / size) * channels;
+    }
+
+    @Override
+    public void forward(Matrix inputs, Matrix outputs) {
+        Parallelism.forEachRange(inputs.getRows(), 8, (first, end) ->
+                MaxPool2DLayer.pool(height, width, channels, size, inputs, outputs, null, first, end));
+    }
+}
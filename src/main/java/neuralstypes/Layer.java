@@ -1,141 +1,367 @@
 package neuralstypes;
 
+import java.util.Arrays;
 import java.util.Random;
 
+import utility.HalfPrecision;
+import utility.Matrix;
 import utility.MatrixMath;
+import utility.SparseMatrix;
 import utility.functions.Function;
 import utility.functions.FunctionNames;
 import utility.functions.Softmax;
+import utility.optimizers.MomentumOptimizer;
+import utility.optimizers.Optimizer;
+import utility.optimizers.OptimizerState;
 
 public class Layer {
 
     private final int inputSize;
     private final int neuronCount;
+    private final int outputSize;           // Values per sample in the outputs (neuronCount for a dense layer)
 
     // --- Parameters ---
-    private final float[][] weights;            // [Neuron][Input]
-    private final float[][] weightsTransposed;  // [Input][Neuron] (Cached for forward pass)
-    private final float[] biases;               // [Neuron]
+    private final Matrix weights;            // [Neuron][Input]
+    private final Matrix weightsTransposed;  // [Input][Neuron] (Cached for forward pass)
+    private final float[] biases;            // [Neuron]
 
-    // --- Momentum ---
-    private final float[][] weightVelocities;
-    private final float[] biasVelocities;
+    // --- Optimizer and its per-parameter state (velocities, moments...) ---
+    private Optimizer optimizer;
+    private OptimizerState weightState;
+    private OptimizerState biasState;
 
 
     // --- Gradients for batch accumulation ---
-    private final float[][] dBiases;          // [neuron]
-    private final float[][] dWeights;       // [neuron][input]
-
-
-    // --- Batch Cache (Now 2D Arrays) ---
-    private float[][] batchInputs;         // [BatchSize][InputSize]
-    private float[][] batchPreActivations; // [BatchSize][NeuronCount]
-    private float[][] batchOutputs;        // [BatchSize][NeuronCount]
-    private float[][] batchDeltas;         // [BatchSize][NeuronCount]
+    private final float[] dBiases;          // [neuron]
+    private final Matrix dWeights;          // [neuron][input]
+    private int gradientSamples;            // Rows accumulated in dBiases/dWeights
+
+
+    // --- Batch Cache (Flat row-major matrices) ---
+    private Matrix batchInputs;         // [BatchSize][InputSize]
+    private SparseMatrix sparseInputs;  // Instead of batchInputs after forward(SparseMatrix)
+    private float[] sparseGradients;    // [Input][Neuron] scratch of the sparse weight gradients (zeros)
+    private MatrixMath.SparseBiasActivation sparseForward;      // Tasks of the sparse products
+    private MatrixMath.SparseTransposedProduct sparseGradientTask; // (built on first use)
+    private Matrix batchOutputs;        // [BatchSize][OutputSize] (pre-activations, activated in place)
+    private Matrix batchDeltas;         // [BatchSize][OutputSize]
+
+    // --- Workspace (reused by every batch, grown when a bigger batch arrives) ---
+    private int workspaceCapacity;      // Max batch size the buffers can hold
+    private float[] outputBuffer;
+    private float[] deltaBuffer;
+
+    // --- Mixed precision (see useCompactActivations) ---
+    private HalfPrecision activationPrecision;  // null: float32 buffers owned by the layer
+    private SharedWorkspace sharedWorkspace;
+    private int parity;                         // Shared buffer used by this layer
+    private Layer inputLayer;                   // Layer that computed the inputs (null for the first one)
+    private short[] outputStore;                // [BatchSize][NeuronCount] 16-bit outputs, null for the output layer
 
     private final Function activationFunction;
 
+    // Epilogues of the fused GEMMs, built once (see MatrixMath): bias + activation of the forward
+    // pass, and the derivative of the activation applied by the next layer in the backward pass
+    private final MatrixMath.BiasActivation biasActivation;
+    private final MatrixMath.ActivationDerivative activationDerivative;
+
     public Layer(int inputSize, int neuronCount, String activationName, Random randomGenerator) {
+        this(inputSize, neuronCount, neuronCount, activationName, randomGenerator);
+    }
+
+    // For layers whose outputs are not one value per neuron (e.g. Conv2DLayer: one per
+    // neuron and position). The weights are still [Neuron][Input].
+    protected Layer(int inputSize, int neuronCount, int outputSize, String activationName, Random randomGenerator) {
         this.inputSize = inputSize;
         this.neuronCount = neuronCount;
+        this.outputSize = outputSize;
 
         Function found = FunctionNames.getFunctionByName(activationName);
         this.activationFunction = (found != null) ? found : FunctionNames.RELU.getFunction();
 
-        this.weights = new float[neuronCount][inputSize];
-        this.weightsTransposed = new float[inputSize][neuronCount];
+        this.weights = new Matrix(neuronCount, inputSize);
+        this.weightsTransposed = new Matrix(inputSize, neuronCount);
         this.biases = new float[neuronCount];
-        this.weightVelocities = new float[neuronCount][inputSize];
-        this.biasVelocities = new float[neuronCount];
+        setOptimizer(new MomentumOptimizer(0.9f)); // Default, see NeuralNetwork.setOptimizer
 
-        this.dBiases = new float[neuronCount][1];
-        this.dWeights = new float[neuronCount][inputSize];
+        this.dBiases = new float[neuronCount];
+        this.dWeights = new Matrix(neuronCount, inputSize);
+        this.biasActivation = new MatrixMath.BiasActivation(biases, activationFunction);
+        this.activationDerivative = new MatrixMath.ActivationDerivative(activationFunction);
 
 
-        // Xavier init
+        // Xavier init (subclasses that set their own weights pass no generator)
+        if (randomGenerator == null) return;
+        float[] w = weights.getData();
+        float[] wT = weightsTransposed.getData();
         float limit = (float) (1.0 / Math.sqrt(inputSize));
         for (int i = 0; i < neuronCount; i++) {
             for (int j = 0; j < inputSize; j++) {
-                float w = (randomGenerator.nextFloat() * 2 - 1) * limit;
-                weights[i][j] = w;
-                weightsTransposed[j][i] = w;
+                float value = (randomGenerator.nextFloat() * 2 - 1) * limit;
+                w[i * inputSize + j] = value;
+                wT[j * neuronCount + i] = value;
             }
             biases[i] = 0.0f;
         }
     }
 
+    // Replica constructor: shares the parameters and velocities of the source layer,
+    // but has its own gradients and batch buffers
+    protected Layer(Layer source) {
+        this.inputSize = source.inputSize;
+        this.neuronCount = source.neuronCount;
+        this.outputSize = source.outputSize;
+        this.activationFunction = source.activationFunction;
+
+        this.weights = source.weights;
+        this.weightsTransposed = source.weightsTransposed;
+        this.biases = source.biases;
+        this.optimizer = source.optimizer;
+        this.weightState = source.weightState;
+        this.biasState = source.biasState;
+
+        this.dBiases = new float[neuronCount];
+        this.dWeights = new Matrix(neuronCount, inputSize);
+        this.biasActivation = source.biasActivation; // Immutable
+        this.activationDerivative = new MatrixMath.ActivationDerivative(activationFunction);
+    }
+
+    // Creates a layer that reads and updates the same parameters as this one.
+    // Replicas can run forward/backward on different threads at the same time.
+    public Layer replicate() {
+        return new Layer(this);
+    }
+
+
+    // Copies the current parameters into a read-only layer for inference
+    public FrozenLayer freeze() {
+        Matrix weightsCopy = new Matrix(inputSize, neuronCount);
+        System.arraycopy(weightsTransposed.getData(), 0, weightsCopy.getData(), 0, inputSize * neuronCount);
+        return new FrozenLayer(inputSize, neuronCount, weightsCopy, biases.clone(), activationFunction);
+    }
+
+    // Int8 copy of the current parameters for inference (see QuantizedLayer)
+    public QuantizedLayer quantize() {
+        return new QuantizedLayer(inputSize, neuronCount, weights, biases.clone(), activationFunction);
+    }
+
+
+    // Called by NeuralNetwork around the forward and backward pass of a training step. Only the
+    // layers that behave differently while training (BatchNormLayer, DropoutLayer) override it.
+    public void setTraining(boolean training) {
+    }
+
+    // Values learned without gradients that are saved with the parameters (e.g. the running
+    // statistics of BatchNormLayer), null if the layer has none
+    public float[] getRunningStatistics() {
+        return null;
+    }
+
 
     // ================================================================
     // Reset accumulated gradients before each batch
     // ================================================================
     public void resetGradients() {
+        Arrays.fill(dBiases, 0f);
+        dWeights.fill(0f);
+        gradientSamples = 0;
+    }
+
+    // False if a gradient is infinite or NaN (e.g. after a FLOAT16 overflow)
+    public boolean hasFiniteGradients() {
+        float check = 0.0f; // Stays 0 unless a value is infinite or NaN (inf * 0 = NaN)
+        float[] dW = dWeights.getData();
+        for (int i = 0; i < dW.length; i++) {
+            check += dW[i] * 0.0f;
+        }
         for (int i = 0; i < neuronCount; i++) {
-            dBiases[i][0] = 0f;
-            for (int j = 0; j < inputSize; j++) {
-                dWeights[i][j] = 0f;
+            check += dBiases[i] * 0.0f;
+        }
+        return check == 0.0f;
+    }
+
+    // Sum of the squared accumulated gradients (weights and biases)
+    public double getGradientSquaredSum() {
+        double sum = 0.0;
+        float[] dW = dWeights.getData();
+        for (int i = 0; i < dW.length; i++) {
+            sum += (double) dW[i] * dW[i];
+        }
+        for (int i = 0; i < neuronCount; i++) {
+            sum += (double) dBiases[i] * dBiases[i];
+        }
+        return sum;
+    }
+
+    // Rows accumulated since the last reset
+    public int getGradientSamples() {
+        return gradientSamples;
+    }
+
+    // Adds the accumulated gradients of another layer with the same shape (gradient all-reduce)
+    public void addGradients(Layer other) {
+        float[] dW = dWeights.getData();
+        float[] otherDW = other.dWeights.getData();
+        for (int i = 0; i < dW.length; i++) {
+            dW[i] += otherDW[i];
+        }
+        for (int i = 0; i < neuronCount; i++) {
+            dBiases[i] += other.dBiases[i];
+        }
+        gradientSamples += other.gradientSamples;
+    }
+
+
+    // ================================================================
+    // Workspace management
+    // ================================================================
+
+    // Preallocates the batch buffers for batches of up to maxBatchSize rows
+    public void reserveWorkspace(int maxBatchSize) {
+        if (maxBatchSize <= workspaceCapacity) return;
+
+        this.workspaceCapacity = maxBatchSize;
+        if (activationPrecision == null) {
+            this.outputBuffer = new float[maxBatchSize * outputSize];
+            this.deltaBuffer = new float[maxBatchSize * outputSize];
+        } else {
+            sharedWorkspace.buffer(parity, maxBatchSize * outputSize);
+            if (outputStore != null) {
+                this.outputStore = new short[maxBatchSize * outputSize];
+            } else {
+                this.deltaBuffer = new float[maxBatchSize * outputSize]; // Output layer: deltas beside the outputs
             }
         }
+        this.batchOutputs = null;
+        this.batchDeltas = null;
+    }
+
+    // Makes the cached views match the batch size (only allocates when the size changes)
+    protected void prepareWorkspace(int batchSize) {
+        reserveWorkspace(batchSize);
+
+        float[] outputs = outputBuffer, deltas = deltaBuffer;
+        if (activationPrecision != null) {
+            // Another layer of the same parity may have grown the shared buffer. Hidden layers
+            // write their deltas over their outputs (the backward pass reads the 16-bit copy).
+            outputs = sharedWorkspace.buffer(parity, batchSize * outputSize);
+            if (outputStore != null) deltas = outputs;
+        }
+
+        if (batchOutputs == null || batchOutputs.getRows() != batchSize
+                || batchOutputs.getData() != outputs || batchDeltas.getData() != deltas) {
+            this.batchOutputs = new Matrix(outputs, 0, batchSize, outputSize, outputSize);
+            this.batchDeltas = new Matrix(deltas, 0, batchSize, outputSize, outputSize);
+        }
+    }
+
+    // Mixed precision: outputs and deltas are computed in a float buffer shared with the other
+    // layers (`index` = position in the network, inputLayer = the previous layer or null), and
+    // a hidden layer keeps its outputs for the backward pass in 16 bits (keepOutputs: false for
+    // the output layer). A null precision goes back to float32 buffers owned by the layer.
+    public void useCompactActivations(HalfPrecision precision, SharedWorkspace workspace, int index,
+                                      Layer inputLayer, boolean keepOutputs) {
+        this.activationPrecision = precision;
+        this.sharedWorkspace = (precision != null) ? workspace : null;
+        this.parity = index % 2;
+        this.inputLayer = (precision != null) ? inputLayer : null;
+        this.outputStore = (precision != null && keepOutputs) ? new short[0] : null;
+
+        // Buffers allocated again for the new mode by the next batch
+        this.outputBuffer = null;
+        this.deltaBuffer = null;
+        this.workspaceCapacity = 0;
+        this.batchOutputs = null;
+        this.batchDeltas = null;
+    }
+
+    // Mixed precision: decodes the 16-bit outputs of the last forward pass back into the
+    // float buffer, where the next layer reads them as its inputs
+    private void restoreOutputs() {
+        if (outputStore == null) return;
+        activationPrecision.decode(outputStore, 0, batchOutputs.getData(), 0, batchOutputs.getRows() * outputSize);
+    }
+
+    // Bytes of the batch buffers owned by the layer (the shared ones are counted by SharedWorkspace)
+    public long getActivationBytes() {
+        long bytes = 0;
+        if (outputBuffer != null) bytes += 4L * outputBuffer.length;
+        if (deltaBuffer != null) bytes += 4L * deltaBuffer.length;
+        if (outputStore != null) bytes += 2L * outputStore.length;
+        return bytes;
     }
 
 
     // ================================================================
     // Forward pass (batch)
     // ================================================================
-    public float[][] forward(float[][] inputs) {
+    public Matrix forward(Matrix inputs) {
 
-        int batchSize = inputs.length;
+        int batchSize = inputs.getRows();
         this.batchInputs = inputs;
+        this.sparseInputs = null;
+        prepareWorkspace(batchSize);
 
-        // 1. Z = Inputs * W^T
+        // Outputs = f(Inputs * W^T + b) in one pass (fused GEMM, bias and activation)
         // Inputs: [Batch x In], W^T: [In x Neurons] -> Result: [Batch x Neurons]
-        this.batchPreActivations = MatrixMath.multiply(inputs, this.weightsTransposed);
-
-        // 2. Add Biases (Broadcast to every row in batch)
-        MatrixMath.addBiasToBatch(this.batchPreActivations, this.biases);
-
-        // 3. Apply Activation
-
-        this.batchOutputs = new float[batchSize][neuronCount];
+        // (the pre-activations are not kept, the backward pass uses the outputs)
+        MatrixMath.multiplyAddBiasActivate(inputs, this.weightsTransposed, biasActivation, this.batchOutputs);
 
-        for (int i = 0; i < batchSize; i++) {
-            // Apply activation to each vector in the batch
-            this.batchOutputs[i] = activationFunction.evaluate(batchPreActivations[i]);
+        // Mixed precision: 16-bit copy for the backward pass (the float buffer will be reused)
+        if (outputStore != null) {
+            activationPrecision.encode(batchOutputs.getData(), 0, outputStore, 0, batchSize * outputSize);
         }
 
         return this.batchOutputs;
     }
 
-    // --- BACKPROPAGATION: CALCULATE DELTAS (BATCH) ---
+    // Forward pass of a first layer on sparse inputs (see SparseMatrix): only the stored inputs
+    // are multiplied, here and when the weight gradients are accumulated
+    public Matrix forward(SparseMatrix inputs) {
+        if (inputs.getColumns() != inputSize) {
+            throw new IllegalArgumentException("Expected " + inputSize + " inputs, got " + inputs.getColumns());
+        }
+        int batchSize = inputs.getRows();
+        this.batchInputs = null;
+        this.sparseInputs = inputs;
+        prepareWorkspace(batchSize);
 
-    public void computeOutputDeltas(float[][] targets) {
+        // Outputs = f(Inputs * W^T + b), one row of W^T added per stored input
+        if (sparseForward == null) sparseForward = new MatrixMath.SparseBiasActivation(biases, activationFunction);
+        MatrixMath.multiplyAddBiasActivate(inputs, this.weightsTransposed, sparseForward, this.batchOutputs);
 
-        int batch = batchOutputs.length;
-        batchDeltas = new float[batch][neuronCount];
+        if (outputStore != null) {
+            activationPrecision.encode(batchOutputs.getData(), 0, outputStore, 0, batchSize * outputSize);
+        }
+        return this.batchOutputs;
+    }
 
-        for (int b = 0; b < batch; b++) {
-            for (int n = 0; n < neuronCount; n++) {
+    // --- BACKPROPAGATION: CALCULATE DELTAS (BATCH) ---
 
-                float out = batchOutputs[b][n];
+    public void computeOutputDeltas(Matrix targets) {
 
-                // For softmax cross entropy: delta = out - target
-                float delta;
-                if (activationFunction instanceof Softmax) {
-                    delta = out - targets[b][n];
-                } else {
-                    delta = (out - targets[b][n]) * activationFunction.derivative(out);
-                }
+        int batch = batchOutputs.getRows();
 
-                batchDeltas[b][n] = delta;
+        float[] outputs = batchOutputs.getData();
+        float[] target = targets.getData();
+        float[] deltas = batchDeltas.getData();
+        boolean softmax = activationFunction instanceof Softmax;
 
-                // Accumulate bias gradient
-                dBiases[n][0] += delta;
+        for (int b = 0; b < batch; b++) {
+            int outRow = batchOutputs.rowOffset(b);
+            int targetRow = targets.rowOffset(b);
+            int deltaRow = batchDeltas.rowOffset(b);
 
-                // Accumulate weight gradient
-                for (int j = 0; j < inputSize; j++) {
-                    dWeights[n][j] += batchInputs[b][j] * delta;
-                }
+            // delta = out - target (for softmax cross entropy), times f'(out) otherwise
+            for (int n = 0; n < outputSize; n++) {
+                deltas[deltaRow + n] = outputs[outRow + n] - target[targetRow + n];
+            }
+            if (!softmax) {
+                activationFunction.multiplyByDerivative(outputs, outRow, deltas, deltaRow, outputSize);
             }
         }
+
+        accumulateGradients();
     }
 
 
@@ -144,81 +370,172 @@ public class Layer {
 // ================================================================
     public void computeHiddenDeltas(Layer nextLayer) {
 
-        int batch = batchOutputs.length;
-        batchDeltas = new float[batch][this.neuronCount];
-        // Next Deltas: [Batch x NextNeurons]
-        // Next Weights: [NextNeurons x CurrentNeurons]
-        // Result: [Batch x CurrentNeurons]
-        float[][] nextDeltas = nextLayer.batchDeltas;
-        float[][] nextWeights = nextLayer.weights;
-
-        for (int b = 0; b < batch; b++) {
-            for (int i = 0; i < neuronCount; i++) {
+        nextLayer.propagateDeltas(this);
 
-                float sum = 0;
+        // Mixed precision: the inputs come back from the 16-bit copy of the previous layer
+        if (outputStore != null && inputLayer != null) inputLayer.restoreOutputs();
 
-                for (int k = 0; k < nextLayer.neuronCount; k++) {
-                    sum += nextDeltas[b][k] * nextWeights[k][i];
-                }
-
-                float activated = batchOutputs[b][i];
-                float delta = sum * activationFunction.derivative(activated);
+        accumulateGradients();
+    }
 
-                batchDeltas[b][i] = delta;
+    // Deltas of the layer below (the one that computed the inputs of this layer):
+    // the error propagated through the weights, times the derivative of its activation
+    protected void propagateDeltas(Layer previous) {
+
+        // Propagated error times the derivative of the activation, in one pass
+        // Deltas: [Batch x Neurons]
+        // Weights: [Neurons x PreviousNeurons]
+        // Result: [Batch x PreviousNeurons]
+        if (previous.outputStore == null) {
+            MatrixMath.multiplyActivationDerivative(batchDeltas, weights, previous.batchOutputs,
+                    previous.activationDerivative, previous.batchDeltas);
+        } else {
+            // Mixed precision: derivative taken from the 16-bit outputs (the deltas replace the float ones)
+            MatrixMath.multiplyActivationDerivative(batchDeltas, weights, previous.outputStore,
+                    previous.activationPrecision, previous.activationDerivative, previous.batchDeltas);
+        }
+    }
 
-                dBiases[i][0] += delta;
+    // Deltas *= f'(outputs), after a subclass has written the propagated error into the deltas
+    protected void applyActivationDerivative() {
+        float[] outputs = batchOutputs.getData();
+        float[] deltas = batchDeltas.getData();
+        for (int b = 0; b < batchOutputs.getRows(); b++) {
+            activationFunction.multiplyByDerivative(outputs, batchOutputs.rowOffset(b),
+                    deltas, batchDeltas.rowOffset(b), outputSize);
+        }
+    }
 
-                for (int j = 0; j < inputSize; j++) {
-                    dWeights[i][j] += batchInputs[b][j] * delta;
-                }
+    // ================================================================
+    // Gradients of the batch from the deltas
+    // ================================================================
+    protected void accumulateGradients() {
+        // dB += column sums of the deltas
+        MatrixMath.addColumnSums(batchDeltas, dBiases);
+
+        // dW += Deltas^T * Inputs
+        // Deltas^T: [Neurons x Batch], Inputs: [Batch x In] -> [Neurons x In]
+        // (runs on the parallel GEMM, split by neurons)
+        if (sparseInputs == null) {
+            MatrixMath.addTransposedProduct(batchDeltas, batchInputs, dWeights);
+        } else {
+            // Sparse inputs: only the stored inputs contribute
+            if (sparseGradients == null) {
+                sparseGradients = new float[inputSize * neuronCount];
+                sparseGradientTask = new MatrixMath.SparseTransposedProduct();
             }
+            MatrixMath.addTransposedProduct(batchDeltas, sparseInputs, dWeights, sparseGradients,
+                    sparseGradientTask);
         }
 
-
+        gradientSamples += batchDeltas.getRows();
     }
 
-    // --- UPDATE WEIGHTS (AVERAGED OVER BATCH) ---
+    // ================================================================
+    // Optimizer
+    // ================================================================
 
-    public void updateWeights(float learningRate, float momentum) {
-        int batchSize = batchInputs.length;
-        float scale = learningRate / batchSize;
+    // Replaces the update rule, with a fresh state (replicas made before keep the old one)
+    public void setOptimizer(Optimizer optimizer) {
+        this.optimizer = optimizer;
+        this.weightState = optimizer.createState(neuronCount * inputSize, true);
+        this.biasState = optimizer.createState(neuronCount, false);
+    }
 
-        for (int i = 0; i < neuronCount; i++) {
+    // --- UPDATE WEIGHTS (AVERAGED OVER BATCH) ---
 
-            // --- Update bias ---
-            float db = dBiases[i][0] * scale;
-            biasVelocities[i] = momentum * biasVelocities[i] + db;
-            biases[i] -= biasVelocities[i];
+    public void updateWeights(float learningRate) {
+        if (gradientSamples == 0) return; // Nothing accumulated
 
-            // Update Weights using calculated matrix gradients
-            for (int j = 0; j < inputSize; j++) {
+        // One pass over each flat buffer (weights are [Neuron][Input], like the gradients)
+        optimizer.update(biases, dBiases, biasState, learningRate, gradientSamples);
+        optimizer.update(weights.getData(), dWeights.getData(), weightState, learningRate, gradientSamples);
 
-                float grad = dWeights[i][j] * scale;
+        // Refresh the transposed copy used by the forward pass
+        syncTransposedWeights();
+    }
 
-                float velocity = momentum * weightVelocities[i][j] + grad;
-                weightVelocities[i][j] = velocity;
 
-                weights[i][j] -= velocity;
-                weightsTransposed[j][i] = weights[i][j];
+    // Rebuilds the transposed copy after the weights were written directly (e.g. checkpoint load)
+    public void syncTransposedWeights() {
+        float[] w = weights.getData();
+        float[] wT = weightsTransposed.getData();
+        for (int i = 0; i < neuronCount; i++) {
+            int row = i * inputSize;
+            for (int j = 0; j < inputSize; j++) {
+                wT[j * neuronCount + i] = w[row + j];
             }
         }
     }
 
 
     // --- GETTERS ---
-    public float[][] getWeights() {
+    public int getInputSize() {
+        return inputSize;
+    }
+
+    public int getNeuronCount() {
+        return neuronCount;
+    }
+
+    public int getOutputSize() {
+        return outputSize;
+    }
+
+    public String getActivationName() {
+        return FunctionNames.getNameOf(activationFunction);
+    }
+
+    public Matrix getWeights() {
         return weights;
     }
 
-    public float[][] getTransposedWeights() {
+    public Matrix getTransposedWeights() {
         return weightsTransposed;
     }
 
-    public float[][] getDeltas() {
+    public float[] getBiases() {
+        return biases;
+    }
+
+    public Optimizer getOptimizer() {
+        return optimizer;
+    }
+
+    public OptimizerState getWeightState() {
+        return weightState;
+    }
+
+    public OptimizerState getBiasState() {
+        return biasState;
+    }
+
+    public Matrix getDeltas() {
         return batchDeltas;
     }
 
-    public float[][] getOutputs() {
+    public Matrix getOutputs() {
         return batchOutputs;
     }
-}
\ No newline at end of file
+
+    // --- For subclasses ---
+    protected Function getActivationFunction() {
+        return activationFunction;
+    }
+
+    protected MatrixMath.BiasActivation getBiasActivation() {
+        return biasActivation;
+    }
+
+    protected Matrix getWeightGradients() {
+        return dWeights;
+    }
+
+    protected float[] getBiasGradients() {
+        return dBiases;
+    }
+
+    protected void addGradientSamples(int rows) {
+        gradientSamples += rows;
+    }
+}
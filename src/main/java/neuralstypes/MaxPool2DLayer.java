@@ -0,0 +1,197 @@
+package neuralstypes;
+
+import java.util.Arrays;
+
+import utility.HalfPrecision;
+import utility.Matrix;
+import utility.Parallelism;
+import utility.SparseMatrix;
+import utility.functions.FunctionNames;
+
+/**
+ * Max pooling over non-overlapping size x size windows of images in HWC
+ * order (see {@link Conv2DLayer}), channel by channel. Rows and columns that
+ * do not fill a whole window are dropped.
+ *
+ * The layer has no parameters. The forward pass remembers where every
+ * maximum came from, and the backward pass sends each delta back to that
+ * input only.
+ */
+public class MaxPool2DLayer extends Layer {
+
+    private final int height, width, channels, size;
+    private final int outHeight, outWidth;
+
+    private int[] maxIndices = new int[0]; // [Batch][Outputs] position of each maximum in its input image
+
+    public MaxPool2DLayer(int height, int width, int channels, int size) {
+        // No weights: nothing is drawn from the random generator
+        super(0, 0, pooledSize(height, width, channels, size), FunctionNames.IDENTITY.getName(), null);
+        this.height = height;
+        this.width = width;
+        this.channels = channels;
+        this.size = size;
+        this.outHeight = height / size;
+        this.outWidth = width / size;
+    }
+
+    // Outputs per image, after checking the shape
+    private static int pooledSize(int height, int width, int channels, int size) {
+        if (size < 1 || height < size || width < size || channels < 1) {
+            throw new IllegalArgumentException("Invalid pooling shape.");
+        }
+        return (height / size) * (width / size) * channels;
+    }
+
+    private MaxPool2DLayer(MaxPool2DLayer source) {
+        super(source);
+        this.height = source.height;
+        this.width = source.width;
+        this.channels = source.channels;
+        this.size = source.size;
+        this.outHeight = source.outHeight;
+        this.outWidth = source.outWidth;
+    }
+
+    @Override
+    public Layer replicate() {
+        return new MaxPool2DLayer(this);
+    }
+
+    @Override
+    public FrozenLayer freeze() {
+        return new FrozenMaxPool2DLayer(height, width, channels, size);
+    }
+
+    @Override
+    public QuantizedLayer quantize() {
+        throw new UnsupportedOperationException("Int8 inference supports dense layers only.");
+    }
+
+    @Override
+    public void reserveWorkspace(int maxBatchSize) {
+        super.reserveWorkspace(maxBatchSize);
+        if (maxIndices.length < maxBatchSize * getOutputSize()) {
+            maxIndices = new int[maxBatchSize * getOutputSize()];
+        }
+    }
+
+    @Override
+    public void useCompactActivations(HalfPrecision precision, SharedWorkspace workspace, int index,
+                                      Layer inputLayer, boolean keepOutputs) {
+        if (precision != null) {
+            throw new UnsupportedOperationException("Mixed precision supports dense layers only.");
+        }
+        super.useCompactActivations(null, workspace, index, inputLayer, keepOutputs);
+    }
+
+    @Override
+    public long getActivationBytes() {
+        return super.getActivationBytes() + 4L * maxIndices.length;
+    }
+
+    // ================================================================
+    // Forward pass (batch)
+    // ================================================================
+    @Override
+    public Matrix forward(Matrix inputs) {
+        if (inputs.getColumns() != height * width * channels) {
+            throw new IllegalArgumentException("Expected images of " + height * width * channels + " values, got "
+                    + inputs.getColumns());
+        }
+        prepareWorkspace(inputs.getRows());
+
+        Matrix outputs = getOutputs();
+        int[] indices = maxIndices;
+        Parallelism.forEachRange(inputs.getRows(), 8,
+                (first, end) -> pool(height, width, channels, size, inputs, outputs, indices, first, end));
+        return outputs;
+    }
+
+    @Override
+    public Matrix forward(SparseMatrix inputs) {
+        throw new UnsupportedOperationException("Sparse inputs are supported by dense layers only.");
+    }
+
+    // Maximum of every window of the images [first, end), and where it is when indices is not null
+    static void pool(int height, int width, int channels, int size, Matrix inputs, Matrix outputs, int[] indices,
+                     int first, int end) {
+        float[] in = inputs.getData();
+        float[] out = outputs.getData();
+        int outHeight = height / size, outWidth = width / size;
+        int outputSize = outHeight * outWidth * channels;
+
+        for (int b = first; b < end; b++) {
+            int image = inputs.rowOffset(b);
+            int result = outputs.rowOffset(b);
+            int index = b * outputSize;
+
+            for (int oh = 0; oh < outHeight; oh++) {
+                for (int ow = 0; ow < outWidth; ow++, result += channels, index += channels) {
+                    Arrays.fill(out, result, result + channels, Float.NEGATIVE_INFINITY);
+                    for (int kh = 0; kh < size; kh++) {
+                        for (int kw = 0; kw < size; kw++) {
+                            int pixel = ((oh * size + kh) * width + ow * size + kw) * channels;
+                            for (int c = 0; c < channels; c++) {
+                                float value = in[image + pixel + c];
+                                if (value > out[result + c]) {
+                                    out[result + c] = value;
+                                    if (indices != null) indices[index + c] = pixel + c;
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    // ================================================================
+    // Backward pass
+    // ================================================================
+
+    @Override
+    protected void accumulateGradients() {
+        // No parameters
+    }
+
+    @Override
+    protected void propagateDeltas(Layer previous) {
+        Matrix deltas = getDeltas();
+        Matrix previousDeltas = previous.getDeltas();
+        int[] indices = maxIndices;
+        int outputSize = getOutputSize();
+
+        // Each delta goes back to the input that was the maximum of its window
+        Parallelism.forEachRange(deltas.getRows(), 8, (first, end) -> {
+            float[] d = deltas.getData();
+            float[] p = previousDeltas.getData();
+            for (int b = first; b < end; b++) {
+                int row = deltas.rowOffset(b);
+                int previousRow = previousDeltas.rowOffset(b);
+                Arrays.fill(p, previousRow, previousRow + previousDeltas.getColumns(), 0.0f);
+                for (int j = 0; j < outputSize; j++) {
+                    p[previousRow + indices[b * outputSize + j]] += d[row + j];
+                }
+            }
+        });
+        previous.applyActivationDerivative();
+    }
+
+    // --- GETTERS ---
+    public int getOutputHeight() {
+        return outHeight;
+    }
+
+    public int getOutputWidth() {
+        return outWidth;
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    public int getSize() {
+        return size;
+    }
+}
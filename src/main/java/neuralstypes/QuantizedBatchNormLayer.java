@@ -0,0 +1,40 @@
+package neuralstypes;
+
+import utility.Matrix;
+import utility.functions.Function;
+
+/**
+ * {@link BatchNormLayer} that could not be folded into the layer before it,
+ * in an int8 network: outputs = f(inputs * scale + shift), feature by
+ * feature, like {@link FrozenBatchNormLayer}. There is no product to
+ * quantise, so the scales and shifts stay float.
+ */
+public class QuantizedBatchNormLayer extends QuantizedLayer {
+
+    private final float[] scales;
+
+    QuantizedBatchNormLayer(float[] scales, float[] shifts, Function activation) {
+        super(scales.length, shifts, activation); // Shifts as the biases
+        this.scales = scales;
+    }
+
+    @Override
+    public long getWeightBytes() {
+        return 8L * scales.length;
+    }
+
+    @Override
+    public void forward(Matrix inputs, Matrix outputs, Scratch scratch) {
+        int features = scales.length;
+        float[] shifts = getBiases();
+        Function activation = getActivationFunction();
+        float[] in = inputs.getData(), out = outputs.getData();
+        for (int b = 0; b < inputs.getRows(); b++) {
+            int row = inputs.rowOffset(b), outRow = outputs.rowOffset(b);
+            for (int j = 0; j < features; j++) {
+                out[outRow + j] = in[row + j] * scales[j] + shifts[j];
+            }
+            activation.evaluateInPlace(out, outRow, features);
+        }
+    }
+}
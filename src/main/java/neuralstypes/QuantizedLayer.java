@@ -0,0 +1,162 @@
+package neuralstypes;
+
+import java.util.Arrays;
+
+import utility.KernelBackend;
+import utility.Matrix;
+import utility.functions.Function;
+
+/**
+ * Int8 copy of a {@link Layer} for inference.
+ *
+ * Weights are quantised per output neuron: w ~ q * scale[neuron] with q in
+ * [-127, 127]. Inputs are quantised per row when they arrive, to [0, 255]
+ * when the row has no negative value (pixels, ReLU and sigmoid outputs) and
+ * to [-127, 127] otherwise. The product is accumulated in ints, then scaled
+ * back to float for the bias and the activation.
+ *
+ * Like {@link FrozenLayer} it keeps no state: the caller gives the buffers.
+ */
+public class QuantizedLayer {
+
+    private static final int ROW_BLOCK = 4;
+
+    private final int inputSize;
+    private final int neuronCount;
+    private final byte[] weights;   // [Input][Neuron]
+    private final float[] scales;   // [Neuron]
+    private final float[] biases;
+    private final Function activationFunction;
+    private final KernelBackend kernels = KernelBackend.get();
+
+    QuantizedLayer(int inputSize, int neuronCount, Matrix weightsMatrix, float[] biases, Function activation) {
+        this.inputSize = inputSize;
+        this.neuronCount = neuronCount;
+        this.weights = new byte[inputSize * neuronCount];
+        this.scales = new float[neuronCount];
+        this.biases = biases;
+        this.activationFunction = activation;
+
+        float[] w = weightsMatrix.getData();
+        for (int n = 0; n < neuronCount; n++) {
+            int row = weightsMatrix.rowOffset(n);
+            float max = 0.0f;
+            for (int i = 0; i < inputSize; i++) {
+                max = Math.max(max, Math.abs(w[row + i]));
+            }
+            float scale = (max > 0.0f) ? max / 127.0f : 1.0f;
+            scales[n] = scale;
+            for (int i = 0; i < inputSize; i++) {
+                weights[i * neuronCount + n] = (byte) Math.round(w[row + i] / scale);
+            }
+        }
+    }
+
+    // Layer without weights, one output per input (see QuantizedBatchNormLayer)
+    QuantizedLayer(int size, float[] biases, Function activation) {
+        this.inputSize = size;
+        this.neuronCount = size;
+        this.weights = new byte[0];
+        this.scales = new float[0];
+        this.biases = biases;
+        this.activationFunction = activation;
+    }
+
+    public int getInputSize() {
+        return inputSize;
+    }
+
+    public int getNeuronCount() {
+        return neuronCount;
+    }
+
+    protected float[] getBiases() {
+        return biases;
+    }
+
+    protected Function getActivationFunction() {
+        return activationFunction;
+    }
+
+    // Memory used by the quantised weights and their scales
+    public long getWeightBytes() {
+        return weights.length + 4L * scales.length;
+    }
+
+    // Integer buffers used by forward, big enough for every layer of a network
+    public static class Scratch {
+        final int[] quantizedInputs;
+        final int[] accumulators;
+        final int[] activeInputs;   // Inputs that are not zero in every row of the block
+        final float[] rowScales = new float[ROW_BLOCK];
+
+        public Scratch(QuantizedLayer[] layers) {
+            int inputs = 0, neurons = 0;
+            for (QuantizedLayer layer : layers) {
+                inputs = Math.max(inputs, layer.inputSize);
+                neurons = Math.max(neurons, layer.neuronCount);
+            }
+            this.quantizedInputs = new int[ROW_BLOCK * inputs];
+            this.accumulators = new int[ROW_BLOCK * neurons];
+            this.activeInputs = new int[inputs];
+        }
+    }
+
+    // outputs [Batch x Neurons] = f(inputs [Batch x In] * W^T + b), with the int8 weights
+    public void forward(Matrix inputs, Matrix outputs, Scratch scratch) {
+        int rows = inputs.getRows();
+        int[] quantizedInputs = scratch.quantizedInputs;
+        int[] accumulators = scratch.accumulators;
+        float[] rowScales = scratch.rowScales;
+        int[] activeInputs = scratch.activeInputs;
+
+        for (int r = 0; r < rows; r += ROW_BLOCK) {
+            int block = Math.min(ROW_BLOCK, rows - r);
+            for (int b = 0; b < block; b++) {
+                rowScales[b] = quantizeRow(inputs, r + b, quantizedInputs, b * inputSize);
+            }
+            // Last block of the batch: missing rows are empty
+            Arrays.fill(quantizedInputs, block * inputSize, ROW_BLOCK * inputSize, 0);
+
+            // Skip the inputs that are zero in the 4 rows (background pixels, inactive ReLUs)
+            int active = 0;
+            for (int k = 0; k < inputSize; k++) {
+                int any = quantizedInputs[k] | quantizedInputs[inputSize + k]
+                        | quantizedInputs[2 * inputSize + k] | quantizedInputs[3 * inputSize + k];
+                if (any != 0) activeInputs[active++] = k;
+            }
+
+            kernels.multiply4Int8(quantizedInputs, 0, inputSize, activeInputs, active, weights, neuronCount,
+                    accumulators, 0);
+
+            // Back to float, bias and activation
+            float[] out = outputs.getData();
+            for (int b = 0; b < block; b++) {
+                int outRow = outputs.rowOffset(r + b);
+                int accRow = b * neuronCount;
+                for (int n = 0; n < neuronCount; n++) {
+                    out[outRow + n] = accumulators[accRow + n] * (rowScales[b] * scales[n]) + biases[n];
+                }
+                activationFunction.evaluateInPlace(out, outRow, neuronCount);
+            }
+        }
+    }
+
+    // Quantises one input row into q[qOff ..], returns its scale
+    private float quantizeRow(Matrix inputs, int row, int[] q, int qOff) {
+        float[] data = inputs.getData();
+        int start = inputs.rowOffset(row);
+
+        float min = Math.min(0.0f, kernels.min(data, start, inputSize));
+        float max = Math.max(0.0f, kernels.max(data, start, inputSize));
+        float range = Math.max(max, -min);
+        if (range == 0.0f) {
+            Arrays.fill(q, qOff, qOff + inputSize, 0);
+            return 0.0f;
+        }
+
+        float scale = range / ((min >= 0.0f) ? 255.0f : 127.0f);
+        kernels.quantize(data, start, 1.0f / scale, q, qOff, inputSize);
+        return scale;
+    }
+}
@@ -0,0 +1,27 @@
+package neuralstypes;
+
+/**
+ * Float buffers shared by the layers of one network in mixed precision
+ * mode (see {@link Layer#useCompactActivations}).
+ *
+ * Layer i uses the buffer of parity i % 2. In the forward pass it holds the
+ * outputs of layer i, read by layer i + 1 as its inputs. In the backward
+ * pass it receives the deltas of layer i, and then the outputs of layer
+ * i - 1, decoded from their 16-bit copy, take the other buffer for the
+ * weight gradients. Every value is dead before its buffer is reused, so two
+ * buffers are enough for any depth.
+ */
+public class SharedWorkspace {
+
+    private final float[][] buffers = {new float[0], new float[0]};
+
+    // Buffer of the layers of this parity, with room for at least `size` floats
+    float[] buffer(int parity, int size) {
+        if (buffers[parity].length < size) buffers[parity] = new float[size];
+        return buffers[parity];
+    }
+
+    public long getBytes() {
+        return 4L * (buffers[0].length + buffers[1].length);
+    }
+}
@@ -0,0 +1,168 @@
+package neuralstypes.networks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import utility.Matrix;
+
+/**
+ * Scores a network on a labelled data set in the background, while the
+ * training goes on.
+ *
+ * A frozen copy of the weights is taken on the calling thread (between two
+ * training steps, see {@link NeuralNetwork#freeze()}), then the rows are
+ * scored in large batches by a small pool of threads, each one with its own
+ * activation buffers. Results are delivered in the order the evaluations
+ * were requested.
+ */
+public class BackgroundEvaluator implements AutoCloseable {
+
+    private final ExecutorService pool;
+    private final int batchSize;
+
+    // Last result handed out, the next one completes after it
+    private CompletableFuture<Result> lastResult = CompletableFuture.completedFuture(null);
+
+    public BackgroundEvaluator(int threads, int batchSize) {
+        if (threads < 1 || batchSize < 1) {
+            throw new IllegalArgumentException("Threads and batch size must be at least 1.");
+        }
+        AtomicInteger created = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "evaluator-" + created.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.batchSize = batchSize;
+    }
+
+    // ------------------------------------------------------------
+    // Evaluation
+    // ------------------------------------------------------------
+
+    // Accuracy and cross-entropy of the current weights on (inputs, labels)
+    public synchronized CompletableFuture<Result> evaluate(NeuralNetwork network, Matrix inputs, int[] labels) {
+        if (inputs.getRows() != labels.length) {
+            throw new IllegalArgumentException("Expected " + inputs.getRows() + " labels, got " + labels.length);
+        }
+        InferenceEngine engine = network.freeze();
+        long start = System.nanoTime();
+
+        int batches = (inputs.getRows() + batchSize - 1) / batchSize;
+        List<CompletableFuture<double[]>> scores = new ArrayList<>(batches);
+        for (int b = 0; b < batches; b++) {
+            int first = b * batchSize;
+            int rows = Math.min(batchSize, inputs.getRows() - first);
+            scores.add(CompletableFuture.supplyAsync(() -> score(engine, inputs.rowView(first, rows), labels, first),
+                    pool));
+        }
+
+        CompletableFuture<?>[] pending = scores.toArray(new CompletableFuture<?>[0]);
+        CompletableFuture<Result> result = CompletableFuture.allOf(pending).thenApply(done -> {
+            // Summed in batch order, so the loss does not depend on the scheduling
+            int correct = 0;
+            double loss = 0.0;
+            for (CompletableFuture<double[]> score : scores) {
+                correct += (int) score.join()[0];
+                loss += score.join()[1];
+            }
+            return new Result(correct, labels.length, loss / labels.length, System.nanoTime() - start);
+        });
+
+        // Chained for the order only: a failed evaluation does not fail the later ones
+        lastResult = lastResult.handle((previous, failure) -> null).thenCombine(result, (previous, current) -> current);
+        return lastResult;
+    }
+
+    // {correct predictions, summed cross-entropy} of one batch
+    private static double[] score(InferenceEngine engine, Matrix inputs, int[] labels, int firstRow) {
+        Matrix outputs = engine.predict(inputs);
+        float[] data = outputs.getData();
+        int correct = 0;
+        double loss = 0.0;
+        for (int i = 0; i < outputs.getRows(); i++) {
+            int label = labels[firstRow + i];
+            if (InferenceEngine.argmax(outputs, i) == label) correct++;
+            loss -= Math.log(Math.max(data[outputs.rowOffset(i) + label], 1e-12f));
+        }
+        return new double[] {correct, loss};
+    }
+
+    // Predicted class of every row, scored in batches on the pool
+    public CompletableFuture<int[]> classify(NeuralNetwork network, Matrix inputs) {
+        InferenceEngine engine = network.freeze();
+        int[] classes = new int[inputs.getRows()];
+
+        int batches = (inputs.getRows() + batchSize - 1) / batchSize;
+        CompletableFuture<?>[] parts = new CompletableFuture<?>[batches];
+        for (int b = 0; b < batches; b++) {
+            int first = b * batchSize;
+            int rows = Math.min(batchSize, inputs.getRows() - first);
+            parts[b] = CompletableFuture.runAsync(() ->
+                    System.arraycopy(engine.classify(inputs.rowView(first, rows)), 0, classes, first, rows), pool);
+        }
+        return CompletableFuture.allOf(parts).thenApply(done -> classes);
+    }
+
+    // Waits for the pending evaluations
+    @Override
+    public void close() {
+        pool.shutdown();
+        try {
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // ------------------------------------------------------------
+    // Result of one evaluation
+    // ------------------------------------------------------------
+    public static class Result {
+        private final int correct;
+        private final int total;
+        private final double loss;
+        private final long nanos;
+
+        Result(int correct, int total, double loss, long nanos) {
+            this.correct = correct;
+            this.total = total;
+            this.loss = loss;
+            this.nanos = nanos;
+        }
+
+        public int getCorrect() {
+            return correct;
+        }
+
+        public int getTotal() {
+            return total;
+        }
+
+        // Between 0 and 1
+        public double getAccuracy() {
+            return total == 0 ? 0.0 : (double) correct / total;
+        }
+
+        // Mean cross-entropy of the true labels (the outputs are taken as probabilities)
+        public double getLoss() {
+            return loss;
+        }
+
+        // From the copy of the weights to the last batch scored
+        public long getNanos() {
+            return nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Accuracy: %.2f%% (%d/%d) | Loss: %.4f | Scored in %.1f ms",
+                    getAccuracy() * 100, correct, total, loss, nanos / 1e6);
+        }
+    }
+}
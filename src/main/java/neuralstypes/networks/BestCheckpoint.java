@@ -0,0 +1,87 @@
+package neuralstypes.networks;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps the state of the network at its best validation score.
+ *
+ * The state of every epoch is copied into memory when the epoch ends (see
+ * Checkpoint.snapshot) and kept until its validation arrives, one epoch
+ * later. The best one is written to a file in the background when a writer
+ * is given, and can be put back into the network at the end of the training
+ * (e.g. after an early stop, which comes `patience` epochs after the best).
+ */
+public class BestCheckpoint implements TrainingCallback {
+
+    private final Monitor monitor;
+    private final CheckpointWriter writer; // null: in memory only
+    private final Path file;
+    private final boolean restoreAtEnd;
+
+    // Epochs trained but not validated yet
+    private final Map<Integer, ByteBuffer> pending = new HashMap<>();
+
+    private ByteBuffer best;
+    private double bestScore;
+    private int bestEpoch;
+    private int lastEpoch;
+
+    public BestCheckpoint(Monitor monitor, CheckpointWriter writer, Path file, boolean restoreAtEnd) {
+        if (writer != null && file == null) {
+            throw new IllegalArgumentException("A file is needed to write the best checkpoint.");
+        }
+        this.monitor = monitor;
+        this.writer = writer;
+        this.file = file;
+        this.restoreAtEnd = restoreAtEnd;
+    }
+
+    @Override
+    public void onTrainBegin(Trainer trainer) {
+        pending.clear();
+        best = null;
+        bestScore = Double.NEGATIVE_INFINITY;
+        bestEpoch = 0;
+    }
+
+    @Override
+    public void onEpochEnd(Trainer trainer, int epoch, float learningRate) {
+        pending.put(epoch, Checkpoint.snapshot(trainer.getNetwork(), epoch, learningRate, trainer));
+        lastEpoch = epoch;
+    }
+
+    @Override
+    public void onValidationEnd(Trainer trainer, int epoch, BackgroundEvaluator.Result result) {
+        ByteBuffer snapshot = pending.remove(epoch);
+        pending.keySet().removeIf(older -> older < epoch);
+        if (snapshot == null || !Monitor.improves(monitor.score(result), bestScore, 0.0)) return;
+
+        best = snapshot;
+        bestScore = monitor.score(result);
+        bestEpoch = epoch;
+        if (writer != null) {
+            writer.writeAsync(snapshot, file).exceptionally(ex -> {
+                System.err.println("Best checkpoint failed: " + ex.getMessage());
+                return null;
+            });
+        }
+    }
+
+    @Override
+    public void onTrainEnd(Trainer trainer) {
+        pending.clear();
+        if (restoreAtEnd && best != null && bestEpoch != lastEpoch) {
+            Checkpoint.fromSnapshot(best).restore(trainer.getNetwork());
+            System.out.printf(">>> Restored the weights of epoch %d (best validation %s)%n",
+                    bestEpoch, monitor.getName().toLowerCase());
+        }
+    }
+
+    // Epoch of the best validation score (0 before the first one)
+    public int getBestEpoch() {
+        return bestEpoch;
+    }
+}
@@ -0,0 +1,412 @@
+package neuralstypes.networks;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Random;
+
+import neuralstypes.Layer;
+import utility.Matrix;
+import utility.optimizers.Optimizer;
+import utility.optimizers.OptimizerState;
+
+/**
+ * Binary checkpoint of a network: topology, activation names, weights,
+ * biases, optimizer state and the training progress (completed epochs,
+ * current learning rate and the state of the Trainer and its callbacks),
+ * enough to resume training exactly.
+ *
+ * Layout (little-endian, every section 4-byte aligned):
+ *   header  32 bytes: magic, version, layer count, epoch, learning rate,
+ *           state buffers per parameter, optimizer steps, optimizer name length
+ *   name    optimizer name (UTF-8, padded)
+ *   layer   input size, neuron count, running statistics count, name length,
+ *           activation name (UTF-8, padded), weights [Neuron][Input], biases,
+ *           then for every state buffer: weight state, bias state, and the
+ *           running statistics (e.g. of a BatchNormLayer) (float32)
+ *   trailer learning rate scale of the Trainer (float32), callback count, then for every
+ *           callback: name length, name (UTF-8, padded), value count, values (float64)
+ *
+ * Version 3 files (no trailer: scale 1, no callback state), version 2 files
+ * (no running statistics count either) and version 1 files
+ * (momentum instead of the last 3 header ints, no optimizer name, velocities
+ * as the only state buffer) can still be read.
+ *
+ * Files are written to a temporary file first and then renamed, so an
+ * interrupted save never leaves a broken checkpoint. Loading maps the file
+ * and copies the arrays with bulk reads.
+ */
+public class Checkpoint {
+
+    static final int MAGIC = 0x4B434E4E; // "NNCK"
+    static final int VERSION = 4;
+    static final int HEADER_BYTES = 32;
+
+    private static final String VERSION_1_OPTIMIZER = "Momentum";
+
+    private final ByteBuffer buffer;
+    private final int epoch;
+    private final float learningRate;
+    private final String optimizerName;
+    private final int stateBuffers;
+    private final int optimizerSteps;
+    private final LayerEntry[] layers;
+    private final float learningRateScale;
+    private final String[] callbackNames;
+    private final double[][] callbackStates;
+
+    // Position of one layer in the file
+    private static class LayerEntry {
+        final int inputSize, neuronCount, statisticCount;
+        final String activation;
+        final int dataStart; // First byte of the weights
+
+        LayerEntry(int inputSize, int neuronCount, int statisticCount, String activation, int dataStart) {
+            this.inputSize = inputSize;
+            this.neuronCount = neuronCount;
+            this.statisticCount = statisticCount;
+            this.activation = activation;
+            this.dataStart = dataStart;
+        }
+
+        int weightCount() {
+            return inputSize * neuronCount;
+        }
+
+        int dataBytes(int stateBuffers) {
+            return 4 * (1 + stateBuffers) * (weightCount() + neuronCount) + 4 * statisticCount;
+        }
+    }
+
+    // ------------------------------------------------------------
+    // Save
+    // ------------------------------------------------------------
+
+    // Writes a checkpoint of the network after `epoch` completed epochs
+    public static void save(NeuralNetwork network, int epoch, float learningRate, Path file) throws IOException {
+        write(snapshot(network, epoch, learningRate, null), file);
+    }
+
+    // Copies the state of the network, and of the trainer (may be null), into a buffer
+    // (the only part that must not overlap with training, see CheckpointWriter)
+    static ByteBuffer snapshot(NeuralNetwork network, int epoch, float learningRate, Trainer trainer) {
+        Optimizer optimizer = network.getOptimizer();
+        byte[] optimizerName = (optimizer != null) ? optimizer.getName().getBytes(StandardCharsets.UTF_8) : new byte[0];
+        int stateBuffers = (optimizer != null) ? optimizer.getStateBuffers() : 0;
+        int steps = (network.size() > 0) ? network.getLayer(0).getWeightState().getSteps() : 0;
+
+        int size = HEADER_BYTES + padded(optimizerName.length);
+        byte[][] names = new byte[network.size()][];
+        for (int i = 0; i < network.size(); i++) {
+            Layer layer = network.getLayer(i);
+            names[i] = layer.getActivationName().getBytes(StandardCharsets.UTF_8);
+            size += 16 + padded(names[i].length) + 4 * (1 + stateBuffers) * (layer.getInputSize()
+                    * layer.getNeuronCount() + layer.getNeuronCount()) + 4 * statisticCount(layer);
+        }
+
+        // Trailer: the callbacks that keep a state
+        List<TrainingCallback> callbacks = (trainer != null) ? trainer.getCallbacks() : List.of();
+        byte[][] callbackNames = new byte[callbacks.size()][];
+        double[][] callbackStates = new double[callbacks.size()][];
+        size += 8;
+        for (int c = 0; c < callbacks.size(); c++) {
+            callbackNames[c] = callbacks.get(c).getClass().getSimpleName().getBytes(StandardCharsets.UTF_8);
+            double[] state = callbacks.get(c).getState();
+            callbackStates[c] = (state != null) ? state : new double[0];
+            size += 8 + padded(callbackNames[c].length) + 8 * callbackStates[c].length;
+        }
+
+        ByteBuffer out = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        out.putInt(MAGIC).putInt(VERSION).putInt(network.size()).putInt(epoch)
+           .putFloat(learningRate).putInt(stateBuffers).putInt(steps).putInt(optimizerName.length);
+        out.put(optimizerName).position(out.position() + padded(optimizerName.length) - optimizerName.length);
+
+        for (int i = 0; i < network.size(); i++) {
+            Layer layer = network.getLayer(i);
+            out.putInt(layer.getInputSize()).putInt(layer.getNeuronCount()).putInt(statisticCount(layer))
+               .putInt(names[i].length);
+            out.put(names[i]).position(out.position() + padded(names[i].length) - names[i].length);
+
+            FloatBuffer values = out.asFloatBuffer();
+            putMatrix(values, layer.getWeights());
+            values.put(layer.getBiases());
+            for (int s = 0; s < stateBuffers; s++) {
+                values.put(layer.getWeightState().getBuffer(s));
+                values.put(layer.getBiasState().getBuffer(s));
+            }
+            if (layer.getRunningStatistics() != null) values.put(layer.getRunningStatistics());
+            out.position(out.position() + 4 * values.position());
+        }
+
+        out.putFloat((trainer != null) ? trainer.getLearningRateScale() : 1.0f).putInt(callbacks.size());
+        for (int c = 0; c < callbacks.size(); c++) {
+            out.putInt(callbackNames[c].length);
+            out.put(callbackNames[c]).position(out.position() + padded(callbackNames[c].length)
+                    - callbackNames[c].length);
+            out.putInt(callbackStates[c].length);
+            for (double value : callbackStates[c]) out.putDouble(value);
+        }
+        return out.flip();
+    }
+
+    private static int statisticCount(Layer layer) {
+        return (layer.getRunningStatistics() != null) ? layer.getRunningStatistics().length : 0;
+    }
+
+    private static void putMatrix(FloatBuffer values, Matrix matrix) {
+        for (int i = 0; i < matrix.getRows(); i++) {
+            values.put(matrix.getData(), matrix.rowOffset(i), matrix.getColumns());
+        }
+    }
+
+    static void write(ByteBuffer data, Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+            channel.force(false);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static int padded(int bytes) {
+        return (bytes + 3) & ~3;
+    }
+
+    // ------------------------------------------------------------
+    // Load
+    // ------------------------------------------------------------
+
+    // Maps a checkpoint file and reads its header (the arrays are read by restore)
+    public static Checkpoint open(Path file) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (buffer.limit() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a checkpoint file: " + file);
+        }
+        if (buffer.getInt(4) < 1 || buffer.getInt(4) > VERSION) {
+            throw new IOException("Unsupported checkpoint version " + buffer.getInt(4) + " in " + file);
+        }
+        return new Checkpoint(buffer, file.toString());
+    }
+
+    // Reads a snapshot taken in memory (see BestCheckpoint)
+    static Checkpoint fromSnapshot(ByteBuffer snapshot) {
+        try {
+            return new Checkpoint(snapshot.duplicate().order(ByteOrder.LITTLE_ENDIAN), "snapshot");
+        } catch (IOException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+
+    private Checkpoint(ByteBuffer buffer, String source) throws IOException {
+        this.buffer = buffer;
+        this.layers = new LayerEntry[buffer.getInt(8)];
+        this.epoch = buffer.getInt(12);
+        this.learningRate = buffer.getFloat(16);
+
+        int version = buffer.getInt(4);
+        int layerHeader = (version >= 3) ? 16 : 12; // Running statistics count from version 3
+        int position = HEADER_BYTES;
+        if (version == 1) {
+            this.optimizerName = VERSION_1_OPTIMIZER;
+            this.stateBuffers = 1;
+            this.optimizerSteps = 0;
+        } else {
+            this.stateBuffers = buffer.getInt(20);
+            this.optimizerSteps = buffer.getInt(24);
+            int nameLength = buffer.getInt(28);
+            if (position + nameLength > buffer.limit()) throw new IOException("Truncated checkpoint: " + source);
+
+            byte[] name = new byte[nameLength];
+            buffer.get(position, name);
+            this.optimizerName = new String(name, StandardCharsets.UTF_8);
+            position += padded(nameLength);
+        }
+
+        for (int i = 0; i < layers.length; i++) {
+            if (position + layerHeader > buffer.limit()) throw new IOException("Truncated checkpoint: " + source);
+            int inputSize = buffer.getInt(position);
+            int neuronCount = buffer.getInt(position + 4);
+            int statisticCount = (version >= 3) ? buffer.getInt(position + 8) : 0;
+            int nameLength = buffer.getInt(position + layerHeader - 4);
+            if (position + layerHeader + nameLength > buffer.limit()) {
+                throw new IOException("Truncated checkpoint: " + source);
+            }
+
+            byte[] name = new byte[nameLength];
+            buffer.get(position + layerHeader, name);
+            position += layerHeader + padded(nameLength);
+
+            layers[i] = new LayerEntry(inputSize, neuronCount, statisticCount,
+                    new String(name, StandardCharsets.UTF_8), position);
+            position += layers[i].dataBytes(stateBuffers);
+        }
+        if (position > buffer.limit()) {
+            throw new IOException("Truncated checkpoint: " + source);
+        }
+
+        if (version < 4) {
+            this.learningRateScale = 1.0f;
+            this.callbackNames = new String[0];
+            this.callbackStates = new double[0][];
+            return;
+        }
+        if (position + 8 > buffer.limit()) throw new IOException("Truncated checkpoint: " + source);
+        this.learningRateScale = buffer.getFloat(position);
+        int callbacks = buffer.getInt(position + 4);
+        position += 8;
+        this.callbackNames = new String[callbacks];
+        this.callbackStates = new double[callbacks][];
+        for (int c = 0; c < callbacks; c++) {
+            if (position + 4 > buffer.limit()) throw new IOException("Truncated checkpoint: " + source);
+            int nameLength = buffer.getInt(position);
+            if (position + 8 + padded(nameLength) > buffer.limit()) {
+                throw new IOException("Truncated checkpoint: " + source);
+            }
+            byte[] name = new byte[nameLength];
+            buffer.get(position + 4, name);
+            callbackNames[c] = new String(name, StandardCharsets.UTF_8);
+            position += 4 + padded(nameLength);
+
+            int count = buffer.getInt(position);
+            position += 4;
+            if (position + 8L * count > buffer.limit()) throw new IOException("Truncated checkpoint: " + source);
+            callbackStates[c] = new double[count];
+            for (int v = 0; v < count; v++) {
+                callbackStates[c][v] = buffer.getDouble(position + 8 * v);
+            }
+            position += 8 * count;
+        }
+    }
+
+    // Completed epochs when the checkpoint was taken
+    public int getEpoch() {
+        return epoch;
+    }
+
+    public float getLearningRate() {
+        return learningRate;
+    }
+
+    // Optimizer of the saved state ("Momentum" for version 1 files)
+    public String getOptimizerName() {
+        return optimizerName;
+    }
+
+    public int getLayerCount() {
+        return layers.length;
+    }
+
+    // Scale of the learning rate set by the callbacks (1 for files before version 4)
+    public float getLearningRateScale() {
+        return learningRateScale;
+    }
+
+    // Saved state of callback `index` of the trainer, null if it was another kind of callback or had no state
+    public double[] getCallbackState(int index, TrainingCallback callback) {
+        if (index >= callbackNames.length || callbackStates[index].length == 0
+                || !callbackNames[index].equals(callback.getClass().getSimpleName())) {
+            return null;
+        }
+        return callbackStates[index].clone();
+    }
+
+    // Copies the saved parameters and optimizer state into a network with the same topology.
+    // If the network uses another optimizer, its state is reset instead.
+    public void restore(NeuralNetwork network) {
+        if (network.size() != layers.length) {
+            throw new IllegalArgumentException("The checkpoint has " + layers.length + " layers, the network "
+                    + network.size());
+        }
+        for (int i = 0; i < layers.length; i++) {
+            LayerEntry entry = layers[i];
+            Layer layer = network.getLayer(i);
+            if (layer.getInputSize() != entry.inputSize || layer.getNeuronCount() != entry.neuronCount
+                    || statisticCount(layer) != entry.statisticCount
+                    || !entry.activation.equalsIgnoreCase(layer.getActivationName())) {
+                throw new IllegalArgumentException("Layer " + i + " differs from the checkpoint ("
+                        + entry.inputSize + " -> " + entry.neuronCount + ", " + entry.activation + ")");
+            }
+
+            FloatBuffer values = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN)
+                    .position(entry.dataStart).slice().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+            getMatrix(values, layer.getWeights());
+            values.get(layer.getBiases());
+            restoreState(values, layer);
+            if (entry.statisticCount > 0) {
+                // After the state buffers, also when restoreState skipped them
+                values.position((1 + stateBuffers) * (entry.weightCount() + entry.neuronCount));
+                values.get(layer.getRunningStatistics());
+            }
+            layer.syncTransposedWeights();
+        }
+    }
+
+    private void restoreState(FloatBuffer values, Layer layer) {
+        OptimizerState weightState = layer.getWeightState();
+        OptimizerState biasState = layer.getBiasState();
+        Optimizer optimizer = layer.getOptimizer();
+        if (!optimizer.getName().equalsIgnoreCase(optimizerName) || optimizer.getStateBuffers() != stateBuffers) {
+            weightState.reset();
+            biasState.reset();
+            return;
+        }
+
+        for (int s = 0; s < stateBuffers; s++) {
+            values.get(weightState.getBuffer(s));
+            values.get(biasState.getBuffer(s));
+        }
+        weightState.setSteps(optimizerSteps);
+        biasState.setSteps(optimizerSteps);
+    }
+
+    private static void getMatrix(FloatBuffer values, Matrix matrix) {
+        for (int i = 0; i < matrix.getRows(); i++) {
+            values.get(matrix.getData(), matrix.rowOffset(i), matrix.getColumns());
+        }
+    }
+
+    // Builds a network with the saved topology and parameters. Dense layers only: the file does
+    // not record the kind of the other layers (convolutions, batch normalisation, dropout), restore
+    // those into a network built the same way.
+    public NeuralNetwork createNetwork() {
+        NeuralNetwork network = new LoadedNetwork();
+        Random unused = new Random(0); // The initial weights are overwritten
+        for (LayerEntry entry : layers) {
+            network.addLayer(new Layer(entry.inputSize, entry.neuronCount, entry.activation, unused));
+        }
+        restore(network);
+        return network;
+    }
+
+    // Inference engine on the saved weights (e.g. for a serving process)
+    public InferenceEngine toInferenceEngine() {
+        return createNetwork().freeze();
+    }
+
+    // Network rebuilt from a checkpoint
+    private static final class LoadedNetwork extends NeuralNetwork {
+        LoadedNetwork() {
+            super(0);
+        }
+    }
+}
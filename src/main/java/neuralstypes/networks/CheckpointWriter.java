@@ -0,0 +1,60 @@
+package neuralstypes.networks;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Takes checkpoints during training without waiting for the disk.
+ *
+ * The state of the network is copied into memory on the calling thread
+ * (a few milliseconds, between two training steps), then written to disk
+ * by a background thread while training goes on. Saves run one after the
+ * other, in the order they were requested.
+ */
+public class CheckpointWriter implements AutoCloseable {
+
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "checkpoint-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Snapshot now, write later; the future completes with the file once it is on disk
+    public CompletableFuture<Path> saveAsync(NeuralNetwork network, int epoch, float learningRate, Path file) {
+        return writeAsync(Checkpoint.snapshot(network, epoch, learningRate, null), file);
+    }
+
+    // Same with the state of the trainer and of its callbacks, to resume the run (see Trainer.resume)
+    public CompletableFuture<Path> saveAsync(Trainer trainer, int epoch, float learningRate, Path file) {
+        return writeAsync(Checkpoint.snapshot(trainer.getNetwork(), epoch, learningRate, trainer), file);
+    }
+
+    // Writes a snapshot taken earlier (it can be written again, its position is not moved)
+    CompletableFuture<Path> writeAsync(ByteBuffer snapshot, Path file) {
+        CompletableFuture<Path> done = new CompletableFuture<>();
+        writer.execute(() -> {
+            try {
+                Checkpoint.write(snapshot.duplicate(), file);
+                done.complete(file);
+            } catch (Exception e) {
+                done.completeExceptionally(e);
+            }
+        });
+        return done;
+    }
+
+    // Waits for the pending saves
+    @Override
+    public void close() {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
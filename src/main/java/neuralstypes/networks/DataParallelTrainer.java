@@ -0,0 +1,254 @@
+package neuralstypes.networks;
+
+import java.util.concurrent.RecursiveAction;
+
+import neuralstypes.BatchNormLayer;
+import utility.Matrix;
+import utility.Parallelism;
+import utility.SparseMatrix;
+import utility.metrics.Metrics;
+
+/**
+ * Synchronous data-parallel training.
+ *
+ * Each mini-batch is split in contiguous shards, one per replica. The
+ * replicas share the parameters of the trained network (replica 0 is the
+ * network itself), run forward/backward on their shard in parallel, and
+ * their gradients are summed with a tree all-reduce into replica 0. A
+ * single weight update is then applied, so every replica sees the same
+ * weights on the next batch.
+ *
+ * A batch normalisation needs the statistics of the whole batch, not of a
+ * shard: the replicas stop at every BatchNormLayer (forward, then backward),
+ * the sums of their shards are added up and copied back to all of them, and
+ * the pass resumes (see NeuralNetwork.resumeGradients).
+ *
+ * With one worker this is exactly NeuralNetwork.trainBatch. With more
+ * workers the gradients are the same up to float rounding (the sums are
+ * done in a different order), and runs with a fixed seed stay reproducible
+ * for a fixed number of workers.
+ */
+public class DataParallelTrainer {
+
+    private final NeuralNetwork network;
+    private final NeuralNetwork[] replicas;
+
+    // Task trees, built once and reinitialized on every step
+    private final ShardTask[] shards;        // shards[r]: forward + backward of replica r
+    private final ReduceTask[][] levels;     // levels[l][p]: pair p of the reduce at distance 2^l
+    private final Step step = new Step();    // Root task: the shards, then the reduce levels
+
+    // Batch the shard views were taken from (the samples reuse their batch matrices)
+    private Matrix viewedInputs, viewedTargets;
+    private SparseMatrix viewedSparseInputs;
+    private int viewedActive;
+
+    public DataParallelTrainer(NeuralNetwork network, int workers) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("At least one worker is needed.");
+        }
+        this.network = network;
+        this.replicas = new NeuralNetwork[workers];
+        this.replicas[0] = network;
+        for (int i = 1; i < workers; i++) {
+            replicas[i] = network.replicate();
+        }
+
+        this.shards = new ShardTask[workers];
+        for (int r = 0; r < workers; r++) {
+            shards[r] = new ShardTask(replicas[r]);
+        }
+
+        // With fewer active replicas, each level only uses a prefix of its pairs
+        int levelCount = 0;
+        for (int distance = 1; distance < workers; distance *= 2) levelCount++;
+        this.levels = new ReduceTask[levelCount][];
+        for (int l = 0, distance = 1; l < levelCount; l++, distance *= 2) {
+            int pairs = 0;
+            for (int r = 0; r + distance < workers; r += 2 * distance) pairs++;
+            levels[l] = new ReduceTask[pairs];
+            int p = 0;
+            for (int r = 0; r + distance < workers; r += 2 * distance) {
+                levels[l][p++] = new ReduceTask(replicas[r], replicas[r + distance]);
+            }
+        }
+    }
+
+    public int getWorkers() {
+        return replicas.length;
+    }
+
+    // Preallocates the batch buffers of every replica for its shard
+    public void reserveWorkspaces(int maxBatchSize) {
+        int shardRows = (maxBatchSize + replicas.length - 1) / replicas.length;
+        for (NeuralNetwork replica : replicas) {
+            replica.reserveWorkspaces(shardRows);
+        }
+    }
+
+    // ------------------------------------------------------------
+    // Train one batch
+    // ------------------------------------------------------------
+    public void trainBatch(Matrix inputsBatch, Matrix targetsBatch, float learningRate) {
+        int rows = inputsBatch.getRows();
+        int active = Math.min(replicas.length, rows); // No empty shards
+
+        if (active == 1) {
+            network.trainBatch(inputsBatch, targetsBatch, learningRate);
+            return;
+        }
+
+        long stepStart = Metrics.ENABLED ? System.nanoTime() : 0L;
+        if (inputsBatch != viewedInputs || targetsBatch != viewedTargets || active != viewedActive) {
+            int start = 0;
+            for (int r = 0; r < active; r++) {
+                int shardRows = shardRows(rows, active, r);
+                shards[r].inputs = inputsBatch.rowView(start, shardRows);
+                shards[r].sparseInputs = null;
+                shards[r].targets = targetsBatch.rowView(start, shardRows);
+                start += shardRows;
+            }
+            viewedInputs = inputsBatch;
+            viewedTargets = targetsBatch;
+            viewedSparseInputs = null;
+            viewedActive = active;
+        }
+        trainShards(active, learningRate, stepStart);
+    }
+
+    // Same with sparse inputs (see NeuralNetwork.trainBatch(SparseMatrix, ...))
+    public void trainBatch(SparseMatrix inputsBatch, Matrix targetsBatch, float learningRate) {
+        int rows = inputsBatch.getRows();
+        int active = Math.min(replicas.length, rows);
+
+        if (active == 1) {
+            network.trainBatch(inputsBatch, targetsBatch, learningRate);
+            return;
+        }
+
+        long stepStart = Metrics.ENABLED ? System.nanoTime() : 0L;
+        if (inputsBatch != viewedSparseInputs || targetsBatch != viewedTargets || active != viewedActive) {
+            int start = 0;
+            for (int r = 0; r < active; r++) {
+                int shardRows = shardRows(rows, active, r);
+                shards[r].sparseInputs = inputsBatch.rowView(start, shardRows);
+                shards[r].inputs = null;
+                shards[r].targets = targetsBatch.rowView(start, shardRows);
+                start += shardRows;
+            }
+            viewedSparseInputs = inputsBatch;
+            viewedTargets = targetsBatch;
+            viewedInputs = null;
+            viewedActive = active;
+        }
+        trainShards(active, learningRate, stepStart);
+    }
+
+    // Rows of shard r when `rows` are split over `active` replicas
+    private static int shardRows(int rows, int active, int r) {
+        return rows / active + (r < rows % active ? 1 : 0);
+    }
+
+    private void trainShards(int active, float learningRate, long stepStart) {
+        // 1. Forward + backward of every shard (with the batch normalisation sums of all of them),
+        // 2. tree all-reduce of the gradients into replica 0
+        step.active = active;
+        step.reinitialize();
+        if (Parallelism.getThreadCount() == 1) step.invoke(); // Inline, like Parallelism.forEachRange
+        else Parallelism.getPool().invoke(step);
+
+        // 3. One update of the shared parameters
+        network.updateWeights(learningRate);
+
+        if (Metrics.ENABLED) Metrics.STEP_TIME.recordSince(stepStart);
+    }
+
+    // Root of the task tree of a step, submitted once to the pool
+    private class Step extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private int active;
+
+        @Override
+        protected void compute() {
+            for (int r = 0; r < active; r++) shards[r].resume = false;
+            runAll(shards, active);
+            while (shards[0].stop >= 0) {
+                shareBatchSums(shards[0].stop, active);
+                for (int r = 0; r < active; r++) shards[r].resume = true;
+                runAll(shards, active);
+            }
+
+            // Sums pairs of replicas at distance 1, 2, 4... (log2(active) parallel levels)
+            long reduceStart = Metrics.ENABLED ? System.nanoTime() : 0L;
+            for (int l = 0, distance = 1; distance < active; l++, distance *= 2) {
+                int pairs = 0;
+                for (int r = 0; r + distance < active; r += 2 * distance) pairs++;
+                runAll(levels[l], pairs);
+            }
+            if (Metrics.ENABLED) Metrics.REDUCE_TIME.recordSince(reduceStart);
+        }
+
+        // The replicas stopped at the BatchNormLayer `index`: its sums over all the shards, added in
+        // replica 0 (in a fixed order) and copied back to the others. Only [Feature] values, so serial.
+        private void shareBatchSums(int index, int active) {
+            boolean deltas = network.isBackwardStage();
+            BatchNormLayer total = (BatchNormLayer) network.getLayer(index);
+            for (int r = 1; r < active; r++) {
+                total.addBatchSums((BatchNormLayer) replicas[r].getLayer(index), deltas);
+            }
+            for (int r = 1; r < active; r++) {
+                ((BatchNormLayer) replicas[r].getLayer(index)).copyBatchSums(total, deltas);
+            }
+        }
+
+        // Runs tasks[0..count) in parallel and waits for them (in order when run inline)
+        private void runAll(RecursiveAction[] tasks, int count) {
+            for (int i = 0; i < count; i++) tasks[i].reinitialize();
+            if (getPool() != Parallelism.getPool()) {
+                for (int i = 0; i < count; i++) tasks[i].invoke();
+                return;
+            }
+            for (int i = count - 1; i > 0; i--) tasks[i].fork();
+            tasks[0].invoke();
+            for (int i = 1; i < count; i++) tasks[i].join();
+        }
+    }
+
+    private static class ShardTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final NeuralNetwork replica;
+        private Matrix inputs, targets;
+        private SparseMatrix sparseInputs; // Instead of inputs
+        private boolean resume;            // Resume the pass after a stop instead of starting it
+        private int stop;                  // BatchNormLayer the pass stopped at, -1 once done
+
+        ShardTask(NeuralNetwork replica) {
+            this.replica = replica;
+        }
+
+        @Override
+        protected void compute() {
+            if (resume) stop = replica.resumeGradients();
+            else if (sparseInputs != null) stop = replica.startGradients(sparseInputs, targets);
+            else stop = replica.startGradients(inputs, targets);
+        }
+    }
+
+    private static class ReduceTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final NeuralNetwork target, source;
+
+        ReduceTask(NeuralNetwork target, NeuralNetwork source) {
+            this.target = target;
+            this.source = source;
+        }
+
+        @Override
+        protected void compute() {
+            target.addGradients(source);
+        }
+    }
+}
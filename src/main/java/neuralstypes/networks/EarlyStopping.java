@@ -0,0 +1,61 @@
+package neuralstypes.networks;
+
+// Stops the training when the validation score did not improve for `patience` validations
+public class EarlyStopping implements TrainingCallback {
+
+    private final Monitor monitor;
+    private final int patience;
+    private final double minDelta;
+
+    private double best;
+    private int bestEpoch;
+    private int wait;
+
+    // minDelta: smallest change of the score that counts as an improvement
+    public EarlyStopping(Monitor monitor, int patience, double minDelta) {
+        if (patience < 1) {
+            throw new IllegalArgumentException("The patience must be at least 1 epoch.");
+        }
+        this.monitor = monitor;
+        this.patience = patience;
+        this.minDelta = minDelta;
+    }
+
+    @Override
+    public void onTrainBegin(Trainer trainer) {
+        best = Double.NEGATIVE_INFINITY;
+        bestEpoch = 0;
+        wait = 0;
+    }
+
+    @Override
+    public void onValidationEnd(Trainer trainer, int epoch, BackgroundEvaluator.Result result) {
+        double score = monitor.score(result);
+        if (Monitor.improves(score, best, minDelta)) {
+            best = score;
+            bestEpoch = epoch;
+            wait = 0;
+        } else if (++wait >= patience && !trainer.isStopRequested()) {
+            System.out.printf(">>> Early stopping: no better validation %s for %d epochs (best: epoch %d)%n",
+                    monitor.getName().toLowerCase(), wait, bestEpoch);
+            trainer.stop();
+        }
+    }
+
+    @Override
+    public double[] getState() {
+        return new double[] {best, bestEpoch, wait};
+    }
+
+    @Override
+    public void setState(double[] state) {
+        best = state[0];
+        bestEpoch = (int) state[1];
+        wait = (int) state[2];
+    }
+
+    // Epoch of the best validation score so far
+    public int getBestEpoch() {
+        return bestEpoch;
+    }
+}
@@ -0,0 +1,147 @@
+package neuralstypes.networks;
+
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import datatreatments.MiniBatchesSamples;
+import datatreatments.MiniBatchesSamples.MiniBatch;
+import utility.Parallelism;
+
+/**
+ * Asynchronous (Hogwild-style) training.
+ *
+ * Every worker owns a replica of the network that shares the weights and
+ * velocities of the trained one. Workers take batches from the same
+ * {@link MiniBatchesSamples} epoch and update the shared parameters without
+ * any lock or barrier, so a worker may compute its gradient on weights that
+ * other workers have changed meanwhile.
+ *
+ * The staleness of an update is the number of updates made by other workers
+ * between the moment its batch started and the moment it was applied.
+ */
+public class HogwildTrainer {
+
+    private final NeuralNetwork[] replicas;
+
+    // Number of updates applied to the shared parameters (version of the weights)
+    private final AtomicLong updateCounter = new AtomicLong();
+
+    public HogwildTrainer(NeuralNetwork network, int workers) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("At least one worker is needed.");
+        }
+        this.replicas = new NeuralNetwork[workers];
+        this.replicas[0] = network;
+        for (int i = 1; i < workers; i++) {
+            replicas[i] = network.replicate();
+        }
+    }
+
+    public int getWorkers() {
+        return replicas.length;
+    }
+
+    // Preallocates the batch buffers of every worker
+    public void reserveWorkspaces(int maxBatchSize) {
+        for (NeuralNetwork replica : replicas) {
+            replica.reserveWorkspaces(maxBatchSize);
+        }
+    }
+
+    // ------------------------------------------------------------
+    // Train one epoch (all the batches of the sampler)
+    // ------------------------------------------------------------
+    public Stats trainEpoch(MiniBatchesSamples samples, float learningRate) {
+        samples.startNewEpoch();
+        Stats stats = new Stats();
+
+        Worker[] workers = new Worker[replicas.length];
+        for (int i = 0; i < replicas.length; i++) {
+            workers[i] = new Worker(replicas[i], samples, learningRate, stats);
+        }
+
+        long start = System.nanoTime();
+        Parallelism.getPool().invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                ForkJoinTask.invokeAll(workers);
+            }
+        });
+        stats.elapsedNanos = System.nanoTime() - start;
+
+        return stats;
+    }
+
+    private class Worker extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final NeuralNetwork replica;
+        private final MiniBatchesSamples samples;
+        private final float learningRate;
+        private final Stats stats;
+
+        Worker(NeuralNetwork replica, MiniBatchesSamples samples, float learningRate, Stats stats) {
+            this.replica = replica;
+            this.samples = samples;
+            this.learningRate = learningRate;
+            this.stats = stats;
+        }
+
+        @Override
+        protected void compute() {
+            MiniBatch batch;
+            while ((batch = samples.getNextBatch()) != null) {
+                long readVersion = updateCounter.get();
+
+                if (batch.sparseInputs != null) replica.trainBatch(batch.sparseInputs, batch.targets, learningRate);
+                else replica.trainBatch(batch.inputs, batch.targets, learningRate);
+
+                long appliedVersion = updateCounter.getAndIncrement();
+                stats.record(appliedVersion - readVersion, batch.size());
+            }
+        }
+    }
+
+    // ------------------------------------------------------------
+    // Metrics of one epoch (updated lock-free by the workers)
+    // ------------------------------------------------------------
+    public static class Stats {
+        private final LongAdder updates = new LongAdder();
+        private final LongAdder samples = new LongAdder();
+        private final LongAdder totalStaleness = new LongAdder();
+        private final AtomicLong maxStaleness = new AtomicLong();
+        private long elapsedNanos;
+
+        private void record(long staleness, int batchSize) {
+            updates.increment();
+            samples.add(batchSize);
+            totalStaleness.add(staleness);
+            maxStaleness.accumulateAndGet(staleness, Math::max);
+        }
+
+        public long getUpdates() {
+            return updates.sum();
+        }
+
+        public double getAverageStaleness() {
+            long count = updates.sum();
+            return count == 0 ? 0.0 : (double) totalStaleness.sum() / count;
+        }
+
+        public long getMaxStaleness() {
+            return maxStaleness.get();
+        }
+
+        public double getSamplesPerSecond() {
+            return elapsedNanos == 0 ? 0.0 : samples.sum() / (elapsedNanos / 1e9);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Updates: %d | Staleness avg %.2f, max %d | Throughput: %.0f samples/s",
+                    getUpdates(), getAverageStaleness(), getMaxStaleness(), getSamplesPerSecond());
+        }
+    }
+}
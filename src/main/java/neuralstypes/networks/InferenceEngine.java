@@ -0,0 +1,116 @@
+package neuralstypes.networks;
+
+import java.util.Arrays;
+
+import neuralstypes.FrozenLayer;
+import utility.Matrix;
+
+/**
+ * Thread-safe inference on a frozen copy of the weights of a network
+ * (see {@link NeuralNetwork#freeze()}).
+ *
+ * Unlike {@link NeuralNetwork#forwardBatch(Matrix)}, nothing is stored in the
+ * layers: the activations live in a workspace owned by the calling thread, so
+ * any number of threads can predict at the same time, and training the
+ * original network afterwards does not change the results of the engine.
+ */
+public class InferenceEngine {
+
+    private final FrozenLayer[] layers;
+
+    // Activation buffers of each thread, grown to the biggest batch it has seen. Shared by every
+    // engine the thread runs: a pool thread that scores a new snapshot every epoch reuses them
+    // instead of keeping one set per engine alive in its thread-local map.
+    private static final ThreadLocal<Workspace> WORKSPACES = ThreadLocal.withInitial(Workspace::new);
+
+    InferenceEngine(FrozenLayer[] layers) {
+        if (layers.length == 0) {
+            throw new IllegalArgumentException("Cannot build an inference engine without layers.");
+        }
+        this.layers = layers;
+    }
+
+    public int getInputSize() {
+        return layers[0].getInputSize();
+    }
+
+    public int getOutputSize() {
+        return layers[layers.length - 1].getOutputSize();
+    }
+
+    // ------------------------------------------------------------
+    // Prediction
+    // ------------------------------------------------------------
+
+    // Outputs of a batch, in a buffer of the calling thread: valid until its next prediction
+    public Matrix predict(Matrix inputs) {
+        if (inputs.getColumns() != getInputSize()) {
+            throw new IllegalArgumentException("Expected " + getInputSize() + " inputs, got " + inputs.getColumns());
+        }
+        Matrix[] outputs = WORKSPACES.get().prepare(layers, inputs.getRows());
+
+        Matrix current = inputs;
+        for (int i = 0; i < layers.length; i++) {
+            layers[i].forward(current, outputs[i]);
+            current = outputs[i];
+        }
+        return current;
+    }
+
+    // Output probabilities of a single sample (new array)
+    public float[] predict(float[] input) {
+        return predict(Matrix.fromRow(input)).copyRow(0);
+    }
+
+    // Index of the highest output of every row
+    public int[] classify(Matrix inputs) {
+        Matrix outputs = predict(inputs);
+        int[] classes = new int[outputs.getRows()];
+        for (int i = 0; i < classes.length; i++) {
+            classes[i] = argmax(outputs, i);
+        }
+        return classes;
+    }
+
+    public int classify(float[] input) {
+        return argmax(predict(Matrix.fromRow(input)), 0);
+    }
+
+    static int argmax(Matrix outputs, int row) {
+        float[] data = outputs.getData();
+        int start = outputs.rowOffset(row);
+        int best = 0;
+        for (int j = 1; j < outputs.getColumns(); j++) {
+            if (data[start + j] > data[start + best]) best = j;
+        }
+        return best;
+    }
+
+    // ------------------------------------------------------------
+    // Per-thread activation buffers
+    // ------------------------------------------------------------
+    private static final class Workspace {
+        float[][] buffers = new float[0][];
+        Matrix[] outputs = new Matrix[0];
+        FrozenLayer[] owner; // Layers of the engine the views were built for
+
+        // Output views of every layer for a batch (rebuilt only when the engine or the batch size changes)
+        Matrix[] prepare(FrozenLayer[] layers, int batchSize) {
+            if (owner == layers && outputs[0].getRows() == batchSize) {
+                return outputs;
+            }
+            if (buffers.length < layers.length) buffers = Arrays.copyOf(buffers, layers.length);
+            if (outputs.length != layers.length) outputs = new Matrix[layers.length];
+
+            for (int i = 0; i < layers.length; i++) {
+                int width = layers[i].getOutputSize();
+                if (buffers[i] == null || buffers[i].length < batchSize * width) {
+                    buffers[i] = new float[batchSize * width];
+                }
+                outputs[i] = new Matrix(buffers[i], 0, batchSize, width, width);
+            }
+            owner = layers;
+            return outputs;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package neuralstypes.networks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import utility.Matrix;
+
+/**
+ * Groups single-sample requests of many threads into batches for an
+ * {@link InferenceEngine}.
+ *
+ * A batch is sent as soon as it has maxBatchSize requests, or when its oldest
+ * request has waited maxDelay, so the latency added by the grouping is bounded
+ * by maxDelay plus the time of one batch. Batches are run one at a time by a
+ * dedicated thread (the GEMM of a batch is already parallel).
+ */
+public class MicroBatcher implements AutoCloseable {
+
+    private static final long IDLE_POLL_MILLIS = 100;
+
+    private final InferenceEngine engine;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+
+    private final BlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+    private final Matrix batchInputs;
+    private final List<Request> pending;
+    private final Thread worker;
+    private volatile boolean closed;
+
+    // Statistics
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+
+    public MicroBatcher(InferenceEngine engine, int maxBatchSize, long maxDelay, TimeUnit unit) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1.");
+        }
+        this.engine = engine;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = unit.toNanos(maxDelay);
+        this.batchInputs = new Matrix(maxBatchSize, engine.getInputSize());
+        this.pending = new ArrayList<>(maxBatchSize);
+
+        this.worker = new Thread(this::run, "inference-batcher");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    // ------------------------------------------------------------
+    // Requests
+    // ------------------------------------------------------------
+
+    // Output probabilities of one sample, completed when its batch has run
+    public CompletableFuture<float[]> submit(float[] input) {
+        if (input.length != engine.getInputSize()) {
+            throw new IllegalArgumentException("Expected " + engine.getInputSize() + " inputs, got " + input.length);
+        }
+        if (closed) {
+            throw new IllegalStateException("The batcher is closed.");
+        }
+        Request request = new Request(input);
+        queue.add(request);
+
+        // Closed meanwhile: the worker may already be gone
+        if (closed && queue.remove(request)) {
+            request.result.completeExceptionally(new IllegalStateException("The batcher is closed."));
+        }
+        return request.result;
+    }
+
+    // Blocking version of submit
+    public float[] predict(float[] input) throws InterruptedException {
+        try {
+            return submit(input).get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Inference failed.", e.getCause());
+        }
+    }
+
+    public int classify(float[] input) throws InterruptedException {
+        return InferenceEngine.argmax(Matrix.fromRow(predict(input)), 0);
+    }
+
+    public long getRequestCount() {
+        return requests.sum();
+    }
+
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    public double getAverageBatchSize() {
+        long count = batches.sum();
+        return count == 0 ? 0.0 : (double) requests.sum() / count;
+    }
+
+    // Runs the requests already queued, then stops the worker
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Request request;
+        while ((request = queue.poll()) != null) {
+            request.result.completeExceptionally(new IllegalStateException("The batcher is closed."));
+        }
+    }
+
+    // ------------------------------------------------------------
+    // Worker
+    // ------------------------------------------------------------
+    private void run() {
+        try {
+            while (!closed || !queue.isEmpty()) {
+                Request first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+
+                // Fill the batch until it is full or the first request has waited long enough
+                pending.add(first);
+                long deadline = first.arrival + maxDelayNanos;
+                while (pending.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    Request next = (remaining > 0) ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) break;
+                    pending.add(next);
+                }
+
+                runBatch();
+                pending.clear();
+            }
+        } catch (InterruptedException e) {
+            for (Request request : pending) {
+                request.result.completeExceptionally(e);
+            }
+        }
+    }
+
+    private void runBatch() {
+        int size = pending.size();
+        try {
+            float[] data = batchInputs.getData();
+            for (int i = 0; i < size; i++) {
+                System.arraycopy(pending.get(i).input, 0, data, batchInputs.rowOffset(i), batchInputs.getColumns());
+            }
+
+            Matrix outputs = engine.predict(batchInputs.rowView(0, size));
+            for (int i = 0; i < size; i++) {
+                pending.get(i).result.complete(outputs.copyRow(i));
+            }
+        } catch (RuntimeException e) {
+            for (int i = 0; i < size; i++) {
+                pending.get(i).result.completeExceptionally(e);
+            }
+        }
+        requests.add(size);
+        batches.increment();
+    }
+
+    private static class Request {
+        final float[] input;
+        final long arrival = System.nanoTime();
+        final CompletableFuture<float[]> result = new CompletableFuture<>();
+
+        Request(float[] input) {
+            this.input = input;
+        }
+    }
+}
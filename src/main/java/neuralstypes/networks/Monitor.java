@@ -0,0 +1,36 @@
+package neuralstypes.networks;
+
+// Validation score followed by the callbacks of a Trainer (higher is better)
+public enum Monitor {
+    ACCURACY("Accuracy"),
+    LOSS("Loss");
+
+    private final String name;
+
+    Monitor(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    // The loss is negated, so that every score improves upwards
+    public double score(BackgroundEvaluator.Result result) {
+        return (this == LOSS) ? -result.getLoss() : result.getAccuracy();
+    }
+
+    // True if `score` beats `best` by more than minDelta
+    public static boolean improves(double score, double best, double minDelta) {
+        return score > best + minDelta;
+    }
+
+    public static Monitor getByName(String name) {
+        for (Monitor monitor : Monitor.values()) {
+            if (monitor.getName().equalsIgnoreCase(name)) {
+                return monitor;
+            }
+        }
+        return null;
+    }
+}
@@ -1,15 +1,36 @@
 package neuralstypes.networks;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Random;
 
+import neuralstypes.BatchNormLayer;
+import neuralstypes.FrozenLayer;
 import neuralstypes.Layer;
+import neuralstypes.QuantizedLayer;
+import neuralstypes.SharedWorkspace;
+import utility.HalfPrecision;
+import utility.Matrix;
+import utility.SparseMatrix;
+import utility.functions.FunctionNames;
+import utility.metrics.Histogram;
+import utility.metrics.Metrics;
+import utility.optimizers.Optimizer;
 
 public abstract class NeuralNetwork {
 
     protected final Random randomGenerator;
     private final ArrayList<Layer> layers = new ArrayList<>();
 
+    // Mixed precision (see setActivationPrecision)
+    private HalfPrecision activationPrecision;
+    private SharedWorkspace sharedWorkspace;
+    private long skippedSteps;
+
+    // Per-layer timers, only created with -Dnn.metrics (shared by the replicas)
+    private Histogram[] forwardTimers = new Histogram[0];
+    private Histogram[] backwardTimers = new Histogram[0];
+    private Histogram[] updateTimers = new Histogram[0];
 
 
     // ------------------------------------------------------------
@@ -27,41 +48,204 @@ public abstract class NeuralNetwork {
     // Network building
     // ------------------------------------------------------------
     public void addLayer(Layer layer) {
+        // Same update rule for every layer (replicated layers already share it, with its state)
+        if (!layers.isEmpty() && layer.getOptimizer() != getOptimizer()) layer.setOptimizer(getOptimizer());
         layers.add(layer);
+        if (activationPrecision != null) setActivationPrecision(activationPrecision); // New output layer
+
+        if (Metrics.ENABLED) {
+            int index = layers.size() - 1;
+            forwardTimers = Arrays.copyOf(forwardTimers, layers.size());
+            backwardTimers = Arrays.copyOf(backwardTimers, layers.size());
+            updateTimers = Arrays.copyOf(updateTimers, layers.size());
+            forwardTimers[index] = Metrics.layerTimer(index, "forward");
+            backwardTimers[index] = Metrics.layerTimer(index, "backward");
+            updateTimers[index] = Metrics.layerTimer(index, "update");
+        }
+    }
+
+    // Update rule of every layer (SGD with momentum 0.9 by default). The optimizer state
+    // starts from zero, so set it before replicating the network (trainers, Hogwild).
+    public void setOptimizer(Optimizer optimizer) {
+        for (Layer layer : layers) {
+            layer.setOptimizer(optimizer);
+        }
+    }
+
+    public Optimizer getOptimizer() {
+        return layers.isEmpty() ? null : layers.get(0).getOptimizer();
+    }
+
+    // Mixed precision: the hidden activations are kept in 16 bits between the forward and the
+    // backward pass, and computed in float buffers shared by all the layers. Weights, gradients
+    // and optimizer state stay float32. null goes back to float32 batch buffers.
+    // With FLOAT16, a step whose gradients overflowed is skipped (see getSkippedSteps).
+    public void setActivationPrecision(HalfPrecision precision) {
+        this.activationPrecision = precision;
+        this.sharedWorkspace = (precision != null) ? new SharedWorkspace() : null;
+        for (int i = 0; i < layers.size(); i++) {
+            Layer inputLayer = (i > 0) ? layers.get(i - 1) : null;
+            layers.get(i).useCompactActivations(precision, sharedWorkspace, i, inputLayer, i < layers.size() - 1);
+        }
+    }
+
+    public HalfPrecision getActivationPrecision() {
+        return activationPrecision;
+    }
+
+    // Training steps skipped because of infinite or NaN gradients (FLOAT16 activations only)
+    public long getSkippedSteps() {
+        return skippedSteps;
+    }
+
+    // Memory of the batch buffers of every layer (float32 or 16-bit + shared buffers)
+    public long getActivationBytes() {
+        long bytes = (sharedWorkspace != null) ? sharedWorkspace.getBytes() : 0;
+        for (Layer layer : layers) {
+            bytes += layer.getActivationBytes();
+        }
+        return bytes;
     }
 
     public int size() {
         return layers.size();
     }
 
+    public Layer getLayer(int index) {
+        return layers.get(index);
+    }
 
+    // Creates a network that shares the parameters of this one but keeps its own
+    // gradients and batch buffers, so it can train on another thread
+    public NeuralNetwork replicate() {
+        return new Replica(this);
+    }
 
-    // --- FORWARD (BATCH) ---
-    public float[][] forwardBatch(float[][] inputs) {
-        float[][] currentInputs = inputs;
+    // Preallocates the batch buffers of every layer, so training steps with
+    // batches of up to maxBatchSize rows do not allocate
+    public void reserveWorkspaces(int maxBatchSize) {
         for (Layer layer : layers) {
-            currentInputs = layer.forward(currentInputs);
+            layer.reserveWorkspace(maxBatchSize);
+        }
+    }
+
+
+
+    // --- FORWARD (BATCH) ---
+    public Matrix forwardBatch(Matrix inputs) {
+        return forwardFrom(0, inputs);
+    }
+
+    // Sparse inputs: only the first layer sees them (see Layer.forward(SparseMatrix))
+    public Matrix forwardBatch(SparseMatrix inputs) {
+        long start = Metrics.ENABLED ? System.nanoTime() : 0L;
+        Matrix outputs = layers.get(0).forward(inputs);
+        if (Metrics.ENABLED) forwardTimers[0].recordSince(start);
+        return forwardFrom(1, outputs);
+    }
+
+    private Matrix forwardFrom(int first, Matrix inputs) {
+        Matrix currentInputs = inputs;
+        // Indexed loops: an iterator would allocate on every training step
+        for (int i = first; i < layers.size(); i++) {
+            long start = Metrics.ENABLED ? System.nanoTime() : 0L;
+            currentInputs = layers.get(i).forward(currentInputs);
+            if (Metrics.ENABLED) forwardTimers[i].recordSince(start);
         }
         return currentInputs;
     }
 
     // ------------------------------------------------------------
-    // Backpropagation for batch
+    // Forward + backward in stages (batch normalisation over several replicas)
     // ------------------------------------------------------------
-    private void backwardBatch(float[][] targets) {
+    // The pass stops at every BatchNormLayer: in the forward pass once it has the sums of its
+    // inputs, in the backward pass once it has the sums of its deltas. DataParallelTrainer adds
+    // them up over the replicas before resuming, so the layer uses the statistics of the whole
+    // batch and not of the shard. Alone, the network just resumes (see computeGradients).
+
+    private Matrix stageInputs, stageTargets;  // Inputs of the next layer, targets of the batch
+    private int stageLayer;                     // Next layer of the forward pass, or of the backward pass
+    private boolean backwardStage;
+    private boolean stopped;                    // Stopped at stageLayer (its next layer in the backward pass)
+
+    // Starts the pass; returns the index of the BatchNormLayer it stopped at, or -1 once the
+    // gradients are computed
+    int startGradients(Matrix inputsBatch, Matrix targetsBatch) {
+        startStages(targetsBatch);
+        stageInputs = inputsBatch;
+        stageLayer = 0;
+        return resumeGradients();
+    }
 
-        int L = layers.size();
+    // Sparse inputs: only the first layer sees them (see Layer.forward(SparseMatrix))
+    int startGradients(SparseMatrix inputsBatch, Matrix targetsBatch) {
+        startStages(targetsBatch);
+        long start = Metrics.ENABLED ? System.nanoTime() : 0L;
+        stageInputs = layers.get(0).forward(inputsBatch);
+        if (Metrics.ENABLED) forwardTimers[0].recordSince(start);
+        stageLayer = 1;
+        return resumeGradients();
+    }
 
-        // Output layer
-        layers.get(L - 1).computeOutputDeltas(targets);
+    private void startStages(Matrix targetsBatch) {
+        resetAllGradients();
+        setTraining(true);
+        stageTargets = targetsBatch;
+        backwardStage = false;
+        stopped = false;
+    }
+
+    // Goes on after a stop, until the next one
+    int resumeGradients() {
+        int L = layers.size();
+        long start = 0L;
+
+        // Indexed loops: an iterator would allocate on every training step
+        if (!backwardStage) {
+            for (int i = stageLayer; i < L; i++) {
+                Layer layer = layers.get(i);
+                if (Metrics.ENABLED) start = System.nanoTime();
+                if (layer instanceof BatchNormLayer && !stopped) {
+                    ((BatchNormLayer) layer).sumBatch(stageInputs);
+                    if (Metrics.ENABLED) forwardTimers[i].recordSince(start);
+                    stageLayer = i;
+                    stopped = true;
+                    return i;
+                }
+                stopped = false;
+                stageInputs = layer.forward(stageInputs);
+                if (Metrics.ENABLED) forwardTimers[i].recordSince(start);
+            }
+            if (Metrics.ENABLED) Metrics.LOSS.add(batchLoss(stageTargets));
+
+            // Output layer
+            if (Metrics.ENABLED) start = System.nanoTime();
+            layers.get(L - 1).computeOutputDeltas(stageTargets);
+            if (Metrics.ENABLED) backwardTimers[L - 1].recordSince(start);
+            backwardStage = true;
+            stageLayer = L - 2;
+        }
 
         // Hidden layers (back to front)
-        for (int i = L - 2; i >= 0; i--) {
-            Layer current = layers.get(i);
+        for (int i = stageLayer; i >= 0; i--) {
             Layer next = layers.get(i + 1);
-
-            current.computeHiddenDeltas(next);
+            if (next instanceof BatchNormLayer && !stopped) {
+                stageLayer = i;
+                stopped = true;
+                return i + 1;
+            }
+            stopped = false;
+            if (Metrics.ENABLED) start = System.nanoTime();
+            layers.get(i).computeHiddenDeltas(next);
+            if (Metrics.ENABLED) backwardTimers[i].recordSince(start);
         }
+        setTraining(false);
+        return -1;
+    }
+
+    // True if the pass stopped in the backward pass, at the sums of the deltas
+    boolean isBackwardStage() {
+        return backwardStage;
     }
 
 
@@ -70,40 +254,180 @@ public abstract class NeuralNetwork {
     // ------------------------------------------------------------
     // Update weights for all layers
     // ------------------------------------------------------------
-    private void updateWeights(float learningRate,float momentum ) {
+    void updateWeights(float learningRate) {
 
-        for (Layer layer : layers) {
-            layer.updateWeights(learningRate, momentum);
+        if (activationPrecision != null && activationPrecision.canOverflow() && !hasFiniteGradients()) {
+            skippedSteps++; // Overflow in the 16-bit activations: drop the batch
+            return;
+        }
+        if (Metrics.ENABLED) recordStep();
+
+        for (int i = 0; i < layers.size(); i++) {
+            long start = Metrics.ENABLED ? System.nanoTime() : 0L;
+            layers.get(i).updateWeights(learningRate);
+            if (Metrics.ENABLED) updateTimers[i].recordSince(start);
         }
     }
 
+    // Metrics of the update about to be applied: samples and norm of the mean gradient
+    private void recordStep() {
+        int samples = layers.get(0).getGradientSamples();
+        if (samples == 0) return;
+
+        double squaredSum = 0.0;
+        for (int i = 0; i < layers.size(); i++) {
+            squaredSum += layers.get(i).getGradientSquaredSum();
+        }
+        Metrics.STEPS.increment();
+        Metrics.SAMPLES.add(samples);
+        Metrics.GRADIENT_NORM.record(Math.sqrt(squaredSum) / samples);
+    }
+
+    // Summed loss of the last forward pass: cross-entropy after a softmax, half squared error otherwise
+    private double batchLoss(Matrix targets) {
+        Layer outputLayer = layers.get(layers.size() - 1);
+        Matrix outputs = outputLayer.getOutputs();
+        boolean crossEntropy = outputLayer.getActivationName().equalsIgnoreCase(FunctionNames.SOFTMAX.getName());
+
+        float[] o = outputs.getData(), t = targets.getData();
+        double loss = 0.0;
+        for (int r = 0; r < outputs.getRows(); r++) {
+            int outputRow = outputs.rowOffset(r), targetRow = targets.rowOffset(r);
+            for (int c = 0; c < outputs.getColumns(); c++) {
+                float target = t[targetRow + c];
+                if (crossEntropy) {
+                    if (target != 0.0f) loss -= target * Math.log(Math.max(o[outputRow + c], 1e-12f));
+                } else {
+                    double error = o[outputRow + c] - target;
+                    loss += 0.5 * error * error;
+                }
+            }
+        }
+        return loss;
+    }
+
+    private boolean hasFiniteGradients() {
+        for (int i = 0; i < layers.size(); i++) {
+            if (!layers.get(i).hasFiniteGradients()) return false;
+        }
+        return true;
+    }
+
     // ------------------------------------------------------------
     // Reset gradients for a new batch
     // ------------------------------------------------------------
-    private void resetAllGradients() {
+    void resetAllGradients() {
 
-        for (Layer layer : layers) {
-            layer.resetGradients();
+        for (int i = 0; i < layers.size(); i++) {
+            layers.get(i).resetGradients();
+        }
+    }
+
+    // ------------------------------------------------------------
+    // Add the gradients of a replica (same topology)
+    // ------------------------------------------------------------
+    void addGradients(NeuralNetwork other) {
+
+        for (int i = 0; i < layers.size(); i++) {
+            layers.get(i).addGradients(other.layers.get(i));
+        }
+    }
+
+    // ------------------------------------------------------------
+    // Forward + backward without updating the weights
+    // ------------------------------------------------------------
+    // Alone, the sums of a batch normalisation are already those of the whole batch
+    void computeGradients(Matrix inputsBatch, Matrix targetsBatch) {
+
+        int stop = startGradients(inputsBatch, targetsBatch);
+        while (stop >= 0) stop = resumeGradients();
+    }
+
+    void computeGradients(SparseMatrix inputsBatch, Matrix targetsBatch) {
+
+        int stop = startGradients(inputsBatch, targetsBatch);
+        while (stop >= 0) stop = resumeGradients();
+    }
+
+    // Batch statistics and dropout masks in the training passes, running statistics and
+    // no dropout otherwise (e.g. predictions with forwardBatch)
+    private void setTraining(boolean training) {
+        for (int i = 0; i < layers.size(); i++) {
+            layers.get(i).setTraining(training);
         }
     }
 
     // ------------------------------------------------------------
     // Train one batch
     // ------------------------------------------------------------
-    public void trainBatch(float[][] inputsBatch, float[][] targetsBatch,float learningRate,float momentum) {
+    public void trainBatch(Matrix inputsBatch, Matrix targetsBatch, float learningRate) {
+        long start = Metrics.ENABLED ? System.nanoTime() : 0L;
 
-        resetAllGradients();
+        computeGradients(inputsBatch, targetsBatch);
+
+        updateWeights(learningRate);
+
+        if (Metrics.ENABLED) Metrics.STEP_TIME.recordSince(start);
+    }
+
+    // Same with sparse inputs (CSR rows, e.g. images whose background is zero)
+    public void trainBatch(SparseMatrix inputsBatch, Matrix targetsBatch, float learningRate) {
+        long start = Metrics.ENABLED ? System.nanoTime() : 0L;
+
+        computeGradients(inputsBatch, targetsBatch);
 
-        forwardBatch(inputsBatch);
+        updateWeights(learningRate);
+
+        if (Metrics.ENABLED) Metrics.STEP_TIME.recordSince(start);
+    }
 
-        backwardBatch(targetsBatch);
 
-        updateWeights(learningRate,momentum);
+    // Read-only snapshot of the current weights, see InferenceEngine. A batch normalisation after
+    // a dense layer is folded into its weights, and dropout is left out.
+    public InferenceEngine freeze() {
+        ArrayList<FrozenLayer> frozen = new ArrayList<>(layers.size());
+        for (int i = 0; i < layers.size(); i++) {
+            BatchNormLayer folded = foldedBatchNorm(i);
+            FrozenLayer layer = (folded != null) ? folded.freezeFolded(layers.get(i)) : layers.get(i).freeze();
+            if (folded != null) i++;
+            if (layer != null) frozen.add(layer);
+        }
+        return new InferenceEngine(frozen.toArray(new FrozenLayer[0]));
     }
 
+    // Int8 snapshot of the current weights, see QuantizedEngine (same folding as freeze)
+    public QuantizedEngine quantize() {
+        ArrayList<QuantizedLayer> quantized = new ArrayList<>(layers.size());
+        for (int i = 0; i < layers.size(); i++) {
+            BatchNormLayer folded = foldedBatchNorm(i);
+            QuantizedLayer layer = (folded != null) ? folded.quantizeFolded(layers.get(i)) : layers.get(i).quantize();
+            if (folded != null) i++;
+            if (layer != null) quantized.add(layer);
+        }
+        return new QuantizedEngine(quantized.toArray(new QuantizedLayer[0]));
+    }
 
-    public float[][] getFinalOutputs() {
-        if (layers.isEmpty()) return new float[0][0];
+    // Batch normalisation right after layer i that can be folded into it, or null
+    private BatchNormLayer foldedBatchNorm(int i) {
+        if (i + 1 >= layers.size() || !(layers.get(i + 1) instanceof BatchNormLayer)) return null;
+        BatchNormLayer batchNorm = (BatchNormLayer) layers.get(i + 1);
+        return batchNorm.canFold(layers.get(i)) ? batchNorm : null;
+    }
+
+    public Matrix getFinalOutputs() {
+        if (layers.isEmpty()) return new Matrix(0, 0);
         return layers.get(layers.size() - 1).getOutputs();
     }
-}
\ No newline at end of file
+
+    // Network built from the replicated layers of another one
+    private static final class Replica extends NeuralNetwork {
+
+        Replica(NeuralNetwork source) {
+            super(0);
+            for (int i = 0; i < source.layers.size(); i++) {
+                addLayer(source.layers.get(i).replicate());
+            }
+            if (source.activationPrecision != null) setActivationPrecision(source.activationPrecision);
+        }
+    }
+}
@@ -1,6 +1,11 @@
 package neuralstypes.networks;
 
+import neuralstypes.BatchNormLayer;
+import neuralstypes.Conv2DLayer;
+import neuralstypes.DropoutLayer;
 import neuralstypes.Layer;
+import neuralstypes.MaxPool2DLayer;
+import utility.Matrix;
 
 public class ProjectNetwork extends NeuralNetwork {
 
@@ -10,14 +15,51 @@ public class ProjectNetwork extends NeuralNetwork {
     private static final int HIDDEN_SIZE_1 = 128;
     private static final int HIDDEN_SIZE_2 = 64;
 
+    // Convolutional variant: 3x3 filters, then 2x2 max pooling
+    private static final int FILTERS = 16;
+    private static final int KERNEL = 3;
+    private static final int POOL = 2;
+
+    // Batch normalisation variant: dropout rate after each hidden layer
+    private static final float DROPOUT = 0.2f;
+
+    // Variants, see the constructors taking a model name
+    public static final String DENSE = "dense";
+    public static final String CONVOLUTIONAL = "conv";
+    public static final String BATCH_NORM = "bn";
+
     public ProjectNetwork() {
-        super();
-        createProjectNetwork();
+        this(false);
     }
 
     public ProjectNetwork(long seed) {
+        this(seed, false);
+    }
+
+    public ProjectNetwork(boolean convolutional) {
+        this(convolutional ? CONVOLUTIONAL : DENSE);
+    }
+
+    public ProjectNetwork(long seed, boolean convolutional) {
+        this(seed, convolutional ? CONVOLUTIONAL : DENSE);
+    }
+
+    // model: DENSE, CONVOLUTIONAL or BATCH_NORM (ignoring case)
+    public ProjectNetwork(String model) {
+        super();
+        createNetwork(model);
+    }
+
+    public ProjectNetwork(long seed, String model) {
         super(seed);
-        createProjectNetwork();
+        createNetwork(model);
+    }
+
+    private void createNetwork(String model) {
+        if (model.equalsIgnoreCase(DENSE)) createProjectNetwork();
+        else if (model.equalsIgnoreCase(CONVOLUTIONAL)) createConvolutionalNetwork();
+        else if (model.equalsIgnoreCase(BATCH_NORM)) createBatchNormNetwork();
+        else throw new IllegalArgumentException("Unknown model: " + model);
     }
 
     private void createProjectNetwork() {
@@ -37,23 +79,70 @@ public class ProjectNetwork extends NeuralNetwork {
         System.out.println("Network initialized: Inputs(784) -> Hidden1(128) -> Hidden2(64) -> Output(10).");
     }
 
+    private void createConvolutionalNetwork() {
+        // Convolution: 28x28x1 -> 26x26x16
+        Conv2DLayer convolution = new Conv2DLayer(pictureSize, pictureSize, 1, FILTERS, KERNEL, "RELU",
+                this.randomGenerator);
+        this.addLayer(convolution);
+
+        // Max pooling: 26x26x16 -> 13x13x16
+        MaxPool2DLayer pooling = new MaxPool2DLayer(convolution.getOutputHeight(), convolution.getOutputWidth(),
+                FILTERS, POOL);
+        this.addLayer(pooling);
+
+        // Hidden Layer: 2704 -> 64
+        this.addLayer(new Layer(pooling.getOutputSize(), HIDDEN_SIZE_2, "RELU", this.randomGenerator));
+
+        // Output Layer: 64 -> 10 (Softmax)
+        this.addLayer(new Layer(HIDDEN_SIZE_2, outputNumber, "SOFTMAX", this.randomGenerator));
+
+        System.out.println("Network initialized: Inputs(28x28) -> Conv3x3(16) -> MaxPool2(13x13x16) -> Hidden(64)"
+                + " -> Output(10).");
+    }
+
+    private void createBatchNormNetwork() {
+        int inputPixels = pictureSize * pictureSize;
+
+        // Hidden Layer 1: Input -> 128, normalised before the ReLU, then dropout
+        this.addLayer(new Layer(inputPixels, HIDDEN_SIZE_1, "IDENTITY", this.randomGenerator));
+        this.addLayer(new BatchNormLayer(HIDDEN_SIZE_1, "RELU"));
+        this.addLayer(new DropoutLayer(HIDDEN_SIZE_1, DROPOUT, this.randomGenerator));
+
+        // Hidden Layer 2: 128 -> 64, same
+        this.addLayer(new Layer(HIDDEN_SIZE_1, HIDDEN_SIZE_2, "IDENTITY", this.randomGenerator));
+        this.addLayer(new BatchNormLayer(HIDDEN_SIZE_2, "RELU"));
+        this.addLayer(new DropoutLayer(HIDDEN_SIZE_2, DROPOUT, this.randomGenerator));
+
+        // Output Layer: 64 -> 10 (Softmax)
+        this.addLayer(new Layer(HIDDEN_SIZE_2, outputNumber, "SOFTMAX", this.randomGenerator));
+
+        System.out.println("Network initialized: Inputs(784) -> Hidden1(128, BatchNorm, Dropout)"
+                + " -> Hidden2(64, BatchNorm, Dropout) -> Output(10).");
+    }
+
     // Renamed to 'predict' to avoid conflict with NeuralNetwork.compute(float[]) returning float[]
+    // Uses the batch buffers of the layers: not thread-safe, use freeze() to serve predictions
     public float predict(float[] inputs) {
-        float[][] batchInput = new float[1][inputs.length];
-        batchInput[0] = inputs;
-        float[][] result = forwardBatch(batchInput);
+        return predict(Matrix.fromRow(inputs));
+    }
+
+    // Predicts a single image given as a 1-row matrix (e.g. a row view of a DataSet)
+    public float predict(Matrix input) {
+        Matrix result = forwardBatch(input);
 
         // Select the index with the highest probability
-        return outputSelector(result[0]);
+        return outputSelector(result, 0);
     }
 
-    private int outputSelector(float[] outputs) {
+    private int outputSelector(Matrix outputs, int row) {
+        float[] data = outputs.getData();
+        int start = outputs.rowOffset(row);
         float max = -1.0f; 
         int argmax = 0;
-        for (int i = 0; i < outputs.length; i++) {
-            if (outputs[i] > max) {
+        for (int i = 0; i < outputs.getColumns(); i++) {
+            if (data[start + i] > max) {
                 argmax = i;
-                max = outputs[i];
+                max = data[start + i];
             }
         }
         return argmax;
@@ -0,0 +1,62 @@
+package neuralstypes.networks;
+
+// Multiplies the learning rate by `factor` when the validation score did not improve for `patience` validations
+public class ReduceLearningRateOnPlateau implements TrainingCallback {
+
+    private final Monitor monitor;
+    private final float factor;
+    private final int patience;
+    private final double minDelta;
+    private final float minScale; // Lowest scale of the schedule
+
+    private double best;
+    private int wait;
+
+    public ReduceLearningRateOnPlateau(Monitor monitor, float factor, int patience, double minDelta, float minScale) {
+        if (!(factor > 0.0f && factor < 1.0f) || patience < 1) {
+            throw new IllegalArgumentException("The factor must be in (0, 1) and the patience at least 1 epoch.");
+        }
+        this.monitor = monitor;
+        this.factor = factor;
+        this.patience = patience;
+        this.minDelta = minDelta;
+        this.minScale = minScale;
+    }
+
+    @Override
+    public void onTrainBegin(Trainer trainer) {
+        best = Double.NEGATIVE_INFINITY;
+        wait = 0;
+    }
+
+    @Override
+    public void onValidationEnd(Trainer trainer, int epoch, BackgroundEvaluator.Result result) {
+        double score = monitor.score(result);
+        if (Monitor.improves(score, best, minDelta)) {
+            best = score;
+            wait = 0;
+        } else if (++wait >= patience) {
+            // The next `patience` validations get a chance with the lower rate, which applies
+            // from the epoch after the next one (see TrainingCallback)
+            wait = 0;
+            boolean epochsLeft = epoch + 2 <= trainer.getEpochs() && !trainer.isStopRequested();
+            if (epochsLeft && trainer.getLearningRateScale() * factor >= minScale) {
+                trainer.scaleLearningRate(factor);
+                System.out.printf(">>> Plateau: learning rate x%.4f from epoch %d%n",
+                        trainer.getLearningRateScale(), epoch + 2);
+            }
+        }
+    }
+
+    // The scale itself is saved by the Trainer
+    @Override
+    public double[] getState() {
+        return new double[] {best, wait};
+    }
+
+    @Override
+    public void setState(double[] state) {
+        best = state[0];
+        wait = (int) state[1];
+    }
+}
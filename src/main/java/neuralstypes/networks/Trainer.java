@@ -0,0 +1,303 @@
+package neuralstypes.networks;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import datatreatments.DataSource;
+import datatreatments.MiniBatchesSamples;
+import datatreatments.MiniBatchesSamples.MiniBatch;
+import utility.Matrix;
+import utility.metrics.Metrics;
+import utility.optimizers.LearningRateSchedule;
+
+/**
+ * Training loop of a network: epochs of mini-batches, a validation after
+ * every epoch, checkpoints, and the hooks of {@link TrainingCallback}.
+ *
+ * The batches come from one of three sources:
+ *  - setSamples: in-memory batches in the order of a sampler, stepped by a
+ *    DataParallelTrainer (the learning rate follows the schedule per batch)
+ *  - setStream: batches read from disk, stepped by a DataParallelTrainer
+ *  - setHogwild: in-memory batches shared by the workers of a HogwildTrainer
+ * (the last two take the learning rate at the middle of the epoch).
+ *
+ * The learning rate is the one of the schedule times a scale, which
+ * callbacks can lower (see ReduceLearningRateOnPlateau), and a callback can
+ * stop the loop at the end of the current epoch (see EarlyStopping). The
+ * validation runs in a BackgroundEvaluator while the next epoch trains.
+ * The scale and the state of the callbacks are saved in the checkpoints, and
+ * put back by resume.
+ */
+public class Trainer {
+
+    private final NeuralNetwork network;
+    private final LearningRateSchedule schedule;
+    private final int epochs;
+    private final List<TrainingCallback> callbacks = new ArrayList<>();
+
+    // Source of the batches (see the setters)
+    private MiniBatchesSamples samples;
+    private DataSource source;
+    private DataParallelTrainer parallelTrainer;
+    private HogwildTrainer hogwildTrainer;
+
+    private BackgroundEvaluator evaluator;
+    private Matrix validationInputs;
+    private int[] validationLabels;
+
+    // Checkpoint after every epoch, to resume the run
+    private CheckpointWriter checkpointWriter;
+    private Path checkpointFile;
+
+    private float learningRateScale = 1.0f;
+    private boolean stopRequested;
+    private Checkpoint resumed; // State given back to the callbacks when the run starts
+
+    // Trains up to `epochs` completed epochs
+    public Trainer(NeuralNetwork network, LearningRateSchedule schedule, int epochs) {
+        this.network = network;
+        this.schedule = schedule;
+        this.epochs = epochs;
+    }
+
+    // ------------------------------------------------------------
+    // Configuration
+    // ------------------------------------------------------------
+
+    public void setSamples(MiniBatchesSamples samples, DataParallelTrainer trainer) {
+        this.samples = samples;
+        this.source = null;
+        this.parallelTrainer = trainer;
+        this.hogwildTrainer = null;
+    }
+
+    public void setStream(DataSource source, DataParallelTrainer trainer) {
+        this.samples = null;
+        this.source = source;
+        this.parallelTrainer = trainer;
+        this.hogwildTrainer = null;
+    }
+
+    public void setHogwild(MiniBatchesSamples samples, HogwildTrainer trainer) {
+        this.samples = samples;
+        this.source = null;
+        this.parallelTrainer = null;
+        this.hogwildTrainer = trainer;
+    }
+
+    // Scores the network on (inputs, labels) after every epoch
+    public void setValidation(BackgroundEvaluator evaluator, Matrix inputs, int[] labels) {
+        this.evaluator = evaluator;
+        this.validationInputs = inputs;
+        this.validationLabels = labels;
+    }
+
+    // Saves the network to `file` after every epoch, in the background
+    public void setCheckpoints(CheckpointWriter writer, Path file) {
+        this.checkpointWriter = writer;
+        this.checkpointFile = file;
+    }
+
+    public void addCallback(TrainingCallback callback) {
+        callbacks.add(callback);
+    }
+
+    // Continues the learning rate scale and the callbacks of the run that saved the checkpoint
+    // (restore its weights into the network, and run from its epoch)
+    public void resume(Checkpoint checkpoint) {
+        this.resumed = checkpoint;
+    }
+
+    List<TrainingCallback> getCallbacks() {
+        return callbacks;
+    }
+
+    // ------------------------------------------------------------
+    // Control (from the callbacks)
+    // ------------------------------------------------------------
+
+    // Ends the loop at the end of the current epoch
+    public void stop() {
+        stopRequested = true;
+    }
+
+    public boolean isStopRequested() {
+        return stopRequested;
+    }
+
+    // Multiplies every later learning rate by `factor`
+    public void scaleLearningRate(float factor) {
+        learningRateScale *= factor;
+    }
+
+    public float getLearningRateScale() {
+        return learningRateScale;
+    }
+
+    // Learning rate at a (fractional) epoch
+    public float getLearningRate(double epoch) {
+        return schedule.getLearningRate(epoch) * learningRateScale;
+    }
+
+    public NeuralNetwork getNetwork() {
+        return network;
+    }
+
+    public int getEpochs() {
+        return epochs;
+    }
+
+    // ------------------------------------------------------------
+    // Loop
+    // ------------------------------------------------------------
+
+    // Trains from `firstEpoch` completed epochs (e.g. those of a checkpoint) and
+    // returns the completed epochs at the end (fewer than getEpochs() when stopped)
+    public int run(int firstEpoch) throws IOException {
+        if (samples == null && source == null) {
+            throw new IllegalStateException("No batches to train on, see setSamples, setStream and setHogwild.");
+        }
+        stopRequested = false;
+        for (int i = 0; i < callbacks.size(); i++) callbacks.get(i).onTrainBegin(this);
+        if (resumed != null) {
+            learningRateScale = resumed.getLearningRateScale();
+            for (int i = 0; i < callbacks.size(); i++) {
+                double[] state = resumed.getCallbackState(i, callbacks.get(i));
+                if (state != null) callbacks.get(i).setState(state);
+            }
+            resumed = null;
+        }
+
+        Validation pending = null;
+        long startTime = System.currentTimeMillis();
+        float previousLearningRate = (firstEpoch > 0) ? getLearningRate(firstEpoch - 0.5) : Float.NaN;
+        int epoch = firstEpoch;
+        while (epoch < epochs && !stopRequested) {
+            long epochStart = System.nanoTime();
+            for (int i = 0; i < callbacks.size(); i++) callbacks.get(i).onEpochBegin(this, epoch + 1);
+
+            // Followed per batch when the batches are indexed, otherwise taken at the middle of the epoch
+            float learningRate = getLearningRate(epoch + 0.5);
+            if (learningRate != previousLearningRate) {
+                System.out.printf(">>> LR: %.6f%n", learningRate);
+                previousLearningRate = learningRate;
+            }
+
+            trainEpoch(epoch, learningRate);
+            epoch++;
+            for (int i = 0; i < callbacks.size(); i++) callbacks.get(i).onEpochEnd(this, epoch, learningRate);
+
+            // The previous validation ran during this epoch, this one runs during the next
+            deliver(pending);
+            pending = null;
+            if (evaluator != null) {
+                float elapsed = (System.currentTimeMillis() - startTime) / 1000.0f;
+                pending = new Validation(epoch, elapsed,
+                        evaluator.evaluate(network, validationInputs, validationLabels));
+            }
+
+            // With -Dnn.metrics=<file> the metrics are written after every epoch: a Prometheus
+            // text file if the name ends with ".prom", otherwise one JSON line per epoch
+            // (with the validation accuracy of the last evaluation delivered)
+            if (Metrics.ENABLED) {
+                Metrics.endEpoch(epoch, (System.nanoTime() - epochStart) / 1e9);
+                try {
+                    Metrics.export();
+                } catch (IOException ex) {
+                    System.err.println("Cannot write the metrics: " + ex.getMessage());
+                }
+            }
+
+            // Written in the background while the next epoch trains
+            if (checkpointWriter != null) {
+                checkpointWriter.saveAsync(this, epoch, learningRate, checkpointFile)
+                        .exceptionally(ex -> {
+                            System.err.println("Checkpoint failed: " + ex.getMessage());
+                            return null;
+                        });
+            }
+        }
+
+        deliver(pending); // Last epoch scored
+        for (int i = 0; i < callbacks.size(); i++) callbacks.get(i).onTrainEnd(this);
+        return epoch;
+    }
+
+    // One pass over the batches (epoch counted from 0)
+    private void trainEpoch(int epoch, float learningRate) throws IOException {
+        if (hogwildTrainer != null) {
+            HogwildTrainer.Stats stats = hogwildTrainer.trainEpoch(samples, learningRate);
+            System.out.println(stats);
+        }
+        else if (source != null) {
+            source.startEpoch();
+            MiniBatch batch;
+            for (int b = 0; (batch = source.nextBatch()) != null; b++) {
+                parallelTrainer.trainBatch(batch.inputs, batch.targets, learningRate);
+                source.release(batch);
+                batchEnd(epoch + 1, b, learningRate);
+            }
+        }
+        else {
+            // Order of this epoch (the rows of each batch are gathered into one reused buffer)
+            samples.startEpoch(epoch);
+            int epochSize = samples.getEpochSize();
+            for (int b = 0, position = 0; b < samples.getBatchCount(); b++) {
+                MiniBatch batch = samples.getBatch(b);
+                float batchRate = getLearningRate(epoch + (double) position / epochSize);
+                if (batch.sparseInputs != null) {
+                    parallelTrainer.trainBatch(batch.sparseInputs, batch.targets, batchRate);
+                } else {
+                    parallelTrainer.trainBatch(batch.inputs, batch.targets, batchRate);
+                }
+                position += batch.size();
+                batchEnd(epoch + 1, b, batchRate);
+            }
+        }
+    }
+
+    // Indexed loop: an iterator would allocate on every training step
+    private void batchEnd(int epoch, int batch, float learningRate) {
+        for (int i = 0; i < callbacks.size(); i++) {
+            callbacks.get(i).onBatchEnd(this, epoch, batch, learningRate);
+        }
+    }
+
+    // ------------------------------------------------------------
+    // Validation in the background
+    // ------------------------------------------------------------
+    private static class Validation {
+        final int epoch;
+        final float elapsed; // Seconds of training when it started
+        final CompletableFuture<BackgroundEvaluator.Result> result;
+
+        Validation(int epoch, float elapsed, CompletableFuture<BackgroundEvaluator.Result> result) {
+            this.epoch = epoch;
+            this.elapsed = elapsed;
+            this.result = result;
+        }
+    }
+
+    // Waits for a validation (usually finished already) and hands it to the callbacks
+    private void deliver(Validation validation) {
+        if (validation == null) return;
+        BackgroundEvaluator.Result result;
+        try {
+            result = validation.result.join();
+        } catch (CompletionException ex) {
+            System.err.println("Validation failed: " + ex.getCause().getMessage());
+            return;
+        }
+        System.out.printf("Epoch %d/%d - Validation Accuracy: %.2f%% | Time: %.2fs%n",
+                validation.epoch, epochs, result.getAccuracy() * 100, validation.elapsed);
+        if (Metrics.ENABLED) Metrics.VALIDATION_ACCURACY.set(result.getAccuracy());
+
+        for (int i = 0; i < callbacks.size(); i++) {
+            callbacks.get(i).onValidationEnd(this, validation.epoch, result);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package neuralstypes.networks;
+
+/**
+ * Hooks into the loop of a {@link Trainer}, e.g. to stop it early or to
+ * change its learning rate.
+ *
+ * Every method runs on the training thread, between two training steps, and
+ * does nothing by default. Epochs are numbered from 1, like the completed
+ * epochs of a checkpoint.
+ *
+ * The validation of an epoch runs in the background while the next epoch
+ * trains, so its result is handed to {@link #onValidationEnd} at the end of
+ * that next epoch (or after the last one). A decision taken there applies
+ * from the epoch after, the same way on every run.
+ */
+public interface TrainingCallback {
+
+    default void onTrainBegin(Trainer trainer) {
+    }
+
+    default void onEpochBegin(Trainer trainer, int epoch) {
+    }
+
+    // After every step of the synchronous modes (Hogwild steps run on several threads and are not reported)
+    default void onBatchEnd(Trainer trainer, int epoch, int batch, float learningRate) {
+    }
+
+    // The network holds the weights at the end of `epoch`; learningRate is the one at its middle
+    default void onEpochEnd(Trainer trainer, int epoch, float learningRate) {
+    }
+
+    default void onValidationEnd(Trainer trainer, int epoch, BackgroundEvaluator.Result result) {
+    }
+
+    // After the last epoch (also when stopped early), once every validation was delivered
+    default void onTrainEnd(Trainer trainer) {
+    }
+
+    // State saved in the checkpoints (e.g. a patience counter), given back to setState when a
+    // run resumes, after onTrainBegin. None by default.
+    default double[] getState() {
+        return null;
+    }
+
+    default void setState(double[] state) {
+    }
+}
@@ -0,0 +1,49 @@
+package neuralstypes.networks.search;
+
+import java.util.List;
+
+/**
+ * Trials trained together, in rungs of increasing epochs.
+ *
+ * Every trial still running is trained up to the epochs of a rung, then all
+ * of them are ranked on their validation accuracy and only the best
+ * 1/reduction go on to the next rung (successive halving). A bracket with a
+ * single rung trains every trial to the end.
+ */
+public class Bracket {
+
+    private final List<TrialConfig> configs;
+    private final int[] rungEpochs;
+    private final int reduction;
+
+    public Bracket(List<TrialConfig> configs, int[] rungEpochs, int reduction) {
+        if (configs.isEmpty() || rungEpochs.length == 0 || reduction < 2) {
+            throw new IllegalArgumentException("A bracket needs trials, rungs and a reduction of at least 2.");
+        }
+        for (int i = 0; i < rungEpochs.length; i++) {
+            if (rungEpochs[i] < 1 || (i > 0 && rungEpochs[i] <= rungEpochs[i - 1])) {
+                throw new IllegalArgumentException("The epochs of the rungs must increase.");
+            }
+        }
+        this.configs = List.copyOf(configs);
+        this.rungEpochs = rungEpochs.clone();
+        this.reduction = reduction;
+    }
+
+    // Trials kept after a rung of `running` trials (at least one)
+    public int survivors(int running) {
+        return Math.max(1, running / reduction);
+    }
+
+    public List<TrialConfig> getConfigs() {
+        return configs;
+    }
+
+    public int getRungCount() {
+        return rungEpochs.length;
+    }
+
+    public int getRungEpochs(int rung) {
+        return rungEpochs[rung];
+    }
+}
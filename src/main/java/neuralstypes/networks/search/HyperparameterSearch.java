@@ -0,0 +1,273 @@
+package neuralstypes.networks.search;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import datatreatments.FashionMNISTDataLoader.DataSet;
+import datatreatments.MiniBatchesSamples;
+import datatreatments.MiniBatchesSamples.MiniBatch;
+import datatreatments.sampling.SubsetSampler;
+import neuralstypes.networks.InferenceEngine;
+import neuralstypes.networks.ProjectNetwork;
+import utility.Matrix;
+import utility.Parallelism;
+import utility.optimizers.LearningRateSchedule;
+
+/**
+ * Trains many configurations of the project network at the same time and
+ * ranks them with k-fold cross-validation.
+ *
+ * The training set is split once into k folds of row indices: a trial
+ * trains one network per fold on the other folds and is scored on that
+ * fold. All of them read the same data set (the rows of a batch are gathered
+ * into a buffer of the thread, see MiniBatchesSamples), so a trial only
+ * costs its networks.
+ *
+ * The brackets (see {@link Bracket} and {@link SearchNames}) run one after
+ * the other. Inside a rung, the training of every (trial, fold) pair is a
+ * task of the shared pool of {@link Parallelism}, whose matrix products also
+ * run on that pool, so the threads stay busy with a handful of small
+ * networks as well as with dozens of them. Trials dropped after a rung free
+ * their networks.
+ */
+public class HyperparameterSearch {
+
+    private static final int VALIDATION_BATCH = 512;
+
+    private final DataSet data;
+    private final Fold[] folds;
+    private final long seed;
+
+    private final List<Trial> trials = new ArrayList<>();
+
+    public HyperparameterSearch(DataSet data, int folds, long seed) {
+        if (folds < 2 || folds > data.size()) {
+            throw new IllegalArgumentException("Cross-validation needs between 2 and " + data.size() + " folds.");
+        }
+        this.data = data;
+        this.seed = seed;
+
+        // Rows shuffled once, fold f gets the slice [f * n / k, (f + 1) * n / k)
+        int rows = data.size();
+        int[] shuffled = new int[rows];
+        for (int i = 0; i < rows; i++) shuffled[i] = i;
+        SplittableRandom random = new SplittableRandom(seed);
+        for (int i = rows - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = shuffled[i];
+            shuffled[i] = shuffled[j];
+            shuffled[j] = swap;
+        }
+        this.folds = new Fold[folds];
+        for (int f = 0; f < folds; f++) {
+            int start = (int) ((long) f * rows / folds), end = (int) ((long) (f + 1) * rows / folds);
+            int[] validation = Arrays.copyOfRange(shuffled, start, end);
+            int[] training = new int[rows - validation.length];
+            System.arraycopy(shuffled, 0, training, 0, start);
+            System.arraycopy(shuffled, end, training, start, rows - end);
+            // File order, for the locality of the gathers
+            Arrays.sort(validation);
+            Arrays.sort(training);
+            this.folds[f] = new Fold(training, validation);
+        }
+    }
+
+    // ------------------------------------------------------------
+    // Search
+    // ------------------------------------------------------------
+
+    // Runs the brackets and returns every trial, best first
+    public List<Trial> run(List<Bracket> brackets) {
+        for (int b = 0; b < brackets.size(); b++) {
+            Bracket bracket = brackets.get(b);
+            List<Trial> running = new ArrayList<>();
+            for (TrialConfig config : bracket.getConfigs()) {
+                Trial trial = createTrial(trials.size() + 1, b + 1, config);
+                trials.add(trial);
+                running.add(trial);
+            }
+
+            for (int rung = 0; rung < bracket.getRungCount(); rung++) {
+                int epochs = bracket.getRungEpochs(rung);
+                long start = System.nanoTime();
+                trainRung(running, epochs);
+                running.sort(RANKING);
+                System.out.printf("Bracket %d/%d, rung %d/%d: %d trials x %d folds, %d epochs - Best: %.2f%% "
+                                + "(trial %d) | Time: %.2fs%n", b + 1, brackets.size(), rung + 1,
+                        bracket.getRungCount(), running.size(), folds.length, epochs,
+                        running.get(0).getAccuracy() * 100, running.get(0).getId(),
+                        (System.nanoTime() - start) / 1e9);
+
+                // The losers of the rung are stopped, the winners of the last one are complete
+                boolean last = rung == bracket.getRungCount() - 1;
+                int kept = last ? 0 : bracket.survivors(running.size());
+                for (Trial trial : running.subList(kept, running.size())) {
+                    trial.finish(last ? Trial.Status.COMPLETED : Trial.Status.STOPPED);
+                }
+                running = new ArrayList<>(running.subList(0, kept));
+            }
+        }
+
+        List<Trial> ranked = new ArrayList<>(trials);
+        ranked.sort(RANKING);
+        return ranked;
+    }
+
+    // Best accuracy first, then lowest loss
+    private static final Comparator<Trial> RANKING = Comparator.comparingDouble(Trial::getAccuracy).reversed()
+            .thenComparingDouble(Trial::getLoss);
+
+    private Trial createTrial(int id, int bracket, TrialConfig config) {
+        // Same initial weights on every fold, different batches
+        long trialSeed = new SplittableRandom(seed + id).nextLong();
+        FoldRun[] runs = new FoldRun[folds.length];
+        for (int f = 0; f < folds.length; f++) {
+            runs[f] = new FoldRun(folds[f], config, trialSeed, trialSeed + f + 1);
+        }
+        return new Trial(id, bracket, config, runs);
+    }
+
+    // Every fold of every running trial up to `epochs`, in parallel, then the trials are scored
+    // (validation runs on this thread: the shared buffers of the folds and of the inference
+    // engines are per thread, and a pool thread waiting for a join may run another trial)
+    private void trainRung(List<Trial> running, int epochs) {
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (Trial trial : running) {
+            for (FoldRun run : trial.getRuns()) {
+                tasks.add(ForkJoinTask.adapt(() -> run.trainTo(epochs)));
+            }
+        }
+        Parallelism.getPool().invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                ForkJoinTask.invokeAll(tasks);
+            }
+        });
+        for (Trial trial : running) {
+            for (FoldRun run : trial.getRuns()) {
+                run.validate();
+            }
+            trial.score(epochs);
+        }
+    }
+
+    // ------------------------------------------------------------
+    // Leaderboard
+    // ------------------------------------------------------------
+
+    // One line per trial, best first (the scores are those of the last rung a trial reached)
+    public static void writeLeaderboard(List<Trial> ranked, Path file) throws IOException {
+        StringBuilder out = new StringBuilder("rank,trial,bracket,batch_size,learning_rate,momentum,decay_every,"
+                + "epochs,status,accuracy,accuracy_std,loss,training_seconds\n");
+        for (int i = 0; i < ranked.size(); i++) {
+            Trial trial = ranked.get(i);
+            TrialConfig config = trial.getConfig();
+            out.append(i + 1).append(',').append(trial.getId()).append(',').append(trial.getBracket()).append(',')
+               .append(config.getBatchSize()).append(',').append(config.getLearningRate()).append(',')
+               .append(config.getMomentum()).append(',').append(config.getDecayEvery()).append(',')
+               .append(trial.getEpochs()).append(',').append(trial.getStatus().name().toLowerCase()).append(',')
+               .append(trial.getAccuracy()).append(',').append(trial.getAccuracyDeviation()).append(',')
+               .append(trial.getLoss()).append(',').append(trial.getTrainingNanos() / 1e9).append('\n');
+        }
+        Files.writeString(file, out);
+    }
+
+    // ------------------------------------------------------------
+    // Folds and their runs
+    // ------------------------------------------------------------
+
+    // Row indices of one split, and the batches of its validation rows (shared by every trial)
+    private class Fold {
+        final int[] trainingRows;
+        final MiniBatchesSamples validation;
+
+        Fold(int[] trainingRows, int[] validationRows) {
+            this.trainingRows = trainingRows;
+            this.validation = new MiniBatchesSamples(data, VALIDATION_BATCH,
+                    new SubsetSampler(validationRows, false), 0L);
+        }
+    }
+
+    // Network of one trial on one fold; only one task at a time uses it
+    class FoldRun {
+        private final Fold fold;
+        private final ProjectNetwork network;
+        private final MiniBatchesSamples samples;
+        private final LearningRateSchedule schedule;
+
+        private int trainedEpochs;
+        private double accuracy;
+        private double loss;
+        private long trainingNanos;
+
+        FoldRun(Fold fold, TrialConfig config, long networkSeed, long samplerSeed) {
+            this.fold = fold;
+            this.network = new ProjectNetwork(networkSeed);
+            this.network.setOptimizer(config.createOptimizer());
+            this.samples = new MiniBatchesSamples(data, config.getBatchSize(),
+                    new SubsetSampler(fold.trainingRows, true), samplerSeed);
+            this.schedule = config.createSchedule();
+        }
+
+        // Trains the missing epochs
+        void trainTo(int epochs) {
+            long start = System.nanoTime();
+            int epochSize = samples.getEpochSize();
+            for (int e = trainedEpochs; e < epochs; e++) {
+                samples.startEpoch(e);
+                for (int b = 0, position = 0; b < samples.getBatchCount(); b++) {
+                    MiniBatch batch = samples.getBatch(b);
+                    network.trainBatch(batch.inputs, batch.targets,
+                            schedule.getLearningRate(e + (double) position / epochSize));
+                    position += batch.size();
+                }
+            }
+            trainedEpochs = Math.max(trainedEpochs, epochs);
+            trainingNanos += System.nanoTime() - start;
+        }
+
+        // Accuracy and loss on the validation fold
+        void validate() {
+            InferenceEngine engine = network.freeze();
+            int correct = 0;
+            double losses = 0.0;
+            for (int b = 0; b < fold.validation.getBatchCount(); b++) {
+                MiniBatch batch = fold.validation.getBatch(b);
+                Matrix outputs = engine.predict(batch.inputs);
+                float[] values = outputs.getData();
+                for (int i = 0; i < outputs.getRows(); i++) {
+                    int row = outputs.rowOffset(i), label = batch.labels[i];
+                    int predicted = 0;
+                    for (int j = 1; j < outputs.getColumns(); j++) {
+                        if (values[row + j] > values[row + predicted]) predicted = j;
+                    }
+                    if (predicted == label) correct++;
+                    losses -= Math.log(Math.max(values[row + label], 1e-12f));
+                }
+            }
+            int rows = fold.validation.getEpochSize();
+            this.accuracy = (double) correct / rows;
+            this.loss = losses / rows;
+        }
+
+        double getAccuracy() {
+            return accuracy;
+        }
+
+        double getLoss() {
+            return loss;
+        }
+
+        long getTrainingNanos() {
+            return trainingNanos;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package neuralstypes.networks.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+public enum SearchNames {
+    GRID("Grid"),           // Every combination of the candidates, trained to the end
+    RANDOM("Random"),       // `trials` random configurations, trained to the end
+    HALVING("Halving"),     // `trials` random configurations, the worst stopped early (successive halving)
+    HYPERBAND("Hyperband"); // Several halving brackets, from many short trials to a few full ones
+
+    private final String name;
+
+    SearchNames(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    // Brackets of the search, up to maxEpochs per trial (`trials` is not used by the grid and Hyperband)
+    public List<Bracket> plan(SearchSpace space, int trials, int maxEpochs, int reduction, SplittableRandom random) {
+        switch (this) {
+            case GRID:
+                return List.of(new Bracket(space.grid(), new int[] {maxEpochs}, reduction));
+            case RANDOM:
+                return List.of(new Bracket(space.sample(trials, random), new int[] {maxEpochs}, reduction));
+            case HALVING:
+                return List.of(new Bracket(space.sample(trials, random),
+                        rungEpochs(maxEpochs, reduction, maxHalvings(maxEpochs, reduction)), reduction));
+            default:
+                // Li et al.: bracket s starts n = ceil((sMax + 1) / (s + 1) * reduction^s) trials
+                // at maxEpochs / reduction^s epochs, so every bracket costs about the same
+                int sMax = maxHalvings(maxEpochs, reduction);
+                List<Bracket> brackets = new ArrayList<>();
+                for (int s = sMax; s >= 0; s--) {
+                    int count = (int) Math.ceil((sMax + 1.0) / (s + 1) * Math.pow(reduction, s));
+                    brackets.add(new Bracket(space.sample(count, random), rungEpochs(maxEpochs, reduction, s),
+                            reduction));
+                }
+                return brackets;
+        }
+    }
+
+    // Largest s with reduction^s <= maxEpochs
+    private static int maxHalvings(int maxEpochs, int reduction) {
+        int s = 0;
+        for (long budget = reduction; budget <= maxEpochs; budget *= reduction) s++;
+        return s;
+    }
+
+    // maxEpochs / reduction^s, ..., maxEpochs / reduction, maxEpochs (rounded, without repeats)
+    private static int[] rungEpochs(int maxEpochs, int reduction, int halvings) {
+        int[] epochs = new int[halvings + 1];
+        int count = 0;
+        for (int i = halvings; i >= 0; i--) {
+            int rung = (int) Math.max(1, Math.round(maxEpochs / Math.pow(reduction, i)));
+            if (count == 0 || rung > epochs[count - 1]) epochs[count++] = rung;
+        }
+        return Arrays.copyOf(epochs, count);
+    }
+
+    public static SearchNames getByName(String name) {
+        for (SearchNames search : SearchNames.values()) {
+            if (search.getName().equalsIgnoreCase(name)) {
+                return search;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,116 @@
+package neuralstypes.networks.search;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Candidate values of every hyperparameter.
+ *
+ * A grid search takes every combination of the candidates. A random search
+ * draws the batch size and the decay interval among the candidates, the
+ * learning rate log-uniformly and the momentum uniformly between the
+ * smallest and the largest candidates.
+ */
+public class SearchSpace {
+
+    // Around the hand-tuned values of Main (batch 64, lr 0.015, momentum 0.9)
+    private static final int[] DEFAULT_BATCH_SIZES = {32, 64, 128};
+    private static final float[] DEFAULT_LEARNING_RATES = {0.005f, 0.015f, 0.045f};
+    private static final float[] DEFAULT_MOMENTUMS = {0.8f, 0.9f};
+    private static final int[] DEFAULT_DECAY_EVERY = {3, 10};
+
+    private final int[] batchSizes;
+    private final float[] learningRates;
+    private final float[] momentums;
+    private final int[] decayEvery;
+
+    public SearchSpace(int[] batchSizes, float[] learningRates, float[] momentums, int[] decayEvery) {
+        if (batchSizes.length == 0 || learningRates.length == 0 || momentums.length == 0 || decayEvery.length == 0) {
+            throw new IllegalArgumentException("Every hyperparameter needs at least one candidate.");
+        }
+        this.batchSizes = batchSizes.clone();
+        this.learningRates = learningRates.clone();
+        this.momentums = momentums.clone();
+        this.decayEvery = decayEvery.clone();
+    }
+
+    public static SearchSpace defaults() {
+        return new SearchSpace(DEFAULT_BATCH_SIZES, DEFAULT_LEARNING_RATES, DEFAULT_MOMENTUMS, DEFAULT_DECAY_EVERY);
+    }
+
+    // Comma-separated candidates (e.g. "32,64"), the defaults where a list is null
+    public static SearchSpace parse(String batchSizes, String learningRates, String momentums, String decayEvery) {
+        return new SearchSpace(
+                batchSizes == null ? DEFAULT_BATCH_SIZES : parseInts(batchSizes),
+                learningRates == null ? DEFAULT_LEARNING_RATES : parseFloats(learningRates),
+                momentums == null ? DEFAULT_MOMENTUMS : parseFloats(momentums),
+                decayEvery == null ? DEFAULT_DECAY_EVERY : parseInts(decayEvery));
+    }
+
+    private static int[] parseInts(String list) {
+        String[] values = list.split(",");
+        int[] parsed = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            parsed[i] = Integer.parseInt(values[i].trim());
+        }
+        return parsed;
+    }
+
+    private static float[] parseFloats(String list) {
+        String[] values = list.split(",");
+        float[] parsed = new float[values.length];
+        for (int i = 0; i < values.length; i++) {
+            parsed[i] = Float.parseFloat(values[i].trim());
+        }
+        return parsed;
+    }
+
+    // ------------------------------------------------------------
+    // Configurations
+    // ------------------------------------------------------------
+
+    // Every combination of the candidates
+    public List<TrialConfig> grid() {
+        List<TrialConfig> configs = new ArrayList<>();
+        for (int batchSize : batchSizes) {
+            for (float learningRate : learningRates) {
+                for (float momentum : momentums) {
+                    for (int decay : decayEvery) {
+                        configs.add(new TrialConfig(batchSize, learningRate, momentum, decay));
+                    }
+                }
+            }
+        }
+        return configs;
+    }
+
+    public TrialConfig sample(SplittableRandom random) {
+        float minRate = min(learningRates), maxRate = max(learningRates);
+        float learningRate = (float) (minRate * Math.exp(random.nextDouble() * Math.log(maxRate / minRate)));
+        float minMomentum = min(momentums), maxMomentum = max(momentums);
+        float momentum = minMomentum + (float) random.nextDouble() * (maxMomentum - minMomentum);
+        return new TrialConfig(batchSizes[random.nextInt(batchSizes.length)], learningRate, momentum,
+                decayEvery[random.nextInt(decayEvery.length)]);
+    }
+
+    public List<TrialConfig> sample(int count, SplittableRandom random) {
+        List<TrialConfig> configs = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            configs.add(sample(random));
+        }
+        return configs;
+    }
+
+    private static float min(float[] values) {
+        float min = values[0];
+        for (float value : values) min = Math.min(min, value);
+        return min;
+    }
+
+    private static float max(float[] values) {
+        float max = values[0];
+        for (float value : values) max = Math.max(max, value);
+        return max;
+    }
+}
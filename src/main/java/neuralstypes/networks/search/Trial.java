@@ -0,0 +1,110 @@
+package neuralstypes.networks.search;
+
+/**
+ * One configuration of a search, trained once per cross-validation fold.
+ *
+ * The scores are those of the last rung the trial reached: the accuracy and
+ * the loss are averaged over the folds, and the deviation is the standard
+ * deviation of the accuracy between the folds.
+ */
+public class Trial {
+
+    public enum Status { RUNNING, STOPPED, COMPLETED }
+
+    private final int id;
+    private final int bracket;
+    private final TrialConfig config;
+    private final HyperparameterSearch.FoldRun[] runs; // One per fold, cleared once the trial is over
+
+    private Status status = Status.RUNNING;
+    private int epochs;
+    private double accuracy;
+    private double accuracyDeviation;
+    private double loss;
+    private long trainingNanos;
+
+    Trial(int id, int bracket, TrialConfig config, HyperparameterSearch.FoldRun[] runs) {
+        this.id = id;
+        this.bracket = bracket;
+        this.config = config;
+        this.runs = runs;
+    }
+
+    HyperparameterSearch.FoldRun[] getRuns() {
+        return runs;
+    }
+
+    // Scores of the folds, once all of them reached `epochs`
+    void score(int epochs) {
+        double sum = 0.0, squares = 0.0, losses = 0.0;
+        long nanos = 0L;
+        for (HyperparameterSearch.FoldRun run : runs) {
+            sum += run.getAccuracy();
+            squares += run.getAccuracy() * run.getAccuracy();
+            losses += run.getLoss();
+            nanos += run.getTrainingNanos();
+        }
+        this.epochs = epochs;
+        this.accuracy = sum / runs.length;
+        this.accuracyDeviation = Math.sqrt(Math.max(0.0, squares / runs.length - accuracy * accuracy));
+        this.loss = losses / runs.length;
+        this.trainingNanos = nanos;
+    }
+
+    // Frees the networks of the folds (the scores stay)
+    void finish(Status status) {
+        this.status = status;
+        for (int i = 0; i < runs.length; i++) {
+            runs[i] = null;
+        }
+    }
+
+    // ------------------------------------------------------------
+    // Getters
+    // ------------------------------------------------------------
+    public int getId() {
+        return id;
+    }
+
+    public int getBracket() {
+        return bracket;
+    }
+
+    public TrialConfig getConfig() {
+        return config;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    // Epochs trained on every fold
+    public int getEpochs() {
+        return epochs;
+    }
+
+    // Between 0 and 1
+    public double getAccuracy() {
+        return accuracy;
+    }
+
+    public double getAccuracyDeviation() {
+        return accuracyDeviation;
+    }
+
+    // Mean cross-entropy of the validation folds
+    public double getLoss() {
+        return loss;
+    }
+
+    // Training time summed over the folds (they may have run at the same time)
+    public long getTrainingNanos() {
+        return trainingNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Trial %d (%s): %.2f%% +- %.2f | Loss: %.4f | %d epochs, %s",
+                id, config, accuracy * 100, accuracyDeviation * 100, loss, epochs, status.name().toLowerCase());
+    }
+}
@@ -0,0 +1,58 @@
+package neuralstypes.networks.search;
+
+import utility.optimizers.LearningRateSchedule;
+import utility.optimizers.MomentumOptimizer;
+import utility.optimizers.Optimizer;
+
+// Hyperparameters of one trial (SGD with momentum, learning rate halved every `decayEvery` epochs)
+public class TrialConfig {
+
+    private final int batchSize;
+    private final float learningRate;
+    private final float momentum;
+    private final int decayEvery;
+
+    public TrialConfig(int batchSize, float learningRate, float momentum, int decayEvery) {
+        if (batchSize < 1 || decayEvery < 1 || !(learningRate > 0.0f) || momentum < 0.0f || momentum >= 1.0f) {
+            throw new IllegalArgumentException("Invalid trial: " + batchSize + ", " + learningRate + ", "
+                    + momentum + ", " + decayEvery);
+        }
+        this.batchSize = batchSize;
+        this.learningRate = learningRate;
+        this.momentum = momentum;
+        this.decayEvery = decayEvery;
+    }
+
+    public Optimizer createOptimizer() {
+        return new MomentumOptimizer(momentum);
+    }
+
+    // Halved at decayEvery, 2 * decayEvery, ... epochs
+    public LearningRateSchedule createSchedule() {
+        return epoch -> (float) (learningRate * Math.pow(0.5, Math.floor(epoch / decayEvery)));
+    }
+
+    // ------------------------------------------------------------
+    // Getters
+    // ------------------------------------------------------------
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public float getLearningRate() {
+        return learningRate;
+    }
+
+    public float getMomentum() {
+        return momentum;
+    }
+
+    public int getDecayEvery() {
+        return decayEvery;
+    }
+
+    @Override
+    public String toString() {
+        return "batch " + batchSize + ", lr " + learningRate + ", momentum " + momentum + ", decay every " + decayEvery;
+    }
+}
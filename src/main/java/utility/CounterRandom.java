@@ -0,0 +1,29 @@
+package utility;
+
+/**
+ * Counter-based random numbers: the value at (seed, counter) is a hash of
+ * the two (the SplitMix64 finaliser), so there is no state to update and any
+ * value can be computed again, in any order and on any thread.
+ *
+ * Dropout draws its masks with it and recomputes them in the backward pass
+ * instead of storing them.
+ */
+public final class CounterRandom {
+
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private CounterRandom() {
+    }
+
+    // 64 random bits at `counter` in the stream `seed`
+    public static long bits(long seed, long counter) {
+        return mix(seed + counter * GOLDEN_GAMMA);
+    }
+
+    // Bijective 64-bit hash (e.g. to derive the seed of another stream)
+    public static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,223 @@
+package utility;
+
+import java.util.Arrays;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Tiled matrix multiplication C += A * B (or C += A^T * B) over flat
+ * {@link Matrix} storage.
+ *
+ * The columns of B are split in blocks of COL_BLOCK and the shared dimension
+ * in blocks of DEPTH_BLOCK, so the part of B in use stays in cache while the
+ * rows of A go over it. Inside a block, a micro-kernel updates ROW_BLOCK rows
+ * of C at the same time, reusing every loaded row of B ROW_BLOCK times.
+ *
+ * Every element of C is accumulated in increasing k order, exactly like the
+ * plain IKJ loop, so both give the same result.
+ *
+ * An optional {@link Epilogue} finishes the result while it is still in
+ * cache: it is applied to every block of ROW_BLOCK rows just after the last
+ * depth block was added to it (or to whole rows of a panel for the steps that
+ * need a complete row, like softmax on more than COL_BLOCK columns). This
+ * saves the extra passes over C for the bias, the activation, etc.
+ *
+ * Big products are split in row panels that run on the shared pool of
+ * {@link Parallelism}.
+ */
+public class GemmEngine {
+
+    private static final int ROW_BLOCK = 4;
+    private static final int DEPTH_BLOCK = 256;
+    private static final int COL_BLOCK = 512;
+
+    // Minimum rows of a panel and minimum work (multiply-adds) to go parallel
+    private static final int MIN_PANEL_ROWS = 2 * ROW_BLOCK;
+    private static final long PARALLEL_THRESHOLD = 1L << 18;
+
+    // Inner loops over the columns (scalar or SIMD, see KernelBackend)
+    private static final KernelBackend KERNELS = KernelBackend.get();
+
+    private GemmEngine() {}
+
+    // Step applied to the final values of C, one row piece at a time
+    public interface Epilogue {
+        // Finishes the columns [column, column + length) of row `row`, starting at c[offset]
+        void apply(float[] c, int offset, int row, int column, int length);
+
+        // False if the step needs the whole row at once
+        default boolean isElementwise() {
+            return true;
+        }
+    }
+
+    // A (RowsA x ColsA) * B (ColsA x ColsB) is added to C (RowsA x ColsB)
+    public static void multiply(Matrix A, Matrix B, Matrix C) {
+        multiply(A, false, B, C, false, null);
+    }
+
+    // C = A * B, then the epilogue is applied to the final values of C.
+    // C is cleared block by block, so it needs no fill beforehand.
+    public static void multiplyInto(Matrix A, Matrix B, Matrix C, Epilogue epilogue) {
+        multiply(A, false, B, C, true, epilogue);
+    }
+
+    // A^T (ColsA x RowsA) * B (RowsA x ColsB) is added to C (ColsA x ColsB)
+    public static void multiplyTransposedA(Matrix A, Matrix B, Matrix C) {
+        multiply(A, true, B, C, false, null);
+    }
+
+    private static void multiply(Matrix A, boolean transposeA, Matrix B, Matrix C, boolean clear,
+                                 Epilogue epilogue) {
+        int rowsA = C.getRows();
+        int colsA = B.getRows();
+        int colsB = B.getColumns();
+
+        long work = (long) rowsA * colsA * colsB;
+        int threads = Parallelism.getThreadCount();
+
+        if (threads == 1 || work < PARALLEL_THRESHOLD || rowsA < 2 * MIN_PANEL_ROWS) {
+            multiplyPanel(A, transposeA, B, C, clear, epilogue, 0, rowsA);
+            return;
+        }
+
+        // Around two panels per thread so faster threads can steal the rest
+        int panelRows = Math.max(MIN_PANEL_ROWS, ceilTo(rowsA / (2 * threads), ROW_BLOCK));
+        Parallelism.getPool().invoke(new PanelTask(A, transposeA, B, C, clear, epilogue, 0, rowsA, panelRows));
+    }
+
+    private static int ceilTo(int value, int multiple) {
+        return ((value + multiple - 1) / multiple) * multiple;
+    }
+
+    // Computes the rows [rowStart, rowEnd) of the result
+    private static void multiplyPanel(Matrix A, boolean transposeA, Matrix B, Matrix C, boolean clear,
+                                      Epilogue epilogue, int rowStart, int rowEnd) {
+        int colsA = B.getRows();
+        int colsB = B.getColumns();
+
+        // Element (i, k) of the (possibly transposed) A is at a[base + i * rowStep + k * colStep]
+        int base = A.getOffset();
+        int rowStep = transposeA ? 1 : A.getStride();
+        int colStep = transposeA ? A.getStride() : 1;
+
+        // Row-wise steps can only run per block if a block covers whole rows
+        boolean blockEpilogue = epilogue != null && (epilogue.isElementwise() || colsB <= COL_BLOCK);
+
+        for (int jj = 0; jj < colsB; jj += COL_BLOCK) {
+            int jEnd = Math.min(jj + COL_BLOCK, colsB);
+
+            for (int kk = 0; kk < colsA; kk += DEPTH_BLOCK) {
+                int kEnd = Math.min(kk + DEPTH_BLOCK, colsA);
+                boolean first = clear && kk == 0;
+                boolean finished = blockEpilogue && kEnd == colsA;
+
+                int i = rowStart;
+                for (; i + ROW_BLOCK <= rowEnd; i += ROW_BLOCK) {
+                    if (first) clearBlock(C, i, i + ROW_BLOCK, jj, jEnd);
+                    microKernel4(A.getData(), base + i * rowStep, rowStep, colStep, B, C, i, kk, kEnd, jj, jEnd);
+                    if (finished) applyEpilogue(epilogue, C, i, i + ROW_BLOCK, jj, jEnd);
+                }
+                for (; i < rowEnd; i++) {
+                    if (first) clearBlock(C, i, i + 1, jj, jEnd);
+                    microKernel1(A.getData(), base + i * rowStep, colStep, B, C, i, kk, kEnd, jj, jEnd);
+                    if (finished) applyEpilogue(epilogue, C, i, i + 1, jj, jEnd);
+                }
+            }
+            if (colsA == 0) {
+                if (clear) clearBlock(C, rowStart, rowEnd, jj, jEnd);
+                if (blockEpilogue) applyEpilogue(epilogue, C, rowStart, rowEnd, jj, jEnd);
+            }
+        }
+
+        if (epilogue != null && !blockEpilogue) applyEpilogue(epilogue, C, rowStart, rowEnd, 0, colsB);
+    }
+
+    private static void clearBlock(Matrix C, int rowStart, int rowEnd, int jStart, int jEnd) {
+        float[] c = C.getData();
+        for (int i = rowStart; i < rowEnd; i++) {
+            int row = C.rowOffset(i);
+            Arrays.fill(c, row + jStart, row + jEnd, 0.0f);
+        }
+    }
+
+    private static void applyEpilogue(Epilogue epilogue, Matrix C, int rowStart, int rowEnd, int jStart, int jEnd) {
+        float[] c = C.getData();
+        for (int i = rowStart; i < rowEnd; i++) {
+            epilogue.apply(c, C.rowOffset(i) + jStart, i, jStart, jEnd - jStart);
+        }
+    }
+
+    // Updates 4 rows of C with the depth block [kStart, kEnd)
+    private static void microKernel4(float[] a, int rowA, int rowStep, int colStep, Matrix B, Matrix C, int i,
+                                     int kStart, int kEnd, int jStart, int jEnd) {
+        float[] b = B.getData();
+        float[] c = C.getData();
+        int ldb = B.getStride();
+        int ldc = C.getStride();
+
+        int a0 = rowA + kStart * colStep, a1 = a0 + rowStep, a2 = a1 + rowStep, a3 = a2 + rowStep;
+        int c0 = C.rowOffset(i), c1 = c0 + ldc, c2 = c1 + ldc, c3 = c2 + ldc;
+        int rowB = B.rowOffset(kStart);
+
+        for (int k = kStart, ak = 0; k < kEnd; k++, ak += colStep, rowB += ldb) {
+            float v0 = a[a0 + ak], v1 = a[a1 + ak], v2 = a[a2 + ak], v3 = a[a3 + ak];
+            if (v0 == 0.0f && v1 == 0.0f && v2 == 0.0f && v3 == 0.0f) continue; // Skip empty inputs
+
+            KERNELS.axpy4(v0, v1, v2, v3, b, rowB + jStart, c, c0 + jStart, c1 + jStart, c2 + jStart, c3 + jStart,
+                    jEnd - jStart);
+        }
+    }
+
+    // Updates a single row of C (remainder of the 4-row blocks)
+    private static void microKernel1(float[] a, int rowA, int colStep, Matrix B, Matrix C, int i,
+                                     int kStart, int kEnd, int jStart, int jEnd) {
+        float[] b = B.getData();
+        float[] c = C.getData();
+        int ldb = B.getStride();
+
+        int rowC = C.rowOffset(i);
+        int rowB = B.rowOffset(kStart);
+
+        for (int k = kStart, ak = rowA + kStart * colStep; k < kEnd; k++, ak += colStep, rowB += ldb) {
+            float valA = a[ak];
+            if (valA == 0.0f) continue;
+
+            KERNELS.axpy(valA, b, rowB + jStart, c, rowC + jStart, jEnd - jStart);
+        }
+    }
+
+    // Splits the rows in halves until they fit in one panel
+    private static class PanelTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Matrix A, B, C;
+        private final boolean transposeA, clear;
+        private final Epilogue epilogue;
+        private final int rowStart, rowEnd, panelRows;
+
+        PanelTask(Matrix A, boolean transposeA, Matrix B, Matrix C, boolean clear, Epilogue epilogue,
+                  int rowStart, int rowEnd, int panelRows) {
+            this.A = A;
+            this.transposeA = transposeA;
+            this.B = B;
+            this.C = C;
+            this.clear = clear;
+            this.epilogue = epilogue;
+            this.rowStart = rowStart;
+            this.rowEnd = rowEnd;
+            this.panelRows = panelRows;
+        }
+
+        @Override
+        protected void compute() {
+            int rows = rowEnd - rowStart;
+            if (rows <= panelRows) {
+                multiplyPanel(A, transposeA, B, C, clear, epilogue, rowStart, rowEnd);
+                return;
+            }
+            int middle = rowStart + ceilTo(rows / 2, ROW_BLOCK);
+            invokeAll(new PanelTask(A, transposeA, B, C, clear, epilogue, rowStart, middle, panelRows),
+                      new PanelTask(A, transposeA, B, C, clear, epilogue, middle, rowEnd, panelRows));
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package utility;
+
+/**
+ * 16-bit float formats used to store activations (mixed precision), with
+ * round-to-nearest-even conversions written out by hand (Java 17 has no
+ * Float.floatToFloat16).
+ *
+ *  - BFLOAT16: the upper half of a float32 (same range, 8 bits of precision),
+ *    converting is a rounded shift.
+ *  - FLOAT16: IEEE 754 half (max 65504, 11 bits of precision, subnormals
+ *    down to 2^-24). Bigger values become infinite.
+ */
+public enum HalfPrecision {
+    BFLOAT16("bf16") {
+        @Override
+        public short encode(float value) {
+            int bits = Float.floatToRawIntBits(value);
+            if ((bits & 0x7FFFFFFF) > 0x7F800000) {
+                return (short) ((bits >>> 16) | 0x0040); // NaN stays a (quiet) NaN
+            }
+            return (short) ((bits + 0x7FFF + ((bits >>> 16) & 1)) >>> 16);
+        }
+
+        @Override
+        public float decode(short value) {
+            return Float.intBitsToFloat(value << 16);
+        }
+    },
+
+    FLOAT16("fp16") {
+        @Override
+        public short encode(float value) {
+            int bits = Float.floatToRawIntBits(value);
+            int sign = (bits >>> 16) & 0x8000;
+            int abs = bits & 0x7FFFFFFF;
+
+            if (abs >= 0x47800000) { // >= 65536, infinity or NaN
+                return (short) (sign | (abs > 0x7F800000 ? 0x7E00 : 0x7C00));
+            }
+            if (abs >= 0x38800000) { // Normal half: exponent rebiased from 127 to 15
+                int rounded = abs + 0xFFF + ((abs >>> 13) & 1);
+                return (short) (sign | ((rounded - 0x38000000) >>> 13));
+            }
+            if (abs <= 0x33000000) { // <= 2^-25 rounds to 0
+                return (short) sign;
+            }
+
+            // Subnormal half: units of 2^-24
+            int exponent = abs >>> 23;
+            int mantissa = (abs & 0x7FFFFF) | 0x800000;
+            int shift = 126 - exponent;
+            int result = mantissa >>> shift;
+            int remainder = mantissa & ((1 << shift) - 1);
+            int half = 1 << (shift - 1);
+            if (remainder > half || (remainder == half && (result & 1) != 0)) result++;
+            return (short) (sign | result);
+        }
+
+        @Override
+        public float decode(short value) {
+            int bits = value & 0xFFFF;
+            int sign = (bits & 0x8000) << 16;
+            int exponent = (bits >>> 10) & 0x1F;
+            int mantissa = bits & 0x3FF;
+
+            if (exponent == 0x1F) {
+                return Float.intBitsToFloat(sign | 0x7F800000 | (mantissa << 13));
+            }
+            if (exponent == 0) {
+                float subnormal = mantissa * 0x1p-24f;
+                return (sign != 0) ? -subnormal : subnormal;
+            }
+            return Float.intBitsToFloat(sign | ((exponent + 112) << 23) | (mantissa << 13));
+        }
+
+        @Override
+        public boolean canOverflow() {
+            return true;
+        }
+    };
+
+    private final String name;
+
+    HalfPrecision(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public abstract short encode(float value);
+
+    public abstract float decode(short value);
+
+    // True if finite floats can become infinite (FLOAT16 above 65504)
+    public boolean canOverflow() {
+        return false;
+    }
+
+    // dst[dstOff ..] = encode(src[srcOff ..]) for len values
+    public void encode(float[] src, int srcOff, short[] dst, int dstOff, int len) {
+        for (int i = 0; i < len; i++) {
+            dst[dstOff + i] = encode(src[srcOff + i]);
+        }
+    }
+
+    // dst[dstOff ..] = decode(src[srcOff ..]) for len values
+    public void decode(short[] src, int srcOff, float[] dst, int dstOff, int len) {
+        for (int i = 0; i < len; i++) {
+            dst[dstOff + i] = decode(src[srcOff + i]);
+        }
+    }
+
+    public static HalfPrecision getByName(String name) {
+        for (HalfPrecision precision : HalfPrecision.values()) {
+            if (precision.getName().equalsIgnoreCase(name) || precision.name().equalsIgnoreCase(name)) {
+                return precision;
+            }
+        }
+        return null;
+    }
+}
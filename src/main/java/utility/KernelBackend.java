@@ -0,0 +1,82 @@
+package utility;
+
+/**
+ * Elementwise float kernels used by the hot loops (GEMM micro-kernels, bias
+ * broadcast, activations and the momentum update).
+ *
+ * Two implementations exist: {@link ScalarKernels}, plain Java loops, and
+ * {@link SimdKernels}, which uses the incubating Vector API. The SIMD one is
+ * chosen at startup when the jdk.incubator.vector module is present (java
+ * --add-modules jdk.incubator.vector) and can be turned off with
+ * -Dnn.simd=false. Both perform the same float operations in the same order
+ * on every element, so they give identical results (except sigmoid, whose
+ * vector exponential may differ in the last bits).
+ */
+public abstract class KernelBackend {
+
+    private static final String SIMD_PROPERTY = "nn.simd";
+    private static final String SIMD_CLASS = "utility.SimdKernels";
+
+    private static final KernelBackend INSTANCE = select();
+
+    private static KernelBackend select() {
+        if (!Boolean.parseBoolean(System.getProperty(SIMD_PROPERTY, "true"))) {
+            return new ScalarKernels();
+        }
+        try {
+            // Loaded by name: the class cannot be linked when the module is absent
+            return (KernelBackend) Class.forName(SIMD_CLASS).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            return new ScalarKernels();
+        }
+    }
+
+    // Returns the backend selected at startup
+    public static KernelBackend get() {
+        return INSTANCE;
+    }
+
+    public abstract String getName();
+
+    // y[yOff .. yOff + len) += alpha * x[xOff ..]
+    public abstract void axpy(float alpha, float[] x, int xOff, float[] y, int yOff, int len);
+
+    // Rows y0..y3 of y += a0..a3 * x[xOff ..] (x is loaded once for the 4 rows)
+    public abstract void axpy4(float a0, float a1, float a2, float a3, float[] x, int xOff,
+                               float[] y, int y0, int y1, int y2, int y3, int len);
+
+    // Integer product of 4 rows for the int8 inference:
+    // acc[r][j] = sum of q[r][k] * w[k][j] for the k listed in depth[0 .. depthCount) (the inputs
+    // that are not zero in every row), r < 4, j < cols. acc is overwritten.
+    // Row r of q starts at qOff + r * ldq, row k of w at k * cols, row r of acc at accOff + r * cols
+    public abstract void multiply4Int8(int[] q, int qOff, int ldq, int[] depth, int depthCount, byte[] w, int cols,
+                                       int[] acc, int accOff);
+
+    // Smallest / largest value of a slice (0 for an empty slice)
+    public abstract float min(float[] x, int off, int len);
+
+    public abstract float max(float[] x, int off, int len);
+
+    // out = x * inverseScale rounded to the nearest int (ties to even), for |x * inverseScale| < 2^22.
+    // Adding 1.5 * 2^23 makes the float unit the integer unit, so the rounded value is read
+    // from the bits of the sum (no float to int conversion)
+    static final float ROUNDING_MAGIC = 12582912.0f;
+    static final int ROUNDING_MAGIC_BITS = Float.floatToRawIntBits(ROUNDING_MAGIC);
+
+    public abstract void quantize(float[] x, int xOff, float inverseScale, int[] out, int outOff, int len);
+
+    // y[yOff .. yOff + len) += x[xOff ..]
+    public abstract void add(float[] x, int xOff, float[] y, int yOff, int len);
+
+    // out = in > 0 ? in : 0 (source and destination may be the same slice)
+    public abstract void relu(float[] in, int inOff, float[] out, int outOff, int len);
+
+    // delta *= (out > 0 ? 1 : 0), the ReLU derivative taken from the activated outputs
+    public abstract void reluBackward(float[] out, int outOff, float[] delta, int deltaOff, int len);
+
+    // out = 1 / (1 + e^-in) (source and destination may be the same slice)
+    public abstract void sigmoid(float[] in, int inOff, float[] out, int outOff, int len);
+
+    // SGD with momentum on a slice: v = momentum * v + scale * g, w -= v
+    public abstract void momentumStep(float[] w, float[] v, float[] g, int off, int len, float scale, float momentum);
+}
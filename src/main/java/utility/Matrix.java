@@ -0,0 +1,125 @@
+package utility;
+
+import java.util.Arrays;
+
+/**
+ * Row-major matrix stored in a single float array.
+ *
+ * Element (r, c) lives at data[offset + r * stride + c]. A view shares the
+ * array of its parent, so taking a block of rows never copies anything.
+ */
+public class Matrix {
+
+    private final float[] data;
+    private final int offset;
+    private final int stride;
+    private final int rows;
+    private final int cols;
+
+    // ------------------------------------------------------------
+    // Constructors
+    // ------------------------------------------------------------
+    public Matrix(int rows, int cols) {
+        this(new float[rows * cols], 0, rows, cols, cols);
+    }
+
+    public Matrix(float[] data, int offset, int rows, int cols, int stride) {
+        if (cols > stride && rows > 1) {
+            throw new IllegalArgumentException("Stride smaller than the number of columns.");
+        }
+        if (rows > 0 && offset + (rows - 1) * stride + cols > data.length) {
+            throw new IllegalArgumentException("Matrix view out of the bounds of its data.");
+        }
+        this.data = data;
+        this.offset = offset;
+        this.stride = stride;
+        this.rows = rows;
+        this.cols = cols;
+    }
+
+    // Wraps a vector as a 1-row matrix (no copy)
+    public static Matrix fromRow(float[] row) {
+        return new Matrix(row, 0, 1, row.length, row.length);
+    }
+
+    // Copies a jagged array into a new contiguous matrix
+    public static Matrix fromArray(float[][] values) {
+        int rows = values.length;
+        int cols = (rows == 0) ? 0 : values[0].length;
+        Matrix result = new Matrix(rows, cols);
+        for (int i = 0; i < rows; i++) {
+            System.arraycopy(values[i], 0, result.data, i * cols, cols);
+        }
+        return result;
+    }
+
+    // ------------------------------------------------------------
+    // Views
+    // ------------------------------------------------------------
+
+    // Rows [start, start + count) sharing the same data
+    public Matrix rowView(int start, int count) {
+        if (start < 0 || count < 0 || start + count > rows) {
+            throw new IndexOutOfBoundsException("Rows " + start + ".." + (start + count) + " out of " + rows);
+        }
+        return new Matrix(data, offset + start * stride, count, cols, stride);
+    }
+
+    // ------------------------------------------------------------
+    // Element access
+    // ------------------------------------------------------------
+    public float get(int row, int col) {
+        return data[offset + row * stride + col];
+    }
+
+    public void set(int row, int col, float value) {
+        data[offset + row * stride + col] = value;
+    }
+
+    // Index in getData() of the first element of a row
+    public int rowOffset(int row) {
+        return offset + row * stride;
+    }
+
+    public void fill(float value) {
+        for (int i = 0; i < rows; i++) {
+            int start = offset + i * stride;
+            Arrays.fill(data, start, start + cols, value);
+        }
+    }
+
+    public float[] copyRow(int row) {
+        float[] result = new float[cols];
+        System.arraycopy(data, rowOffset(row), result, 0, cols);
+        return result;
+    }
+
+    public float[][] toArray() {
+        float[][] result = new float[rows][];
+        for (int i = 0; i < rows; i++) result[i] = copyRow(i);
+        return result;
+    }
+
+    // ------------------------------------------------------------
+    // Getters
+    // ------------------------------------------------------------
+    public float[] getData() {
+        return data;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getStride() {
+        return stride;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getColumns() {
+        return cols;
+    }
+}
@@ -1,61 +1,312 @@
 package utility;
 
+import utility.functions.Function;
+
 public class MatrixMath {
 
     private MatrixMath() {}
 
-    // Optimized Matrix-Matrix Multiplication (Standard)
+    // Matrix-Matrix Multiplication (tiled and multi-threaded, see GemmEngine)
     // A (RowsA x ColsA) * B (ColsA x ColsB) = Result (RowsA x ColsB)
-    public static float[][] multiply(float[][] A, float[][] B) {
-        int rowsA = A.length;
-        int colsA = A[0].length;
-        int colsB = B[0].length;
+    public static Matrix multiply(Matrix A, Matrix B) {
+        if (A.getColumns() != B.getRows()) { // colsA = rowsB
+            throw new IllegalArgumentException("Matrix dimensions mismatch for multiplication.");
+        }
+
+        Matrix result = new Matrix(A.getRows(), B.getColumns());
+        GemmEngine.multiply(A, B, result);
+        return result;
+    }
 
-        if (colsA != B.length) { // colsA = rowsB
+    // Same as multiply(A, B) but writes into an existing matrix (no allocation)
+    public static void multiply(Matrix A, Matrix B, Matrix result) {
+        if (A.getColumns() != B.getRows() || result.getRows() != A.getRows() || result.getColumns() != B.getColumns()) {
             throw new IllegalArgumentException("Matrix dimensions mismatch for multiplication.");
         }
 
-        float[][] result = new float[rowsA][colsB];
+        result.fill(0.0f);
+        GemmEngine.multiply(A, B, result);
+    }
 
-        // IKJ loop optimization for cache locality
-        for (int i = 0; i < rowsA; i++) {
-            float[] rowA = A[i];
-            float[] rowC = result[i];
-            for (int k = 0; k < colsA; k++) {
-                float valA = rowA[k];
-                if (valA == 0.0f) continue; // Stop early
-                
-                float[] rowB = B[k];
-                for (int j = 0; j < colsB; j++) {
-                    rowC[j] += valA * rowB[j];
-                }
-            }
+    // Fused layer forward: Result = f(A * B + bias), bias added to every row.
+    // The bias and the activation are applied to each block of the product while it is
+    // still in cache (see GemmEngine), instead of two more passes over the result.
+    public static void multiplyAddBiasActivate(Matrix A, Matrix B, float[] bias, Function activation, Matrix result) {
+        multiplyAddBiasActivate(A, B, new BiasActivation(bias, activation), result);
+    }
+
+    // Same with an epilogue built once (e.g. by a layer, so that training steps do not allocate)
+    public static void multiplyAddBiasActivate(Matrix A, Matrix B, BiasActivation epilogue, Matrix result) {
+        if (A.getColumns() != B.getRows() || result.getRows() != A.getRows() || result.getColumns() != B.getColumns()
+                || epilogue.bias.length != B.getColumns()) {
+            throw new IllegalArgumentException("Matrix dimensions mismatch for multiplication.");
         }
-        return result;
+
+        GemmEngine.multiplyInto(A, B, result, epilogue);
     }
 
+    // Fused layer backward: Result = (A * B) .* f'(outputs), f' taken at the activated outputs
+    // (same shape as the result). The derivative is applied block by block like above.
+    // The epilogue is reused: its outputs are set for this product.
+    public static void multiplyActivationDerivative(Matrix A, Matrix B, Matrix outputs, ActivationDerivative epilogue,
+                                                    Matrix result) {
+        if (A.getColumns() != B.getRows() || result.getRows() != A.getRows() || result.getColumns() != B.getColumns()
+                || outputs.getRows() != result.getRows() || outputs.getColumns() != result.getColumns()) {
+            throw new IllegalArgumentException("Matrix dimensions mismatch for multiplication.");
+        }
+
+        epilogue.outputs = outputs;
+        GemmEngine.multiplyInto(A, B, result, epilogue);
+    }
+
+    // Same with the activated outputs stored in 16 bits (row-major, same shape as the result)
+    public static void multiplyActivationDerivative(Matrix A, Matrix B, short[] outputs, HalfPrecision precision,
+                                                    ActivationDerivative epilogue, Matrix result) {
+        if (A.getColumns() != B.getRows() || result.getRows() != A.getRows() || result.getColumns() != B.getColumns()
+                || outputs.length < result.getRows() * result.getColumns()) {
+            throw new IllegalArgumentException("Matrix dimensions mismatch for multiplication.");
+        }
+
+        epilogue.compactOutputs = outputs;
+        epilogue.columns = result.getColumns();
+        epilogue.precision = precision;
+        GemmEngine.multiplyInto(A, B, result, epilogue.compact);
+    }
+
+    // Accumulates A^T * B into an existing matrix: Result += A^T * B
+    // A (RowsA x ColsA), B (RowsA x ColsB), Result (ColsA x ColsB)
+    public static void addTransposedProduct(Matrix A, Matrix B, Matrix result) {
+        if (A.getRows() != B.getRows() || result.getRows() != A.getColumns() || result.getColumns() != B.getColumns()) {
+            throw new IllegalArgumentException("Matrix dimensions mismatch for multiplication.");
+        }
+
+        GemmEngine.multiplyTransposedA(A, B, result);
+    }
+
+    // ------------------------------------------------------------
+    // Sparse inputs (see SparseMatrix)
+    // ------------------------------------------------------------
+
+    // Result = f(A * B + bias) for a sparse A: every row of the result starts from the bias and
+    // adds one row of B per element stored in the same row of A (the zeros cost nothing).
+    // Split by rows of A on the shared pool.
+    public static void multiplyAddBiasActivate(SparseMatrix A, Matrix B, float[] bias, Function activation,
+                                               Matrix result) {
+        multiplyAddBiasActivate(A, B, new SparseBiasActivation(bias, activation), result);
+    }
+
+    // Same with a task built once (e.g. by a layer, so that training steps do not allocate).
+    // The task is reused: it is pointed at the matrices of this product.
+    public static void multiplyAddBiasActivate(SparseMatrix A, Matrix B, SparseBiasActivation task, Matrix result) {
+        if (A.getColumns() != B.getRows() || result.getRows() != A.getRows() || result.getColumns() != B.getColumns()
+                || task.bias.length != B.getColumns()) {
+            throw new IllegalArgumentException("Matrix dimensions mismatch for multiplication.");
+        }
+
+        task.a = A;
+        task.b = B;
+        task.result = result;
+        Parallelism.forEachRange(A.getRows(), 4, task);
+    }
+
+    // Result += A^T * B for a sparse B
+    // A (RowsA x ColsA), B (RowsA x ColsB), Result (ColsA x ColsB)
+    // Every stored element B(i, k) adds row i of A to row k of the transposed product, built in
+    // `scratch` (ColsB x ColsA, all zeros; left all zeros) with contiguous SIMD updates, then
+    // added to the result. Split by columns of A (rows of the result) on the shared pool.
+    // The task is reused like above.
+    public static void addTransposedProduct(Matrix A, SparseMatrix B, Matrix result, float[] scratch,
+                                            SparseTransposedProduct task) {
+        if (A.getRows() != B.getRows() || result.getRows() != A.getColumns() || result.getColumns() != B.getColumns()
+                || scratch.length < A.getColumns() * B.getColumns()) {
+            throw new IllegalArgumentException("Matrix dimensions mismatch for multiplication.");
+        }
+
+        task.a = A;
+        task.b = B;
+        task.result = result;
+        task.scratch = scratch;
+        Parallelism.forEachRange(A.getColumns(), 16, task);
+    }
+
+    private static final int TRANSPOSE_TILE = 64;
+
     // Transpose a Matrix
-    public static float[][] transpose(float[][] M) {
-        int rows = M.length;
-        int cols = M[0].length;
-        float[][] result = new float[cols][rows];
+    public static Matrix transpose(Matrix M) {
+        int rows = M.getRows();
+        int cols = M.getColumns();
+        Matrix result = new Matrix(cols, rows);
+        float[] src = M.getData();
+        float[] dst = result.getData();
         for (int i = 0; i < rows; i++) {
+            int rowM = M.rowOffset(i);
             for (int j = 0; j < cols; j++) {
-                result[j][i] = M[i][j];
+                dst[j * rows + i] = src[rowM + j];
             }
         }
         return result;
     }
 
-    // Add a bias vector to every row of a matrix
-    public static void addBiasToBatch(float[][] matrix, float[] bias) {
-        int rows = matrix.length;    // Batch Size
-        int cols = matrix[0].length; // Neuron Count
+    // Sum of every column of a matrix, accumulated into a vector
+    public static void addColumnSums(Matrix matrix, float[] sums) {
+        int rows = matrix.getRows();
+        int cols = matrix.getColumns();
+        float[] data = matrix.getData();
 
         for (int i = 0; i < rows; i++) {
+            int row = matrix.rowOffset(i);
             for (int j = 0; j < cols; j++) {
-                matrix[i][j] += bias[j];
+                sums[j] += data[row + j];
+            }
+        }
+    }
+
+    // Add a bias vector to every row of a matrix
+    public static void addBiasToBatch(Matrix matrix, float[] bias) {
+        int rows = matrix.getRows();    // Batch Size
+        int cols = matrix.getColumns(); // Neuron Count
+        float[] data = matrix.getData();
+
+        KernelBackend kernels = KernelBackend.get();
+        for (int i = 0; i < rows; i++) {
+            kernels.add(bias, 0, data, matrix.rowOffset(i), cols);
+        }
+    }
+
+    // ------------------------------------------------------------
+    // Epilogues of the fused products
+    // ------------------------------------------------------------
+
+    // f(c + bias) (immutable: a layer keeps one for its biases and activation)
+    public static class BiasActivation implements GemmEngine.Epilogue {
+        private final float[] bias;
+        private final Function activation;
+        private final KernelBackend kernels = KernelBackend.get();
+
+        public BiasActivation(float[] bias, Function activation) {
+            this.bias = bias;
+            this.activation = activation;
+        }
+
+        @Override
+        public void apply(float[] c, int offset, int row, int column, int length) {
+            kernels.add(bias, column, c, offset, length);
+            activation.evaluateInPlace(c, offset, length);
+        }
+
+        @Override
+        public boolean isElementwise() {
+            return activation.isElementwise();
+        }
+    }
+
+    // c * f'(outputs). A layer keeps one for its activation, and multiplyActivationDerivative points
+    // it at the outputs of the current batch (float32, or 16-bit through `compact`)
+    public static class ActivationDerivative implements GemmEngine.Epilogue {
+        private final Function activation;
+        private Matrix outputs;
+
+        private short[] compactOutputs;
+        private int columns;
+        private HalfPrecision precision;
+        private final GemmEngine.Epilogue compact = this::applyCompact;
+
+        public ActivationDerivative(Function activation) {
+            this.activation = activation;
+        }
+
+        @Override
+        public void apply(float[] c, int offset, int row, int column, int length) {
+            activation.multiplyByDerivative(outputs.getData(), outputs.rowOffset(row) + column, c, offset, length);
+        }
+
+        private void applyCompact(float[] c, int offset, int row, int column, int length) {
+            float[] decoded = DECODED.get();
+            if (decoded.length < length) {
+                decoded = new float[length];
+                DECODED.set(decoded);
+            }
+            precision.decode(compactOutputs, row * columns + column, decoded, 0, length);
+            activation.multiplyByDerivative(decoded, 0, c, offset, length);
+        }
+    }
+
+    // ------------------------------------------------------------
+    // Tasks of the sparse products (see above)
+    // ------------------------------------------------------------
+
+    // Rows [first, end) of f(A * B + bias). A layer keeps one for its biases and activation.
+    public static class SparseBiasActivation implements Parallelism.RangeTask {
+        private final float[] bias;
+        private final Function activation;
+        private final KernelBackend kernels = KernelBackend.get();
+        private SparseMatrix a;
+        private Matrix b, result;
+
+        public SparseBiasActivation(float[] bias, Function activation) {
+            this.bias = bias;
+            this.activation = activation;
+        }
+
+        @Override
+        public void run(int first, int end) {
+            float[] values = a.getValues();
+            int[] columns = a.getColumnIndices();
+            float[] bData = b.getData();
+            float[] c = result.getData();
+            int cols = b.getColumns();
+
+            for (int i = first; i < end; i++) {
+                int row = result.rowOffset(i);
+                System.arraycopy(bias, 0, c, row, cols);
+                for (int p = a.rowStart(i); p < a.rowEnd(i); p++) {
+                    kernels.axpy(values[p], bData, b.rowOffset(columns[p]), c, row, cols);
+                }
+                activation.evaluateInPlace(c, row, cols);
             }
         }
     }
-}
\ No newline at end of file
+
+    // Columns [first, end) of A (rows of the result) of Result += A^T * B
+    public static class SparseTransposedProduct implements Parallelism.RangeTask {
+        private final KernelBackend kernels = KernelBackend.get();
+        private Matrix a, result;
+        private SparseMatrix b;
+        private float[] scratch;
+
+        @Override
+        public void run(int first, int end) {
+            float[] aData = a.getData();
+            float[] values = b.getValues();
+            int[] columns = b.getColumnIndices();
+            int width = a.getColumns();
+            int length = end - first;
+
+            // scratch[k][first, end) += B(i, k) * A(i, first..end)
+            for (int i = 0; i < a.getRows(); i++) {
+                int row = a.rowOffset(i) + first;
+                for (int p = b.rowStart(i); p < b.rowEnd(i); p++) {
+                    kernels.axpy(values[p], aData, row, scratch, columns[p] * width + first, length);
+                }
+            }
+
+            // Result(n, k) += scratch[k][n] for the rows n of this range, in tiles that stay in cache
+            float[] r = result.getData();
+            int depth = b.getColumns();
+            for (int kk = 0; kk < depth; kk += TRANSPOSE_TILE) {
+                int kEnd = Math.min(kk + TRANSPOSE_TILE, depth);
+                for (int n = first; n < end; n++) {
+                    int resultRow = result.rowOffset(n);
+                    for (int k = kk; k < kEnd; k++) {
+                        int index = k * width + n;
+                        r[resultRow + k] += scratch[index];
+                        scratch[index] = 0.0f;
+                    }
+                }
+            }
+        }
+    }
+
+    // Decoded 16-bit outputs of a piece of row (one per thread, the panels run in parallel)
+    private static final ThreadLocal<float[]> DECODED = ThreadLocal.withInitial(() -> new float[0]);
+}
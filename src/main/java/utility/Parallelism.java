@@ -0,0 +1,93 @@
+package utility;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Holds the ForkJoinPool shared by every parallel kernel of the project.
+ * The thread count can be fixed with the "nn.threads" system property
+ * or changed at runtime with {@link #setThreadCount(int)}.
+ */
+public class Parallelism {
+
+    private static final String THREADS_PROPERTY = "nn.threads";
+
+    private static volatile ForkJoinPool pool = new ForkJoinPool(defaultThreadCount());
+
+    private Parallelism() {}
+
+    private static int defaultThreadCount() {
+        String configured = System.getProperty(THREADS_PROPERTY);
+        if (configured != null) {
+            try {
+                int threads = Integer.parseInt(configured.trim());
+                if (threads > 0) return threads;
+            } catch (NumberFormatException e) {
+                System.err.println("Invalid value for " + THREADS_PROPERTY + ": " + configured);
+            }
+        }
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    // Work on the indices [from, to) of a range
+    public interface RangeTask {
+        void run(int from, int to);
+    }
+
+    // Runs a task over [0, count) on the shared pool, split in contiguous ranges of at least
+    // minRange indices (inline when there is one thread or not enough work to split)
+    public static void forEachRange(int count, int minRange, RangeTask task) {
+        int threads = getThreadCount();
+        if (threads == 1 || count < 2 * minRange) {
+            task.run(0, count);
+            return;
+        }
+        int grain = Math.max(minRange, (count + 2 * threads - 1) / (2 * threads));
+        pool.invoke(new RangeAction(0, count, grain, task));
+    }
+
+    private static class RangeAction extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int from, to, grain;
+        private final RangeTask task;
+
+        RangeAction(int from, int to, int grain, RangeTask task) {
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+            this.task = task;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= grain) {
+                task.run(from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new RangeAction(from, middle, grain, task), new RangeAction(middle, to, grain, task));
+        }
+    }
+
+    // Returns the shared pool
+    public static ForkJoinPool getPool() {
+        return pool;
+    }
+
+    public static int getThreadCount() {
+        return pool.getParallelism();
+    }
+
+    // Replaces the shared pool by a new one with the given number of threads
+    public static synchronized void setThreadCount(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be at least 1.");
+        }
+        if (threads == pool.getParallelism()) return;
+
+        ForkJoinPool old = pool;
+        pool = new ForkJoinPool(threads);
+        old.shutdown();
+    }
+}
@@ -0,0 +1,116 @@
+package utility;
+
+import java.util.Arrays;
+
+// Plain loops (the JIT may still auto-vectorise some of them)
+public class ScalarKernels extends KernelBackend {
+
+    @Override
+    public String getName() {
+        return "scalar";
+    }
+
+    @Override
+    public void axpy(float alpha, float[] x, int xOff, float[] y, int yOff, int len) {
+        for (int j = 0; j < len; j++) {
+            y[yOff + j] += alpha * x[xOff + j];
+        }
+    }
+
+    @Override
+    public void axpy4(float a0, float a1, float a2, float a3, float[] x, int xOff,
+                      float[] y, int y0, int y1, int y2, int y3, int len) {
+        for (int j = 0; j < len; j++) {
+            float value = x[xOff + j];
+            y[y0 + j] += a0 * value;
+            y[y1 + j] += a1 * value;
+            y[y2 + j] += a2 * value;
+            y[y3 + j] += a3 * value;
+        }
+    }
+
+    @Override
+    public void multiply4Int8(int[] q, int qOff, int ldq, int[] depth, int depthCount, byte[] w, int cols,
+                              int[] acc, int accOff) {
+        int c1 = accOff + cols, c2 = c1 + cols, c3 = c2 + cols;
+        Arrays.fill(acc, accOff, accOff + 4 * cols, 0);
+
+        for (int d = 0; d < depthCount; d++) {
+            int k = depth[d];
+            int a0 = q[qOff + k], a1 = q[qOff + ldq + k], a2 = q[qOff + 2 * ldq + k], a3 = q[qOff + 3 * ldq + k];
+
+            int row = k * cols;
+            for (int j = 0; j < cols; j++) {
+                int value = w[row + j];
+                acc[accOff + j] += a0 * value;
+                acc[c1 + j] += a1 * value;
+                acc[c2 + j] += a2 * value;
+                acc[c3 + j] += a3 * value;
+            }
+        }
+    }
+
+    @Override
+    public float min(float[] x, int off, int len) {
+        float min = (len > 0) ? x[off] : 0.0f;
+        for (int j = 1; j < len; j++) {
+            min = Math.min(min, x[off + j]);
+        }
+        return min;
+    }
+
+    @Override
+    public float max(float[] x, int off, int len) {
+        float max = (len > 0) ? x[off] : 0.0f;
+        for (int j = 1; j < len; j++) {
+            max = Math.max(max, x[off + j]);
+        }
+        return max;
+    }
+
+    @Override
+    public void quantize(float[] x, int xOff, float inverseScale, int[] out, int outOff, int len) {
+        for (int j = 0; j < len; j++) {
+            float shifted = x[xOff + j] * inverseScale + ROUNDING_MAGIC;
+            out[outOff + j] = Float.floatToRawIntBits(shifted) - ROUNDING_MAGIC_BITS;
+        }
+    }
+
+    @Override
+    public void add(float[] x, int xOff, float[] y, int yOff, int len) {
+        for (int j = 0; j < len; j++) {
+            y[yOff + j] += x[xOff + j];
+        }
+    }
+
+    @Override
+    public void relu(float[] in, int inOff, float[] out, int outOff, int len) {
+        for (int j = 0; j < len; j++) {
+            float value = in[inOff + j];
+            out[outOff + j] = value > 0 ? value : 0;
+        }
+    }
+
+    @Override
+    public void reluBackward(float[] out, int outOff, float[] delta, int deltaOff, int len) {
+        for (int j = 0; j < len; j++) {
+            delta[deltaOff + j] *= out[outOff + j] > 0 ? 1.0f : 0.0f;
+        }
+    }
+
+    @Override
+    public void sigmoid(float[] in, int inOff, float[] out, int outOff, int len) {
+        for (int j = 0; j < len; j++) {
+            out[outOff + j] = 1.0f / (1.0f + (float) Math.exp(-in[inOff + j]));
+        }
+    }
+
+    @Override
+    public void momentumStep(float[] w, float[] v, float[] g, int off, int len, float scale, float momentum) {
+        for (int j = off; j < off + len; j++) {
+            float velocity = momentum * v[j] + g[j] * scale;
+            v[j] = velocity;
+            w[j] -= velocity;
+        }
+    }
+}
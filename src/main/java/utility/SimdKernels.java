@@ -0,0 +1,210 @@
+package utility;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link KernelBackend} on the Vector API (jdk.incubator.vector), with the
+ * widest vectors of the CPU (8 floats with AVX2, 16 with AVX-512). The tails
+ * shorter than a vector use the scalar loops.
+ *
+ * Multiplications and additions are kept separate (no fused multiply-add),
+ * so the results are the same as the scalar kernels.
+ */
+public class SimdKernels extends KernelBackend {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    // Int lanes, and bytes with the same lane count (widened to ints when loaded)
+    private static final VectorSpecies<Integer> INT_SPECIES = IntVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Byte> BYTE_SPECIES =
+            ByteVector.SPECIES_PREFERRED.withShape(VectorShape.forBitSize(INT_SPECIES.vectorBitSize() / 4));
+
+    private final ScalarKernels tail = new ScalarKernels();
+
+    public SimdKernels() {
+        // Not worth it without real vector registers
+        if (SPECIES.length() < 4) {
+            throw new UnsupportedOperationException("No SIMD support (" + SPECIES + ")");
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "simd (" + SPECIES.vectorBitSize() + "-bit)";
+    }
+
+    @Override
+    public void axpy(float alpha, float[] x, int xOff, float[] y, int yOff, int len) {
+        int bound = SPECIES.loopBound(len);
+        for (int j = 0; j < bound; j += SPECIES.length()) {
+            FloatVector vx = FloatVector.fromArray(SPECIES, x, xOff + j);
+            FloatVector vy = FloatVector.fromArray(SPECIES, y, yOff + j);
+            vy.add(vx.mul(alpha)).intoArray(y, yOff + j);
+        }
+        tail.axpy(alpha, x, xOff + bound, y, yOff + bound, len - bound);
+    }
+
+    @Override
+    public void axpy4(float a0, float a1, float a2, float a3, float[] x, int xOff,
+                      float[] y, int y0, int y1, int y2, int y3, int len) {
+        int bound = SPECIES.loopBound(len);
+        for (int j = 0; j < bound; j += SPECIES.length()) {
+            FloatVector vx = FloatVector.fromArray(SPECIES, x, xOff + j);
+            FloatVector.fromArray(SPECIES, y, y0 + j).add(vx.mul(a0)).intoArray(y, y0 + j);
+            FloatVector.fromArray(SPECIES, y, y1 + j).add(vx.mul(a1)).intoArray(y, y1 + j);
+            FloatVector.fromArray(SPECIES, y, y2 + j).add(vx.mul(a2)).intoArray(y, y2 + j);
+            FloatVector.fromArray(SPECIES, y, y3 + j).add(vx.mul(a3)).intoArray(y, y3 + j);
+        }
+        tail.axpy4(a0, a1, a2, a3, x, xOff + bound, y, y0 + bound, y1 + bound, y2 + bound, y3 + bound, len - bound);
+    }
+
+    private static IntVector loadWidened(byte[] x, int offset) {
+        return (IntVector) ByteVector.fromArray(BYTE_SPECIES, x, offset)
+                .convertShape(VectorOperators.B2I, INT_SPECIES, 0);
+    }
+
+    // Register-blocked: for each strip of columns, the 4 rows are accumulated in registers
+    // over the whole depth and stored once. (No branch in the depth loop: it would make the
+    // JIT box the accumulators, hence the list of the useful k.)
+    @Override
+    public void multiply4Int8(int[] q, int qOff, int ldq, int[] depth, int depthCount, byte[] w, int cols,
+                              int[] acc, int accOff) {
+        int q1 = qOff + ldq, q2 = q1 + ldq, q3 = q2 + ldq;
+        int c1 = accOff + cols, c2 = c1 + cols, c3 = c2 + cols;
+
+        int bound = INT_SPECIES.loopBound(cols);
+        for (int j = 0; j < bound; j += INT_SPECIES.length()) {
+            IntVector s0 = IntVector.zero(INT_SPECIES), s1 = s0, s2 = s0, s3 = s0;
+
+            for (int d = 0; d < depthCount; d++) {
+                int k = depth[d];
+                IntVector value = loadWidened(w, k * cols + j);
+                s0 = s0.add(value.mul(q[qOff + k]));
+                s1 = s1.add(value.mul(q[q1 + k]));
+                s2 = s2.add(value.mul(q[q2 + k]));
+                s3 = s3.add(value.mul(q[q3 + k]));
+            }
+            s0.intoArray(acc, accOff + j);
+            s1.intoArray(acc, c1 + j);
+            s2.intoArray(acc, c2 + j);
+            s3.intoArray(acc, c3 + j);
+        }
+
+        // Remaining columns
+        for (int j = bound; j < cols; j++) {
+            int s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+            for (int d = 0; d < depthCount; d++) {
+                int k = depth[d];
+                int value = w[k * cols + j];
+                s0 += q[qOff + k] * value;
+                s1 += q[q1 + k] * value;
+                s2 += q[q2 + k] * value;
+                s3 += q[q3 + k] * value;
+            }
+            acc[accOff + j] = s0;
+            acc[c1 + j] = s1;
+            acc[c2 + j] = s2;
+            acc[c3 + j] = s3;
+        }
+    }
+
+    @Override
+    public float min(float[] x, int off, int len) {
+        int bound = SPECIES.loopBound(len);
+        if (bound == 0) return tail.min(x, off, len);
+
+        FloatVector min = FloatVector.fromArray(SPECIES, x, off);
+        for (int j = SPECIES.length(); j < bound; j += SPECIES.length()) {
+            min = min.min(FloatVector.fromArray(SPECIES, x, off + j));
+        }
+        float result = min.reduceLanes(VectorOperators.MIN);
+        return (bound < len) ? Math.min(result, tail.min(x, off + bound, len - bound)) : result;
+    }
+
+    @Override
+    public float max(float[] x, int off, int len) {
+        int bound = SPECIES.loopBound(len);
+        if (bound == 0) return tail.max(x, off, len);
+
+        FloatVector max = FloatVector.fromArray(SPECIES, x, off);
+        for (int j = SPECIES.length(); j < bound; j += SPECIES.length()) {
+            max = max.max(FloatVector.fromArray(SPECIES, x, off + j));
+        }
+        float result = max.reduceLanes(VectorOperators.MAX);
+        return (bound < len) ? Math.max(result, tail.max(x, off + bound, len - bound)) : result;
+    }
+
+    @Override
+    public void quantize(float[] x, int xOff, float inverseScale, int[] out, int outOff, int len) {
+        int bound = SPECIES.loopBound(len); // Same lane count as INT_SPECIES (same vector size)
+        for (int j = 0; j < bound; j += SPECIES.length()) {
+            FloatVector shifted = FloatVector.fromArray(SPECIES, x, xOff + j).mul(inverseScale).add(ROUNDING_MAGIC);
+            shifted.reinterpretAsInts().sub(ROUNDING_MAGIC_BITS).intoArray(out, outOff + j);
+        }
+        tail.quantize(x, xOff + bound, inverseScale, out, outOff + bound, len - bound);
+    }
+
+    @Override
+    public void add(float[] x, int xOff, float[] y, int yOff, int len) {
+        int bound = SPECIES.loopBound(len);
+        for (int j = 0; j < bound; j += SPECIES.length()) {
+            FloatVector vx = FloatVector.fromArray(SPECIES, x, xOff + j);
+            FloatVector.fromArray(SPECIES, y, yOff + j).add(vx).intoArray(y, yOff + j);
+        }
+        tail.add(x, xOff + bound, y, yOff + bound, len - bound);
+    }
+
+    @Override
+    public void relu(float[] in, int inOff, float[] out, int outOff, int len) {
+        FloatVector zero = FloatVector.zero(SPECIES);
+        int bound = SPECIES.loopBound(len);
+        for (int j = 0; j < bound; j += SPECIES.length()) {
+            FloatVector value = FloatVector.fromArray(SPECIES, in, inOff + j);
+            // Same as value > 0 ? value : 0 (also for NaN and -0.0, unlike max)
+            zero.blend(value, value.compare(VectorOperators.GT, 0.0f)).intoArray(out, outOff + j);
+        }
+        tail.relu(in, inOff + bound, out, outOff + bound, len - bound);
+    }
+
+    @Override
+    public void reluBackward(float[] out, int outOff, float[] delta, int deltaOff, int len) {
+        FloatVector zero = FloatVector.zero(SPECIES);
+        FloatVector one = FloatVector.broadcast(SPECIES, 1.0f);
+        int bound = SPECIES.loopBound(len);
+        for (int j = 0; j < bound; j += SPECIES.length()) {
+            FloatVector derivative = zero.blend(one,
+                    FloatVector.fromArray(SPECIES, out, outOff + j).compare(VectorOperators.GT, 0.0f));
+            // Multiplied (not masked) so that -0.0, NaN, etc. stay the same as the scalar loop
+            FloatVector.fromArray(SPECIES, delta, deltaOff + j).mul(derivative).intoArray(delta, deltaOff + j);
+        }
+        tail.reluBackward(out, outOff + bound, delta, deltaOff + bound, len - bound);
+    }
+
+    @Override
+    public void sigmoid(float[] in, int inOff, float[] out, int outOff, int len) {
+        FloatVector one = FloatVector.broadcast(SPECIES, 1.0f);
+        int bound = SPECIES.loopBound(len);
+        for (int j = 0; j < bound; j += SPECIES.length()) {
+            FloatVector value = FloatVector.fromArray(SPECIES, in, inOff + j);
+            one.div(value.neg().lanewise(VectorOperators.EXP).add(one)).intoArray(out, outOff + j);
+        }
+        tail.sigmoid(in, inOff + bound, out, outOff + bound, len - bound);
+    }
+
+    @Override
+    public void momentumStep(float[] w, float[] v, float[] g, int off, int len, float scale, float momentum) {
+        int bound = SPECIES.loopBound(len);
+        for (int j = off; j < off + bound; j += SPECIES.length()) {
+            FloatVector velocity = FloatVector.fromArray(SPECIES, v, j).mul(momentum)
+                    .add(FloatVector.fromArray(SPECIES, g, j).mul(scale));
+            velocity.intoArray(v, j);
+            FloatVector.fromArray(SPECIES, w, j).sub(velocity).intoArray(w, j);
+        }
+        tail.momentumStep(w, v, g, off + bound, len - bound, scale, momentum);
+    }
+}
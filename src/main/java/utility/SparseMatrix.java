@@ -0,0 +1,152 @@
+package utility;
+
+/**
+ * Row-major matrix that only stores its non-zero elements, in compressed
+ * sparse row (CSR) form.
+ *
+ * The non-zeros of row r are values[rowStart(r) .. rowEnd(r)), in increasing
+ * column order, with their columns at the same positions of columnIndices.
+ * Like a {@link Matrix}, a view shares the arrays of its parent, so taking a
+ * block of rows never copies anything.
+ *
+ * Images with a black background (about half the pixels of Fashion MNIST are
+ * exactly zero) or bag-of-words features take less memory this way, and the
+ * sparse kernels of {@link MatrixMath} only multiply the stored values.
+ */
+public class SparseMatrix {
+
+    private final float[] values;
+    private final int[] columnIndices;
+    private final int[] rowStarts;   // Position of the first non-zero of every row, then the end of the last
+    private final int firstRow;      // Index in rowStarts of row 0 (views)
+    private final int rows;
+    private final int cols;
+
+    // ------------------------------------------------------------
+    // Constructors
+    // ------------------------------------------------------------
+
+    // Wraps CSR arrays (rowStarts holds rows + 1 positions from firstRow)
+    public SparseMatrix(float[] values, int[] columnIndices, int[] rowStarts, int firstRow, int rows, int cols) {
+        if (firstRow < 0 || firstRow + rows >= rowStarts.length) {
+            throw new IllegalArgumentException("Sparse matrix view out of the bounds of its row starts.");
+        }
+        this.values = values;
+        this.columnIndices = columnIndices;
+        this.rowStarts = rowStarts;
+        this.firstRow = firstRow;
+        this.rows = rows;
+        this.cols = cols;
+    }
+
+    // Copies the non-zero elements of a dense matrix
+    public static SparseMatrix fromDense(Matrix dense) {
+        float[] data = dense.getData();
+        int rows = dense.getRows(), cols = dense.getColumns();
+
+        int nonZeros = 0;
+        for (int i = 0; i < rows; i++) {
+            int row = dense.rowOffset(i);
+            for (int j = 0; j < cols; j++) {
+                if (data[row + j] != 0.0f) nonZeros++;
+            }
+        }
+
+        float[] values = new float[nonZeros];
+        int[] columnIndices = new int[nonZeros];
+        int[] rowStarts = new int[rows + 1];
+        int position = 0;
+        for (int i = 0; i < rows; i++) {
+            rowStarts[i] = position;
+            int row = dense.rowOffset(i);
+            for (int j = 0; j < cols; j++) {
+                float value = data[row + j];
+                if (value != 0.0f) {
+                    values[position] = value;
+                    columnIndices[position++] = j;
+                }
+            }
+        }
+        rowStarts[rows] = position;
+        return new SparseMatrix(values, columnIndices, rowStarts, 0, rows, cols);
+    }
+
+    // ------------------------------------------------------------
+    // Views
+    // ------------------------------------------------------------
+
+    // Rows [start, start + count) sharing the same arrays
+    public SparseMatrix rowView(int start, int count) {
+        if (start < 0 || count < 0 || start + count > rows) {
+            throw new IndexOutOfBoundsException("Rows " + start + ".." + (start + count) + " out of " + rows);
+        }
+        return new SparseMatrix(values, columnIndices, rowStarts, firstRow + start, count, cols);
+    }
+
+    // ------------------------------------------------------------
+    // Element access
+    // ------------------------------------------------------------
+
+    // Position in getValues() of the first non-zero of a row
+    public int rowStart(int row) {
+        return rowStarts[firstRow + row];
+    }
+
+    // Position in getValues() after the last non-zero of a row
+    public int rowEnd(int row) {
+        return rowStarts[firstRow + row + 1];
+    }
+
+    // Binary search in the row (0 when the element is not stored)
+    public float get(int row, int col) {
+        int low = rowStart(row), high = rowEnd(row) - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int column = columnIndices[middle];
+            if (column < col) low = middle + 1;
+            else if (column > col) high = middle - 1;
+            else return values[middle];
+        }
+        return 0.0f;
+    }
+
+    public Matrix toDense() {
+        Matrix dense = new Matrix(rows, cols);
+        float[] data = dense.getData();
+        for (int i = 0; i < rows; i++) {
+            for (int p = rowStart(i); p < rowEnd(i); p++) {
+                data[i * cols + columnIndices[p]] = values[p];
+            }
+        }
+        return dense;
+    }
+
+    // ------------------------------------------------------------
+    // Getters
+    // ------------------------------------------------------------
+    public float[] getValues() {
+        return values;
+    }
+
+    public int[] getColumnIndices() {
+        return columnIndices;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getColumns() {
+        return cols;
+    }
+
+    // Elements stored for the rows of this view
+    public int getNonZeros() {
+        return rowStart(rows) - rowStart(0);
+    }
+
+    // Fraction of the elements that are stored
+    public double getDensity() {
+        return (rows == 0 || cols == 0) ? 0.0 : (double) getNonZeros() / ((long) rows * cols);
+    }
+}
@@ -11,12 +11,36 @@ public abstract class Function {
     // Computes the function for an entire layer.
     public float[] evaluate(float[] inputs) {
         float[] outputs = new float[inputs.length];
-        for (int i = 0; i < inputs.length; i++) {
-            outputs[i] = evaluate(inputs[i]);
-        }
+        evaluate(inputs, 0, outputs, 0, inputs.length);
         return outputs;
     }
 
+    // Computes the function for a slice of a flat array (one row of a Matrix).
+    // Source and destination may be the same slice.
+    public void evaluate(float[] inputs, int inputOffset, float[] outputs, int outputOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            outputs[outputOffset + i] = evaluate(inputs[inputOffset + i]);
+        }
+    }
+
+    // Replaces a slice of a flat array by its image (no allocation).
+    public void evaluateInPlace(float[] values, int offset, int length) {
+        evaluate(values, offset, values, offset, length);
+    }
+
+    // Multiplies a slice of deltas by the derivative taken at the matching outputs:
+    // deltas[i] *= derivative(outputs[i]) (backward step of a layer).
+    public void multiplyByDerivative(float[] outputs, int outputOffset, float[] deltas, int deltaOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            deltas[deltaOffset + i] *= derivative(outputs[outputOffset + i]);
+        }
+    }
+
+    // False if the function needs the whole row at once (softmax), true if every value is independent.
+    public boolean isElementwise() {
+        return true;
+    }
+
     // Computes derivatives for an entire layer.
     public float[] derivative(float[] inputs) {
         float[] derivs = new float[inputs.length];
@@ -25,4 +49,4 @@ public abstract class Function {
         }
         return derivs;
     }
-}
\ No newline at end of file
+}
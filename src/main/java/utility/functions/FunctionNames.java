@@ -4,7 +4,8 @@ public enum FunctionNames {
     // Singleton
     SIGMOID("Sigmoid", new SigmoidFunction()),
     RELU("Relu", new ReluFunction()),
-    SOFTMAX("Softmax", new Softmax());
+    SOFTMAX("Softmax", new Softmax()),
+    IDENTITY("Identity", new IdentityFunction());
 
     private final String name;
     private final Function function;
@@ -31,4 +32,14 @@ public enum FunctionNames {
         }
         return null; // Throws exception
     }
+
+    // Name of a function instance (the one accepted by getFunctionByName)
+    public static String getNameOf(Function function) {
+        for (FunctionNames fn : FunctionNames.values()) {
+            if (fn.getFunction().getClass() == function.getClass()) {
+                return fn.getName();
+            }
+        }
+        return null;
+    }
 }
\ No newline at end of file
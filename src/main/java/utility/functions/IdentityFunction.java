@@ -0,0 +1,26 @@
+package utility.functions;
+
+public class IdentityFunction extends Function { // No activation (e.g. pooling layers)
+
+    @Override
+    public float evaluate(float x) {
+        return x;
+    }
+
+    @Override
+    public float derivative(float x) {
+        return 1.0f;
+    }
+
+    @Override
+    public void evaluate(float[] inputs, int inputOffset, float[] outputs, int outputOffset, int length) {
+        if (inputs != outputs || inputOffset != outputOffset) {
+            System.arraycopy(inputs, inputOffset, outputs, outputOffset, length);
+        }
+    }
+
+    // Derivative 1: the deltas stay as they are
+    @Override
+    public void multiplyByDerivative(float[] outputs, int outputOffset, float[] deltas, int deltaOffset, int length) {
+    }
+}
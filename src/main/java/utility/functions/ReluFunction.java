@@ -1,5 +1,7 @@
 package utility.functions;
 
+import utility.KernelBackend;
+
 public class ReluFunction extends Function {
 
     // RELU function
@@ -13,4 +15,15 @@ public class ReluFunction extends Function {
     public float derivative(float x) {
         return x > 0 ? 1 : 0;
     }
+
+    // Slice version on the kernels of KernelBackend (SIMD when available)
+    @Override
+    public void evaluate(float[] inputs, int inputOffset, float[] outputs, int outputOffset, int length) {
+        KernelBackend.get().relu(inputs, inputOffset, outputs, outputOffset, length);
+    }
+
+    @Override
+    public void multiplyByDerivative(float[] outputs, int outputOffset, float[] deltas, int deltaOffset, int length) {
+        KernelBackend.get().reluBackward(outputs, outputOffset, deltas, deltaOffset, length);
+    }
 }
\ No newline at end of file
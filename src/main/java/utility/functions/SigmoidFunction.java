@@ -1,5 +1,7 @@
 package utility.functions;
 
+import utility.KernelBackend;
+
 public class SigmoidFunction extends Function { // Sigmoid Function
 
     // Sigmoid function: f(x) = 1 / (1 + e^(-x))
@@ -14,4 +16,10 @@ public class SigmoidFunction extends Function { // Sigmoid Function
         float output = evaluate(x);
         return output * (1.0f - output);
     }
+
+    // Slice version on the kernels of KernelBackend (SIMD when available)
+    @Override
+    public void evaluate(float[] inputs, int inputOffset, float[] outputs, int outputOffset, int length) {
+        KernelBackend.get().sigmoid(inputs, inputOffset, outputs, outputOffset, length);
+    }
 }
\ No newline at end of file
@@ -18,28 +18,31 @@ public class Softmax extends Function {
     // --- VECTOR METHODS ---
 
     @Override
-    public float[] evaluate(float[] inputs) {
-        float[] outputs = new float[inputs.length];
-        
+    public boolean isElementwise() {
+        return false; // Needs the max and the sum of the row
+    }
+
+    @Override
+    public void evaluate(float[] inputs, int inputOffset, float[] outputs, int outputOffset, int length) {
         // 1. Find max for numerical stability
-        float max = inputs[0];
-        for (float val : inputs) {
+        float max = inputs[inputOffset];
+        for (int i = 1; i < length; i++) {
+            float val = inputs[inputOffset + i];
             if (val > max) max = val;
         }
 
         // 2. Compute Exponentials and Sum
         float sum = 0.0f;
-        for (int i = 0; i < inputs.length; i++) {
+        for (int i = 0; i < length; i++) {
             // Subtract max to prevent overflow
-            outputs[i] = (float) Math.exp(inputs[i] - max);
-            sum += outputs[i];
+            float exp = (float) Math.exp(inputs[inputOffset + i] - max);
+            outputs[outputOffset + i] = exp;
+            sum += exp;
         }
 
         // 3. Normalize (Divide by sum)
-        for (int i = 0; i < inputs.length; i++) {
-            outputs[i] /= sum;
+        for (int i = 0; i < length; i++) {
+            outputs[outputOffset + i] /= sum;
         }
-
-        return outputs;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,43 @@
+package utility.metrics;
+
+import java.util.concurrent.atomic.DoubleAdder;
+
+/**
+ * Value that only grows (steps, samples, summed loss...). Updates from
+ * several threads go to separate cells, so they never contend.
+ */
+public final class Counter extends Metric {
+
+    private final DoubleAdder value = new DoubleAdder();
+
+    Counter(String name, String labels, String help) {
+        super(name, labels, help);
+    }
+
+    public void increment() {
+        value.add(1.0);
+    }
+
+    public void add(double amount) {
+        value.add(amount);
+    }
+
+    public double get() {
+        return value.sum();
+    }
+
+    @Override
+    public String getType() {
+        return "counter";
+    }
+
+    @Override
+    void writePrometheus(StringBuilder out) {
+        out.append(series("", "")).append(' ').append(formatPrometheus(get())).append('\n');
+    }
+
+    @Override
+    void writeJson(StringBuilder out) {
+        out.append(formatJson(get()));
+    }
+}
@@ -0,0 +1,38 @@
+package utility.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Last value of a measure (loss of the last epoch, heap in use...).
+ */
+public final class Gauge extends Metric {
+
+    private final AtomicLong bits = new AtomicLong(Double.doubleToRawLongBits(Double.NaN)); // NaN until set
+
+    Gauge(String name, String labels, String help) {
+        super(name, labels, help);
+    }
+
+    public void set(double value) {
+        bits.set(Double.doubleToRawLongBits(value));
+    }
+
+    public double get() {
+        return Double.longBitsToDouble(bits.get());
+    }
+
+    @Override
+    public String getType() {
+        return "gauge";
+    }
+
+    @Override
+    void writePrometheus(StringBuilder out) {
+        out.append(series("", "")).append(' ').append(formatPrometheus(get())).append('\n');
+    }
+
+    @Override
+    void writeJson(StringBuilder out) {
+        out.append(formatJson(get()));
+    }
+}
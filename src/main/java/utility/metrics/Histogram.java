@@ -0,0 +1,130 @@
+package utility.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.DoubleAdder;
+
+/**
+ * Distribution of a positive measure (durations in seconds, gradient
+ * norms...), recorded lock-free from any thread.
+ *
+ * Values are counted in log-linear buckets: 4 buckets per power of two from
+ * 2^-40 to 2^40, so a quantile is known within 25%. Values below the range
+ * (including 0) go to the first bucket, values above to the last one.
+ */
+public final class Histogram extends Metric {
+
+    private static final int MIN_EXPONENT = -40;
+    private static final int MAX_EXPONENT = 40;
+    private static final int SUB_BUCKETS = 4; // Per power of two (top 2 bits of the mantissa)
+    private static final int BUCKETS = (MAX_EXPONENT - MIN_EXPONENT) * SUB_BUCKETS + 2;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final DoubleAdder sum = new DoubleAdder();
+    private final AtomicLong maxBits = new AtomicLong(); // Positive doubles order like their bits
+
+    Histogram(String name, String labels, String help) {
+        super(name, labels, help);
+    }
+
+    public void record(double value) {
+        counts.incrementAndGet(bucketOf(value));
+        sum.add(value);
+        if (value > 0) maxBits.accumulateAndGet(Double.doubleToRawLongBits(value), Math::max);
+    }
+
+    // Records the time elapsed since `startNanos` (a System.nanoTime() value), in seconds
+    public void recordSince(long startNanos) {
+        record((System.nanoTime() - startNanos) * 1e-9);
+    }
+
+    static int bucketOf(double value) {
+        if (!(value > 0)) return 0; // 0, negative or NaN
+        int exponent = Math.getExponent(value);
+        if (exponent < MIN_EXPONENT) return 0;
+        if (exponent >= MAX_EXPONENT) return BUCKETS - 1;
+        int sub = (int) (Double.doubleToRawLongBits(value) >>> 50) & (SUB_BUCKETS - 1);
+        return 1 + (exponent - MIN_EXPONENT) * SUB_BUCKETS + sub;
+    }
+
+    // Largest value counted in a bucket
+    static double upperBound(int bucket) {
+        if (bucket == 0) return Math.scalb(1.0, MIN_EXPONENT);
+        if (bucket == BUCKETS - 1) return Double.POSITIVE_INFINITY;
+        int index = bucket - 1;
+        return Math.scalb(1.0 + (index % SUB_BUCKETS + 1) / (double) SUB_BUCKETS, MIN_EXPONENT + index / SUB_BUCKETS);
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) count += counts.get(i);
+        return count;
+    }
+
+    public double getSum() {
+        return sum.sum();
+    }
+
+    public double getMax() {
+        return Double.longBitsToDouble(maxBits.get());
+    }
+
+    // Upper bound of the bucket holding the q-quantile (0 < q <= 1), NaN when empty
+    public double getQuantile(double q) {
+        long[] snapshot = snapshot();
+        long count = 0;
+        for (long c : snapshot) count += c;
+        if (count == 0) return Double.NaN;
+
+        long rank = Math.max(1, (long) Math.ceil(q * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) return Math.min(upperBound(i), getMax());
+        }
+        return getMax();
+    }
+
+    private long[] snapshot() {
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) snapshot[i] = counts.get(i);
+        return snapshot;
+    }
+
+    @Override
+    public String getType() {
+        return "histogram";
+    }
+
+    // Cumulative buckets at every power of two between the smallest and largest value seen
+    @Override
+    void writePrometheus(StringBuilder out) {
+        long[] snapshot = snapshot();
+        int last = BUCKETS - 1;
+        while (last > 0 && snapshot[last] == 0) last--;
+
+        long cumulative = 0;
+        for (int i = 0; i < BUCKETS - 1 && i <= last; i++) {
+            cumulative += snapshot[i];
+            boolean powerOfTwo = (i == 0) || (i - 1) % SUB_BUCKETS == SUB_BUCKETS - 1;
+            if (cumulative > 0 && (powerOfTwo || i == last)) {
+                out.append(series("_bucket", "le=\"" + formatPrometheus(upperBound(i)) + "\""))
+                   .append(' ').append(cumulative).append('\n');
+            }
+        }
+        cumulative += snapshot[BUCKETS - 1];
+        out.append(series("_bucket", "le=\"+Inf\"")).append(' ').append(cumulative).append('\n');
+        out.append(series("_sum", "")).append(' ').append(formatPrometheus(getSum())).append('\n');
+        out.append(series("_count", "")).append(' ').append(cumulative).append('\n');
+    }
+
+    @Override
+    void writeJson(StringBuilder out) {
+        out.append("{\"count\":").append(getCount())
+           .append(",\"sum\":").append(formatJson(getSum()))
+           .append(",\"p50\":").append(formatJson(getQuantile(0.5)))
+           .append(",\"p90\":").append(formatJson(getQuantile(0.9)))
+           .append(",\"p99\":").append(formatJson(getQuantile(0.99)))
+           .append(",\"max\":").append(formatJson(getMax())).append('}');
+    }
+}
@@ -0,0 +1,54 @@
+package utility.metrics;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+/**
+ * Measures of the JVM itself: garbage collections (one histogram sample
+ * per collection, sent by the JVM after it) and bytes allocated by the
+ * threads.
+ */
+final class JvmMetrics {
+
+    private JvmMetrics() {}
+
+    // Records the duration of every collection from now on, labelled by collector
+    static void recordCollections(MetricsRegistry registry) {
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (!(collector instanceof NotificationEmitter)) continue;
+            Histogram pauses = registry.histogram("jvm_gc_seconds", "Duration of a garbage collection",
+                    "collector", collector.getName());
+
+            ((NotificationEmitter) collector).addNotificationListener((notification, handback) -> {
+                if (!notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) {
+                    return;
+                }
+                GarbageCollectionNotificationInfo info =
+                        GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+                pauses.record(info.getGcInfo().getDuration() / 1000.0);
+            }, null, null);
+        }
+    }
+
+    // Bytes allocated so far by the live threads (-1 if the JVM does not measure it)
+    static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) return -1;
+
+        long total = 0;
+        for (long bytes : ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            if (bytes > 0) total += bytes; // -1 for threads that ended meanwhile
+        }
+        return total;
+    }
+
+    static long heapUsedBytes() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
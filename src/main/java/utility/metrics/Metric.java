@@ -0,0 +1,57 @@
+package utility.metrics;
+
+/**
+ * A named value of the {@link MetricsRegistry}. Metrics with the same name
+ * and different labels (e.g. one timer per layer) form one family in the
+ * Prometheus export.
+ */
+public abstract class Metric {
+
+    private final String name;
+    private final String labels; // Prometheus form, e.g. layer="0",phase="forward" ("" if none)
+    private final String help;
+
+    Metric(String name, String labels, String help) {
+        this.name = name;
+        this.labels = labels;
+        this.help = help;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getLabels() {
+        return labels;
+    }
+
+    public String getHelp() {
+        return help;
+    }
+
+    // "counter", "gauge" or "histogram"
+    public abstract String getType();
+
+    // Sample lines of the metric (the HELP and TYPE lines are written by the registry)
+    abstract void writePrometheus(StringBuilder out);
+
+    // Value of the metric as a JSON value
+    abstract void writeJson(StringBuilder out);
+
+    // name{labels}, with extra labels added to the existing ones
+    String series(String suffix, String extraLabels) {
+        String all = labels.isEmpty() ? extraLabels
+                   : extraLabels.isEmpty() ? labels : labels + "," + extraLabels;
+        return name + suffix + (all.isEmpty() ? "" : "{" + all + "}");
+    }
+
+    static String formatPrometheus(double value) {
+        if (Double.isNaN(value)) return "NaN";
+        if (Double.isInfinite(value)) return value > 0 ? "+Inf" : "-Inf";
+        return Double.toString(value);
+    }
+
+    static String formatJson(double value) {
+        return (Double.isNaN(value) || Double.isInfinite(value)) ? "null" : Double.toString(value);
+    }
+}
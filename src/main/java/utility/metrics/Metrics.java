@@ -0,0 +1,114 @@
+package utility.metrics;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Training metrics of the process, enabled with -Dnn.metrics=&lt;file&gt;.
+ *
+ * The hot paths test {@link #ENABLED} before measuring anything. It is a
+ * constant fixed at start-up, so without the property the JIT removes the
+ * instrumentation and training runs exactly as before.
+ *
+ * {@link #export()} writes the registry to the file: a Prometheus text file
+ * (rewritten every time) if its name ends with ".prom", otherwise one JSON
+ * line appended per call.
+ */
+public final class Metrics {
+
+    private static final String PROPERTY = "nn.metrics";
+
+    public static final boolean ENABLED = System.getProperty(PROPERTY) != null;
+
+    private static final MetricsRegistry REGISTRY = new MetricsRegistry();
+
+    // --- Training steps (recorded by the networks and trainers) ---
+    public static final Counter STEPS = REGISTRY.counter("nn_steps_total", "Weight updates applied");
+    public static final Counter SAMPLES = REGISTRY.counter("nn_samples_total", "Training samples in the applied updates");
+    public static final Counter LOSS = REGISTRY.counter("nn_loss_sum", "Summed loss of the training samples");
+    public static final Histogram STEP_TIME = REGISTRY.histogram("nn_step_seconds",
+            "Duration of a training step (forward, backward, gradient reduction and update)");
+    public static final Histogram REDUCE_TIME = REGISTRY.histogram("nn_allreduce_seconds",
+            "Duration of the gradient all-reduce of a data-parallel step");
+    public static final Histogram GRADIENT_NORM = REGISTRY.histogram("nn_gradient_norm",
+            "L2 norm of the mean gradient of a step");
+    public static final Histogram DATA_WAIT = REGISTRY.histogram("nn_data_wait_seconds",
+            "Time the trainer waited for the next batch of a data stream");
+
+    // --- Epochs (set by endEpoch) ---
+    public static final Gauge EPOCH = REGISTRY.gauge("nn_epoch", "Completed epochs");
+    public static final Gauge EPOCH_LOSS = REGISTRY.gauge("nn_epoch_loss", "Mean training loss of the last epoch");
+    public static final Gauge SAMPLES_PER_SECOND = REGISTRY.gauge("nn_samples_per_second",
+            "Training throughput of the last epoch");
+    public static final Gauge ALLOCATED_PER_STEP = REGISTRY.gauge("nn_allocated_bytes_per_step",
+            "Bytes allocated by all threads per step during the last epoch");
+    public static final Gauge VALIDATION_ACCURACY = REGISTRY.gauge("nn_validation_accuracy",
+            "Validation accuracy after the last epoch");
+    public static final Gauge HEAP_USED = REGISTRY.gauge("jvm_heap_used_bytes", "Heap in use at the end of the last epoch");
+
+    // Totals at the end of the previous epoch
+    private static double lastSteps, lastSamples, lastLoss;
+    private static long lastAllocated = -1;
+
+    static {
+        if (ENABLED) {
+            JvmMetrics.recordCollections(REGISTRY);
+            lastAllocated = JvmMetrics.allocatedBytes();
+        }
+    }
+
+    private Metrics() {}
+
+    public static MetricsRegistry getRegistry() {
+        return REGISTRY;
+    }
+
+    // Time of one layer in one phase ("forward", "backward" or "update")
+    public static Histogram layerTimer(int layer, String phase) {
+        return REGISTRY.histogram("nn_layer_seconds", "Time spent in one layer by one pass",
+                "layer", String.valueOf(layer), "phase", phase);
+    }
+
+    // Sets the per-epoch gauges from what was recorded since the previous call
+    public static synchronized void endEpoch(int epoch, double seconds) {
+        double steps = STEPS.get(), samples = SAMPLES.get(), loss = LOSS.get();
+        long allocated = JvmMetrics.allocatedBytes();
+
+        EPOCH.set(epoch);
+        EPOCH_LOSS.set(samples > lastSamples ? (loss - lastLoss) / (samples - lastSamples) : Double.NaN);
+        SAMPLES_PER_SECOND.set(seconds > 0 ? (samples - lastSamples) / seconds : Double.NaN);
+        ALLOCATED_PER_STEP.set(steps > lastSteps && allocated >= 0 && lastAllocated >= 0
+                ? (allocated - lastAllocated) / (steps - lastSteps) : Double.NaN);
+        HEAP_USED.set(JvmMetrics.heapUsedBytes());
+
+        lastSteps = steps;
+        lastSamples = samples;
+        lastLoss = loss;
+        lastAllocated = allocated;
+    }
+
+    // Writes the metrics to the file given by -Dnn.metrics (nothing when disabled)
+    public static void export() throws IOException {
+        if (ENABLED) export(Paths.get(System.getProperty(PROPERTY)));
+    }
+
+    public static void export(Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+
+        if (file.getFileName().toString().endsWith(".prom")) {
+            // Replaced atomically, a scraper never reads half a file
+            Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.writeString(temporary, REGISTRY.toPrometheus(), StandardCharsets.UTF_8);
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } else {
+            String line = "{\"time\":" + System.currentTimeMillis() + ",\"metrics\":" + REGISTRY.toJson() + "}\n";
+            Files.writeString(file, line, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+    }
+}
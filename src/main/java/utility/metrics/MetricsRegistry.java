@@ -0,0 +1,94 @@
+package utility.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Set of metrics, looked up by name and labels, and exported as one JSON
+ * object or as a Prometheus text exposition.
+ *
+ * Metrics are created once and then updated without going through the
+ * registry, so callers on hot paths keep a reference to them.
+ */
+public class MetricsRegistry {
+
+    private final Map<String, Metric> metrics = new ConcurrentHashMap<>();
+
+    // Labels are given as pairs: "layer", "0", "phase", "forward"
+    public Counter counter(String name, String help, String... labels) {
+        return get(name, help, labels, Counter.class);
+    }
+
+    public Gauge gauge(String name, String help, String... labels) {
+        return get(name, help, labels, Gauge.class);
+    }
+
+    public Histogram histogram(String name, String help, String... labels) {
+        return get(name, help, labels, Histogram.class);
+    }
+
+    private <M extends Metric> M get(String name, String help, String[] labels, Class<M> type) {
+        String formatted = formatLabels(labels);
+        Metric metric = metrics.computeIfAbsent(name + "{" + formatted + "}", key -> {
+            if (type == Counter.class) return new Counter(name, formatted, help);
+            if (type == Gauge.class) return new Gauge(name, formatted, help);
+            return new Histogram(name, formatted, help);
+        });
+        if (!type.isInstance(metric)) {
+            throw new IllegalArgumentException("Metric " + name + " is already registered as a " + metric.getType());
+        }
+        return type.cast(metric);
+    }
+
+    private static String formatLabels(String[] labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be given as name/value pairs.");
+        }
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) out.append(',');
+            out.append(labels[i]).append("=\"")
+               .append(labels[i + 1].replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"))
+               .append('"');
+        }
+        return out.toString();
+    }
+
+    // Metrics sorted by name, so each family is contiguous in the exports
+    private TreeMap<String, Metric> sorted() {
+        return new TreeMap<>(metrics);
+    }
+
+    // ------------------------------------------------------------
+    // Exports
+    // ------------------------------------------------------------
+
+    // Prometheus text format (e.g. for the node_exporter textfile collector)
+    public String toPrometheus() {
+        StringBuilder out = new StringBuilder();
+        String family = null;
+        for (Metric metric : sorted().values()) {
+            if (!metric.getName().equals(family)) {
+                family = metric.getName();
+                out.append("# HELP ").append(family).append(' ').append(metric.getHelp()).append('\n');
+                out.append("# TYPE ").append(family).append(' ').append(metric.getType()).append('\n');
+            }
+            metric.writePrometheus(out);
+        }
+        return out.toString();
+    }
+
+    // One JSON object (no line break), keyed by name{labels}
+    public String toJson() {
+        StringBuilder out = new StringBuilder("{");
+        for (Metric metric : sorted().values()) {
+            if (out.length() > 1) out.append(',');
+            String key = metric.getLabels().isEmpty() ? metric.getName()
+                       : metric.getName() + "{" + metric.getLabels() + "}";
+            out.append('"').append(key.replace("\\", "\\\\").replace("\"", "\\\"")).append("\":");
+            metric.writeJson(out);
+        }
+        return out.append('}').toString();
+    }
+}
@@ -0,0 +1,58 @@
+package utility.optimizers;
+
+/**
+ * Adam, and AdamW when the weight decay is not 0:
+ *   m = beta1 * m + (1 - beta1) * g
+ *   v = beta2 * v + (1 - beta2) * g^2
+ *   w -= lr * (m / (1 - beta1^t)) / (sqrt(v / (1 - beta2^t)) + epsilon) + lr * weightDecay * w
+ *
+ * The weight decay is decoupled from the gradient (AdamW) and is not applied
+ * to the biases. The bias corrections are computed once per step, so the
+ * loop has a single square root and division per parameter.
+ */
+public class AdamOptimizer implements Optimizer {
+
+    private final float beta1, beta2;
+    private final float epsilon;
+    private final float weightDecay;
+
+    public AdamOptimizer(float beta1, float beta2, float epsilon, float weightDecay) {
+        this.beta1 = beta1;
+        this.beta2 = beta2;
+        this.epsilon = epsilon;
+        this.weightDecay = weightDecay;
+    }
+
+    @Override
+    public String getName() {
+        return (weightDecay != 0.0f) ? "AdamW" : "Adam";
+    }
+
+    @Override
+    public int getStateBuffers() {
+        return 2; // First and second moments
+    }
+
+    @Override
+    public void update(float[] parameters, float[] gradientSums, OptimizerState state, float learningRate,
+                       int samples) {
+        int t = state.nextStep();
+        float stepSize = (float) (learningRate / (1.0 - Math.pow(beta1, t)));
+        float correction2 = (float) (1.0 / Math.sqrt(1.0 - Math.pow(beta2, t)));
+        float inverseSamples = 1.0f / samples;
+        float keep1 = 1.0f - beta1, keep2 = 1.0f - beta2;
+        float decay = state.isDecayed() ? 1.0f - learningRate * weightDecay : 1.0f;
+
+        float[] m = state.getBuffer(0);
+        float[] v = state.getBuffer(1);
+        for (int i = 0; i < parameters.length; i++) {
+            float g = gradientSums[i] * inverseSamples;
+            float first = beta1 * m[i] + keep1 * g;
+            float second = beta2 * v[i] + keep2 * g * g;
+            m[i] = first;
+            v[i] = second;
+            parameters[i] = parameters[i] * decay
+                    - stepSize * first / ((float) Math.sqrt(second) * correction2 + epsilon);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package utility.optimizers;
+
+// Cosine decay from the base learning rate down to minLearningRate at totalEpochs
+public class CosineSchedule implements LearningRateSchedule {
+
+    private final float baseLearningRate;
+    private final float minLearningRate;
+    private final double totalEpochs;
+
+    public CosineSchedule(float baseLearningRate, float minLearningRate, double totalEpochs) {
+        this.baseLearningRate = baseLearningRate;
+        this.minLearningRate = minLearningRate;
+        this.totalEpochs = totalEpochs;
+    }
+
+    @Override
+    public float getLearningRate(double epoch) {
+        double progress = Math.min(1.0, Math.max(0.0, epoch / totalEpochs));
+        double cosine = 0.5 * (1.0 + Math.cos(Math.PI * progress));
+        return (float) (minLearningRate + (baseLearningRate - minLearningRate) * cosine);
+    }
+}
@@ -0,0 +1,24 @@
+package utility.optimizers;
+
+/**
+ * Learning rate as a function of the training progress.
+ *
+ * The progress is counted in epochs and may be fractional (epoch 2.5 is the
+ * middle of the third epoch), so a schedule can be followed per batch or
+ * only once per epoch. Schedules are stateless: resuming a run only needs
+ * the epoch.
+ */
+public interface LearningRateSchedule {
+
+    float getLearningRate(double epoch);
+
+    // Linear warm-up from 0 over the first `epochs` epochs, then this schedule
+    default LearningRateSchedule withWarmup(double epochs) {
+        return new WarmupSchedule(this, epochs);
+    }
+
+    // Same learning rate all along
+    static LearningRateSchedule constant(float learningRate) {
+        return epoch -> learningRate;
+    }
+}
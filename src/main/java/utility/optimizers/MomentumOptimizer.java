@@ -0,0 +1,36 @@
+package utility.optimizers;
+
+import utility.KernelBackend;
+
+// SGD with momentum: v = momentum * v + lr * g, w -= v
+public class MomentumOptimizer implements Optimizer {
+
+    private final float momentum;
+    private final KernelBackend kernels = KernelBackend.get();
+
+    public MomentumOptimizer(float momentum) {
+        this.momentum = momentum;
+    }
+
+    public float getMomentum() {
+        return momentum;
+    }
+
+    @Override
+    public String getName() {
+        return "Momentum";
+    }
+
+    @Override
+    public int getStateBuffers() {
+        return 1; // Velocities
+    }
+
+    @Override
+    public void update(float[] parameters, float[] gradientSums, OptimizerState state, float learningRate,
+                       int samples) {
+        float scale = learningRate / samples;
+        kernels.momentumStep(parameters, state.getBuffer(0), gradientSums, 0, parameters.length, scale, momentum);
+        state.nextStep();
+    }
+}
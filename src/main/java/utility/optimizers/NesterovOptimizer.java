@@ -0,0 +1,37 @@
+package utility.optimizers;
+
+// Nesterov momentum: v = momentum * v + lr * g, w -= momentum * v + lr * g
+// (the gradient step is taken again from the look-ahead point)
+public class NesterovOptimizer implements Optimizer {
+
+    private final float momentum;
+
+    public NesterovOptimizer(float momentum) {
+        this.momentum = momentum;
+    }
+
+    @Override
+    public String getName() {
+        return "Nesterov";
+    }
+
+    @Override
+    public int getStateBuffers() {
+        return 1; // Velocities
+    }
+
+    @Override
+    public void update(float[] parameters, float[] gradientSums, OptimizerState state, float learningRate,
+                       int samples) {
+        float scale = learningRate / samples;
+        float[] v = state.getBuffer(0);
+
+        for (int i = 0; i < parameters.length; i++) {
+            float step = gradientSums[i] * scale;
+            float velocity = momentum * v[i] + step;
+            v[i] = velocity;
+            parameters[i] -= momentum * velocity + step;
+        }
+        state.nextStep();
+    }
+}
@@ -0,0 +1,37 @@
+package utility.optimizers;
+
+/**
+ * One-cycle policy: the learning rate goes up from maxLearningRate / 25 to
+ * maxLearningRate during the first `warmupFraction` of the run (cosine), then
+ * down to maxLearningRate / 10^4 at the end (cosine).
+ */
+public class OneCycleSchedule implements LearningRateSchedule {
+
+    private static final float START_DIVISOR = 25.0f;
+    private static final float FINAL_DIVISOR = 1e4f;
+
+    private final float maxLearningRate;
+    private final double totalEpochs;
+    private final double warmupFraction;
+
+    public OneCycleSchedule(float maxLearningRate, double totalEpochs, double warmupFraction) {
+        this.maxLearningRate = maxLearningRate;
+        this.totalEpochs = totalEpochs;
+        this.warmupFraction = warmupFraction;
+    }
+
+    @Override
+    public float getLearningRate(double epoch) {
+        double progress = Math.min(1.0, Math.max(0.0, epoch / totalEpochs));
+        if (progress < warmupFraction) {
+            return interpolate(maxLearningRate / START_DIVISOR, maxLearningRate, progress / warmupFraction);
+        }
+        return interpolate(maxLearningRate, maxLearningRate / FINAL_DIVISOR,
+                (progress - warmupFraction) / (1.0 - warmupFraction));
+    }
+
+    // Cosine from `from` (t = 0) to `to` (t = 1)
+    private static float interpolate(float from, float to, double t) {
+        return (float) (to + (from - to) * 0.5 * (1.0 + Math.cos(Math.PI * t)));
+    }
+}
@@ -0,0 +1,31 @@
+package utility.optimizers;
+
+/**
+ * Update rule of the trainable parameters.
+ *
+ * The optimizer defines the state it keeps for every parameter (velocities,
+ * moment estimates...) and creates it as an {@link OptimizerState}, one per
+ * parameter buffer. update() then reads the accumulated gradients and
+ * updates the parameters and their state in a single pass over the flat
+ * buffers, without allocating.
+ *
+ * Optimizers only hold their hyperparameters, so one instance can be shared
+ * by every layer (and every replica of a layer).
+ */
+public interface Optimizer {
+
+    // Name used in checkpoints and on the command line (see OptimizerNames)
+    String getName();
+
+    // Floats of state kept per parameter (e.g. 1 velocity, 2 moments)
+    int getStateBuffers();
+
+    // State for a buffer of `size` parameters (decayed: weight decay applies, false for the biases)
+    default OptimizerState createState(int size, boolean decayed) {
+        return new OptimizerState(getStateBuffers(), size, decayed);
+    }
+
+    // One step on every parameter of the buffer.
+    // gradientSums holds the gradients summed over `samples` rows (the step uses their mean).
+    void update(float[] parameters, float[] gradientSums, OptimizerState state, float learningRate, int samples);
+}
@@ -0,0 +1,46 @@
+package utility.optimizers;
+
+public enum OptimizerNames {
+    // Default hyperparameters and a learning rate that suits them
+    MOMENTUM("Momentum", 0.015f),
+    NESTEROV("Nesterov", 0.015f),
+    RMSPROP("RMSProp", 0.001f),
+    ADAM("Adam", 0.001f),
+    ADAMW("AdamW", 0.001f);
+
+    private final String name;
+    private final float defaultLearningRate;
+
+    OptimizerNames(String name, float defaultLearningRate) {
+        this.name = name;
+        this.defaultLearningRate = defaultLearningRate;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public float getDefaultLearningRate() {
+        return defaultLearningRate;
+    }
+
+    // New optimizer with the default hyperparameters
+    public Optimizer create() {
+        switch (this) {
+            case NESTEROV: return new NesterovOptimizer(0.9f);
+            case RMSPROP:  return new RmsPropOptimizer(0.9f, 1e-8f);
+            case ADAM:     return new AdamOptimizer(0.9f, 0.999f, 1e-8f, 0.0f);
+            case ADAMW:    return new AdamOptimizer(0.9f, 0.999f, 1e-8f, 0.01f);
+            default:       return new MomentumOptimizer(0.9f);
+        }
+    }
+
+    public static OptimizerNames getByName(String name) {
+        for (OptimizerNames optimizer : OptimizerNames.values()) {
+            if (optimizer.getName().equalsIgnoreCase(name)) {
+                return optimizer;
+            }
+        }
+        return null;
+    }
+}
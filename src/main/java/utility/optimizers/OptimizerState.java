@@ -0,0 +1,54 @@
+package utility.optimizers;
+
+import java.util.Arrays;
+
+/**
+ * Per-parameter state of an {@link Optimizer} for one parameter buffer:
+ * `buffers` arrays with one value per parameter, and the number of steps
+ * done (for the bias correction of Adam).
+ */
+public final class OptimizerState {
+
+    private final float[][] buffers;
+    private final boolean decayed;
+    private int steps;
+
+    OptimizerState(int bufferCount, int size, boolean decayed) {
+        this.buffers = new float[bufferCount][size];
+        this.decayed = decayed;
+    }
+
+    public float[] getBuffer(int index) {
+        return buffers[index];
+    }
+
+    public int getBufferCount() {
+        return buffers.length;
+    }
+
+    // True for the weights, false for the biases (no weight decay)
+    public boolean isDecayed() {
+        return decayed;
+    }
+
+    public int getSteps() {
+        return steps;
+    }
+
+    public void setSteps(int steps) {
+        this.steps = steps;
+    }
+
+    // Next step number (1 for the first update)
+    int nextStep() {
+        return ++steps;
+    }
+
+    // Back to the state of a new optimizer
+    public void reset() {
+        for (float[] buffer : buffers) {
+            Arrays.fill(buffer, 0.0f);
+        }
+        steps = 0;
+    }
+}
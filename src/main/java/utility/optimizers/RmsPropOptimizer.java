@@ -0,0 +1,39 @@
+package utility.optimizers;
+
+// RMSProp: s = decay * s + (1 - decay) * g^2, w -= lr * g / (sqrt(s) + epsilon)
+public class RmsPropOptimizer implements Optimizer {
+
+    private final float decay;
+    private final float epsilon;
+
+    public RmsPropOptimizer(float decay, float epsilon) {
+        this.decay = decay;
+        this.epsilon = epsilon;
+    }
+
+    @Override
+    public String getName() {
+        return "RMSProp";
+    }
+
+    @Override
+    public int getStateBuffers() {
+        return 1; // Mean of the squared gradients
+    }
+
+    @Override
+    public void update(float[] parameters, float[] gradientSums, OptimizerState state, float learningRate,
+                       int samples) {
+        float inverseSamples = 1.0f / samples;
+        float keep = 1.0f - decay;
+        float[] s = state.getBuffer(0);
+
+        for (int i = 0; i < parameters.length; i++) {
+            float g = gradientSums[i] * inverseSamples;
+            float square = decay * s[i] + keep * g * g;
+            s[i] = square;
+            parameters[i] -= learningRate * g / ((float) Math.sqrt(square) + epsilon);
+        }
+        state.nextStep();
+    }
+}
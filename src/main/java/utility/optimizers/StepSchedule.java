@@ -0,0 +1,24 @@
+package utility.optimizers;
+
+// Multiplies the learning rate by `factor` at each milestone epoch (e.g. halving at 10, 13, 16, 19)
+public class StepSchedule implements LearningRateSchedule {
+
+    private final float baseLearningRate;
+    private final float factor;
+    private final int[] milestones;
+
+    public StepSchedule(float baseLearningRate, float factor, int... milestones) {
+        this.baseLearningRate = baseLearningRate;
+        this.factor = factor;
+        this.milestones = milestones.clone();
+    }
+
+    @Override
+    public float getLearningRate(double epoch) {
+        float learningRate = baseLearningRate;
+        for (int milestone : milestones) {
+            if (epoch >= milestone) learningRate *= factor;
+        }
+        return learningRate;
+    }
+}
@@ -0,0 +1,20 @@
+package utility.optimizers;
+
+// Linear increase from 0 during the first warmupEpochs, then the wrapped schedule
+public class WarmupSchedule implements LearningRateSchedule {
+
+    private final LearningRateSchedule schedule;
+    private final double warmupEpochs;
+
+    public WarmupSchedule(LearningRateSchedule schedule, double warmupEpochs) {
+        this.schedule = schedule;
+        this.warmupEpochs = warmupEpochs;
+    }
+
+    @Override
+    public float getLearningRate(double epoch) {
+        float learningRate = schedule.getLearningRate(epoch);
+        if (epoch >= warmupEpochs) return learningRate;
+        return (float) (learningRate * epoch / warmupEpochs);
+    }
+}
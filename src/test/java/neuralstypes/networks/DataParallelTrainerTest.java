@@ -0,0 +1,76 @@
+package neuralstypes.networks;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import neuralstypes.BatchNormLayer;
+import neuralstypes.Layer;
+import utility.Matrix;
+
+// Steps split over several replicas give the weights of one replica, up to float rounding
+class DataParallelTrainerTest {
+
+    private static final int BATCH_SIZE = 30; // Shards of unequal size with 4 replicas
+    private static final int STEPS = 10;
+    private static final float TOLERANCE = 1e-5f;
+
+    @Test
+    void workersGiveTheWeightsOfOneWorker() {
+        NeuralNetwork single = new ProjectNetwork(1);
+        NeuralNetwork split = new ProjectNetwork(1);
+        train(single, 1);
+        train(split, 4);
+        assertSameParameters(single, split);
+    }
+
+    // The batch statistics are those of the whole batch, not of the shards
+    @Test
+    void batchNormWorkersGiveTheWeightsOfOneWorker() {
+        NeuralNetwork single = batchNormNetwork();
+        NeuralNetwork split = batchNormNetwork();
+        train(single, 1);
+        train(split, 4);
+        assertSameParameters(single, split);
+    }
+
+    // Like ProjectNetwork.BATCH_NORM without the dropout, whose masks depend on the replica
+    private static NeuralNetwork batchNormNetwork() {
+        Random random = new Random(1);
+        NeuralNetwork network = new NeuralNetwork(1) {};
+        network.addLayer(new Layer(784, 128, "IDENTITY", random));
+        network.addLayer(new BatchNormLayer(128, "RELU"));
+        network.addLayer(new Layer(128, 64, "IDENTITY", random));
+        network.addLayer(new BatchNormLayer(64, "RELU"));
+        network.addLayer(new Layer(64, 10, "SOFTMAX", random));
+        return network;
+    }
+
+    // Trains STEPS random batches (the same ones for every call) with `workers` replicas
+    static void train(NeuralNetwork network, int workers) {
+        Random random = new Random(5);
+        Matrix inputs = new Matrix(BATCH_SIZE, network.getLayer(0).getInputSize());
+        Matrix targets = new Matrix(BATCH_SIZE, 10);
+        DataParallelTrainer trainer = new DataParallelTrainer(network, workers);
+        for (int step = 0; step < STEPS; step++) {
+            targets.fill(0.0f);
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                targets.set(i, random.nextInt(10), 1.0f);
+                for (int j = 0; j < inputs.getColumns(); j++) {
+                    inputs.set(i, j, random.nextFloat());
+                }
+            }
+            trainer.trainBatch(inputs, targets, 0.05f);
+        }
+    }
+
+    static void assertSameParameters(NeuralNetwork expected, NeuralNetwork actual) {
+        for (int l = 0; l < expected.size(); l++) {
+            Layer e = expected.getLayer(l), a = actual.getLayer(l);
+            assertArrayEquals(e.getWeights().getData(), a.getWeights().getData(), TOLERANCE, "weights of layer " + l);
+            assertArrayEquals(e.getBiases(), a.getBiases(), TOLERANCE, "biases of layer " + l);
+        }
+    }
+}
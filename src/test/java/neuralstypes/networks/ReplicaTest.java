@@ -0,0 +1,34 @@
+package neuralstypes.networks;
+
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.junit.jupiter.api.Test;
+
+import neuralstypes.Layer;
+import utility.optimizers.AdamOptimizer;
+
+// Replicas update the parameters of the source network with its optimizer and optimizer state
+class ReplicaTest {
+
+    @Test
+    void replicaLayersShareTheDefaultOptimizerState() {
+        assertSharedOptimizer(new ProjectNetwork(1, ProjectNetwork.BATCH_NORM));
+    }
+
+    @Test
+    void replicaLayersShareAnOptimizerSetBeforeReplicating() {
+        NeuralNetwork network = new ProjectNetwork(1);
+        network.setOptimizer(new AdamOptimizer(0.9f, 0.999f, 1e-8f, 0.0f));
+        assertSharedOptimizer(network);
+    }
+
+    private static void assertSharedOptimizer(NeuralNetwork network) {
+        NeuralNetwork replica = network.replicate();
+        for (int l = 0; l < network.size(); l++) {
+            Layer source = network.getLayer(l), copy = replica.getLayer(l);
+            assertSame(source.getOptimizer(), copy.getOptimizer(), "optimizer of layer " + l);
+            assertSame(source.getWeightState(), copy.getWeightState(), "weight state of layer " + l);
+            assertSame(source.getBiasState(), copy.getBiasState(), "bias state of layer " + l);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package neuralstypes.networks;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import com.sun.management.ThreadMXBean;
+
+import utility.Matrix;
+import utility.Parallelism;
+import utility.SparseMatrix;
+
+// Steady-state training steps of the dense network (dense or sparse inputs) and of the batch-normalised
+// one allocate nothing once the workspaces are reserved and the JIT has warmed up. One thread: the steps
+// run inline, so the whole step is counted on the calling thread.
+class TrainingAllocationTest {
+
+    private static final int BATCH_SIZE = 64;
+    private static final int WARMUP_STEPS = 3000;
+    private static final int MEASURED_STEPS = 200;
+
+    private static final ThreadMXBean THREADS = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static Matrix inputs;
+    private static Matrix targets;
+    private static int previousThreads;
+
+    @BeforeAll
+    static void setUp() {
+        previousThreads = Parallelism.getThreadCount();
+        Parallelism.setThreadCount(1);
+        inputs = new Matrix(BATCH_SIZE, 784);
+        targets = new Matrix(BATCH_SIZE, 10);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            targets.set(i, i % 10, 1.0f);
+            for (int j = 0; j < 784; j++) {
+                inputs.set(i, j, (i * j % 7) / 7.0f);
+            }
+        }
+    }
+
+    // The pool is shared by every test of the JVM
+    @AfterAll
+    static void tearDown() {
+        Parallelism.setThreadCount(previousThreads);
+    }
+
+    @Test
+    void denseTrainingStepDoesNotAllocate() {
+        ProjectNetwork network = new ProjectNetwork(1);
+        network.reserveWorkspaces(BATCH_SIZE);
+
+        assertEquals(0L, allocatedBytes(() -> network.trainBatch(inputs, targets, 0.01f)));
+    }
+
+    @Test
+    void batchNormTrainingStepDoesNotAllocate() {
+        ProjectNetwork network = new ProjectNetwork(1, ProjectNetwork.BATCH_NORM);
+        network.reserveWorkspaces(BATCH_SIZE);
+
+        assertEquals(0L, allocatedBytes(() -> network.trainBatch(inputs, targets, 0.01f)));
+    }
+
+    @Test
+    void sparseTrainingStepDoesNotAllocate() {
+        ProjectNetwork network = new ProjectNetwork(1);
+        network.reserveWorkspaces(BATCH_SIZE);
+        SparseMatrix sparseInputs = SparseMatrix.fromDense(inputs);
+
+        assertEquals(0L, allocatedBytes(() -> network.trainBatch(sparseInputs, targets, 0.01f)));
+    }
+
+    @Test
+    void dataParallelTrainingStepDoesNotAllocate() {
+        DataParallelTrainer trainer = new DataParallelTrainer(new ProjectNetwork(1), 4);
+        trainer.reserveWorkspaces(BATCH_SIZE);
+
+        assertEquals(0L, allocatedBytes(() -> trainer.trainBatch(inputs, targets, 0.01f)));
+    }
+
+    // Bytes allocated by the calling thread over MEASURED_STEPS steps, after WARMUP_STEPS
+    private static long allocatedBytes(Runnable step) {
+        for (int i = 0; i < WARMUP_STEPS; i++) {
+            step.run();
+        }
+        long thread = Thread.currentThread().getId();
+        long before = THREADS.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < MEASURED_STEPS; i++) {
+            step.run();
+        }
+        return THREADS.getThreadAllocatedBytes(thread) - before;
+    }
+}
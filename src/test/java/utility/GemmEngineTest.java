@@ -0,0 +1,60 @@
+package utility;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+// Products wider than one column block of GemmEngine (COL_BLOCK = 512), against a plain triple loop
+class GemmEngineTest {
+
+    private static final int ROWS = 9;    // Two 4-row blocks and a remainder row
+    private static final int DEPTH = 300;
+    private static final int WIDE = 1100; // Three column blocks, the last one partial
+
+    @Test
+    void multiplyWiderThanColumnBlock() {
+        Matrix a = random(ROWS, DEPTH, 1), b = random(DEPTH, WIDE, 2);
+        Matrix c = new Matrix(ROWS, WIDE);
+        GemmEngine.multiply(a, b, c);
+
+        for (int i = 0; i < ROWS; i++) {
+            for (int j = 0; j < WIDE; j++) {
+                float expected = 0.0f;
+                for (int k = 0; k < DEPTH; k++) {
+                    expected += a.get(i, k) * b.get(k, j);
+                }
+                assertEquals(expected, c.get(i, j), 1e-3f, "C[" + i + "][" + j + "]");
+            }
+        }
+    }
+
+    @Test
+    void multiplyTransposedWiderThanColumnBlock() {
+        Matrix a = random(DEPTH, ROWS, 3), b = random(DEPTH, WIDE, 4);
+        Matrix c = new Matrix(ROWS, WIDE);
+        GemmEngine.multiplyTransposedA(a, b, c);
+
+        for (int i = 0; i < ROWS; i++) {
+            for (int j = 0; j < WIDE; j++) {
+                float expected = 0.0f;
+                for (int k = 0; k < DEPTH; k++) {
+                    expected += a.get(k, i) * b.get(k, j);
+                }
+                assertEquals(expected, c.get(i, j), 1e-3f, "C[" + i + "][" + j + "]");
+            }
+        }
+    }
+
+    private static Matrix random(int rows, int columns, long seed) {
+        Random random = new Random(seed);
+        Matrix matrix = new Matrix(rows, columns);
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < columns; j++) {
+                matrix.set(i, j, random.nextFloat());
+            }
+        }
+        return matrix;
+    }
+}